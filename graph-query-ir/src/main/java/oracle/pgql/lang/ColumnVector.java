@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+/**
+ * The values of one element (column) of a {@link ResultBatch}. Integers, decimals and booleans are stored in arrays of
+ * primitives; any other value is stored as an object. Whether a value is null is stored separately in a bitmap, in
+ * which bit (row % 64) of word (row / 64) is set if the value of the row is null. The value in the array is
+ * meaningless for such rows.
+ *
+ * The arrays are exposed so that consumers can process a whole column without a call per value, and so that engines
+ * can fill them directly.
+ */
+public final class ColumnVector {
+
+  public enum Type {
+    LONG,
+    DOUBLE,
+    BOOLEAN,
+
+    /**
+     * Any other value, or values of different types
+     */
+    OBJECT
+  }
+
+  private final String name;
+
+  private final Type type;
+
+  private final long[] longs;
+
+  private final double[] doubles;
+
+  private final boolean[] booleans;
+
+  private final Object[] objects;
+
+  private final long[] nulls;
+
+  /**
+   * @param name
+   *          the name of the element
+   * @param capacity
+   *          the maximum number of rows
+   */
+  public ColumnVector(String name, Type type, int capacity) {
+    this.name = name;
+    this.type = type;
+    longs = type == Type.LONG ? new long[capacity] : null;
+    doubles = type == Type.DOUBLE ? new double[capacity] : null;
+    booleans = type == Type.BOOLEAN ? new boolean[capacity] : null;
+    objects = type == Type.OBJECT ? new Object[capacity] : null;
+    nulls = new long[(capacity + 63) / 64];
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public boolean isNull(int row) {
+    return (nulls[row >>> 6] & (1L << row)) != 0;
+  }
+
+  public void setNull(int row) {
+    nulls[row >>> 6] |= 1L << row;
+  }
+
+  public long getLong(int row) {
+    return getLongs()[row];
+  }
+
+  public void setLong(int row, long value) {
+    getLongs()[row] = value;
+  }
+
+  /**
+   * @return the value of the row of a DOUBLE or LONG column
+   */
+  public double getDouble(int row) {
+    return type == Type.LONG ? longs[row] : getDoubles()[row];
+  }
+
+  public void setDouble(int row, double value) {
+    getDoubles()[row] = value;
+  }
+
+  public boolean getBoolean(int row) {
+    return getBooleans()[row];
+  }
+
+  public void setBoolean(int row, boolean value) {
+    getBooleans()[row] = value;
+  }
+
+  /**
+   * @return the value of the row of a column of any type, or null
+   */
+  public Object getObject(int row) {
+    if (isNull(row)) {
+      return null;
+    }
+    switch (type) {
+      case LONG:
+        return longs[row];
+      case DOUBLE:
+        return doubles[row];
+      case BOOLEAN:
+        return booleans[row];
+      default:
+        return objects[row];
+    }
+  }
+
+  /**
+   * Sets the value of the row of an OBJECT column, which may be null
+   */
+  public void setObject(int row, Object value) {
+    getObjects()[row] = value;
+    if (value == null) {
+      setNull(row);
+    }
+  }
+
+  /**
+   * @return the values of a LONG column
+   */
+  public long[] getLongs() {
+    checkType(Type.LONG);
+    return longs;
+  }
+
+  /**
+   * @return the values of a DOUBLE column
+   */
+  public double[] getDoubles() {
+    checkType(Type.DOUBLE);
+    return doubles;
+  }
+
+  /**
+   * @return the values of a BOOLEAN column
+   */
+  public boolean[] getBooleans() {
+    checkType(Type.BOOLEAN);
+    return booleans;
+  }
+
+  /**
+   * @return the values of an OBJECT column
+   */
+  public Object[] getObjects() {
+    checkType(Type.OBJECT);
+    return objects;
+  }
+
+  /**
+   * @return the bitmap of the rows of which the value is null
+   */
+  public long[] getNulls() {
+    return nulls;
+  }
+
+  private void checkType(Type expectedType) {
+    if (type != expectedType) {
+      throw new IllegalStateException("Element " + name + " is of type " + type + ", not " + expectedType);
+    }
+  }
+}
@@ -14,6 +14,14 @@ import java.util.Set;
 /**
  * Get methods to access the values in the columns. The parameter indicates the column number or column name. Just
  * like the SQL ResultSet, columns are numbered from 1.
+ *
+ * The get methods for numbers and booleans come in two variants: one that returns a boxed value or null, and one that
+ * returns a primitive value, which is 0 or false for null. As in JDBC, {@link #wasNull()} tells whether the value that
+ * was last read was null.
+ *
+ * The primitive get methods and {@link #wasNull()} have default implementations such that existing implementations
+ * keep working. The default primitive get methods unbox the value of the boxed get methods, so they do not avoid any
+ * allocation; implementations that store primitive values should override them together with {@link #wasNull()}.
  */
 public interface ResultAccess {
 
@@ -241,4 +249,129 @@ public interface ResultAccess {
    */
   public Date getLegacyDate(String elementName) throws PgqlException;
 
+  /**
+   * Gets the value of the designated element by element index as an int, or 0 if the value is null
+   *
+   * @param elementIdx element index
+   * @return int
+   */
+  public default int getIntegerValue(int elementIdx) throws PgqlException {
+    Integer value = getInteger(elementIdx);
+    return value == null ? 0 : value;
+  }
+
+  /**
+   * Gets the value of the designated element by element name as an int, or 0 if the value is null
+   *
+   * @param elementName element name
+   * @return int
+   */
+  public default int getIntegerValue(String elementName) throws PgqlException {
+    Integer value = getInteger(elementName);
+    return value == null ? 0 : value;
+  }
+
+  /**
+   * Gets the value of the designated element by element index as a long, or 0 if the value is null
+   *
+   * @param elementIdx element index
+   * @return long
+   */
+  public default long getLongValue(int elementIdx) throws PgqlException {
+    Long value = getLong(elementIdx);
+    return value == null ? 0 : value;
+  }
+
+  /**
+   * Gets the value of the designated element by element name as a long, or 0 if the value is null
+   *
+   * @param elementName element name
+   * @return long
+   */
+  public default long getLongValue(String elementName) throws PgqlException {
+    Long value = getLong(elementName);
+    return value == null ? 0 : value;
+  }
+
+  /**
+   * Gets the value of the designated element by element index as a float, or 0 if the value is null
+   *
+   * @param elementIdx element index
+   * @return float
+   */
+  public default float getFloatValue(int elementIdx) throws PgqlException {
+    Float value = getFloat(elementIdx);
+    return value == null ? 0 : value;
+  }
+
+  /**
+   * Gets the value of the designated element by element name as a float, or 0 if the value is null
+   *
+   * @param elementName element name
+   * @return float
+   */
+  public default float getFloatValue(String elementName) throws PgqlException {
+    Float value = getFloat(elementName);
+    return value == null ? 0 : value;
+  }
+
+  /**
+   * Gets the value of the designated element by element index as a double, or 0 if the value is null
+   *
+   * @param elementIdx element index
+   * @return double
+   */
+  public default double getDoubleValue(int elementIdx) throws PgqlException {
+    Double value = getDouble(elementIdx);
+    return value == null ? 0 : value;
+  }
+
+  /**
+   * Gets the value of the designated element by element name as a double, or 0 if the value is null
+   *
+   * @param elementName element name
+   * @return double
+   */
+  public default double getDoubleValue(String elementName) throws PgqlException {
+    Double value = getDouble(elementName);
+    return value == null ? 0 : value;
+  }
+
+  /**
+   * Gets the value of the designated element by element index as a boolean, or false if the value is null
+   *
+   * @param elementIdx element index
+   * @return boolean
+   */
+  public default boolean getBooleanValue(int elementIdx) throws PgqlException {
+    Boolean value = getBoolean(elementIdx);
+    return value != null && value;
+  }
+
+  /**
+   * Gets the value of the designated element by element name as a boolean, or false if the value is null
+   *
+   * @param elementName element name
+   * @return boolean
+   */
+  public default boolean getBooleanValue(String elementName) throws PgqlException {
+    Boolean value = getBoolean(elementName);
+    return value != null && value;
+  }
+
+  /**
+   * Reports whether the value that was last read with one of the get methods was null. This is needed to distinguish
+   * null from 0 or false after reading a value with one of the get methods that return a primitive value, such as
+   * {@link #getLongValue(int)}.
+   *
+   * Implementations that override this method record whether each value that is read is null, in every get method.
+   * They should override it together with the primitive get methods. The default implementation does not keep track of
+   * the values that are read and throws an {@link UnsupportedOperationException}; use the boxed get methods to
+   * distinguish null values with implementations that do not override it.
+   *
+   * @return <code>true</code> if the value that was last read was null; <code>false</code> otherwise
+   */
+  public default boolean wasNull() throws PgqlException {
+    throw new UnsupportedOperationException(getClass().getName() + " does not support wasNull()");
+  }
 }
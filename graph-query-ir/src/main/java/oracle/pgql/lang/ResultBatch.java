@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A number of consecutive rows of a {@link ResultSet}, stored per element (column) as {@link ColumnVector}s. The
+ * parameter of the get methods indicates the element number or element name. Just like the SQL ResultSet, elements
+ * are numbered from 1.
+ */
+public final class ResultBatch {
+
+  private final int numRows;
+
+  private final List<ColumnVector> columns;
+
+  private final Map<String, Integer> columnIndices = new HashMap<>();
+
+  public ResultBatch(int numRows, List<ColumnVector> columns) {
+    this.numRows = numRows;
+    this.columns = Collections.unmodifiableList(columns);
+    for (int i = 0; i < columns.size(); i++) {
+      columnIndices.putIfAbsent(columns.get(i).getName(), i + 1);
+    }
+  }
+
+  /**
+   * @return the number of rows, which is 0 if there were no more rows to read
+   */
+  public int getNumRows() {
+    return numRows;
+  }
+
+  public List<ColumnVector> getColumns() {
+    return columns;
+  }
+
+  /**
+   * Gets the values of the designated element by element index
+   *
+   * @param elementIdx element index
+   * @return {@link ColumnVector}
+   */
+  public ColumnVector getColumn(int elementIdx) throws PgqlException {
+    if (elementIdx < 1 || elementIdx > columns.size()) {
+      throw new PgqlException("Element index " + elementIdx + " is out of range; the result has " + columns.size()
+          + " elements");
+    }
+    return columns.get(elementIdx - 1);
+  }
+
+  /**
+   * Gets the values of the designated element by element name
+   *
+   * @param elementName element name
+   * @return {@link ColumnVector}
+   */
+  public ColumnVector getColumn(String elementName) throws PgqlException {
+    Integer index = columnIndices.get(elementName);
+    if (index == null) {
+      throw new PgqlException("The result has no element " + elementName);
+    }
+    return columns.get(index - 1);
+  }
+}
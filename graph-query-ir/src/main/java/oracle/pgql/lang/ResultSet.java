@@ -77,6 +77,23 @@ public interface ResultSet extends AutoCloseable, ResultAccess {
    */
   public boolean relative(long rows) throws PgqlException;
 
+  /**
+   * Reads up to the given number of rows after the current position at once, stored per element, and moves the cursor
+   * to the last row that is read. The elements of the batch have the names of the elements of the projection. This is
+   * an alternative to calling next() and the get methods for every value when transferring many rows.
+   *
+   * Implementations that cannot read rows in batches do not need to override this method. The default implementation
+   * throws an {@link UnsupportedOperationException}.
+   *
+   * @param maxRows the maximum number of rows to read, which should be at least 1
+   * @return the rows that are read; the batch has no rows if the cursor was positioned at or after the last row, in
+   * which case the cursor is moved after the last row
+   * @throws PgqlException if a connection error occurs or when this method is called on a closed result set
+   */
+  public default ResultBatch nextBatch(int maxRows) throws PgqlException {
+    throw new UnsupportedOperationException(getClass().getName() + " does not support nextBatch(int)");
+  }
+
   /**
    * Releases this result set's resources. Calling the method close on a ResultSet object that is already closed has no
    * effect.
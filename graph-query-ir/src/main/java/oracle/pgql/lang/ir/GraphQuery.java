@@ -5,6 +5,8 @@ package oracle.pgql.lang.ir;
 
 import static oracle.pgql.lang.ir.PgqlUtils.printPgqlString;
 
+import java.util.Objects;
+
 public class GraphQuery {
 
   private final Projection projection;
@@ -79,10 +81,13 @@ public class GraphQuery {
 
     GraphQuery that = (GraphQuery) o;
 
-    if (limit != that.limit) {
+    if (!Objects.equals(limit, that.limit)) {
+      return false;
+    }
+    if (!Objects.equals(offset, that.offset)) {
       return false;
     }
-    if (offset != that.offset) {
+    if (!Objects.equals(inputGraphName, that.inputGraphName)) {
       return false;
     }
     if (!projection.equals(that.projection)) {
@@ -103,8 +108,9 @@ public class GraphQuery {
     result = 31 * result + graphPattern.hashCode();
     result = 31 * result + groupBy.hashCode();
     result = 31 * result + orderBy.hashCode();
-    result = 31 * result + limit.hashCode();
-    result = 31 * result + offset.hashCode();
+    result = 31 * result + Objects.hashCode(limit);
+    result = 31 * result + Objects.hashCode(offset);
+    result = 31 * result + Objects.hashCode(inputGraphName);
     return result;
   }
 }
@@ -11,6 +11,7 @@ import java.time.LocalTime;
 import java.time.OffsetDateTime;
 import java.time.OffsetTime;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 public interface QueryExpression {
@@ -1162,6 +1163,30 @@ public interface QueryExpression {
       public void accept(QueryExpressionVisitor v) {
         v.visit(this);
       }
+
+      @Override
+      public boolean equals(Object o) {
+        if (this == o) {
+          return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+          return false;
+        }
+
+        Cast cast = (Cast) o;
+
+        if (!exp.equals(cast.exp)) {
+          return false;
+        }
+        return targetTypeName.equals(cast.targetTypeName);
+      }
+
+      @Override
+      public int hashCode() {
+        int result = exp.hashCode();
+        result = 31 * result + targetTypeName.hashCode();
+        return result;
+      }
     }
 
     class AllDifferent implements Function {
@@ -1191,6 +1216,25 @@ public interface QueryExpression {
       public void accept(QueryExpressionVisitor v) {
         v.visit(this);
       }
+
+      @Override
+      public boolean equals(Object o) {
+        if (this == o) {
+          return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+          return false;
+        }
+
+        AllDifferent that = (AllDifferent) o;
+
+        return exps.equals(that.exps);
+      }
+
+      @Override
+      public int hashCode() {
+        return exps.hashCode();
+      }
     }
   }
 
@@ -1240,6 +1284,34 @@ public interface QueryExpression {
     public void accept(QueryExpressionVisitor v) {
       v.visit(this);
     }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      CallStatement that = (CallStatement) o;
+
+      if (!Objects.equals(packageName, that.packageName)) {
+        return false;
+      }
+      if (!routineName.equals(that.routineName)) {
+        return false;
+      }
+      return exps.equals(that.exps);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = Objects.hashCode(packageName);
+      result = 31 * result + routineName.hashCode();
+      result = 31 * result + exps.hashCode();
+      return result;
+    }
   }
 
   interface Aggregation extends QueryExpression {
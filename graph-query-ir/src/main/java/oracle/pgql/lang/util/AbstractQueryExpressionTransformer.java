@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang.util;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import oracle.pgql.lang.ir.ExpAsVar;
+import oracle.pgql.lang.ir.GraphPattern;
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.GroupBy;
+import oracle.pgql.lang.ir.OrderBy;
+import oracle.pgql.lang.ir.OrderByElem;
+import oracle.pgql.lang.ir.Projection;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation.AggrAvg;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation.AggrCount;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation.AggrMax;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation.AggrMin;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation.AggrSum;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Add;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Div;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Mod;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Mul;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Sub;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.UMin;
+import oracle.pgql.lang.ir.QueryExpression.BinaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.CallStatement;
+import oracle.pgql.lang.ir.QueryExpression.Function.AllDifferent;
+import oracle.pgql.lang.ir.QueryExpression.Function.Cast;
+import oracle.pgql.lang.ir.QueryExpression.Function.EdgeLabel;
+import oracle.pgql.lang.ir.QueryExpression.Function.HasLabel;
+import oracle.pgql.lang.ir.QueryExpression.Function.HasProp;
+import oracle.pgql.lang.ir.QueryExpression.Function.Id;
+import oracle.pgql.lang.ir.QueryExpression.Function.InDegree;
+import oracle.pgql.lang.ir.QueryExpression.Function.OutDegree;
+import oracle.pgql.lang.ir.QueryExpression.Function.Regex;
+import oracle.pgql.lang.ir.QueryExpression.Function.VertexLabels;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.And;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.Not;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.Or;
+import oracle.pgql.lang.ir.QueryExpression.PropertyAccess;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Equal;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Greater;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.GreaterEqual;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Less;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.LessEqual;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.NotEqual;
+import oracle.pgql.lang.ir.QueryExpression.UnaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.VarRef;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.ir.SpatialFunction.StPointFromText;
+import oracle.pgql.lang.ir.SpatialFunction.StX;
+import oracle.pgql.lang.ir.SpatialFunction.StY;
+
+/**
+ * Rewrites query expressions bottom-up: the children of an expression are transformed first, after which
+ * {@link #transformNode(QueryExpression)} is called on the (possibly rebuilt) expression itself. Expressions of which no
+ * child changed are reused rather than copied.
+ *
+ * When a whole {@link GraphQuery} is transformed, SELECT and GROUP BY expressions that are rewritten result in new
+ * {@link ExpAsVar}s, and references to the old ones (e.g. from ORDER BY) are updated accordingly. The graph pattern's
+ * vertices and connections, including path pattern definitions, are shared with the original query.
+ *
+ * Instances are not thread-safe.
+ */
+public abstract class AbstractQueryExpressionTransformer {
+
+  private final Map<QueryVariable, QueryVariable> replacedVariables = new IdentityHashMap<>();
+
+  /**
+   * @param exp
+   *          the expression to replace, of which the children have already been transformed
+   * @return the replacement, or the given expression itself if it does not need to change
+   */
+  protected abstract QueryExpression transformNode(QueryExpression exp);
+
+  /**
+   * @return the variable that references to the given variable should point to; by default the variable itself
+   */
+  protected QueryVariable transformVariable(QueryVariable variable) {
+    return variable;
+  }
+
+  public QueryExpression transform(QueryExpression exp) {
+    return exp == null ? null : transformNode(transformChildren(exp));
+  }
+
+  public GraphQuery transform(GraphQuery query) {
+    replacedVariables.clear();
+    try {
+      // GROUP BY first since SELECT and ORDER BY may refer to it, and SELECT before ORDER BY for the same reason
+      GroupBy groupBy = new GroupBy(transformExpAsVars(query.getGroupBy().getElements()));
+      Projection projection = new Projection(transformExpAsVars(query.getProjection().getElements()));
+
+      GraphPattern graphPattern = query.getGraphPattern();
+      Set<QueryExpression> constraints = new LinkedHashSet<>();
+      for (QueryExpression constraint : getConstraintsInTransformationOrder(graphPattern)) {
+        constraints.add(transform(constraint));
+      }
+      graphPattern = new GraphPattern(graphPattern.getVertices(), graphPattern.getConnections(), constraints);
+
+      List<OrderByElem> orderByElems = new ArrayList<>();
+      for (OrderByElem elem : query.getOrderBy().getElements()) {
+        QueryExpression exp = transform(elem.getExp());
+        orderByElems.add(exp == elem.getExp() ? elem : new OrderByElem(exp, elem.isAscending()));
+      }
+
+      return new GraphQuery(projection, query.getInputGraphName(), graphPattern, groupBy, new OrderBy(orderByElems),
+          transform(query.getLimit()), transform(query.getOffset()));
+    } finally {
+      replacedVariables.clear();
+    }
+  }
+
+  /**
+   * @return the WHERE constraints in the order in which they are transformed and in which they appear in the result;
+   *         by default the iteration order of the graph pattern
+   */
+  protected Iterable<QueryExpression> getConstraintsInTransformationOrder(GraphPattern graphPattern) {
+    return graphPattern.getConstraints();
+  }
+
+  private List<ExpAsVar> transformExpAsVars(List<ExpAsVar> expAsVars) {
+    List<ExpAsVar> result = new ArrayList<>();
+    for (ExpAsVar expAsVar : expAsVars) {
+      QueryExpression exp = transform(expAsVar.getExp());
+      if (exp == expAsVar.getExp()) {
+        result.add(expAsVar);
+      } else {
+        ExpAsVar newExpAsVar = new ExpAsVar(exp, expAsVar.getName(), expAsVar.isAnonymous());
+        replacedVariables.put(expAsVar, newExpAsVar);
+        result.add(newExpAsVar);
+      }
+    }
+    return result;
+  }
+
+  private QueryExpression transformChildren(QueryExpression exp) {
+    switch (exp.getExpType()) {
+      case SUB:
+        return transformBinary(exp, Sub::new);
+      case ADD:
+        return transformBinary(exp, Add::new);
+      case MUL:
+        return transformBinary(exp, Mul::new);
+      case DIV:
+        return transformBinary(exp, Div::new);
+      case MOD:
+        return transformBinary(exp, Mod::new);
+      case UMIN:
+        return transformUnary(exp, UMin::new);
+      case AND:
+        return transformBinary(exp, And::new);
+      case OR:
+        return transformBinary(exp, Or::new);
+      case NOT:
+        return transformUnary(exp, Not::new);
+      case EQUAL:
+        return transformBinary(exp, Equal::new);
+      case NOT_EQUAL:
+        return transformBinary(exp, NotEqual::new);
+      case GREATER:
+        return transformBinary(exp, Greater::new);
+      case GREATER_EQUAL:
+        return transformBinary(exp, GreaterEqual::new);
+      case LESS:
+        return transformBinary(exp, Less::new);
+      case LESS_EQUAL:
+        return transformBinary(exp, LessEqual::new);
+      case AGGR_COUNT:
+        return transformUnary(exp, AggrCount::new);
+      case AGGR_MIN:
+        return transformUnary(exp, AggrMin::new);
+      case AGGR_MAX:
+        return transformUnary(exp, AggrMax::new);
+      case AGGR_SUM:
+        return transformUnary(exp, AggrSum::new);
+      case AGGR_AVG:
+        return transformUnary(exp, AggrAvg::new);
+      case REGEX:
+        return transformBinary(exp, Regex::new);
+      case ID:
+        return transformUnary(exp, Id::new);
+      case HAS_PROP:
+        return transformBinary(exp, HasProp::new);
+      case HAS_LABEL:
+        return transformBinary(exp, HasLabel::new);
+      case VERTEX_LABELS:
+        return transformUnary(exp, VertexLabels::new);
+      case INDEGREE:
+        return transformUnary(exp, InDegree::new);
+      case OUTDEGREE:
+        return transformUnary(exp, OutDegree::new);
+      case EDGE_LABEL:
+        return transformUnary(exp, EdgeLabel::new);
+      case ST_X:
+        return transformUnary(exp, StX::new);
+      case ST_Y:
+        return transformUnary(exp, StY::new);
+      case ST_POINT_FROM_TEXT:
+        return transformUnary(exp, StPointFromText::new);
+      case CAST: {
+        Cast cast = (Cast) exp;
+        QueryExpression child = transform(cast.getExp());
+        return child == cast.getExp() ? exp : new Cast(child, cast.getTargetTypeName());
+      }
+      case ALL_DIFFERENT: {
+        AllDifferent allDifferent = (AllDifferent) exp;
+        List<QueryExpression> children = transformList(allDifferent.getExps());
+        return children == allDifferent.getExps() ? exp : new AllDifferent(children);
+      }
+      case CALL_STATEMENT: {
+        CallStatement callStatement = (CallStatement) exp;
+        List<QueryExpression> children = transformList(callStatement.getExps());
+        return children == callStatement.getExps() ? exp
+            : new CallStatement(callStatement.getPackageName(), callStatement.getRoutineName(), children);
+      }
+      case VARREF: {
+        QueryVariable variable = ((VarRef) exp).getVariable();
+        QueryVariable newVariable = getReplacement(variable);
+        return newVariable == variable ? exp : new VarRef(newVariable);
+      }
+      case PROP_ACCESS: {
+        PropertyAccess propAccess = (PropertyAccess) exp;
+        QueryVariable newVariable = getReplacement(propAccess.getVariable());
+        return newVariable == propAccess.getVariable() ? exp
+            : new PropertyAccess(newVariable, propAccess.getPropertyName());
+      }
+      default:
+        // constants, bind variables and *
+        return exp;
+    }
+  }
+
+  private QueryVariable getReplacement(QueryVariable variable) {
+    QueryVariable replacement = replacedVariables.get(variable);
+    return replacement == null ? transformVariable(variable) : replacement;
+  }
+
+  private QueryExpression transformUnary(QueryExpression exp, Function<QueryExpression, QueryExpression> constructor) {
+    QueryExpression child = ((UnaryExpression) exp).getExp();
+    QueryExpression newChild = transform(child);
+    return newChild == child ? exp : constructor.apply(newChild);
+  }
+
+  private QueryExpression transformBinary(QueryExpression exp,
+      BiFunction<QueryExpression, QueryExpression, QueryExpression> constructor) {
+    BinaryExpression binaryExp = (BinaryExpression) exp;
+    QueryExpression newExp1 = transform(binaryExp.getExp1());
+    QueryExpression newExp2 = transform(binaryExp.getExp2());
+    return newExp1 == binaryExp.getExp1() && newExp2 == binaryExp.getExp2() ? exp
+        : constructor.apply(newExp1, newExp2);
+  }
+
+  /**
+   * @return the given list if none of the expressions changed, or a new list otherwise
+   */
+  private List<QueryExpression> transformList(List<QueryExpression> exps) {
+    List<QueryExpression> result = new ArrayList<>(exps.size());
+    boolean changed = false;
+    for (QueryExpression exp : exps) {
+      QueryExpression newExp = transform(exp);
+      changed |= newExp != exp;
+      result.add(newExp);
+    }
+    return changed ? result : exps;
+  }
+}
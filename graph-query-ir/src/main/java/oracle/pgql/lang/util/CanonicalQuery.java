@@ -0,0 +1,442 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+
+import oracle.pgql.lang.ir.ExpAsVar;
+import oracle.pgql.lang.ir.GraphPattern;
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.OrderByElem;
+import oracle.pgql.lang.ir.QueryEdge;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.BinaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.BindVariable;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.And;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.Or;
+import oracle.pgql.lang.ir.QueryExpression.PropertyAccess;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Equal;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.NotEqual;
+import oracle.pgql.lang.ir.QueryExpression.VarRef;
+import oracle.pgql.lang.ir.QueryPath;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.ir.QueryVertex;
+import oracle.pgql.lang.ir.VertexPairConnection;
+
+/**
+ * A query in canonical form, together with a 64-bit structural hash that is computed once, such that equivalent queries
+ * can be detected in constant time (e.g. for plan caching or deduplication).
+ *
+ * Canonicalization renames anonymous vertices, edges and paths based on their position in the graph pattern rather
+ * than on the order in which they were written, orders the operands of AND, OR, = and <> (flattening nested AND and
+ * OR), and orders vertices, connections and WHERE constraints. Anonymous variables that cannot be told apart by their
+ * neighborhood and constraints (e.g. in symmetric patterns) keep their relative order, so such queries may still have
+ * different canonical forms. Path pattern definitions are left as they are.
+ *
+ * Bind variables are printed as '?' regardless of their index, so the canonical string ends with the indices of the
+ * bind variables in the order in which they occur in the canonical query. Two queries that only differ in which bind
+ * variable goes where therefore have different canonical forms.
+ */
+public class CanonicalQuery {
+
+  private final GraphQuery query;
+
+  private final String canonicalString;
+
+  private final long structuralHash;
+
+  private CanonicalQuery(GraphQuery query) {
+    this.query = query;
+    List<Integer> parameterIndices = getParameterIndices(query);
+    this.canonicalString = parameterIndices.isEmpty() ? query.toString() : query + "\nPARAMETERS " + parameterIndices;
+    this.structuralHash = hash64(canonicalString);
+  }
+
+  public static CanonicalQuery create(GraphQuery query) {
+    GraphPattern graphPattern = query.getGraphPattern();
+    Map<QueryVariable, QueryVariable> replacements = renameAnonymousVariables(graphPattern);
+
+    AbstractQueryExpressionTransformer canonicalizer = new AbstractQueryExpressionTransformer() {
+
+      @Override
+      protected QueryExpression transformNode(QueryExpression exp) {
+        switch (exp.getExpType()) {
+          case AND:
+            return sortOperands(exp, And::new);
+          case OR:
+            return sortOperands(exp, Or::new);
+          case EQUAL:
+            return orderOperands((BinaryExpression) exp, Equal::new);
+          case NOT_EQUAL:
+            return orderOperands((BinaryExpression) exp, NotEqual::new);
+          default:
+            return exp;
+        }
+      }
+
+      @Override
+      protected QueryVariable transformVariable(QueryVariable variable) {
+        QueryVariable replacement = replacements.get(variable);
+        return replacement == null ? variable : replacement;
+      }
+    };
+    GraphQuery transformedQuery = canonicalizer.transform(query);
+
+    List<QueryVertex> vertices = new ArrayList<>();
+    for (QueryVertex vertex : graphPattern.getVertices()) {
+      vertices.add((QueryVertex) replacements.getOrDefault(vertex, vertex));
+    }
+    List<VertexPairConnection> connections = new ArrayList<>();
+    for (VertexPairConnection connection : graphPattern.getConnections()) {
+      connections.add((VertexPairConnection) replacements.getOrDefault(connection, connection));
+    }
+    List<QueryExpression> constraints = new ArrayList<>(transformedQuery.getGraphPattern().getConstraints());
+    Collections.sort(constraints, Comparator.comparing(CanonicalQuery::render));
+    graphPattern = new GraphPattern(new LinkedHashSet<>(sortByName(vertices)),
+        new LinkedHashSet<>(sortByName(connections)), new LinkedHashSet<>(constraints));
+
+    return new CanonicalQuery(new GraphQuery(transformedQuery.getProjection(), query.getInputGraphName(), graphPattern,
+        transformedQuery.getGroupBy(), transformedQuery.getOrderBy(), transformedQuery.getLimit(),
+        transformedQuery.getOffset()));
+  }
+
+  public GraphQuery getQuery() {
+    return query;
+  }
+
+  /**
+   * @return a hash of the canonical form that is stable across runs and JVMs
+   */
+  public long getStructuralHash() {
+    return structuralHash;
+  }
+
+  @Override
+  public String toString() {
+    return canonicalString;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    CanonicalQuery that = (CanonicalQuery) o;
+
+    // the hash decides in the common case; the string only guards against collisions
+    return structuralHash == that.structuralHash && canonicalString.equals(that.canonicalString);
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(structuralHash);
+  }
+
+  private static QueryExpression sortOperands(QueryExpression exp,
+      BiFunction<QueryExpression, QueryExpression, QueryExpression> constructor) {
+    List<QueryExpression> operands = new ArrayList<>();
+    flatten(exp, exp.getExpType(), operands);
+    Collections.sort(operands, Comparator.comparing(CanonicalQuery::render));
+    QueryExpression result = constructor.apply(operands.get(0), operands.get(1));
+    for (int i = 2; i < operands.size(); i++) {
+      result = constructor.apply(result, operands.get(i));
+    }
+    return result;
+  }
+
+  private static void flatten(QueryExpression exp, QueryExpression.ExpressionType type, List<QueryExpression> result) {
+    if (exp.getExpType() == type) {
+      BinaryExpression binaryExp = (BinaryExpression) exp;
+      flatten(binaryExp.getExp1(), type, result);
+      flatten(binaryExp.getExp2(), type, result);
+    } else {
+      result.add(exp);
+    }
+  }
+
+  private static QueryExpression orderOperands(BinaryExpression exp,
+      BiFunction<QueryExpression, QueryExpression, QueryExpression> constructor) {
+    if (render(exp.getExp1()).compareTo(render(exp.getExp2())) <= 0) {
+      return exp;
+    }
+    return constructor.apply(exp.getExp2(), exp.getExp1());
+  }
+
+  /**
+   * @return the expression as a string that includes the indices of its bind variables, which are printed as '?'
+   */
+  private static String render(QueryExpression exp) {
+    List<Integer> parameterIndices = new ArrayList<>();
+    exp.accept(new ParameterIndexCollector(parameterIndices));
+    return parameterIndices.isEmpty() ? exp.toString() : exp + " " + parameterIndices;
+  }
+
+  /**
+   * @return the indices of the bind variables of the query, in the order of the projection, the constraints of the
+   *         graph pattern and its paths, GROUP BY, ORDER BY, LIMIT and OFFSET
+   */
+  private static List<Integer> getParameterIndices(GraphQuery query) {
+    List<Integer> result = new ArrayList<>();
+    ParameterIndexCollector collector = new ParameterIndexCollector(result);
+    for (ExpAsVar expAsVar : query.getProjection().getElements()) {
+      expAsVar.getExp().accept(collector);
+    }
+    for (QueryExpression constraint : query.getGraphPattern().getConstraints()) {
+      constraint.accept(collector);
+    }
+    for (VertexPairConnection connection : query.getGraphPattern().getConnections()) {
+      if (connection instanceof QueryPath) {
+        for (QueryExpression constraint : ((QueryPath) connection).getConstraints()) {
+          constraint.accept(collector);
+        }
+      }
+    }
+    for (ExpAsVar expAsVar : query.getGroupBy().getElements()) {
+      expAsVar.getExp().accept(collector);
+    }
+    for (OrderByElem orderByElem : query.getOrderBy().getElements()) {
+      orderByElem.getExp().accept(collector);
+    }
+    if (query.getLimit() != null) {
+      query.getLimit().accept(collector);
+    }
+    if (query.getOffset() != null) {
+      query.getOffset().accept(collector);
+    }
+    return result;
+  }
+
+  private static final class ParameterIndexCollector extends AbstractQueryExpressionVisitor {
+
+    private final List<Integer> parameterIndices;
+
+    ParameterIndexCollector(List<Integer> parameterIndices) {
+      this.parameterIndices = parameterIndices;
+    }
+
+    @Override
+    public void visit(BindVariable bindVariable) {
+      parameterIndices.add(bindVariable.getParameterIndex());
+    }
+  }
+
+  private static <T extends QueryVariable> List<T> sortByName(List<T> variables) {
+    Collections.sort(variables, Comparator.comparing(QueryVariable::getName));
+    return variables;
+  }
+
+  /**
+   * Gives the anonymous vertices, edges and paths of the graph pattern names that only depend on the structure of the
+   * pattern, and replaces connections of which the name or one of the endpoints changed.
+   *
+   * @return the replacement of each variable that changed
+   */
+  private static Map<QueryVariable, QueryVariable> renameAnonymousVariables(GraphPattern graphPattern) {
+    Map<QueryVariable, Integer> labels = computeStructuralLabels(graphPattern);
+    Comparator<QueryVariable> order = Comparator.comparing((QueryVariable v) -> labels.get(v))
+        .thenComparing(QueryVariable::getName);
+
+    Map<QueryVariable, QueryVariable> replacements = new IdentityHashMap<>();
+    List<QueryVertex> anonymousVertices = new ArrayList<>();
+    for (QueryVertex vertex : graphPattern.getVertices()) {
+      if (vertex.isAnonymous()) {
+        anonymousVertices.add(vertex);
+      }
+    }
+    Collections.sort(anonymousVertices, order);
+    for (int i = 0; i < anonymousVertices.size(); i++) {
+      replacements.put(anonymousVertices.get(i), new QueryVertex("anonymous_vertex_" + i, true));
+    }
+
+    List<VertexPairConnection> connections = new ArrayList<>(graphPattern.getConnections());
+    Collections.sort(connections, order);
+    int anonymousEdgeCount = 0;
+    int anonymousPathCount = 0;
+    for (VertexPairConnection connection : connections) {
+      QueryVertex src = (QueryVertex) replacements.getOrDefault(connection.getSrc(), connection.getSrc());
+      QueryVertex dst = (QueryVertex) replacements.getOrDefault(connection.getDst(), connection.getDst());
+      String name = connection.getName();
+      if (connection.isAnonymous()) {
+        name = connection instanceof QueryEdge ? "anonymous_edge_" + anonymousEdgeCount++
+            : "anonymous_path_" + anonymousPathCount++;
+      }
+
+      if (connection instanceof QueryEdge) {
+        QueryEdge edge = (QueryEdge) connection;
+        if (!edge.isDirected() && src.getName().compareTo(dst.getName()) > 0) {
+          QueryVertex tmp = src;
+          src = dst;
+          dst = tmp;
+        }
+        if (src != edge.getSrc() || dst != edge.getDst() || !name.equals(edge.getName())) {
+          replacements.put(edge, new QueryEdge(src, dst, name, edge.isAnonymous(), edge.isDirected()));
+        }
+      } else if (src != connection.getSrc() || dst != connection.getDst() || !name.equals(connection.getName())) {
+        QueryPath path = (QueryPath) connection;
+        replacements.put(path, new QueryPath(src, dst, path.getVertices(), path.getConnections(), path.getConstraints(),
+            name, path.getPathExpressionName(), path.isAnonymous(), path.getMinHops(), path.getMaxHops()));
+      }
+    }
+    return replacements;
+  }
+
+  /**
+   * Iteratively labels vertices and connections with their own kind and constraints combined with the labels of their
+   * neighbors, until the number of distinct labels no longer grows. Named variables are labeled by their name.
+   */
+  private static Map<QueryVariable, Integer> computeStructuralLabels(GraphPattern graphPattern) {
+    List<QueryVariable> variables = new ArrayList<>(graphPattern.getVertices());
+    variables.addAll(graphPattern.getConnections());
+
+    Map<QueryVertex, List<VertexPairConnection>> incidentConnections = new IdentityHashMap<>();
+    for (QueryVertex vertex : graphPattern.getVertices()) {
+      incidentConnections.put(vertex, new ArrayList<>());
+    }
+    for (VertexPairConnection connection : graphPattern.getConnections()) {
+      incidentConnections.computeIfAbsent(connection.getSrc(), v -> new ArrayList<>()).add(connection);
+      incidentConnections.computeIfAbsent(connection.getDst(), v -> new ArrayList<>()).add(connection);
+    }
+
+    Map<QueryVariable, String> signatures = new IdentityHashMap<>();
+    for (QueryVariable variable : variables) {
+      signatures.put(variable, getInitialSignature(variable, graphPattern.getConstraints()));
+    }
+    Map<QueryVariable, Integer> labels = rank(signatures);
+    int numLabels = new TreeSet<>(signatures.values()).size();
+
+    for (int round = 0; round < variables.size(); round++) {
+      for (QueryVariable variable : variables) {
+        StringBuilder signature = new StringBuilder().append(labels.get(variable));
+        if (variable instanceof QueryVertex) {
+          List<String> neighbors = new ArrayList<>();
+          for (VertexPairConnection connection : incidentConnections.get(variable)) {
+            boolean directed = !(connection instanceof QueryEdge) || ((QueryEdge) connection).isDirected();
+            String direction = !directed ? "-" : connection.getSrc() == variable ? ">" : "<";
+            QueryVertex neighbor = connection.getSrc() == variable ? connection.getDst() : connection.getSrc();
+            neighbors.add(direction + labels.get(connection) + direction + labels.get(neighbor));
+          }
+          Collections.sort(neighbors);
+          signature.append(neighbors);
+        } else {
+          VertexPairConnection connection = (VertexPairConnection) variable;
+          int srcLabel = labels.get(connection.getSrc());
+          int dstLabel = labels.get(connection.getDst());
+          boolean directed = !(connection instanceof QueryEdge) || ((QueryEdge) connection).isDirected();
+          if (!directed && srcLabel > dstLabel) {
+            signature.append(":" + dstLabel + ":" + srcLabel);
+          } else {
+            signature.append(":" + srcLabel + ":" + dstLabel);
+          }
+        }
+        signatures.put(variable, signature.toString());
+      }
+
+      int newNumLabels = new TreeSet<>(signatures.values()).size();
+      if (newNumLabels == numLabels) {
+        break;
+      }
+      labels = rank(signatures);
+      numLabels = newNumLabels;
+    }
+    return labels;
+  }
+
+  private static String getInitialSignature(QueryVariable variable, Set<QueryExpression> constraints) {
+    String kind = variable.getVariableType().toString();
+    if (!variable.isAnonymous()) {
+      return kind + "=" + variable.getName();
+    }
+
+    String signature = kind;
+    if (variable instanceof QueryEdge) {
+      signature += ((QueryEdge) variable).isDirected();
+    } else if (variable instanceof QueryPath) {
+      QueryPath path = (QueryPath) variable;
+      signature += path.getPathExpressionName() + "{" + path.getMinHops() + "," + path.getMaxHops() + "}";
+    }
+
+    // the constraints on the variable, in which it is printed as '#' and other anonymous variables as '_'
+    QueryVariable self = new QueryVertex("#", false);
+    QueryVariable other = new QueryVertex("_", false);
+    AbstractQueryExpressionTransformer printer = new AbstractQueryExpressionTransformer() {
+
+      @Override
+      protected QueryExpression transformNode(QueryExpression exp) {
+        return exp;
+      }
+
+      @Override
+      protected QueryVariable transformVariable(QueryVariable v) {
+        return v == variable ? self : v.isAnonymous() ? other : v;
+      }
+    };
+    List<String> constraintShapes = new ArrayList<>();
+    for (QueryExpression constraint : constraints) {
+      if (refersTo(constraint, variable)) {
+        constraintShapes.add(printer.transform(constraint).toString());
+      }
+    }
+    Collections.sort(constraintShapes);
+    return signature + constraintShapes;
+  }
+
+  private static boolean refersTo(QueryExpression exp, QueryVariable variable) {
+    boolean[] result = new boolean[1];
+    exp.accept(new AbstractQueryExpressionVisitor() {
+
+      @Override
+      public void visit(VarRef varRef) {
+        result[0] |= varRef.getVariable() == variable;
+      }
+
+      @Override
+      public void visit(PropertyAccess propAccess) {
+        result[0] |= propAccess.getVariable() == variable;
+      }
+    });
+    return result[0];
+  }
+
+  /**
+   * @return for each variable, the position of its signature among the distinct signatures in sorted order
+   */
+  private static Map<QueryVariable, Integer> rank(Map<QueryVariable, String> signatures) {
+    List<String> distinctSignatures = new ArrayList<>(new TreeSet<>(signatures.values()));
+    Map<QueryVariable, Integer> result = new IdentityHashMap<>();
+    for (Map.Entry<QueryVariable, String> entry : signatures.entrySet()) {
+      result.put(entry.getKey(), Collections.binarySearch(distinctSignatures, entry.getValue()));
+    }
+    return result;
+  }
+
+  /**
+   * 64-bit FNV-1a followed by the MurmurHash3 finalizer for better avalanche behavior
+   */
+  private static long hash64(String s) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < s.length(); i++) {
+      hash ^= s.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb93fe53ae2bbL;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
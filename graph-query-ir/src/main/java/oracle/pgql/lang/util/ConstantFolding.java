@@ -0,0 +1,448 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang.util;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import oracle.pgql.lang.ir.GraphPattern;
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.BinaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.ConstNull;
+import oracle.pgql.lang.ir.QueryExpression.Constant;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstBoolean;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstDate;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstDecimal;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstInteger;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstString;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstTime;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstTimeWithTimezone;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstTimestamp;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstTimestampWithTimezone;
+import oracle.pgql.lang.ir.QueryExpression.ExpressionType;
+import oracle.pgql.lang.ir.QueryExpression.Function.Cast;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Equal;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Greater;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.GreaterEqual;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Less;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.LessEqual;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.NotEqual;
+import oracle.pgql.lang.ir.QueryExpression.UnaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.VarRef;
+import oracle.pgql.lang.ir.QueryVariable.VariableType;
+
+/**
+ * Evaluates the parts of expressions that do not depend on the graph, so that an engine does not evaluate them for
+ * every match. Arithmetic, comparisons, AND, OR, NOT and CAST are folded when their operands are literals; AND, OR and
+ * NULL follow three-valued logic, such that e.g. "NULL AND false" becomes false but "NULL AND x" is kept. In addition:
+ *
+ * - "x AND true", "x OR false", "x AND x" and "x OR x" become x, and "NOT NOT x" becomes x
+ * - NOT of a comparison becomes the inverse comparison, e.g. "NOT (x < y)" becomes "x >= y"
+ * - comparisons of a vertex or edge with itself (e.g. "n = n") become true or false, since a vertex or edge of the
+ * graph pattern is never null
+ *
+ * Only operations of which the result is the same in any PGQL engine are folded. Division by zero, integer overflow,
+ * comparisons of values of different types and casts that fail are left for the engine to evaluate (or report).
+ *
+ * When a whole {@link GraphQuery} is folded, WHERE constraints that become true are removed, and if a constraint becomes
+ * false or null, the constraints are replaced by a single false constraint (see {@link #isAlwaysFalse(GraphPattern)}).
+ */
+public class ConstantFolding extends AbstractQueryExpressionTransformer {
+
+  private static final ConstBoolean TRUE = new ConstBoolean(true);
+
+  private static final ConstBoolean FALSE = new ConstBoolean(false);
+
+  private static final ConstNull NULL = new ConstNull();
+
+  public static QueryExpression fold(QueryExpression exp) {
+    return new ConstantFolding().transform(exp);
+  }
+
+  public static GraphQuery fold(GraphQuery query) {
+    return new ConstantFolding().transform(query);
+  }
+
+  /**
+   * @return whether the graph pattern has a constraint that is the literal false or NULL, such that it has no matches
+   */
+  public static boolean isAlwaysFalse(GraphPattern graphPattern) {
+    for (QueryExpression constraint : graphPattern.getConstraints()) {
+      if (constraint.getExpType() == ExpressionType.NULL || FALSE.equals(constraint)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public GraphQuery transform(GraphQuery query) {
+    GraphQuery result = super.transform(query);
+    GraphPattern graphPattern = result.getGraphPattern();
+    Set<QueryExpression> constraints;
+    if (isAlwaysFalse(graphPattern)) {
+      constraints = Collections.singleton(FALSE);
+    } else {
+      constraints = new LinkedHashSet<>(graphPattern.getConstraints());
+      constraints.remove(TRUE);
+    }
+    if (constraints.equals(graphPattern.getConstraints())) {
+      return result;
+    }
+    graphPattern = new GraphPattern(graphPattern.getVertices(), graphPattern.getConnections(), constraints);
+    return new GraphQuery(result.getProjection(), result.getInputGraphName(), graphPattern, result.getGroupBy(),
+        result.getOrderBy(), result.getLimit(), result.getOffset());
+  }
+
+  @Override
+  protected QueryExpression transformNode(QueryExpression exp) {
+    switch (exp.getExpType()) {
+      case SUB:
+      case ADD:
+      case MUL:
+      case DIV:
+      case MOD:
+        return foldArithmetic((BinaryExpression) exp);
+      case UMIN: {
+        QueryExpression child = ((UnaryExpression) exp).getExp();
+        if (child.getExpType() == ExpressionType.INTEGER) {
+          long value = getLong(child);
+          return value == Long.MIN_VALUE ? exp : new ConstInteger(-value);
+        } else if (child.getExpType() == ExpressionType.DECIMAL) {
+          return new ConstDecimal(-getDouble(child));
+        }
+        return child.getExpType() == ExpressionType.NULL ? NULL : exp;
+      }
+      case AND:
+        return foldAnd((BinaryExpression) exp);
+      case OR:
+        return foldOr((BinaryExpression) exp);
+      case NOT:
+        return foldNot((UnaryExpression) exp);
+      case EQUAL:
+      case NOT_EQUAL:
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+        return foldComparison((BinaryExpression) exp);
+      case CAST:
+        return foldCast((Cast) exp);
+      default:
+        return exp;
+    }
+  }
+
+  private static QueryExpression foldArithmetic(BinaryExpression exp) {
+    QueryExpression exp1 = exp.getExp1();
+    QueryExpression exp2 = exp.getExp2();
+    if (exp1.getExpType() == ExpressionType.NULL || exp2.getExpType() == ExpressionType.NULL) {
+      return NULL;
+    }
+    if (!isNumeric(exp1) || !isNumeric(exp2)) {
+      return exp;
+    }
+
+    try {
+      if (exp1.getExpType() == ExpressionType.INTEGER && exp2.getExpType() == ExpressionType.INTEGER) {
+        long long1 = getLong(exp1);
+        long long2 = getLong(exp2);
+        switch (exp.getExpType()) {
+          case SUB:
+            return new ConstInteger(Math.subtractExact(long1, long2));
+          case ADD:
+            return new ConstInteger(Math.addExact(long1, long2));
+          case MUL:
+            return new ConstInteger(Math.multiplyExact(long1, long2));
+          case DIV:
+            return long2 == 0 || (long1 == Long.MIN_VALUE && long2 == -1) ? exp : new ConstInteger(long1 / long2);
+          default:
+            return long2 == 0 ? exp : new ConstInteger(long1 % long2);
+        }
+      }
+    } catch (ArithmeticException e) {
+      // overflow
+      return exp;
+    }
+
+    double double1 = getDouble(exp1);
+    double double2 = getDouble(exp2);
+    double result;
+    switch (exp.getExpType()) {
+      case SUB:
+        result = double1 - double2;
+        break;
+      case ADD:
+        result = double1 + double2;
+        break;
+      case MUL:
+        result = double1 * double2;
+        break;
+      case DIV:
+        result = double2 == 0 ? Double.NaN : double1 / double2;
+        break;
+      default:
+        result = double2 == 0 ? Double.NaN : double1 % double2;
+    }
+    return Double.isFinite(result) ? new ConstDecimal(result) : exp;
+  }
+
+  private static QueryExpression foldAnd(BinaryExpression exp) {
+    QueryExpression exp1 = exp.getExp1();
+    QueryExpression exp2 = exp.getExp2();
+    if (FALSE.equals(exp1) || FALSE.equals(exp2)) {
+      return FALSE;
+    } else if (TRUE.equals(exp1)) {
+      return exp2;
+    } else if (TRUE.equals(exp2) || exp1.equals(exp2)) {
+      return exp1;
+    }
+    return exp;
+  }
+
+  private static QueryExpression foldOr(BinaryExpression exp) {
+    QueryExpression exp1 = exp.getExp1();
+    QueryExpression exp2 = exp.getExp2();
+    if (TRUE.equals(exp1) || TRUE.equals(exp2)) {
+      return TRUE;
+    } else if (FALSE.equals(exp1)) {
+      return exp2;
+    } else if (FALSE.equals(exp2) || exp1.equals(exp2)) {
+      return exp1;
+    }
+    return exp;
+  }
+
+  private static QueryExpression foldNot(UnaryExpression exp) {
+    QueryExpression child = exp.getExp();
+    switch (child.getExpType()) {
+      case BOOLEAN:
+        return TRUE.equals(child) ? FALSE : TRUE;
+      case NULL:
+        return NULL;
+      case NOT:
+        return ((UnaryExpression) child).getExp();
+      case EQUAL: {
+        BinaryExpression comparison = (BinaryExpression) child;
+        return new NotEqual(comparison.getExp1(), comparison.getExp2());
+      }
+      case NOT_EQUAL: {
+        BinaryExpression comparison = (BinaryExpression) child;
+        return new Equal(comparison.getExp1(), comparison.getExp2());
+      }
+      case GREATER: {
+        BinaryExpression comparison = (BinaryExpression) child;
+        return new LessEqual(comparison.getExp1(), comparison.getExp2());
+      }
+      case GREATER_EQUAL: {
+        BinaryExpression comparison = (BinaryExpression) child;
+        return new Less(comparison.getExp1(), comparison.getExp2());
+      }
+      case LESS: {
+        BinaryExpression comparison = (BinaryExpression) child;
+        return new GreaterEqual(comparison.getExp1(), comparison.getExp2());
+      }
+      case LESS_EQUAL: {
+        BinaryExpression comparison = (BinaryExpression) child;
+        return new Greater(comparison.getExp1(), comparison.getExp2());
+      }
+      default:
+        return exp;
+    }
+  }
+
+  private static QueryExpression foldComparison(BinaryExpression exp) {
+    QueryExpression exp1 = exp.getExp1();
+    QueryExpression exp2 = exp.getExp2();
+    Integer comparison;
+    if (exp1.getExpType() == ExpressionType.NULL || exp2.getExpType() == ExpressionType.NULL) {
+      return NULL;
+    } else if (isElement(exp1) && exp1.equals(exp2)) {
+      comparison = 0;
+    } else if (isLiteral(exp1) && isLiteral(exp2)) {
+      comparison = compare(((Constant<?>) exp1).getValue(), ((Constant<?>) exp2).getValue());
+      if (comparison == null) {
+        return exp;
+      }
+    } else {
+      return exp;
+    }
+
+    switch (exp.getExpType()) {
+      case EQUAL:
+        return toBoolean(comparison == 0);
+      case NOT_EQUAL:
+        return toBoolean(comparison != 0);
+      case GREATER:
+        return toBoolean(comparison > 0);
+      case GREATER_EQUAL:
+        return toBoolean(comparison >= 0);
+      case LESS:
+        return toBoolean(comparison < 0);
+      default:
+        return toBoolean(comparison <= 0);
+    }
+  }
+
+  /**
+   * @return the sign of the comparison, or null if the values are of different types
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static Integer compare(Object value1, Object value2) {
+    if (value1 instanceof Long && value2 instanceof Long) {
+      return Long.compare((Long) value1, (Long) value2);
+    } else if (value1 instanceof Number && value2 instanceof Number) {
+      return Double.compare(((Number) value1).doubleValue(), ((Number) value2).doubleValue());
+    } else if (value1.getClass() == value2.getClass() && value1 instanceof Comparable) {
+      return Integer.signum(((Comparable) value1).compareTo(value2));
+    }
+    return null;
+  }
+
+  private static QueryExpression foldCast(Cast cast) {
+    QueryExpression child = cast.getExp();
+    if (child.getExpType() == ExpressionType.NULL) {
+      return NULL;
+    } else if (!isLiteral(child)) {
+      return cast;
+    }
+    Object value = ((Constant<?>) child).getValue();
+    try {
+      switch (cast.getTargetTypeName().toUpperCase()) {
+        case "STRING":
+          if (value instanceof String || value instanceof Long || value instanceof Boolean) {
+            return new ConstString(value.toString());
+          } else if (value instanceof LocalDate) {
+            return new ConstString(SqlDateTimeFormatter.SQL_DATE.format((LocalDate) value));
+          } else if (value instanceof LocalTime) {
+            return new ConstString(SqlDateTimeFormatter.SQL_TIME.format((LocalTime) value));
+          } else if (value instanceof LocalDateTime) {
+            return new ConstString(SqlDateTimeFormatter.SQL_TIMESTAMP.format((LocalDateTime) value));
+          } else if (value instanceof OffsetTime) {
+            return new ConstString(SqlDateTimeFormatter.SQL_TIME_WITH_TIMEZONE.format((OffsetTime) value));
+          } else if (value instanceof OffsetDateTime) {
+            return new ConstString(SqlDateTimeFormatter.SQL_TIMESTAMP_WITH_TIMEZONE.format((OffsetDateTime) value));
+          }
+          // the string representation of a decimal differs per engine
+          return cast;
+        case "INTEGER":
+        case "LONG":
+          if (value instanceof Long) {
+            return child;
+          } else if (value instanceof String) {
+            return new ConstInteger(Long.parseLong(((String) value).trim()));
+          }
+          return cast;
+        case "DOUBLE":
+        case "FLOAT":
+          if (value instanceof Number) {
+            return new ConstDecimal(((Number) value).doubleValue());
+          } else if (value instanceof String) {
+            double result = Double.parseDouble(((String) value).trim());
+            return Double.isFinite(result) ? new ConstDecimal(result) : cast;
+          }
+          return cast;
+        case "BOOLEAN":
+          if (value instanceof Boolean) {
+            return child;
+          } else if (value instanceof String) {
+            String string = ((String) value).trim();
+            return string.equalsIgnoreCase("true") ? TRUE : string.equalsIgnoreCase("false") ? FALSE : cast;
+          }
+          return cast;
+        case "DATE":
+          if (value instanceof LocalDate) {
+            return child;
+          } else if (value instanceof LocalDateTime) {
+            return new ConstDate(((LocalDateTime) value).toLocalDate());
+          } else if (value instanceof String) {
+            return new ConstDate(LocalDate.parse((String) value, SqlDateTimeFormatter.SQL_DATE));
+          }
+          return cast;
+        case "TIME":
+          if (value instanceof LocalTime) {
+            return child;
+          } else if (value instanceof LocalDateTime) {
+            return new ConstTime(((LocalDateTime) value).toLocalTime());
+          } else if (value instanceof String) {
+            return new ConstTime(LocalTime.parse((String) value, SqlDateTimeFormatter.SQL_TIME));
+          }
+          return cast;
+        case "TIMESTAMP":
+          if (value instanceof LocalDateTime) {
+            return child;
+          } else if (value instanceof LocalDate) {
+            return new ConstTimestamp(((LocalDate) value).atStartOfDay());
+          } else if (value instanceof String) {
+            return new ConstTimestamp(LocalDateTime.parse((String) value, SqlDateTimeFormatter.SQL_TIMESTAMP));
+          }
+          return cast;
+        case "TIME WITH TIME ZONE":
+          if (value instanceof OffsetTime) {
+            return child;
+          } else if (value instanceof OffsetDateTime) {
+            return new ConstTimeWithTimezone(((OffsetDateTime) value).toOffsetTime());
+          } else if (value instanceof String) {
+            return new ConstTimeWithTimezone(
+                OffsetTime.parse((String) value, SqlDateTimeFormatter.SQL_TIME_WITH_TIMEZONE));
+          }
+          return cast;
+        case "TIMESTAMP WITH TIME ZONE":
+          if (value instanceof OffsetDateTime) {
+            return child;
+          } else if (value instanceof String) {
+            return new ConstTimestampWithTimezone(
+                OffsetDateTime.parse((String) value, SqlDateTimeFormatter.SQL_TIMESTAMP_WITH_TIMEZONE));
+          }
+          return cast;
+        default:
+          return cast;
+      }
+    } catch (NumberFormatException | DateTimeParseException e) {
+      return cast;
+    }
+  }
+
+  private static ConstBoolean toBoolean(boolean value) {
+    return value ? TRUE : FALSE;
+  }
+
+  /**
+   * @return whether the expression is a constant other than NULL
+   */
+  private static boolean isLiteral(QueryExpression exp) {
+    return exp instanceof Constant;
+  }
+
+  private static boolean isNumeric(QueryExpression exp) {
+    return exp.getExpType() == ExpressionType.INTEGER || exp.getExpType() == ExpressionType.DECIMAL;
+  }
+
+  /**
+   * @return whether the expression is a reference to a vertex or edge of the graph pattern, which is never null
+   */
+  private static boolean isElement(QueryExpression exp) {
+    if (exp.getExpType() != ExpressionType.VARREF) {
+      return false;
+    }
+    VariableType variableType = ((VarRef) exp).getVariable().getVariableType();
+    return variableType == VariableType.VERTEX || variableType == VariableType.EDGE;
+  }
+
+  private static long getLong(QueryExpression exp) {
+    return ((ConstInteger) exp).getValue();
+  }
+
+  private static double getDouble(QueryExpression exp) {
+    return ((Number) ((Constant<?>) exp).getValue()).doubleValue();
+  }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang.util;
+
+import static oracle.pgql.lang.ir.PgqlUtils.getVariables;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import oracle.pgql.lang.ir.GraphPattern;
+import oracle.pgql.lang.ir.QueryEdge;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.ExpressionType;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.And;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.ir.QueryVertex;
+
+/**
+ * The WHERE constraints of a graph pattern split into conjuncts and attached to the vertex or edge they filter.
+ *
+ * The translator collects both the WHERE clause and the inline constraints (e.g. "(n WITH age > 30)") into a single set
+ * of constraints, and a constraint like "n.age > 30 AND m.age > 30" refers to two vertices even though each of its
+ * conjuncts refers to only one. After splitting, a conjunct that refers to a single vertex can be evaluated while
+ * scanning the vertex, and a conjunct that refers to a single edge while following the edge, instead of after the
+ * whole pattern has been matched.
+ */
+public class ConstraintPushdown {
+
+  public enum ConstraintKind {
+
+    /**
+     * The constraint does not refer to any variable and can be evaluated once, before matching
+     */
+    CONSTANT,
+
+    SINGLE_VERTEX,
+
+    SINGLE_EDGE,
+
+    /**
+     * The constraint refers to multiple variables, or to a variable that is not a vertex or edge
+     */
+    MULTI_VARIABLE
+  }
+
+  private final GraphPattern graphPattern;
+
+  private final Set<QueryExpression> conjuncts;
+
+  private final Map<QueryVariable, List<QueryExpression>> vertexConstraints = new IdentityHashMap<>();
+
+  private final Map<QueryVariable, List<QueryExpression>> edgeConstraints = new IdentityHashMap<>();
+
+  private final List<QueryExpression> constantConstraints = new ArrayList<>();
+
+  private final List<QueryExpression> multiVariableConstraints = new ArrayList<>();
+
+  private ConstraintPushdown(GraphPattern graphPattern) {
+    this.conjuncts = new LinkedHashSet<>();
+    for (QueryExpression constraint : graphPattern.getConstraints()) {
+      conjuncts.addAll(splitConjunction(constraint));
+    }
+    this.graphPattern = new GraphPattern(graphPattern.getVertices(), graphPattern.getConnections(), conjuncts);
+
+    for (QueryExpression conjunct : conjuncts) {
+      Set<QueryVariable> variables = getVariables(conjunct);
+      switch (getKind(variables)) {
+        case CONSTANT:
+          constantConstraints.add(conjunct);
+          break;
+        case SINGLE_VERTEX:
+          vertexConstraints.computeIfAbsent(variables.iterator().next(), v -> new ArrayList<>()).add(conjunct);
+          break;
+        case SINGLE_EDGE:
+          edgeConstraints.computeIfAbsent(variables.iterator().next(), v -> new ArrayList<>()).add(conjunct);
+          break;
+        default:
+          multiVariableConstraints.add(conjunct);
+      }
+    }
+  }
+
+  public static ConstraintPushdown create(GraphPattern graphPattern) {
+    return new ConstraintPushdown(graphPattern);
+  }
+
+  /**
+   * @return the operands of the (nested) conjunction, from left to right, or the expression itself if it is not a
+   *         conjunction
+   */
+  public static List<QueryExpression> splitConjunction(QueryExpression exp) {
+    List<QueryExpression> result = new ArrayList<>();
+    splitConjunction(exp, result);
+    return result;
+  }
+
+  private static void splitConjunction(QueryExpression exp, List<QueryExpression> result) {
+    if (exp.getExpType() == ExpressionType.AND) {
+      And and = (And) exp;
+      splitConjunction(and.getExp1(), result);
+      splitConjunction(and.getExp2(), result);
+    } else {
+      result.add(exp);
+    }
+  }
+
+  public static ConstraintKind getKind(QueryExpression constraint) {
+    return getKind(getVariables(constraint));
+  }
+
+  private static ConstraintKind getKind(Set<QueryVariable> variables) {
+    if (variables.isEmpty()) {
+      return ConstraintKind.CONSTANT;
+    } else if (variables.size() > 1) {
+      return ConstraintKind.MULTI_VARIABLE;
+    }
+    switch (variables.iterator().next().getVariableType()) {
+      case VERTEX:
+        return ConstraintKind.SINGLE_VERTEX;
+      case EDGE:
+        return ConstraintKind.SINGLE_EDGE;
+      default:
+        return ConstraintKind.MULTI_VARIABLE;
+    }
+  }
+
+  /**
+   * @return the graph pattern with its constraints replaced by their conjuncts
+   */
+  public GraphPattern getGraphPattern() {
+    return graphPattern;
+  }
+
+  /**
+   * @return all conjuncts, in the order of the original constraints
+   */
+  public Set<QueryExpression> getConjuncts() {
+    return Collections.unmodifiableSet(conjuncts);
+  }
+
+  /**
+   * @return the conjuncts that only refer to the given vertex
+   */
+  public List<QueryExpression> getVertexConstraints(QueryVertex vertex) {
+    return Collections.unmodifiableList(vertexConstraints.getOrDefault(vertex, Collections.emptyList()));
+  }
+
+  /**
+   * @return the conjuncts that only refer to the given edge
+   */
+  public List<QueryExpression> getEdgeConstraints(QueryEdge edge) {
+    return Collections.unmodifiableList(edgeConstraints.getOrDefault(edge, Collections.emptyList()));
+  }
+
+  public List<QueryExpression> getConstantConstraints() {
+    return Collections.unmodifiableList(constantConstraints);
+  }
+
+  public List<QueryExpression> getMultiVariableConstraints() {
+    return Collections.unmodifiableList(multiVariableConstraints);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (QueryVertex vertex : graphPattern.getVertices()) {
+      appendConstraints(sb, vertex, getVertexConstraints(vertex));
+    }
+    for (QueryVariable connection : graphPattern.getConnections()) {
+      if (connection instanceof QueryEdge) {
+        appendConstraints(sb, connection, getEdgeConstraints((QueryEdge) connection));
+      }
+    }
+    if (!constantConstraints.isEmpty()) {
+      sb.append("constant: ").append(constantConstraints).append("\n");
+    }
+    if (!multiVariableConstraints.isEmpty()) {
+      sb.append("multi-variable: ").append(multiVariableConstraints).append("\n");
+    }
+    return sb.toString();
+  }
+
+  private static void appendConstraints(StringBuilder sb, QueryVariable variable, List<QueryExpression> constraints) {
+    if (!constraints.isEmpty()) {
+      sb.append(variable.getName()).append(": ").append(constraints).append("\n");
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import oracle.pgql.lang.ir.ExpAsVar;
+import oracle.pgql.lang.ir.GraphPattern;
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.OrderByElem;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.BindVariable;
+import oracle.pgql.lang.ir.QueryExpression.Constant;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstBoolean;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstDate;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstDecimal;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstInteger;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstString;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstTime;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstTimeWithTimezone;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstTimestamp;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstTimestampWithTimezone;
+
+/**
+ * The shape of a query: the query with all its literals lifted into bind variables. Queries that only differ in their
+ * literals (e.g. "WHERE n.id = 17" and "WHERE n.id = 18") have the same fingerprint, so that parse results and plans
+ * can be cached per fingerprint and instantiated with the parameter values of a particular query.
+ *
+ * Literals and bind variables are numbered in the order in which they appear in SELECT, WHERE, GROUP BY, ORDER BY,
+ * LIMIT and OFFSET. Since WHERE constraints are unordered, they are first sorted on their literal-free shape, such that
+ * the numbering does not depend on the order in which the constraints were written. NULL and literals inside path
+ * pattern definitions are considered part of the shape and are not lifted.
+ */
+public class QueryFingerprint {
+
+  private final GraphQuery parameterizedQuery;
+
+  private final String fingerprint;
+
+  private final List<QueryExpression> parameterValues;
+
+  private QueryFingerprint(GraphQuery parameterizedQuery, List<QueryExpression> parameterValues) {
+    this.parameterizedQuery = parameterizedQuery;
+    this.fingerprint = parameterizedQuery.toString();
+    this.parameterValues = parameterValues;
+  }
+
+  public static QueryFingerprint create(GraphQuery query) {
+    List<QueryExpression> sortedConstraints = new ArrayList<>(query.getGraphPattern().getConstraints());
+    Collections.sort(sortedConstraints, CONSTRAINT_ORDER);
+
+    // number the literals and bind variables in textual order
+    ParameterCollector collector = new ParameterCollector();
+    for (ExpAsVar expAsVar : query.getProjection().getElements()) {
+      expAsVar.getExp().accept(collector);
+    }
+    for (QueryExpression constraint : sortedConstraints) {
+      constraint.accept(collector);
+    }
+    for (ExpAsVar expAsVar : query.getGroupBy().getElements()) {
+      expAsVar.getExp().accept(collector);
+    }
+    for (OrderByElem orderByElem : query.getOrderBy().getElements()) {
+      orderByElem.getExp().accept(collector);
+    }
+    if (query.getLimit() != null) {
+      query.getLimit().accept(collector);
+    }
+    if (query.getOffset() != null) {
+      query.getOffset().accept(collector);
+    }
+
+    AbstractQueryExpressionTransformer parameterizer = new AbstractQueryExpressionTransformer() {
+
+      @Override
+      protected QueryExpression transformNode(QueryExpression exp) {
+        Integer parameterIndex = collector.parameterIndices.get(exp);
+        return parameterIndex == null ? exp : new BindVariable(parameterIndex);
+      }
+
+      @Override
+      protected Iterable<QueryExpression> getConstraintsInTransformationOrder(GraphPattern graphPattern) {
+        return sortedConstraints;
+      }
+    };
+    return new QueryFingerprint(parameterizer.transform(query), Collections.unmodifiableList(collector.parameters));
+  }
+
+  /**
+   * @return the query in which each literal and bind variable is replaced by a bind variable with a new index
+   */
+  public GraphQuery getParameterizedQuery() {
+    return parameterizedQuery;
+  }
+
+  /**
+   * @return a string that is equal for queries that only differ in their literals and bind variable numbering
+   */
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * @return for each bind variable of the parameterized query, either the literal that it replaced or, if it replaced a
+   *         bind variable of the original query, that bind variable
+   */
+  public List<QueryExpression> getParameterValues() {
+    return parameterValues;
+  }
+
+  @Override
+  public String toString() {
+    return fingerprint + "\n" + parameterValues;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    QueryFingerprint that = (QueryFingerprint) o;
+
+    if (!fingerprint.equals(that.fingerprint)) {
+      return false;
+    }
+    return parameterValues.equals(that.parameterValues);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = fingerprint.hashCode();
+    result = 31 * result + parameterValues.hashCode();
+    return result;
+  }
+
+  private static final Comparator<QueryExpression> CONSTRAINT_ORDER = Comparator
+      .comparing((QueryExpression exp) -> new ShapePrinter().transform(exp).toString())
+      .thenComparing(QueryExpression::toString);
+
+  /**
+   * Replaces all literals and bind variables by the same bind variable, such that the string representation of the
+   * result only depends on the shape of the expression
+   */
+  private static class ShapePrinter extends AbstractQueryExpressionTransformer {
+
+    @Override
+    protected QueryExpression transformNode(QueryExpression exp) {
+      return exp instanceof Constant || exp instanceof BindVariable ? new BindVariable(-1) : exp;
+    }
+  }
+
+  private static class ParameterCollector extends AbstractQueryExpressionVisitor {
+
+    // by identity since equal literals at different places in the query are different parameters
+    private final Map<QueryExpression, Integer> parameterIndices = new IdentityHashMap<>();
+
+    private final List<QueryExpression> parameters = new ArrayList<>();
+
+    private void addParameter(QueryExpression exp) {
+      if (!parameterIndices.containsKey(exp)) {
+        parameterIndices.put(exp, parameters.size());
+        parameters.add(exp);
+      }
+    }
+
+    @Override
+    public void visit(BindVariable bindVariable) {
+      addParameter(bindVariable);
+    }
+
+    @Override
+    public void visit(ConstInteger constInteger) {
+      addParameter(constInteger);
+    }
+
+    @Override
+    public void visit(ConstDecimal constDecimal) {
+      addParameter(constDecimal);
+    }
+
+    @Override
+    public void visit(ConstString constString) {
+      addParameter(constString);
+    }
+
+    @Override
+    public void visit(ConstBoolean constBoolean) {
+      addParameter(constBoolean);
+    }
+
+    @Override
+    public void visit(ConstDate constDate) {
+      addParameter(constDate);
+    }
+
+    @Override
+    public void visit(ConstTime constTime) {
+      addParameter(constTime);
+    }
+
+    @Override
+    public void visit(ConstTimestamp constTimestamp) {
+      addParameter(constTimestamp);
+    }
+
+    @Override
+    public void visit(ConstTimeWithTimezone constTimeWithTimezone) {
+      addParameter(constTimeWithTimezone);
+    }
+
+    @Override
+    public void visit(ConstTimestampWithTimezone constTimestampWithTimezone) {
+      addParameter(constTimestampWithTimezone);
+    }
+  }
+}
@@ -0,0 +1,8 @@
+#!/bin/bash
+
+# Runs all benchmarks and reports throughput, latency percentiles and allocation rate. Extra arguments are passed to
+# JMH, e.g. `sh run.sh PhaseBenchmarks.analyze -p querySize=LARGE`
+export MAVEN_OPTS="-Xms512m -Xmx1024m -Xss16m"
+
+mvn clean package
+java -jar target/benchmarks.jar -bm thrpt,sample -tu us -prof gc "$@"
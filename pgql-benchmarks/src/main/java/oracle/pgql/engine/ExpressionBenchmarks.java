@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import oracle.pgql.engine.CompiledExpression.BooleanEvaluator;
+import oracle.pgql.engine.CompiledExpression.Frame;
+import oracle.pgql.lang.ir.GraphPattern;
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.GroupBy;
+import oracle.pgql.lang.ir.OrderBy;
+import oracle.pgql.lang.ir.Projection;
+import oracle.pgql.lang.ir.QueryEdge;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Add;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Mul;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Sub;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstDecimal;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstInteger;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.And;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.Not;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.Or;
+import oracle.pgql.lang.ir.QueryExpression.PropertyAccess;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Equal;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Greater;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.GreaterEqual;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Less;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.LessEqual;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.NotEqual;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.ir.QueryVariable.VariableType;
+import oracle.pgql.lang.ir.QueryVertex;
+
+/**
+ * Compares filters that are compiled by the {@link ExpressionCompiler} with filters that are evaluated by the
+ * {@link ExpressionInterpreter}, on all matches of "(a) -> (b)". Every filter of the same shape shares the lambda
+ * classes of its evaluators, so the more distinct filter shapes are evaluated in the same JVM, the more call sites
+ * inside the composite evaluators see several evaluator classes and become megamorphic. The number of distinct,
+ * randomly generated filter shapes is therefore a parameter; all of them are compiled and evaluated in every
+ * iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ExpressionBenchmarks {
+
+  private static final int NUM_VERTICES = 1_000;
+
+  private static final int NUM_EDGES = 5_000;
+
+  @Param({ "1", "4", "16", "64" })
+  public int numFilterShapes;
+
+  private List<QueryExpression> filters;
+
+  private BooleanEvaluator[] compiledFilters;
+
+  private int[][] matches;
+
+  private int[] binding;
+
+  private ExpressionInterpreter interpreter;
+
+  private EvaluationContext context;
+
+  private Frame frame;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    Random random = new Random(42);
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    for (int i = 0; i < NUM_VERTICES; i++) {
+      int vertex = builder.addVertex("Person");
+      builder.setVertexProperty(vertex, "age", (long) random.nextInt(100));
+      builder.setVertexProperty(vertex, "score", random.nextDouble() * 100);
+    }
+    for (int i = 0; i < NUM_EDGES; i++) {
+      builder.addEdge(random.nextInt(NUM_VERTICES), random.nextInt(NUM_VERTICES), "knows");
+    }
+    PropertyGraph graph = builder.build();
+
+    QueryVertex a = new QueryVertex("a", false);
+    QueryVertex b = new QueryVertex("b", false);
+    QueryEdge e = new QueryEdge(a, b, "e", false, true);
+    GraphPattern graphPattern = new GraphPattern(new LinkedHashSet<>(Arrays.asList(a, b)),
+        new LinkedHashSet<>(Collections.singleton(e)), new LinkedHashSet<>());
+    GraphQuery query = new GraphQuery(new Projection(new ArrayList<>()), null, graphPattern,
+        new GroupBy(new ArrayList<>()), new OrderBy(new ArrayList<>()), null, null);
+    QueryPlan plan = QueryPlanner.plan(query, graph.getStatistics());
+
+    // distinct filter shapes; since the seed is fixed, the filters of a smaller parameter value are a prefix of the
+    // filters of a larger one
+    Map<String, QueryExpression> shapes = new LinkedHashMap<>();
+    while (shapes.size() < numFilterShapes) {
+      QueryExpression filter = randomFilter(random, a, b, 2);
+      shapes.putIfAbsent(filter.toString(), filter);
+    }
+    filters = new ArrayList<>(shapes.values());
+    compiledFilters = new BooleanEvaluator[filters.size()];
+    ExpressionCompiler compiler = graph.getExpressionCompiler();
+    for (int i = 0; i < compiledFilters.length; i++) {
+      compiledFilters[i] = compiler.compile(filters.get(i), plan.slots).asBoolean();
+    }
+
+    interpreter = new ExpressionInterpreter(graph, new Object[0]);
+    Matcher matcher = new Matcher(graph, plan, interpreter);
+    List<int[]> matchList = new ArrayList<>();
+    matcher.match(match -> {
+      matchList.add(match.clone());
+      return true;
+    });
+    matches = matchList.toArray(new int[0][]);
+    binding = new int[plan.getNumSlots()];
+    context = new BindingContext(graph, plan.slots, binding);
+    frame = new Frame(binding, interpreter, context);
+  }
+
+  @Benchmark
+  public int compiled() {
+    int numTrue = 0;
+    for (int[] match : matches) {
+      System.arraycopy(match, 0, binding, 0, binding.length);
+      for (BooleanEvaluator filter : compiledFilters) {
+        if (filter.evaluate(frame) == CompiledExpression.TRUE) {
+          numTrue++;
+        }
+      }
+    }
+    return numTrue;
+  }
+
+  @Benchmark
+  public int interpreted() {
+    int numTrue = 0;
+    for (int[] match : matches) {
+      System.arraycopy(match, 0, binding, 0, binding.length);
+      for (QueryExpression filter : filters) {
+        if (interpreter.isTrue(filter, context)) {
+          numTrue++;
+        }
+      }
+    }
+    return numTrue;
+  }
+
+  private static QueryExpression randomFilter(Random random, QueryVertex a, QueryVertex b, int depth) {
+    if (depth == 0) {
+      QueryExpression left = randomNumber(random, a, b, 1);
+      QueryExpression right = randomNumber(random, a, b, 1);
+      switch (random.nextInt(6)) {
+        case 0:
+          return new Equal(left, right);
+        case 1:
+          return new NotEqual(left, right);
+        case 2:
+          return new Greater(left, right);
+        case 3:
+          return new GreaterEqual(left, right);
+        case 4:
+          return new Less(left, right);
+        default:
+          return new LessEqual(left, right);
+      }
+    }
+    switch (random.nextInt(3)) {
+      case 0:
+        return new And(randomFilter(random, a, b, depth - 1), randomFilter(random, a, b, depth - 1));
+      case 1:
+        return new Or(randomFilter(random, a, b, depth - 1), randomFilter(random, a, b, depth - 1));
+      default:
+        return new Not(randomFilter(random, a, b, depth - 1));
+    }
+  }
+
+  private static QueryExpression randomNumber(Random random, QueryVertex a, QueryVertex b, int depth) {
+    int choice = random.nextInt(depth == 0 ? 6 : 9);
+    switch (choice) {
+      case 0:
+        return new PropertyAccess(a, "age");
+      case 1:
+        return new PropertyAccess(b, "age");
+      case 2:
+        return new PropertyAccess(a, "score");
+      case 3:
+        return new PropertyAccess(b, "score");
+      case 4:
+        return new ConstInteger(random.nextInt(100));
+      case 5:
+        return new ConstDecimal(random.nextInt(100) + 0.5);
+      case 6:
+        return new Add(randomNumber(random, a, b, depth - 1), randomNumber(random, a, b, depth - 1));
+      case 7:
+        return new Sub(randomNumber(random, a, b, depth - 1), randomNumber(random, a, b, depth - 1));
+      default:
+        return new Mul(randomNumber(random, a, b, depth - 1), randomNumber(random, a, b, depth - 1));
+    }
+  }
+
+  /**
+   * Makes the vertices and edges of the current match available to the interpreter, like the matcher does
+   */
+  private static final class BindingContext implements EvaluationContext {
+
+    private final PropertyGraph graph;
+
+    private final Map<QueryVariable, Integer> slots;
+
+    private final int[] binding;
+
+    BindingContext(PropertyGraph graph, Map<QueryVariable, Integer> slots, int[] binding) {
+      this.graph = graph;
+      this.slots = slots;
+      this.binding = binding;
+    }
+
+    @Override
+    public int getElementId(QueryVariable variable) {
+      Integer slot = slots.get(variable);
+      return slot == null ? -1 : binding[slot];
+    }
+
+    @Override
+    public Object getValue(QueryVariable variable) {
+      int id = getElementId(variable);
+      if (id == -1) {
+        return null;
+      }
+      return variable.getVariableType() == VariableType.VERTEX ? new Vertex(graph, id) : new Edge(graph, id);
+    }
+
+    @Override
+    public Object getAggregate(Aggregation aggregation) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import java.util.concurrent.TimeUnit;
+
+import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnit;
+import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import oracle.pgql.lang.ir.GraphQuery;
+
+/**
+ * Measures the phases of {@link Pgql#parse(String)} in isolation: SGLR parsing, analysis (normalization, name
+ * resolution and type checking), translation of the analyzed AST into a GraphQuery, and pretty printing of the
+ * GraphQuery. The input of each phase is computed once during setup.
+ *
+ * Run with "-bm thrpt,sample -prof gc" to obtain throughput, latency percentiles and allocation rate (see run.sh).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xss16m" }) // Stratego needs a large stack for large queries
+public class PhaseBenchmarks {
+
+  @Param
+  public QueryCorpus querySize;
+
+  private Pgql pgql;
+
+  private PgqlRuntime runtime;
+
+  private String query;
+
+  private ISpoofaxParseUnit parseResult;
+
+  private ISpoofaxAnalyzeUnit analysisResult;
+
+  private GraphQuery graphQuery;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    pgql = new Pgql();
+    runtime = pgql.getRuntime();
+    query = querySize.getQuery();
+
+    parseResult = runtime.parseSyntax(query);
+    if (!parseResult.success()) {
+      throw new IllegalStateException("Benchmark query does not parse: " + query);
+    }
+    analysisResult = runtime.analyze(parseResult);
+    if (!analysisResult.success()) {
+      throw new IllegalStateException("Benchmark query is invalid: " + pgql.parse(query).getErrorMessages());
+    }
+    graphQuery = SpoofaxAstToGraphQuery.translate(analysisResult.ast());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    pgql.close();
+  }
+
+  @Benchmark
+  public ISpoofaxParseUnit parse() throws Exception {
+    return runtime.parseSyntax(query);
+  }
+
+  @Benchmark
+  public ISpoofaxAnalyzeUnit analyze() throws Exception {
+    return runtime.analyze(parseResult);
+  }
+
+  @Benchmark
+  public GraphQuery translate() throws Exception {
+    return SpoofaxAstToGraphQuery.translate(analysisResult.ast());
+  }
+
+  @Benchmark
+  public String prettyPrint() {
+    return graphQuery.toString();
+  }
+
+  /**
+   * All phases together, as seen by users of {@link Pgql#parse(String)}
+   */
+  @Benchmark
+  public PgqlResult endToEnd() throws Exception {
+    return pgql.parse(query);
+  }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+/**
+ * Queries of increasing size that are used as input for the benchmarks.
+ */
+public enum QueryCorpus {
+
+  /**
+   * A typical interactive query
+   */
+  SMALL {
+    @Override
+    String getQuery() {
+      return "SELECT n.name, m.name WHERE (n:Person) -[e:likes]-> (m:Person), n.age > 25 ORDER BY n.name LIMIT 10";
+    }
+  },
+
+  /**
+   * A query with a few dozen pattern elements, grouping and aggregation
+   */
+  MEDIUM {
+    @Override
+    String getQuery() {
+      StringBuilder sb = new StringBuilder("SELECT v0.name, COUNT(*) AS cnt, AVG(v9.age) AS avgAge WHERE ");
+      appendChain(sb, 10);
+      for (int i = 0; i < 10; i++) {
+        sb.append(", v" + i + ".age > " + (i * 3) + " AND v" + i + ".name <> 'x" + i + "'");
+      }
+      sb.append(" GROUP BY v0.name ORDER BY cnt DESC, avgAge LIMIT 100");
+      return sb.toString();
+    }
+  },
+
+  /**
+   * A generated query with hundreds of pattern elements and a deeply nested expression
+   */
+  LARGE {
+    @Override
+    String getQuery() {
+      StringBuilder sb = new StringBuilder("SELECT v0.name, v299.name WHERE ");
+      appendChain(sb, 300);
+      sb.append(", ");
+      for (int i = 0; i < 100; i++) {
+        sb.append("(v" + i + ".age + ");
+      }
+      sb.append("0");
+      for (int i = 0; i < 100; i++) {
+        sb.append(")");
+      }
+      sb.append(" > 1000");
+      for (int i = 0; i < 300; i += 3) {
+        sb.append(", v" + i + ".prop" + i + " = v" + (i + 1) + ".prop" + i);
+      }
+      return sb.toString();
+    }
+  };
+
+  abstract String getQuery();
+
+  /**
+   * Appends a path (v0) -[e0:label0]-> (v1) -[e1:label1]-> ... with the given number of vertices
+   */
+  private static void appendChain(StringBuilder sb, int numVertices) {
+    sb.append("(v0)");
+    for (int i = 1; i < numVertices; i++) {
+      sb.append(" -[e" + (i - 1) + ":label" + (i % 7) + "]-> (v" + i + ")");
+    }
+  }
+}
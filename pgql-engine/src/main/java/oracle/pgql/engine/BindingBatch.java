@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+/**
+ * Up to {@link #SIZE} candidate bindings of a match step, stored per slot. Only the slots that the step binds (the
+ * scanned vertex, or the followed edge and the vertex it leads to) differ per row and have a column; the other slots
+ * have the same value in all rows, which is taken from the binding of the matcher.
+ */
+final class BindingBatch {
+
+  static final int SIZE = 1024;
+
+  final int[] binding;
+
+  /**
+   * The ids per row of each slot that differs per row, or null for the other slots
+   */
+  final int[][] columns;
+
+  private final int[] varyingSlots;
+
+  int size;
+
+  /**
+   * The rows that pass the filters of the step, as computed by the {@link VectorizedFilter}
+   */
+  final int[] selection = new int[SIZE];
+
+  BindingBatch(int[] binding, int... varyingSlots) {
+    this.binding = binding;
+    this.varyingSlots = varyingSlots;
+    columns = new int[binding.length][];
+    for (int slot : varyingSlots) {
+      columns[slot] = new int[SIZE];
+    }
+  }
+
+  boolean isFull() {
+    return size == SIZE;
+  }
+
+  /**
+   * @return the id of the vertex or edge in the slot for the row, or -1 if the slot is not bound
+   */
+  int getElementId(int slot, int row) {
+    int[] column = columns[slot];
+    return column == null ? binding[slot] : column[row];
+  }
+
+  /**
+   * Copies the row into the binding of the matcher
+   */
+  void bindRow(int row) {
+    for (int slot : varyingSlots) {
+      binding[slot] = columns[slot][row];
+    }
+  }
+}
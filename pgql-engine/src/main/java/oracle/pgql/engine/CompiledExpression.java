@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+/**
+ * An expression compiled by the {@link ExpressionCompiler} into a tree of evaluators, each specialized for the static
+ * type of its subexpression. For example, "n.age + 1 > m.age" on an integer property is evaluated on primitive longs
+ * that are read directly from the property column, without boxing and without dispatching on the expression type.
+ *
+ * Evaluators of longs and doubles report null by setting {@link Frame#wasNull}, which they set or reset on every call;
+ * the value they return is meaningless if it is set. Evaluators of booleans return {@link #TRUE}, {@link #FALSE} or
+ * {@link #UNKNOWN}.
+ *
+ * Evaluators are lambdas, so all evaluators of the same kind (e.g. all additions of two longs) share one class. A call
+ * site inside a composite evaluator therefore only stays monomorphic while the operands it sees are of one kind; once
+ * filters of several shapes are compiled it becomes megamorphic and is dispatched virtually. What compilation saves is
+ * the interpreter's dispatch on the expression type, its boxing and its per-evaluation lookups of properties, labels
+ * and patterns, not the virtual calls between evaluators (see ExpressionBenchmarks in pgql-benchmarks).
+ *
+ * Compiled expressions do not have state of their own and can be evaluated by multiple threads at once, each with its
+ * own frame.
+ */
+final class CompiledExpression {
+
+  enum Type {
+    LONG,
+    DOUBLE,
+    BOOLEAN,
+
+    /**
+     * Any other value, or a value of which the type is only known at runtime (e.g. a bind variable)
+     */
+    OBJECT
+  }
+
+  static final int FALSE = 0;
+
+  static final int TRUE = 1;
+
+  static final int UNKNOWN = -1;
+
+  interface LongEvaluator {
+    long evaluate(Frame frame);
+  }
+
+  interface DoubleEvaluator {
+    double evaluate(Frame frame);
+  }
+
+  interface BooleanEvaluator {
+    int evaluate(Frame frame);
+  }
+
+  interface ObjectEvaluator {
+    Object evaluate(Frame frame);
+  }
+
+  /**
+   * The state of one evaluation: the (partial) match and the values of the bind variables
+   */
+  static final class Frame {
+
+    final int[] binding;
+
+    /**
+     * Evaluates the subexpressions that are not compiled, and provides the values of the bind variables
+     */
+    final ExpressionInterpreter interpreter;
+
+    final EvaluationContext context;
+
+    boolean wasNull;
+
+    Frame(int[] binding, ExpressionInterpreter interpreter, EvaluationContext context) {
+      this.binding = binding;
+      this.interpreter = interpreter;
+      this.context = context;
+    }
+  }
+
+  final Type type;
+
+  /**
+   * A LongEvaluator, DoubleEvaluator, BooleanEvaluator or ObjectEvaluator, depending on the type
+   */
+  private final Object evaluator;
+
+  private CompiledExpression(Type type, Object evaluator) {
+    this.type = type;
+    this.evaluator = evaluator;
+  }
+
+  static CompiledExpression ofLong(LongEvaluator evaluator) {
+    return new CompiledExpression(Type.LONG, evaluator);
+  }
+
+  static CompiledExpression ofDouble(DoubleEvaluator evaluator) {
+    return new CompiledExpression(Type.DOUBLE, evaluator);
+  }
+
+  static CompiledExpression ofBoolean(BooleanEvaluator evaluator) {
+    return new CompiledExpression(Type.BOOLEAN, evaluator);
+  }
+
+  static CompiledExpression ofObject(ObjectEvaluator evaluator) {
+    return new CompiledExpression(Type.OBJECT, evaluator);
+  }
+
+  static CompiledExpression constant(Object value) {
+    if (value instanceof Long) {
+      long longValue = (Long) value;
+      return ofLong(frame -> {
+        frame.wasNull = false;
+        return longValue;
+      });
+    } else if (value instanceof Double) {
+      double doubleValue = (Double) value;
+      return ofDouble(frame -> {
+        frame.wasNull = false;
+        return doubleValue;
+      });
+    } else if (value instanceof Boolean) {
+      int booleanValue = toBoolean((Boolean) value);
+      return ofBoolean(frame -> booleanValue);
+    }
+    return ofObject(frame -> value);
+  }
+
+  boolean isNumeric() {
+    return type == Type.LONG || type == Type.DOUBLE;
+  }
+
+  LongEvaluator asLong() {
+    if (type != Type.LONG) {
+      throw new IllegalStateException(type + " is not " + Type.LONG);
+    }
+    return (LongEvaluator) evaluator;
+  }
+
+  DoubleEvaluator asDouble() {
+    switch (type) {
+      case LONG:
+        LongEvaluator longEvaluator = (LongEvaluator) evaluator;
+        return frame -> longEvaluator.evaluate(frame);
+      case DOUBLE:
+        return (DoubleEvaluator) evaluator;
+      default:
+        throw new IllegalStateException(type + " is not numeric");
+    }
+  }
+
+  /**
+   * @return an evaluator that results in {@link #UNKNOWN} for values that are not booleans
+   */
+  BooleanEvaluator asBoolean() {
+    switch (type) {
+      case BOOLEAN:
+        return (BooleanEvaluator) evaluator;
+      case OBJECT:
+        ObjectEvaluator objectEvaluator = (ObjectEvaluator) evaluator;
+        return frame -> {
+          Object value = objectEvaluator.evaluate(frame);
+          return value instanceof Boolean ? toBoolean((Boolean) value) : UNKNOWN;
+        };
+      default:
+        return frame -> UNKNOWN;
+    }
+  }
+
+  ObjectEvaluator asObject() {
+    switch (type) {
+      case LONG: {
+        LongEvaluator longEvaluator = (LongEvaluator) evaluator;
+        return frame -> {
+          long value = longEvaluator.evaluate(frame);
+          return frame.wasNull ? null : Long.valueOf(value);
+        };
+      }
+      case DOUBLE: {
+        DoubleEvaluator doubleEvaluator = (DoubleEvaluator) evaluator;
+        return frame -> {
+          double value = doubleEvaluator.evaluate(frame);
+          return frame.wasNull ? null : Double.valueOf(value);
+        };
+      }
+      case BOOLEAN: {
+        BooleanEvaluator booleanEvaluator = (BooleanEvaluator) evaluator;
+        return frame -> {
+          int value = booleanEvaluator.evaluate(frame);
+          return value == UNKNOWN ? null : Boolean.valueOf(value == TRUE);
+        };
+      }
+      default:
+        return (ObjectEvaluator) evaluator;
+    }
+  }
+
+  static int toBoolean(boolean value) {
+    return value ? TRUE : FALSE;
+  }
+
+  @Override
+  public String toString() {
+    return "CompiledExpression[" + type + "]";
+  }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.Arrays;
+
+/**
+ * The distribution of the degrees of the vertices of a graph, in buckets of exponentially increasing size: bucket 0
+ * holds the vertices with degree 0 and bucket i > 0 the vertices with a degree in [2^(i-1), 2^i).
+ */
+public final class DegreeHistogram {
+
+  private final long[] numVertices;
+
+  private final long[] sumOfDegrees;
+
+  /**
+   * @param numVertices
+   *          the number of vertices in each bucket
+   * @param sumOfDegrees
+   *          the sum of the degrees of the vertices in each bucket
+   */
+  public DegreeHistogram(long[] numVertices, long[] sumOfDegrees) {
+    if (numVertices.length != sumOfDegrees.length) {
+      throw new IllegalArgumentException("Expected the same number of buckets for the vertices and the degrees");
+    }
+    this.numVertices = numVertices.clone();
+    this.sumOfDegrees = sumOfDegrees.clone();
+  }
+
+  /**
+   * @param offsets
+   *          CSR offsets: the degree of vertex v is offsets[v + 1] - offsets[v]
+   */
+  static DegreeHistogram fromOffsets(int[] offsets) {
+    long[] numVertices = new long[33];
+    long[] sumOfDegrees = new long[33];
+    for (int v = 0; v + 1 < offsets.length; v++) {
+      int degree = offsets[v + 1] - offsets[v];
+      int bucket = getBucket(degree);
+      numVertices[bucket]++;
+      sumOfDegrees[bucket] += degree;
+    }
+    return new DegreeHistogram(numVertices, sumOfDegrees);
+  }
+
+  static int getBucket(long degree) {
+    return 64 - Long.numberOfLeadingZeros(degree);
+  }
+
+  public int getNumBuckets() {
+    return numVertices.length;
+  }
+
+  public long getNumVertices(int bucket) {
+    return numVertices[bucket];
+  }
+
+  public long getSumOfDegrees(int bucket) {
+    return sumOfDegrees[bucket];
+  }
+
+  /**
+   * @return the average degree, or 0 if there are no vertices
+   */
+  public double getMean() {
+    long vertices = Arrays.stream(numVertices).sum();
+    return vertices == 0 ? 0 : Arrays.stream(sumOfDegrees).sum() / (double) vertices;
+  }
+
+  @Override
+  public String toString() {
+    return "DegreeHistogram[mean=" + getMean() + ", buckets=" + Arrays.toString(numVertices) + "]";
+  }
+}
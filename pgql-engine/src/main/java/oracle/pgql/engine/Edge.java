@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+/**
+ * An edge of a {@link PropertyGraph}, as returned in query results
+ */
+public final class Edge {
+
+  private final PropertyGraph graph;
+
+  private final int id;
+
+  Edge(PropertyGraph graph, int id) {
+    this.graph = graph;
+    this.id = id;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public Vertex getSource() {
+    return new Vertex(graph, graph.getEdgeSource(id));
+  }
+
+  public Vertex getDestination() {
+    return new Vertex(graph, graph.getEdgeDestination(id));
+  }
+
+  /**
+   * @return the label of the edge, or null if it has none
+   */
+  public String getLabel() {
+    return graph.getEdgeLabel(id);
+  }
+
+  public Object getProperty(String propertyName) {
+    return graph.getEdgeProperty(id, propertyName);
+  }
+
+  @Override
+  public String toString() {
+    return "Edge[" + id + "]";
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    Edge edge = (Edge) o;
+
+    return id == edge.id && graph == edge.graph;
+  }
+
+  @Override
+  public int hashCode() {
+    return id;
+  }
+}
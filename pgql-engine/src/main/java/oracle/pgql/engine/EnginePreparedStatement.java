@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+
+import oracle.pgql.lang.PgqlException;
+import oracle.pgql.lang.PreparedStatement;
+import oracle.pgql.lang.ResultSet;
+
+/**
+ * A query that is planned once and can be executed repeatedly with different values for its bind variables. As in
+ * JDBC, executing the statement again closes the result set of the previous execution, so that re-executing it in a
+ * loop does not keep the materialized results of earlier executions alive.
+ */
+final class EnginePreparedStatement implements PreparedStatement {
+
+  private final PropertyGraph graph;
+
+  private final QueryPlan plan;
+
+  /**
+   * The values of the bind variables, by zero-based index
+   */
+  private final Object[] parameters;
+
+  private final boolean[] parameterSet;
+
+  /**
+   * The result set of the last execution, or null
+   */
+  private ResultSet resultSet;
+
+  private boolean closed;
+
+  EnginePreparedStatement(PropertyGraph graph, QueryPlan plan) {
+    this.graph = graph;
+    this.plan = plan;
+    parameters = new Object[plan.numParameters];
+    parameterSet = new boolean[plan.numParameters];
+  }
+
+  @Override
+  public ResultSet executeQuery() throws PgqlException {
+    checkOpen();
+    for (int i = 0; i < parameterSet.length; i++) {
+      if (!parameterSet[i]) {
+        throw new PgqlException("No value was set for parameter " + (i + 1));
+      }
+    }
+    closeResultSet();
+    resultSet = QueryExecutor.execute(graph, plan, parameters.clone());
+    return resultSet;
+  }
+
+  @Override
+  public void setBoolean(int parameterIndex, boolean x) throws PgqlException {
+    set(parameterIndex, x);
+  }
+
+  @Override
+  public void setDouble(int parameterIndex, double x) throws PgqlException {
+    set(parameterIndex, x);
+  }
+
+  @Override
+  public void setFloat(int parameterIndex, float x) throws PgqlException {
+    set(parameterIndex, (double) x);
+  }
+
+  @Override
+  public void setInt(int parameterIndex, int x) throws PgqlException {
+    set(parameterIndex, (long) x);
+  }
+
+  @Override
+  public void setLong(int parameterIndex, long x) throws PgqlException {
+    set(parameterIndex, x);
+  }
+
+  @Override
+  public void setString(int parameterIndex, String x) throws PgqlException {
+    set(parameterIndex, x);
+  }
+
+  @Override
+  public void setDate(int parameterIndex, LocalDate x) throws PgqlException {
+    set(parameterIndex, x);
+  }
+
+  @Override
+  public void setTime(int parameterIndex, LocalTime x) throws PgqlException {
+    set(parameterIndex, x);
+  }
+
+  @Override
+  public void setTimestamp(int parameterIndex, LocalDateTime x) throws PgqlException {
+    set(parameterIndex, x);
+  }
+
+  @Override
+  public void setTimeWithTimezone(int parameterIndex, OffsetTime x) throws PgqlException {
+    set(parameterIndex, x);
+  }
+
+  @Override
+  public void setTimestampWithTimezone(int parameterIndex, OffsetDateTime x) throws PgqlException {
+    set(parameterIndex, x);
+  }
+
+  @Override
+  public void close() throws PgqlException {
+    if (!closed) {
+      closed = true;
+      closeResultSet();
+    }
+  }
+
+  private void closeResultSet() throws PgqlException {
+    if (resultSet != null) {
+      ResultSet previous = resultSet;
+      resultSet = null;
+      previous.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return plan.toString();
+  }
+
+  private void set(int parameterIndex, Object value) throws PgqlException {
+    checkOpen();
+    if (parameterIndex < 1 || parameterIndex > parameters.length) {
+      throw new PgqlException("Parameter index " + parameterIndex + " is out of range; the query has "
+          + parameters.length + " parameters");
+    }
+    parameters[parameterIndex - 1] = value;
+    parameterSet[parameterIndex - 1] = true;
+  }
+
+  private void checkOpen() throws PgqlException {
+    if (closed) {
+      throw new PgqlException("The statement is closed");
+    }
+  }
+}
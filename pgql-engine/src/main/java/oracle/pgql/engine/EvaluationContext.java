@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import oracle.pgql.lang.ir.QueryExpression.Aggregation;
+import oracle.pgql.lang.ir.QueryVariable;
+
+/**
+ * The values of the variables and aggregations that an expression can refer to: the vertices and edges of a match,
+ * or the group keys and aggregations of a group.
+ */
+interface EvaluationContext {
+
+  /**
+   * @return the id of the vertex or edge bound to the variable, or -1 if the variable is not bound to a vertex or edge
+   */
+  int getElementId(QueryVariable variable);
+
+  /**
+   * @return the value of the variable: a {@link Vertex}, an {@link Edge} or the value of an expression
+   */
+  Object getValue(QueryVariable variable);
+
+  /**
+   * @return the value of the aggregation, or null if there is no group
+   */
+  Object getAggregate(Aggregation aggregation);
+
+  EvaluationContext EMPTY = new EvaluationContext() {
+
+    @Override
+    public int getElementId(QueryVariable variable) {
+      return -1;
+    }
+
+    @Override
+    public Object getValue(QueryVariable variable) {
+      return null;
+    }
+
+    @Override
+    public Object getAggregate(Aggregation aggregation) {
+      return null;
+    }
+  };
+}
@@ -0,0 +1,719 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import static oracle.pgql.engine.CompiledExpression.FALSE;
+import static oracle.pgql.engine.CompiledExpression.TRUE;
+import static oracle.pgql.engine.CompiledExpression.UNKNOWN;
+import static oracle.pgql.engine.CompiledExpression.toBoolean;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import oracle.pgql.engine.CompiledExpression.BooleanEvaluator;
+import oracle.pgql.engine.CompiledExpression.DoubleEvaluator;
+import oracle.pgql.engine.CompiledExpression.Frame;
+import oracle.pgql.engine.CompiledExpression.LongEvaluator;
+import oracle.pgql.engine.CompiledExpression.ObjectEvaluator;
+import oracle.pgql.engine.CompiledExpression.Type;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation;
+import oracle.pgql.lang.ir.QueryExpression.BinaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.BindVariable;
+import oracle.pgql.lang.ir.QueryExpression.Constant;
+import oracle.pgql.lang.ir.QueryExpression.ExpressionType;
+import oracle.pgql.lang.ir.QueryExpression.Function.AllDifferent;
+import oracle.pgql.lang.ir.QueryExpression.Function.Cast;
+import oracle.pgql.lang.ir.QueryExpression.PropertyAccess;
+import oracle.pgql.lang.ir.QueryExpression.TernaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.UnaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.VarRef;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.ir.QueryVariable.VariableType;
+
+/**
+ * Compiles expressions into {@link CompiledExpression}s for a graph. Properties are resolved to their columns, labels
+ * to their ids and regular expressions with a constant pattern to a compiled pattern once, at compile time. Arithmetic
+ * and comparisons on integer and decimal properties are specialized to primitive longs and doubles. Expressions that
+ * are not compiled (e.g. ALL_DIFFERENT, or a regular expression of which the pattern is a bind variable) are delegated
+ * to the {@link ExpressionInterpreter}, so compiled expressions have the same results as interpreted ones.
+ *
+ * Compiled expressions are cached by the structure of the expression, in which vertices and edges are identified by
+ * their slot, so that a query that is prepared or executed again, or a different query with the same constraint on a
+ * variable in the same slot, reuses the compiled expression.
+ */
+final class ExpressionCompiler {
+
+  /**
+   * The cache is cleared when it reaches this size, which only happens for workloads with many distinct expressions
+   */
+  static final int MAX_CACHED_EXPRESSIONS = 4096;
+
+  private final PropertyGraph graph;
+
+  private final Map<String, CompiledExpression> cache = new ConcurrentHashMap<>();
+
+  ExpressionCompiler(PropertyGraph graph) {
+    this.graph = graph;
+  }
+
+  /**
+   * @param slots
+   *          the slot in the binding of each vertex and edge of the graph pattern
+   */
+  CompiledExpression compile(QueryExpression exp, Map<QueryVariable, Integer> slots) {
+    String key = getStructuralKey(exp, slots);
+    if (key == null) {
+      return compileNode(exp, slots);
+    }
+    CompiledExpression result = cache.get(key);
+    if (result == null) {
+      result = compileNode(exp, slots);
+      if (cache.size() >= MAX_CACHED_EXPRESSIONS) {
+        cache.clear();
+      }
+      CompiledExpression existing = cache.putIfAbsent(key, result);
+      if (existing != null) {
+        result = existing;
+      }
+    }
+    return result;
+  }
+
+  int getNumCachedExpressions() {
+    return cache.size();
+  }
+
+  private CompiledExpression compileNode(QueryExpression exp, Map<QueryVariable, Integer> slots) {
+    switch (exp.getExpType()) {
+      case INTEGER:
+      case DECIMAL:
+      case STRING:
+      case BOOLEAN:
+      case DATE:
+      case TIME:
+      case TIMESTAMP:
+      case TIME_WITH_TIMEZONE:
+      case TIMESTAMP_WITH_TIMEZONE:
+        return CompiledExpression.constant(((Constant<?>) exp).getValue());
+      case NULL:
+        return CompiledExpression.constant(null);
+      case SUB:
+      case ADD:
+      case MUL:
+      case DIV:
+      case MOD:
+        return compileArithmetic((BinaryExpression) exp, slots);
+      case UMIN:
+        return compileNegation(compileNode(((UnaryExpression) exp).getExp(), slots));
+      case AND:
+        return compileAnd((BinaryExpression) exp, slots);
+      case OR:
+        return compileOr((BinaryExpression) exp, slots);
+      case NOT: {
+        BooleanEvaluator operand = compileNode(((UnaryExpression) exp).getExp(), slots).asBoolean();
+        return CompiledExpression.ofBoolean(frame -> {
+          int value = operand.evaluate(frame);
+          return value == UNKNOWN ? UNKNOWN : value == TRUE ? FALSE : TRUE;
+        });
+      }
+      case EQUAL:
+      case NOT_EQUAL:
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+        return compileComparison((BinaryExpression) exp, slots);
+      case BIND_VARIABLE: {
+        int parameterIndex = ((BindVariable) exp).getParameterIndex();
+        return CompiledExpression.ofObject(frame -> frame.interpreter.getParameter(parameterIndex));
+      }
+      case VARREF:
+        return compileVarRef((VarRef) exp, slots);
+      case PROP_ACCESS:
+        return compilePropertyAccess((PropertyAccess) exp, slots);
+      case REGEX:
+        return compileRegex((BinaryExpression) exp, slots);
+      case HAS_LABEL:
+        return compileHasLabel((BinaryExpression) exp, slots);
+      case ID:
+      case INDEGREE:
+      case OUTDEGREE:
+      case EDGE_LABEL:
+        return compileElementFunction((UnaryExpression) exp, slots);
+      case CAST:
+        return compileCast((Cast) exp, slots);
+      default:
+        return interpret(exp, slots);
+    }
+  }
+
+  /**
+   * Evaluates the expression with the interpreter, looking up vertices and edges by their slot rather than through the
+   * context of the frame, since a cached expression may be evaluated for a different query with different variables
+   */
+  private CompiledExpression interpret(QueryExpression exp, Map<QueryVariable, Integer> slots) {
+    return CompiledExpression.ofObject(frame -> frame.interpreter.evaluate(exp, new SlotContext(graph, slots, frame)));
+  }
+
+  private CompiledExpression compileArithmetic(BinaryExpression exp, Map<QueryVariable, Integer> slots) {
+    CompiledExpression operand1 = compileNode(exp.getExp1(), slots);
+    CompiledExpression operand2 = compileNode(exp.getExp2(), slots);
+    ExpressionType operator = exp.getExpType();
+
+    if (operand1.type == Type.LONG && operand2.type == Type.LONG) {
+      LongEvaluator long1 = operand1.asLong();
+      LongEvaluator long2 = operand2.asLong();
+      switch (operator) {
+        case SUB:
+          return CompiledExpression.ofLong(frame -> {
+            long value1 = long1.evaluate(frame);
+            return frame.wasNull ? 0 : value1 - long2.evaluate(frame);
+          });
+        case ADD:
+          return CompiledExpression.ofLong(frame -> {
+            long value1 = long1.evaluate(frame);
+            return frame.wasNull ? 0 : value1 + long2.evaluate(frame);
+          });
+        case MUL:
+          return CompiledExpression.ofLong(frame -> {
+            long value1 = long1.evaluate(frame);
+            return frame.wasNull ? 0 : value1 * long2.evaluate(frame);
+          });
+        case DIV:
+          return CompiledExpression.ofLong(frame -> {
+            long value1 = long1.evaluate(frame);
+            if (frame.wasNull) {
+              return 0;
+            }
+            long value2 = long2.evaluate(frame);
+            if (frame.wasNull || value2 == 0) {
+              frame.wasNull = true;
+              return 0;
+            }
+            return value1 / value2;
+          });
+        default:
+          return CompiledExpression.ofLong(frame -> {
+            long value1 = long1.evaluate(frame);
+            if (frame.wasNull) {
+              return 0;
+            }
+            long value2 = long2.evaluate(frame);
+            if (frame.wasNull || value2 == 0) {
+              frame.wasNull = true;
+              return 0;
+            }
+            return value1 % value2;
+          });
+      }
+    }
+
+    if (operand1.isNumeric() && operand2.isNumeric()) {
+      DoubleEvaluator double1 = operand1.asDouble();
+      DoubleEvaluator double2 = operand2.asDouble();
+      switch (operator) {
+        case SUB:
+          return CompiledExpression.ofDouble(frame -> {
+            double value1 = double1.evaluate(frame);
+            return frame.wasNull ? 0 : value1 - double2.evaluate(frame);
+          });
+        case ADD:
+          return CompiledExpression.ofDouble(frame -> {
+            double value1 = double1.evaluate(frame);
+            return frame.wasNull ? 0 : value1 + double2.evaluate(frame);
+          });
+        case MUL:
+          return CompiledExpression.ofDouble(frame -> {
+            double value1 = double1.evaluate(frame);
+            return frame.wasNull ? 0 : value1 * double2.evaluate(frame);
+          });
+        case DIV:
+          return CompiledExpression.ofDouble(frame -> {
+            double value1 = double1.evaluate(frame);
+            if (frame.wasNull) {
+              return 0;
+            }
+            double value2 = double2.evaluate(frame);
+            if (frame.wasNull || value2 == 0) {
+              frame.wasNull = true;
+              return 0;
+            }
+            return value1 / value2;
+          });
+        default:
+          return CompiledExpression.ofDouble(frame -> {
+            double value1 = double1.evaluate(frame);
+            if (frame.wasNull) {
+              return 0;
+            }
+            double value2 = double2.evaluate(frame);
+            if (frame.wasNull || value2 == 0) {
+              frame.wasNull = true;
+              return 0;
+            }
+            return value1 % value2;
+          });
+      }
+    }
+
+    ObjectEvaluator object1 = operand1.asObject();
+    ObjectEvaluator object2 = operand2.asObject();
+    return CompiledExpression.ofObject(
+        frame -> ExpressionInterpreter.arithmetic(operator, object1.evaluate(frame), object2.evaluate(frame)));
+  }
+
+  private static CompiledExpression compileNegation(CompiledExpression operand) {
+    switch (operand.type) {
+      case LONG: {
+        LongEvaluator evaluator = operand.asLong();
+        return CompiledExpression.ofLong(frame -> -evaluator.evaluate(frame));
+      }
+      case DOUBLE: {
+        DoubleEvaluator evaluator = operand.asDouble();
+        return CompiledExpression.ofDouble(frame -> -evaluator.evaluate(frame));
+      }
+      default: {
+        ObjectEvaluator evaluator = operand.asObject();
+        return CompiledExpression.ofObject(frame -> {
+          Object value = evaluator.evaluate(frame);
+          if (value instanceof Long) {
+            return -(Long) value;
+          } else if (value instanceof Double) {
+            return -(Double) value;
+          }
+          return null;
+        });
+      }
+    }
+  }
+
+  private CompiledExpression compileAnd(BinaryExpression exp, Map<QueryVariable, Integer> slots) {
+    BooleanEvaluator operand1 = compileNode(exp.getExp1(), slots).asBoolean();
+    BooleanEvaluator operand2 = compileNode(exp.getExp2(), slots).asBoolean();
+    return CompiledExpression.ofBoolean(frame -> {
+      int value1 = operand1.evaluate(frame);
+      if (value1 == FALSE) {
+        return FALSE;
+      }
+      int value2 = operand2.evaluate(frame);
+      if (value2 == FALSE) {
+        return FALSE;
+      }
+      return value1 == TRUE && value2 == TRUE ? TRUE : UNKNOWN;
+    });
+  }
+
+  private CompiledExpression compileOr(BinaryExpression exp, Map<QueryVariable, Integer> slots) {
+    BooleanEvaluator operand1 = compileNode(exp.getExp1(), slots).asBoolean();
+    BooleanEvaluator operand2 = compileNode(exp.getExp2(), slots).asBoolean();
+    return CompiledExpression.ofBoolean(frame -> {
+      int value1 = operand1.evaluate(frame);
+      if (value1 == TRUE) {
+        return TRUE;
+      }
+      int value2 = operand2.evaluate(frame);
+      if (value2 == TRUE) {
+        return TRUE;
+      }
+      return value1 == FALSE && value2 == FALSE ? FALSE : UNKNOWN;
+    });
+  }
+
+  private CompiledExpression compileComparison(BinaryExpression exp, Map<QueryVariable, Integer> slots) {
+    CompiledExpression operand1 = compileNode(exp.getExp1(), slots);
+    CompiledExpression operand2 = compileNode(exp.getExp2(), slots);
+    IntPredicate test = getComparisonTest(exp.getExpType());
+
+    if (operand1.type == Type.LONG && operand2.type == Type.LONG) {
+      LongEvaluator long1 = operand1.asLong();
+      LongEvaluator long2 = operand2.asLong();
+      return CompiledExpression.ofBoolean(frame -> {
+        long value1 = long1.evaluate(frame);
+        if (frame.wasNull) {
+          return UNKNOWN;
+        }
+        long value2 = long2.evaluate(frame);
+        return frame.wasNull ? UNKNOWN : toBoolean(test.test(Long.compare(value1, value2)));
+      });
+    }
+
+    if (operand1.isNumeric() && operand2.isNumeric()) {
+      DoubleEvaluator double1 = operand1.asDouble();
+      DoubleEvaluator double2 = operand2.asDouble();
+      return CompiledExpression.ofBoolean(frame -> {
+        double value1 = double1.evaluate(frame);
+        if (frame.wasNull) {
+          return UNKNOWN;
+        }
+        double value2 = double2.evaluate(frame);
+        return frame.wasNull ? UNKNOWN : toBoolean(test.test(Double.compare(value1, value2)));
+      });
+    }
+
+    ObjectEvaluator object1 = operand1.asObject();
+    ObjectEvaluator object2 = operand2.asObject();
+    if (exp.getExpType() == ExpressionType.EQUAL || exp.getExpType() == ExpressionType.NOT_EQUAL) {
+      // equality is defined for values that cannot be ordered, e.g. vertices of which the labels are compared
+      boolean equal = exp.getExpType() == ExpressionType.EQUAL;
+      return CompiledExpression.ofBoolean(frame -> {
+        Boolean result = Values.equal(object1.evaluate(frame), object2.evaluate(frame));
+        return result == null ? UNKNOWN : toBoolean(result == equal);
+      });
+    }
+    return CompiledExpression.ofBoolean(frame -> {
+      Integer comparison = Values.compare(object1.evaluate(frame), object2.evaluate(frame));
+      return comparison == null ? UNKNOWN : toBoolean(test.test(comparison));
+    });
+  }
+
+  private static IntPredicate getComparisonTest(ExpressionType operator) {
+    switch (operator) {
+      case EQUAL:
+        return comparison -> comparison == 0;
+      case NOT_EQUAL:
+        return comparison -> comparison != 0;
+      case GREATER:
+        return comparison -> comparison > 0;
+      case GREATER_EQUAL:
+        return comparison -> comparison >= 0;
+      case LESS:
+        return comparison -> comparison < 0;
+      default:
+        return comparison -> comparison <= 0;
+    }
+  }
+
+  private CompiledExpression compileVarRef(VarRef varRef, Map<QueryVariable, Integer> slots) {
+    QueryVariable variable = varRef.getVariable();
+    int slot = getSlot(variable, slots);
+    if (slot == -1) {
+      return interpret(varRef, slots);
+    } else if (variable.getVariableType() == VariableType.VERTEX) {
+      return CompiledExpression.ofObject(frame -> {
+        int vertex = frame.binding[slot];
+        return vertex == -1 ? null : new Vertex(graph, vertex);
+      });
+    } else {
+      return CompiledExpression.ofObject(frame -> {
+        int edge = frame.binding[slot];
+        return edge == -1 ? null : new Edge(graph, edge);
+      });
+    }
+  }
+
+  private CompiledExpression compilePropertyAccess(PropertyAccess propertyAccess, Map<QueryVariable, Integer> slots) {
+    QueryVariable variable = propertyAccess.getVariable();
+    int slot = getSlot(variable, slots);
+    if (slot == -1) {
+      return interpret(propertyAccess, slots);
+    }
+    PropertyColumn column = variable.getVariableType() == VariableType.VERTEX
+        ? graph.getVertexPropertyColumn(propertyAccess.getPropertyName())
+        : graph.getEdgePropertyColumn(propertyAccess.getPropertyName());
+    if (column == null) {
+      return CompiledExpression.constant(null);
+    }
+
+    switch (column.getType()) {
+      case LONG:
+        return CompiledExpression.ofLong(frame -> {
+          int element = frame.binding[slot];
+          if (element == -1 || column.isNull(element)) {
+            frame.wasNull = true;
+            return 0;
+          }
+          frame.wasNull = false;
+          return column.getLong(element);
+        });
+      case DOUBLE:
+        return CompiledExpression.ofDouble(frame -> {
+          int element = frame.binding[slot];
+          if (element == -1 || column.isNull(element)) {
+            frame.wasNull = true;
+            return 0;
+          }
+          frame.wasNull = false;
+          return column.getDouble(element);
+        });
+      case BOOLEAN:
+        return CompiledExpression.ofBoolean(frame -> {
+          int element = frame.binding[slot];
+          return element == -1 || column.isNull(element) ? UNKNOWN : toBoolean(column.getBoolean(element));
+        });
+      default:
+        return CompiledExpression.ofObject(frame -> {
+          int element = frame.binding[slot];
+          return element == -1 ? null : column.get(element);
+        });
+    }
+  }
+
+  private CompiledExpression compileRegex(BinaryExpression regex, Map<QueryVariable, Integer> slots) {
+    if (regex.getExp2().getExpType() != ExpressionType.STRING) {
+      return interpret(regex, slots);
+    }
+    Pattern pattern;
+    try {
+      pattern = Pattern.compile((String) ((Constant<?>) regex.getExp2()).getValue());
+    } catch (PatternSyntaxException e) {
+      return CompiledExpression.ofBoolean(frame -> UNKNOWN);
+    }
+    ObjectEvaluator string = compileNode(regex.getExp1(), slots).asObject();
+    return CompiledExpression.ofBoolean(frame -> {
+      Object value = string.evaluate(frame);
+      return value instanceof String ? toBoolean(pattern.matcher((String) value).matches()) : UNKNOWN;
+    });
+  }
+
+  private CompiledExpression compileHasLabel(BinaryExpression hasLabel, Map<QueryVariable, Integer> slots) {
+    QueryExpression element = hasLabel.getExp1();
+    QueryExpression label = hasLabel.getExp2();
+    int slot = element.getExpType() == ExpressionType.VARREF ? getSlot(((VarRef) element).getVariable(), slots) : -1;
+    if (slot == -1 || label.getExpType() != ExpressionType.STRING) {
+      return interpret(hasLabel, slots);
+    }
+
+    int labelId = graph.getLabelId((String) ((Constant<?>) label).getValue());
+    if (((VarRef) element).getVariable().getVariableType() == VariableType.VERTEX) {
+      return CompiledExpression.ofBoolean(frame -> {
+        int vertex = frame.binding[slot];
+        return vertex == -1 ? UNKNOWN : toBoolean(labelId != -1 && graph.hasVertexLabel(vertex, labelId));
+      });
+    } else {
+      return CompiledExpression.ofBoolean(frame -> {
+        int edge = frame.binding[slot];
+        return edge == -1 ? UNKNOWN : toBoolean(labelId != -1 && graph.getEdgeLabelId(edge) == labelId);
+      });
+    }
+  }
+
+  /**
+   * Compiles ID, IN_DEGREE, OUT_DEGREE and LABEL of a vertex or edge of the graph pattern
+   */
+  private CompiledExpression compileElementFunction(UnaryExpression exp, Map<QueryVariable, Integer> slots) {
+    QueryExpression element = exp.getExp();
+    if (element.getExpType() != ExpressionType.VARREF) {
+      return interpret(exp, slots);
+    }
+    QueryVariable variable = ((VarRef) element).getVariable();
+    int slot = getSlot(variable, slots);
+    boolean isVertex = variable.getVariableType() == VariableType.VERTEX;
+
+    switch (exp.getExpType()) {
+      case ID:
+        if (slot != -1) {
+          return CompiledExpression.ofLong(frame -> {
+            int id = frame.binding[slot];
+            frame.wasNull = id == -1;
+            return id;
+          });
+        }
+        break;
+      case INDEGREE:
+      case OUTDEGREE:
+        if (slot != -1 && isVertex) {
+          boolean in = exp.getExpType() == ExpressionType.INDEGREE;
+          return CompiledExpression.ofLong(frame -> {
+            int vertex = frame.binding[slot];
+            if (vertex == -1) {
+              frame.wasNull = true;
+              return 0;
+            }
+            frame.wasNull = false;
+            return in ? graph.getInDegree(vertex) : graph.getOutDegree(vertex);
+          });
+        }
+        break;
+      default:
+        if (slot != -1 && !isVertex) {
+          return CompiledExpression.ofObject(frame -> {
+            int edge = frame.binding[slot];
+            return edge == -1 ? null : graph.getEdgeLabel(edge);
+          });
+        }
+    }
+    return interpret(exp, slots);
+  }
+
+  private CompiledExpression compileCast(Cast cast, Map<QueryVariable, Integer> slots) {
+    CompiledExpression operand = compileNode(cast.getExp(), slots);
+    String targetTypeName = cast.getTargetTypeName();
+    ObjectEvaluator value = operand.asObject();
+    switch (targetTypeName.toUpperCase()) {
+      case "INTEGER":
+      case "LONG":
+        if (operand.type == Type.LONG) {
+          return operand;
+        }
+        return CompiledExpression.ofLong(frame -> {
+          Object result = ExpressionInterpreter.cast(value.evaluate(frame), targetTypeName);
+          frame.wasNull = result == null;
+          return result == null ? 0 : (Long) result;
+        });
+      case "DOUBLE":
+      case "FLOAT":
+        if (operand.type == Type.DOUBLE) {
+          return operand;
+        }
+        return CompiledExpression.ofDouble(frame -> {
+          Object result = ExpressionInterpreter.cast(value.evaluate(frame), targetTypeName);
+          frame.wasNull = result == null;
+          return result == null ? 0 : (Double) result;
+        });
+      case "BOOLEAN":
+        if (operand.type == Type.BOOLEAN) {
+          return operand;
+        }
+        return CompiledExpression.ofBoolean(frame -> {
+          Object result = ExpressionInterpreter.cast(value.evaluate(frame), targetTypeName);
+          return result == null ? UNKNOWN : toBoolean((Boolean) result);
+        });
+      default:
+        return CompiledExpression.ofObject(frame -> ExpressionInterpreter.cast(value.evaluate(frame), targetTypeName));
+    }
+  }
+
+  /**
+   * @return the slot of the vertex or edge, or -1 if the variable is not a vertex or edge of the graph pattern
+   */
+  private static int getSlot(QueryVariable variable, Map<QueryVariable, Integer> slots) {
+    Integer slot = slots.get(variable);
+    return slot == null ? -1 : slot;
+  }
+
+  /**
+   * @return a string that is equal for two expressions if and only if they are structurally equal and refer to the
+   *         same slots, which identifies the compiled expression in the cache, or null if the expression refers to a
+   *         variable that is not a vertex or edge of the graph pattern and cannot be cached
+   */
+  static String getStructuralKey(QueryExpression exp, Map<QueryVariable, Integer> slots) {
+    StringBuilder sb = new StringBuilder();
+    return appendStructure(exp, slots, sb) ? sb.toString() : null;
+  }
+
+  /**
+   * @return false if the expression refers to a variable that does not have a slot
+   */
+  private static boolean appendStructure(QueryExpression exp, Map<QueryVariable, Integer> slots, StringBuilder sb) {
+    switch (exp.getExpType()) {
+      case VARREF:
+        return appendVariable(((VarRef) exp).getVariable(), slots, sb);
+      case PROP_ACCESS: {
+        PropertyAccess propertyAccess = (PropertyAccess) exp;
+        sb.append('.');
+        appendString(propertyAccess.getPropertyName(), sb);
+        return appendVariable(propertyAccess.getVariable(), slots, sb);
+      }
+      case BIND_VARIABLE:
+        sb.append('?').append(((BindVariable) exp).getParameterIndex());
+        return true;
+      case CAST: {
+        Cast cast = (Cast) exp;
+        sb.append("CAST:");
+        appendString(cast.getTargetTypeName(), sb);
+        return appendOperands(slots, sb, cast.getExp());
+      }
+      default:
+        break;
+    }
+
+    sb.append(exp.getExpType());
+    if (exp instanceof Constant) {
+      sb.append(':');
+      appendString(((Constant<?>) exp).getValue().toString(), sb);
+      return true;
+    } else if (exp instanceof UnaryExpression) {
+      return appendOperands(slots, sb, ((UnaryExpression) exp).getExp());
+    } else if (exp instanceof BinaryExpression) {
+      BinaryExpression binaryExp = (BinaryExpression) exp;
+      return appendOperands(slots, sb, binaryExp.getExp1(), binaryExp.getExp2());
+    } else if (exp instanceof TernaryExpression) {
+      TernaryExpression ternaryExp = (TernaryExpression) exp;
+      return appendOperands(slots, sb, ternaryExp.getExp1(), ternaryExp.getExp2(), ternaryExp.getExp3());
+    } else if (exp instanceof AllDifferent) {
+      return appendOperands(slots, sb, ((AllDifferent) exp).getExps().toArray(new QueryExpression[0]));
+    } else if (exp.getExpType() == ExpressionType.NULL) {
+      return true;
+    }
+    // e.g. a CALL statement, which is not supported by the engine
+    return false;
+  }
+
+  private static boolean appendOperands(Map<QueryVariable, Integer> slots, StringBuilder sb, QueryExpression... exps) {
+    sb.append('(');
+    for (int i = 0; i < exps.length; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      if (!appendStructure(exps[i], slots, sb)) {
+        return false;
+      }
+    }
+    sb.append(')');
+    return true;
+  }
+
+  private static boolean appendVariable(QueryVariable variable, Map<QueryVariable, Integer> slots, StringBuilder sb) {
+    Integer slot = slots.get(variable);
+    if (slot == null) {
+      return false;
+    }
+    sb.append('$').append(slot);
+    return true;
+  }
+
+  /**
+   * Appends the string prefixed by its length, so that strings cannot be confused with the structure around them
+   */
+  private static void appendString(String string, StringBuilder sb) {
+    sb.append(string.length()).append('\'').append(string);
+  }
+
+  /**
+   * Provides the vertices and edges of the frame to the interpreter by slot, and anything else through the context of
+   * the frame
+   */
+  private static final class SlotContext implements EvaluationContext {
+
+    private final PropertyGraph graph;
+
+    private final Map<QueryVariable, Integer> slots;
+
+    private final Frame frame;
+
+    SlotContext(PropertyGraph graph, Map<QueryVariable, Integer> slots, Frame frame) {
+      this.graph = graph;
+      this.slots = slots;
+      this.frame = frame;
+    }
+
+    @Override
+    public int getElementId(QueryVariable variable) {
+      Integer slot = slots.get(variable);
+      return slot == null ? frame.context.getElementId(variable) : frame.binding[slot];
+    }
+
+    @Override
+    public Object getValue(QueryVariable variable) {
+      Integer slot = slots.get(variable);
+      if (slot == null) {
+        return frame.context.getValue(variable);
+      }
+      int id = frame.binding[slot];
+      if (id == -1) {
+        return null;
+      }
+      return variable.getVariableType() == VariableType.VERTEX ? new Vertex(graph, id) : new Edge(graph, id);
+    }
+
+    @Override
+    public Object getAggregate(Aggregation aggregation) {
+      return frame.context.getAggregate(aggregation);
+    }
+  }
+}
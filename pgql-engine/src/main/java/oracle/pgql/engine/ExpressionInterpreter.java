@@ -0,0 +1,453 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation;
+import oracle.pgql.lang.ir.QueryExpression.BinaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.BindVariable;
+import oracle.pgql.lang.ir.QueryExpression.Constant;
+import oracle.pgql.lang.ir.QueryExpression.ExpressionType;
+import oracle.pgql.lang.ir.QueryExpression.Function.AllDifferent;
+import oracle.pgql.lang.ir.QueryExpression.Function.Cast;
+import oracle.pgql.lang.ir.QueryExpression.PropertyAccess;
+import oracle.pgql.lang.ir.QueryExpression.UnaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.VarRef;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.util.SqlDateTimeFormatter;
+
+/**
+ * Evaluates expressions on a match or a group. Following SQL, null is the unknown value: it is the result of any
+ * operation on null, of a division by zero, of a missing property and of an operation on values of the wrong type.
+ * AND, OR and NOT use three-valued logic.
+ *
+ * Integers are represented as Long and decimals as Double. Arithmetic on two integers results in an integer; otherwise
+ * the result is a decimal.
+ */
+final class ExpressionInterpreter {
+
+  private final PropertyGraph graph;
+
+  /**
+   * The values of the bind variables, by (zero-based) parameter index
+   */
+  private final Object[] parameters;
+
+  /**
+   * Synchronized, since the filters of paths may be evaluated by multiple threads at once
+   */
+  private final Map<String, Pattern> patterns = Collections.synchronizedMap(new HashMap<>());
+
+  ExpressionInterpreter(PropertyGraph graph, Object[] parameters) {
+    this.graph = graph;
+    this.parameters = parameters;
+  }
+
+  /**
+   * @return the value of the bind variable with the given (zero-based) index
+   */
+  Object getParameter(int parameterIndex) {
+    return parameters[parameterIndex];
+  }
+
+  /**
+   * @return true if the expression evaluates to true, and false if it evaluates to false or null
+   */
+  boolean isTrue(QueryExpression exp, EvaluationContext ctx) {
+    return Boolean.TRUE.equals(evaluate(exp, ctx));
+  }
+
+  Object evaluate(QueryExpression exp, EvaluationContext ctx) {
+    switch (exp.getExpType()) {
+      case INTEGER:
+      case DECIMAL:
+      case STRING:
+      case BOOLEAN:
+      case DATE:
+      case TIME:
+      case TIMESTAMP:
+      case TIME_WITH_TIMEZONE:
+      case TIMESTAMP_WITH_TIMEZONE:
+        return ((Constant<?>) exp).getValue();
+      case NULL:
+        return null;
+      case SUB:
+      case ADD:
+      case MUL:
+      case DIV:
+      case MOD:
+        return evaluateArithmetic(exp, ctx);
+      case UMIN: {
+        Object value = evaluate(((UnaryExpression) exp).getExp(), ctx);
+        if (value instanceof Long) {
+          return -(Long) value;
+        } else if (value instanceof Double) {
+          return -(Double) value;
+        }
+        return null;
+      }
+      case AND: {
+        BinaryExpression and = (BinaryExpression) exp;
+        Object value1 = evaluate(and.getExp1(), ctx);
+        if (Boolean.FALSE.equals(value1)) {
+          return false;
+        }
+        Object value2 = evaluate(and.getExp2(), ctx);
+        if (Boolean.FALSE.equals(value2)) {
+          return false;
+        }
+        return value1 instanceof Boolean && value2 instanceof Boolean ? Boolean.TRUE : null;
+      }
+      case OR: {
+        BinaryExpression or = (BinaryExpression) exp;
+        Object value1 = evaluate(or.getExp1(), ctx);
+        if (Boolean.TRUE.equals(value1)) {
+          return true;
+        }
+        Object value2 = evaluate(or.getExp2(), ctx);
+        if (Boolean.TRUE.equals(value2)) {
+          return true;
+        }
+        return value1 instanceof Boolean && value2 instanceof Boolean ? Boolean.FALSE : null;
+      }
+      case NOT: {
+        Object value = evaluate(((UnaryExpression) exp).getExp(), ctx);
+        return value instanceof Boolean ? !(Boolean) value : null;
+      }
+      case EQUAL:
+      case NOT_EQUAL: {
+        BinaryExpression binaryExp = (BinaryExpression) exp;
+        Boolean equal = Values.equal(evaluate(binaryExp.getExp1(), ctx), evaluate(binaryExp.getExp2(), ctx));
+        return equal == null ? null : equal == (exp.getExpType() == ExpressionType.EQUAL);
+      }
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL: {
+        BinaryExpression binaryExp = (BinaryExpression) exp;
+        Integer comparison = Values.compare(evaluate(binaryExp.getExp1(), ctx), evaluate(binaryExp.getExp2(), ctx));
+        if (comparison == null) {
+          return null;
+        }
+        switch (exp.getExpType()) {
+          case GREATER:
+            return comparison > 0;
+          case GREATER_EQUAL:
+            return comparison >= 0;
+          case LESS:
+            return comparison < 0;
+          default:
+            return comparison <= 0;
+        }
+      }
+      case AGGR_COUNT:
+      case AGGR_MIN:
+      case AGGR_MAX:
+      case AGGR_SUM:
+      case AGGR_AVG:
+        return ctx.getAggregate((Aggregation) exp);
+      case VARREF:
+        return ctx.getValue(((VarRef) exp).getVariable());
+      case BIND_VARIABLE:
+        return getParameter(((BindVariable) exp).getParameterIndex());
+      case PROP_ACCESS:
+        return evaluatePropertyAccess((PropertyAccess) exp, ctx);
+      case REGEX: {
+        BinaryExpression regex = (BinaryExpression) exp;
+        Object string = evaluate(regex.getExp1(), ctx);
+        Object pattern = evaluate(regex.getExp2(), ctx);
+        if (!(string instanceof String) || !(pattern instanceof String)) {
+          return null;
+        }
+        Pattern compiledPattern = getPattern((String) pattern);
+        return compiledPattern == null ? null : compiledPattern.matcher((String) string).matches();
+      }
+      case ID: {
+        Object element = evaluate(((UnaryExpression) exp).getExp(), ctx);
+        if (element instanceof Vertex) {
+          return (long) ((Vertex) element).getId();
+        } else if (element instanceof Edge) {
+          return (long) ((Edge) element).getId();
+        }
+        return null;
+      }
+      case HAS_PROP: {
+        BinaryExpression hasProp = (BinaryExpression) exp;
+        Object element = evaluate(hasProp.getExp1(), ctx);
+        Object propertyName = evaluate(hasProp.getExp2(), ctx);
+        if (!(propertyName instanceof String)) {
+          return null;
+        }
+        if (element instanceof Vertex) {
+          return ((Vertex) element).getProperty((String) propertyName) != null;
+        } else if (element instanceof Edge) {
+          return ((Edge) element).getProperty((String) propertyName) != null;
+        }
+        return null;
+      }
+      case HAS_LABEL: {
+        BinaryExpression hasLabel = (BinaryExpression) exp;
+        Object element = evaluate(hasLabel.getExp1(), ctx);
+        Object label = evaluate(hasLabel.getExp2(), ctx);
+        if (!(label instanceof String)) {
+          return null;
+        }
+        if (element instanceof Vertex) {
+          return graph.hasVertexLabel(((Vertex) element).getId(), (String) label);
+        } else if (element instanceof Edge) {
+          return label.equals(((Edge) element).getLabel());
+        }
+        return null;
+      }
+      case VERTEX_LABELS: {
+        Object element = evaluate(((UnaryExpression) exp).getExp(), ctx);
+        return element instanceof Vertex ? ((Vertex) element).getLabels() : null;
+      }
+      case INDEGREE:
+      case OUTDEGREE: {
+        Object element = evaluate(((UnaryExpression) exp).getExp(), ctx);
+        if (!(element instanceof Vertex)) {
+          return null;
+        }
+        int vertex = ((Vertex) element).getId();
+        return (long) (exp.getExpType() == ExpressionType.INDEGREE ? graph.getInDegree(vertex)
+            : graph.getOutDegree(vertex));
+      }
+      case EDGE_LABEL: {
+        Object element = evaluate(((UnaryExpression) exp).getExp(), ctx);
+        return element instanceof Edge ? ((Edge) element).getLabel() : null;
+      }
+      case CAST: {
+        Cast cast = (Cast) exp;
+        return cast(evaluate(cast.getExp(), ctx), cast.getTargetTypeName());
+      }
+      case ALL_DIFFERENT: {
+        Set<Object> values = new HashSet<>();
+        for (QueryExpression e : ((AllDifferent) exp).getExps()) {
+          Object value = evaluate(e, ctx);
+          if (value == null) {
+            return null;
+          }
+          if (!values.add(value instanceof Integer ? Long.valueOf((Integer) value) : value)) {
+            return false;
+          }
+        }
+        return true;
+      }
+      default:
+        // STAR only occurs in COUNT(*); spatial functions and CALL statements are rejected by the planner
+        throw new IllegalArgumentException("Cannot evaluate " + exp.getExpType() + ": " + exp);
+    }
+  }
+
+  private Object evaluateArithmetic(QueryExpression exp, EvaluationContext ctx) {
+    BinaryExpression binaryExp = (BinaryExpression) exp;
+    return arithmetic(exp.getExpType(), evaluate(binaryExp.getExp1(), ctx), evaluate(binaryExp.getExp2(), ctx));
+  }
+
+  /**
+   * @return the result of +, -, *, / or % on the values, or null if either value is not a number or in case of a
+   *         division by zero
+   */
+  static Object arithmetic(ExpressionType operator, Object value1, Object value2) {
+    if (!(value1 instanceof Number) || !(value2 instanceof Number)) {
+      return null;
+    }
+
+    if (value1 instanceof Long && value2 instanceof Long) {
+      long long1 = (Long) value1;
+      long long2 = (Long) value2;
+      switch (operator) {
+        case SUB:
+          return long1 - long2;
+        case ADD:
+          return long1 + long2;
+        case MUL:
+          return long1 * long2;
+        case DIV:
+          return long2 == 0 ? null : long1 / long2;
+        default:
+          return long2 == 0 ? null : long1 % long2;
+      }
+    }
+
+    double double1 = ((Number) value1).doubleValue();
+    double double2 = ((Number) value2).doubleValue();
+    switch (operator) {
+      case SUB:
+        return double1 - double2;
+      case ADD:
+        return double1 + double2;
+      case MUL:
+        return double1 * double2;
+      case DIV:
+        return double2 == 0 ? null : double1 / double2;
+      default:
+        return double2 == 0 ? null : double1 % double2;
+    }
+  }
+
+  private Object evaluatePropertyAccess(PropertyAccess propertyAccess, EvaluationContext ctx) {
+    QueryVariable variable = propertyAccess.getVariable();
+    String propertyName = propertyAccess.getPropertyName();
+    switch (variable.getVariableType()) {
+      case VERTEX: {
+        int vertex = ctx.getElementId(variable);
+        return vertex == -1 ? null : graph.getVertexProperty(vertex, propertyName);
+      }
+      case EDGE: {
+        int edge = ctx.getElementId(variable);
+        return edge == -1 ? null : graph.getEdgeProperty(edge, propertyName);
+      }
+      default: {
+        // e.g. a property of a GROUP BY key that is a vertex
+        Object element = ctx.getValue(variable);
+        if (element instanceof Vertex) {
+          return ((Vertex) element).getProperty(propertyName);
+        } else if (element instanceof Edge) {
+          return ((Edge) element).getProperty(propertyName);
+        }
+        return null;
+      }
+    }
+  }
+
+  private Pattern getPattern(String pattern) {
+    if (patterns.containsKey(pattern)) {
+      return patterns.get(pattern);
+    }
+    Pattern result;
+    try {
+      result = Pattern.compile(pattern);
+    } catch (PatternSyntaxException e) {
+      result = null;
+    }
+    patterns.put(pattern, result);
+    return result;
+  }
+
+  /**
+   * @return the converted value, or null if the value cannot be converted to the type
+   */
+  static Object cast(Object value, String targetTypeName) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      switch (targetTypeName.toUpperCase()) {
+        case "STRING":
+          return toString(value);
+        case "INTEGER":
+        case "LONG":
+          if (value instanceof Number) {
+            return ((Number) value).longValue();
+          } else if (value instanceof String) {
+            return Long.parseLong(((String) value).trim());
+          }
+          return null;
+        case "DOUBLE":
+        case "FLOAT":
+          if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+          } else if (value instanceof String) {
+            return Double.parseDouble(((String) value).trim());
+          }
+          return null;
+        case "BOOLEAN":
+          if (value instanceof Boolean) {
+            return value;
+          } else if (value instanceof String) {
+            String string = ((String) value).trim();
+            return string.equalsIgnoreCase("true") ? Boolean.TRUE
+                : string.equalsIgnoreCase("false") ? Boolean.FALSE : null;
+          }
+          return null;
+        case "DATE":
+          if (value instanceof LocalDate) {
+            return value;
+          } else if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).toLocalDate();
+          } else if (value instanceof OffsetDateTime) {
+            return ((OffsetDateTime) value).toLocalDate();
+          } else if (value instanceof String) {
+            return LocalDate.parse((String) value, SqlDateTimeFormatter.SQL_DATE);
+          }
+          return null;
+        case "TIME":
+          if (value instanceof LocalTime) {
+            return value;
+          } else if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).toLocalTime();
+          } else if (value instanceof OffsetTime) {
+            return ((OffsetTime) value).toLocalTime();
+          } else if (value instanceof OffsetDateTime) {
+            return ((OffsetDateTime) value).toLocalTime();
+          } else if (value instanceof String) {
+            return LocalTime.parse((String) value, SqlDateTimeFormatter.SQL_TIME);
+          }
+          return null;
+        case "TIMESTAMP":
+          if (value instanceof LocalDateTime) {
+            return value;
+          } else if (value instanceof LocalDate) {
+            return ((LocalDate) value).atStartOfDay();
+          } else if (value instanceof OffsetDateTime) {
+            return ((OffsetDateTime) value).toLocalDateTime();
+          } else if (value instanceof String) {
+            return LocalDateTime.parse((String) value, SqlDateTimeFormatter.SQL_TIMESTAMP);
+          }
+          return null;
+        case "TIME WITH TIME ZONE":
+          if (value instanceof OffsetTime) {
+            return value;
+          } else if (value instanceof OffsetDateTime) {
+            return ((OffsetDateTime) value).toOffsetTime();
+          } else if (value instanceof String) {
+            return OffsetTime.parse((String) value, SqlDateTimeFormatter.SQL_TIME_WITH_TIMEZONE);
+          }
+          return null;
+        case "TIMESTAMP WITH TIME ZONE":
+          if (value instanceof OffsetDateTime) {
+            return value;
+          } else if (value instanceof String) {
+            return OffsetDateTime.parse((String) value, SqlDateTimeFormatter.SQL_TIMESTAMP_WITH_TIMEZONE);
+          }
+          return null;
+        default:
+          return null;
+      }
+    } catch (NumberFormatException | DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  private static String toString(Object value) {
+    if (value instanceof LocalDate) {
+      return SqlDateTimeFormatter.SQL_DATE.format((LocalDate) value);
+    } else if (value instanceof LocalTime) {
+      return SqlDateTimeFormatter.SQL_TIME.format((LocalTime) value);
+    } else if (value instanceof LocalDateTime) {
+      return SqlDateTimeFormatter.SQL_TIMESTAMP.format((LocalDateTime) value);
+    } else if (value instanceof OffsetTime) {
+      return SqlDateTimeFormatter.SQL_TIME_WITH_TIMEZONE.format((OffsetTime) value);
+    } else if (value instanceof OffsetDateTime) {
+      return SqlDateTimeFormatter.SQL_TIMESTAMP_WITH_TIMEZONE.format((OffsetDateTime) value);
+    }
+    return value.toString();
+  }
+}
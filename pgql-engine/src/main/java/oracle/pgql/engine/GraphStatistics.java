@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+/**
+ * Cardinality statistics that the query planner uses to estimate the number of intermediate results of a matching
+ * order. Estimates do not need to be exact; {@link PropertyGraph#getStatistics()} provides statistics that are
+ * computed from the graph itself, but a different implementation (e.g. with statistics that were collected from a
+ * larger graph of which the in-memory graph is a sample) can be passed to
+ * {@link PropertyGraph#prepareStatement(oracle.pgql.lang.ir.GraphQuery, GraphStatistics)}.
+ */
+public interface GraphStatistics {
+
+  long getNumVertices();
+
+  long getNumEdges();
+
+  long getNumVerticesWithLabel(String label);
+
+  long getNumEdgesWithLabel(String label);
+
+  DegreeHistogram getOutDegreeHistogram();
+
+  DegreeHistogram getInDegreeHistogram();
+
+  /**
+   * @return the estimated fraction of the vertices of which the property is equal to a given value, for example the
+   *         fraction of vertices that have the property divided by the number of distinct values
+   */
+  double getVertexPropertySelectivity(String propertyName);
+
+  /**
+   * @return the estimated fraction of the edges of which the property is equal to a given value
+   */
+  double getEdgePropertySelectivity(String propertyName);
+}
@@ -0,0 +1,621 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+import oracle.pgql.lang.ir.QueryExpression.ExpressionType;
+import oracle.pgql.lang.ir.QueryVariable.VariableType;
+
+/**
+ * Groups matches on their GROUP BY keys and computes COUNT, MIN, MAX, SUM and AVG per group.
+ *
+ * The groups are stored in an open-addressing hash table with linear probing. The table holds group numbers, which
+ * index primitive arrays with the hash, the keys and the state of each aggregation of the groups, so a group is not an
+ * object and looking up the group of a match allocates nothing. A key that is a vertex or an edge is stored as its id.
+ * The groups are numbered in the order in which they are first seen.
+ *
+ * Once the estimated size of the groups exceeds the memory budget, the groups are sorted on their hash and written to a
+ * {@link SpillFile} as a run, and the table is cleared. If there are runs at the end, the groups that are still in
+ * memory are written as the last run, and the runs are merged on their hash: the partial states of the groups with the
+ * same hash are combined in a small table, which is emitted and cleared before the next hash. The groups are then
+ * emitted in the order of their hash rather than in the order in which they were first seen.
+ *
+ * Instances are not thread-safe.
+ */
+final class GroupTable implements AutoCloseable {
+
+  /**
+   * The estimated size of an object that a key or an aggregation refers to, in addition to the reference
+   */
+  private static final int BYTES_PER_OBJECT = 48;
+
+  /**
+   * The minimum number of groups that are written to a run, which limits the number of runs if the memory budget is
+   * very small
+   */
+  static final int MIN_GROUPS_PER_RUN = 64;
+
+  interface GroupConsumer {
+
+    void accept(GroupTable table, int group);
+  }
+
+  private final PropertyGraph graph;
+
+  /**
+   * VERTEX or EDGE for keys that are stored as element ids, or null for keys that are stored as values
+   */
+  private final VariableType[] keyTypes;
+
+  /**
+   * The index of each key in the element id or value arrays of a group
+   */
+  private final int[] keyIndices;
+
+  private final int numElementKeys;
+
+  private final int numValueKeys;
+
+  private final ExpressionType[] aggregationTypes;
+
+  private final AggregateColumn[] aggregates;
+
+  private final long memoryBudget;
+
+  private final Path spillDirectory;
+
+  private final long bytesPerGroup;
+
+  /**
+   * The keys of the group that is looked up
+   */
+  private final int[] probeElementIds;
+
+  private final Object[] probeValues;
+
+  /**
+   * The group number plus one of each slot of the hash table, or 0 if the slot is empty
+   */
+  private int[] slots;
+
+  private int numGroups;
+
+  private int[] hashes;
+
+  private int[] elementIds;
+
+  private Object[] values;
+
+  /**
+   * The estimated size of the strings of the keys of the groups
+   */
+  private long stringBytes;
+
+  private final List<SpillFile> runs = new ArrayList<>();
+
+  /**
+   * @param keyTypes
+   *          VERTEX or EDGE for keys that are vertices or edges, or null for keys of any other type
+   * @param memoryBudget
+   *          the estimated number of bytes that the groups may take before they are spilled
+   */
+  GroupTable(PropertyGraph graph, VariableType[] keyTypes, ExpressionType[] aggregationTypes, long memoryBudget,
+      Path spillDirectory) {
+    this.graph = graph;
+    this.keyTypes = keyTypes;
+    this.aggregationTypes = aggregationTypes;
+    this.memoryBudget = memoryBudget;
+    this.spillDirectory = spillDirectory;
+    keyIndices = new int[keyTypes.length];
+    int elementKeys = 0;
+    int valueKeys = 0;
+    for (int i = 0; i < keyTypes.length; i++) {
+      keyIndices[i] = keyTypes[i] == null ? valueKeys++ : elementKeys++;
+    }
+    numElementKeys = elementKeys;
+    numValueKeys = valueKeys;
+    probeElementIds = new int[numElementKeys];
+    probeValues = new Object[numValueKeys];
+
+    aggregates = new AggregateColumn[aggregationTypes.length];
+    // two slots, the hash and the keys
+    long groupBytes = 2 * Integer.BYTES + Integer.BYTES + numElementKeys * Integer.BYTES
+        + numValueKeys * (8 + BYTES_PER_OBJECT);
+    for (int i = 0; i < aggregates.length; i++) {
+      aggregates[i] = new AggregateColumn(aggregationTypes[i]);
+      groupBytes += aggregates[i].getBytesPerGroup();
+    }
+    bytesPerGroup = groupBytes;
+
+    int capacity = 16;
+    slots = new int[2 * capacity];
+    hashes = new int[capacity];
+    elementIds = new int[capacity * numElementKeys];
+    values = new Object[capacity * numValueKeys];
+    for (AggregateColumn aggregate : aggregates) {
+      aggregate.grow(capacity);
+    }
+  }
+
+  /**
+   * Sets a key of the group that is looked up by the next {@link #findOrInsert()} to a vertex or edge
+   *
+   * @param elementId
+   *          the id of the vertex or edge, or -1 for null
+   */
+  void setElementKey(int key, int elementId) {
+    probeElementIds[keyIndices[key]] = elementId;
+  }
+
+  /**
+   * Sets a key of the group that is looked up by the next {@link #findOrInsert()} to a value
+   */
+  void setValueKey(int key, Object value) {
+    probeValues[keyIndices[key]] = value;
+  }
+
+  /**
+   * @return the group with the keys that were set, which is created if it does not exist yet
+   */
+  int findOrInsert() {
+    int hash = 1;
+    for (int elementId : probeElementIds) {
+      hash = 31 * hash + elementId;
+    }
+    for (Object value : probeValues) {
+      hash = 31 * hash + Objects.hashCode(value);
+    }
+    return findOrInsert(mix(hash));
+  }
+
+  private int findOrInsert(int hash) {
+    int mask = slots.length - 1;
+    for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+      int group = slots[slot] - 1;
+      if (group == -1) {
+        break;
+      }
+      if (hashes[group] == hash && hasProbeKeys(group)) {
+        return group;
+      }
+    }
+
+    if (numGroups >= MIN_GROUPS_PER_RUN && numGroups * bytesPerGroup + stringBytes > memoryBudget) {
+      spill();
+    }
+    if (numGroups == hashes.length) {
+      grow();
+    }
+    int group = numGroups++;
+    hashes[group] = hash;
+    System.arraycopy(probeElementIds, 0, elementIds, group * numElementKeys, numElementKeys);
+    System.arraycopy(probeValues, 0, values, group * numValueKeys, numValueKeys);
+    for (Object value : probeValues) {
+      if (value instanceof String) {
+        stringBytes += 2 * ((String) value).length();
+      }
+    }
+    for (AggregateColumn aggregate : aggregates) {
+      aggregate.reset(group);
+    }
+    insert(group);
+    return group;
+  }
+
+  private boolean hasProbeKeys(int group) {
+    for (int i = 0; i < numElementKeys; i++) {
+      if (elementIds[group * numElementKeys + i] != probeElementIds[i]) {
+        return false;
+      }
+    }
+    for (int i = 0; i < numValueKeys; i++) {
+      if (!Objects.equals(values[group * numValueKeys + i], probeValues[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void insert(int group) {
+    int mask = slots.length - 1;
+    int slot = hashes[group] & mask;
+    while (slots[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    slots[slot] = group + 1;
+  }
+
+  /**
+   * Doubles the number of groups that fit in the table, keeping the hash table at most half full
+   */
+  private void grow() {
+    int capacity = 2 * hashes.length;
+    hashes = Arrays.copyOf(hashes, capacity);
+    elementIds = Arrays.copyOf(elementIds, capacity * numElementKeys);
+    values = Arrays.copyOf(values, capacity * numValueKeys);
+    for (AggregateColumn aggregate : aggregates) {
+      aggregate.grow(capacity);
+    }
+    slots = new int[2 * capacity];
+    for (int group = 0; group < numGroups; group++) {
+      insert(group);
+    }
+  }
+
+  /**
+   * Spreads the bits of the hash code, since linear probing uses its lowest bits
+   */
+  private static int mix(int hash) {
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Adds the value of an aggregation in a match to the group of the match
+   */
+  void add(int group, int aggregation, Object value) {
+    aggregates[aggregation].add(group, value);
+  }
+
+  /**
+   * @return the number of groups in memory
+   */
+  int size() {
+    return numGroups;
+  }
+
+  /**
+   * @return the number of runs that were spilled
+   */
+  int getNumRuns() {
+    return runs.size();
+  }
+
+  /**
+   * @return the value of a key of the group
+   */
+  Object getKey(int group, int key) {
+    int index = keyIndices[key];
+    if (keyTypes[key] == null) {
+      return values[group * numValueKeys + index];
+    }
+    int elementId = elementIds[group * numElementKeys + index];
+    if (elementId == -1) {
+      return null;
+    }
+    return keyTypes[key] == VariableType.VERTEX ? new Vertex(graph, elementId) : new Edge(graph, elementId);
+  }
+
+  /**
+   * @return the result of an aggregation for the group
+   */
+  Object getAggregate(int group, int aggregation) {
+    return aggregates[aggregation].getResult(group);
+  }
+
+  /**
+   * Writes the groups to a new run, sorted on their hash, and clears the table
+   */
+  private void spill() {
+    long[] order = new long[numGroups];
+    for (int group = 0; group < numGroups; group++) {
+      order[group] = ((long) hashes[group] << 32) | group;
+    }
+    Arrays.sort(order);
+
+    SpillFile run = new SpillFile(graph, spillDirectory);
+    runs.add(run);
+    for (long hashAndGroup : order) {
+      int group = (int) hashAndGroup;
+      run.writeInt(hashes[group]);
+      for (int i = 0; i < numElementKeys; i++) {
+        run.writeInt(elementIds[group * numElementKeys + i]);
+      }
+      for (int i = 0; i < numValueKeys; i++) {
+        run.writeValue(values[group * numValueKeys + i]);
+      }
+      for (AggregateColumn aggregate : aggregates) {
+        aggregate.write(group, run);
+      }
+    }
+    clear();
+  }
+
+  private void clear() {
+    Arrays.fill(slots, 0);
+    Arrays.fill(values, 0, numGroups * numValueKeys, null);
+    for (AggregateColumn aggregate : aggregates) {
+      aggregate.clear(numGroups);
+    }
+    numGroups = 0;
+    stringBytes = 0;
+  }
+
+  /**
+   * Reads a group from a run and combines its partial state with the group with the same keys in this table
+   */
+  private void merge(int hash, SpillFile run) {
+    for (int i = 0; i < numElementKeys; i++) {
+      probeElementIds[i] = run.readInt();
+    }
+    for (int i = 0; i < numValueKeys; i++) {
+      probeValues[i] = run.readValue();
+    }
+    int group = findOrInsert(hash);
+    for (AggregateColumn aggregate : aggregates) {
+      aggregate.merge(group, run);
+    }
+  }
+
+  /**
+   * Passes each group to the consumer, after merging the runs if groups were spilled. The table cannot be used anymore
+   * afterwards.
+   */
+  void forEachGroup(GroupConsumer consumer) {
+    if (runs.isEmpty()) {
+      for (int group = 0; group < numGroups; group++) {
+        consumer.accept(this, group);
+      }
+      return;
+    }
+
+    spill();
+    PriorityQueue<RunCursor> cursors = new PriorityQueue<>((cursor1, cursor2) -> Integer.compare(cursor1.hash,
+        cursor2.hash));
+    for (SpillFile run : runs) {
+      run.startReading();
+      RunCursor cursor = new RunCursor(run);
+      if (cursor.next()) {
+        cursors.add(cursor);
+      }
+    }
+    GroupTable merged = new GroupTable(graph, keyTypes, aggregationTypes, Long.MAX_VALUE, null);
+    while (!cursors.isEmpty()) {
+      int hash = cursors.peek().hash;
+      while (!cursors.isEmpty() && cursors.peek().hash == hash) {
+        RunCursor cursor = cursors.poll();
+        merged.merge(hash, cursor.run);
+        if (cursor.next()) {
+          cursors.add(cursor);
+        }
+      }
+      for (int group = 0; group < merged.numGroups; group++) {
+        consumer.accept(merged, group);
+      }
+      merged.clear();
+    }
+  }
+
+  /**
+   * Deletes the runs
+   */
+  @Override
+  public void close() {
+    for (SpillFile run : runs) {
+      run.close();
+    }
+    runs.clear();
+  }
+
+  /**
+   * The position of a merge in a run: the hash of the next group, of which the keys and states are read next
+   */
+  private static final class RunCursor {
+
+    final SpillFile run;
+
+    int hash;
+
+    RunCursor(SpillFile run) {
+      this.run = run;
+    }
+
+    boolean next() {
+      if (!run.hasRemaining()) {
+        return false;
+      }
+      hash = run.readInt();
+      return true;
+    }
+  }
+
+  /**
+   * The states of one aggregation for all groups. Null values are ignored.
+   */
+  private static final class AggregateColumn {
+
+    private final ExpressionType aggregationType;
+
+    /**
+     * The number of values that were aggregated
+     */
+    private long[] counts;
+
+    /**
+     * The minimum or maximum value
+     */
+    private Object[] values;
+
+    /**
+     * Whether a sum includes a decimal value, in which case it is in doubleSums
+     */
+    private boolean[] decimals;
+
+    private long[] longSums;
+
+    private double[] doubleSums;
+
+    AggregateColumn(ExpressionType aggregationType) {
+      this.aggregationType = aggregationType;
+      counts = new long[0];
+      switch (aggregationType) {
+        case AGGR_COUNT:
+          break;
+        case AGGR_MIN:
+        case AGGR_MAX:
+          values = new Object[0];
+          break;
+        case AGGR_SUM:
+        case AGGR_AVG:
+          decimals = new boolean[0];
+          longSums = new long[0];
+          doubleSums = new double[0];
+          break;
+        default:
+          throw new IllegalStateException(aggregationType.toString());
+      }
+    }
+
+    long getBytesPerGroup() {
+      return Long.BYTES + (values != null ? 8 + BYTES_PER_OBJECT : 0) + (decimals != null ? 1 + 2 * Long.BYTES : 0);
+    }
+
+    void grow(int capacity) {
+      counts = Arrays.copyOf(counts, capacity);
+      if (values != null) {
+        values = Arrays.copyOf(values, capacity);
+      }
+      if (decimals != null) {
+        decimals = Arrays.copyOf(decimals, capacity);
+        longSums = Arrays.copyOf(longSums, capacity);
+        doubleSums = Arrays.copyOf(doubleSums, capacity);
+      }
+    }
+
+    void reset(int group) {
+      counts[group] = 0;
+      if (values != null) {
+        values[group] = null;
+      }
+      if (decimals != null) {
+        decimals[group] = false;
+        longSums[group] = 0;
+        doubleSums[group] = 0;
+      }
+    }
+
+    /**
+     * Releases the values of the groups
+     */
+    void clear(int numGroups) {
+      if (values != null) {
+        Arrays.fill(values, 0, numGroups, null);
+      }
+    }
+
+    void add(int group, Object value) {
+      if (value == null) {
+        return;
+      }
+      switch (aggregationType) {
+        case AGGR_COUNT:
+          break;
+        case AGGR_MIN:
+        case AGGR_MAX:
+          addMinMax(group, value);
+          break;
+        case AGGR_SUM:
+        case AGGR_AVG: {
+          if (!(value instanceof Number)) {
+            return;
+          }
+          if (value instanceof Long && !decimals[group]) {
+            longSums[group] += (Long) value;
+          } else {
+            addDecimal(group, ((Number) value).doubleValue());
+          }
+          break;
+        }
+        default:
+          throw new IllegalStateException(aggregationType.toString());
+      }
+      counts[group]++;
+    }
+
+    private void addMinMax(int group, Object value) {
+      if (values[group] == null) {
+        values[group] = value;
+      } else {
+        Integer comparison = Values.compare(value, values[group]);
+        if (comparison != null && (aggregationType == ExpressionType.AGGR_MIN ? comparison < 0 : comparison > 0)) {
+          values[group] = value;
+        }
+      }
+    }
+
+    private void addDecimal(int group, double value) {
+      if (!decimals[group]) {
+        decimals[group] = true;
+        doubleSums[group] = longSums[group];
+      }
+      doubleSums[group] += value;
+    }
+
+    void write(int group, SpillFile run) {
+      run.writeLong(counts[group]);
+      if (values != null) {
+        run.writeValue(values[group]);
+      }
+      if (decimals != null) {
+        run.writeBoolean(decimals[group]);
+        if (decimals[group]) {
+          run.writeDouble(doubleSums[group]);
+        } else {
+          run.writeLong(longSums[group]);
+        }
+      }
+    }
+
+    /**
+     * Reads a state that was written by {@link #write(int, SpillFile)} and combines it with the state of the group
+     */
+    void merge(int group, SpillFile run) {
+      counts[group] += run.readLong();
+      if (values != null) {
+        Object value = run.readValue();
+        if (value != null) {
+          addMinMax(group, value);
+        }
+      }
+      if (decimals != null) {
+        if (run.readBoolean()) {
+          addDecimal(group, run.readDouble());
+        } else if (decimals[group]) {
+          doubleSums[group] += run.readLong();
+        } else {
+          longSums[group] += run.readLong();
+        }
+      }
+    }
+
+    Object getResult(int group) {
+      long count = counts[group];
+      switch (aggregationType) {
+        case AGGR_COUNT:
+          return count;
+        case AGGR_MIN:
+        case AGGR_MAX:
+          return values[group];
+        case AGGR_SUM:
+          if (count == 0) {
+            return null;
+          }
+          return decimals[group] ? (Object) doubleSums[group] : (Object) longSums[group];
+        case AGGR_AVG:
+          return count == 0 ? null : (decimals[group] ? doubleSums[group] : longSums[group]) / (double) count;
+        default:
+          throw new IllegalStateException(aggregationType.toString());
+      }
+    }
+  }
+}
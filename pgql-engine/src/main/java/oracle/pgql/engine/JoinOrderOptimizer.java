@@ -0,0 +1,495 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import oracle.pgql.engine.QueryPlan.MatchStep;
+import oracle.pgql.engine.QueryPlan.MatchStep.Kind;
+import oracle.pgql.lang.ir.QueryEdge;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryPath;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.ir.QueryVertex;
+import oracle.pgql.lang.ir.VertexPairConnection;
+
+/**
+ * Chooses the order in which the vertices of a graph pattern are matched, by minimizing the estimated number of
+ * vertices and edges that are visited.
+ *
+ * A matching order is a sequence of actions that each bind one more vertex: either a scan over all vertices or an
+ * expansion over an edge or path from an already bound vertex. As soon as both endpoints of an edge or path are bound,
+ * the edge or path is checked, since that only reduces the number of intermediate results. Since the cost of the
+ * remaining actions only depends on the set of bound vertices, the cheapest order is found with dynamic programming
+ * over these sets; larger patterns are ordered greedily. Scans are only considered when no edge leads out of the bound
+ * vertices, so unconnected parts of a pattern are matched one after the other.
+ *
+ * An expansion that closes cycles, because the vertex that it binds has directed edges to other bound vertices as
+ * well, is turned into an intersection of the sorted neighbors of all these bound vertices, followed by the checks of
+ * the edges. For a triangle, the third vertex is then found among the common neighbors of the first two, rather than
+ * by checking each neighbor of one of them for an edge to the other. This is Leapfrog Triejoin (Veldhuizen) for the
+ * one variable that is bound per step, which keeps matching cyclic patterns within the worst-case optimal bound.
+ */
+final class JoinOrderOptimizer {
+
+  /**
+   * Patterns with more vertices are ordered greedily, since dynamic programming takes 2^n space
+   */
+  static final int MAX_VERTICES_FOR_DYNAMIC_PROGRAMMING = 14;
+
+  /**
+   * Paths are estimated for at most this many hops
+   */
+  private static final int MAX_ESTIMATED_HOPS = 64;
+
+  private final List<QueryVertex> vertices;
+
+  /**
+   * The edges and paths of the pattern
+   */
+  private final List<VertexPairConnection> edges;
+
+  private final Map<QueryPath, PathAutomaton> automata;
+
+  private final Map<QueryVariable, Integer> slots;
+
+  private final double numVertices;
+
+  private final double meanOutDegree;
+
+  private final double meanInDegree;
+
+  /**
+   * The constraints that refer to at least one vertex or edge, with the slots of the vertices and edges they refer to
+   */
+  private final Map<QueryExpression, BitSet> constraintSlots = new LinkedHashMap<>();
+
+  private final Map<QueryExpression, Double> selectivities = new LinkedHashMap<>();
+
+  /**
+   * @param slots
+   *          the slot of each vertex, edge and path; the vertices have slots 0 to vertices.size() - 1 in order and the
+   *          edges and paths follow them
+   * @param automata
+   *          the compiled path pattern of each path
+   */
+  JoinOrderOptimizer(List<QueryVertex> vertices, List<VertexPairConnection> edges, Map<QueryVariable, Integer> slots,
+      Map<QueryPath, PathAutomaton> automata, Map<QueryExpression, Set<QueryVariable>> constraintVariables,
+      SelectivityEstimator estimator) {
+    this.vertices = vertices;
+    this.edges = edges;
+    this.automata = automata;
+    this.slots = slots;
+    GraphStatistics statistics = estimator.getStatistics();
+    numVertices = Math.max(1, statistics.getNumVertices());
+    meanOutDegree = statistics.getOutDegreeHistogram().getMean();
+    meanInDegree = statistics.getInDegreeHistogram().getMean();
+    for (Map.Entry<QueryExpression, Set<QueryVariable>> entry : constraintVariables.entrySet()) {
+      BitSet constraintSlots = new BitSet();
+      for (QueryVariable variable : entry.getValue()) {
+        constraintSlots.set(slots.get(variable));
+      }
+      this.constraintSlots.put(entry.getKey(), constraintSlots);
+      selectivities.put(entry.getKey(), estimator.estimate(entry.getKey()));
+    }
+  }
+
+  /**
+   * @return the match steps, with each constraint attached to the first step after which all its variables are bound
+   */
+  List<MatchStep> optimize() {
+    List<Integer> actions = vertices.size() <= MAX_VERTICES_FOR_DYNAMIC_PROGRAMMING ? orderExhaustively()
+        : orderGreedily();
+
+    List<MatchStep> steps = new ArrayList<>();
+    long boundVertices = 0;
+    double cardinality = 1;
+    for (int action : actions) {
+      Transition transition = apply(boundVertices, action, steps, cardinality);
+      boundVertices = transition.boundVertices;
+      cardinality *= transition.multiplier;
+    }
+    return intersectCycles(steps);
+  }
+
+  /**
+   * Replaces each expansion over a directed edge that is followed by checks of other directed edges to the vertex that
+   * it binds by an INTERSECT step, followed by a check of the edge of the expansion
+   */
+  private List<MatchStep> intersectCycles(List<MatchStep> steps) {
+    List<MatchStep> result = new ArrayList<>();
+    for (int i = 0; i < steps.size(); i++) {
+      MatchStep step = steps.get(i);
+      if (step.toBound || (step.kind != Kind.EXPAND_OUT && step.kind != Kind.EXPAND_IN)) {
+        result.add(step);
+        continue;
+      }
+
+      int vertex = step.toSlot;
+      List<Integer> fromSlots = new ArrayList<>();
+      List<Boolean> outgoing = new ArrayList<>();
+      fromSlots.add(step.fromSlot);
+      outgoing.add(step.kind == Kind.EXPAND_OUT);
+      // the checks that follow the expansion all involve the vertex that it binds
+      for (int j = i + 1; j < steps.size() && steps.get(j).toBound; j++) {
+        MatchStep check = steps.get(j);
+        if (check.kind != Kind.EXPAND_OUT || check.fromSlot == check.toSlot) {
+          continue;
+        }
+        boolean checkOutgoing = check.toSlot == vertex;
+        fromSlots.add(checkOutgoing ? check.fromSlot : check.toSlot);
+        outgoing.add(checkOutgoing);
+      }
+      if (fromSlots.size() < 2) {
+        result.add(step);
+        continue;
+      }
+
+      int[] intersectFromSlots = new int[fromSlots.size()];
+      boolean[] intersectOutgoing = new boolean[fromSlots.size()];
+      StringBuilder description = new StringBuilder(vertices.get(vertex).getName());
+      for (int j = 0; j < intersectFromSlots.length; j++) {
+        intersectFromSlots[j] = fromSlots.get(j);
+        intersectOutgoing[j] = outgoing.get(j);
+        description.append(intersectOutgoing[j] ? " out(" : " in(").append(vertices.get(fromSlots.get(j)).getName())
+            .append(')');
+      }
+      MatchStep intersect = new MatchStep(intersectFromSlots, intersectOutgoing, vertex, description.toString());
+      int src = step.kind == Kind.EXPAND_OUT ? step.fromSlot : vertex;
+      int dst = step.kind == Kind.EXPAND_OUT ? vertex : step.fromSlot;
+      MatchStep edgeCheck = new MatchStep(Kind.EXPAND_OUT, src, step.edgeSlot, dst, true, null,
+          describe(src, step.edgeSlot, dst));
+      // constraints on the vertex are evaluated before the edge is bound
+      for (QueryExpression filter : step.filters) {
+        if (constraintSlots.get(filter).get(step.edgeSlot)) {
+          edgeCheck.filters.add(filter);
+        } else {
+          intersect.filters.add(filter);
+        }
+      }
+      intersect.estimatedCardinality = step.estimatedCardinality;
+      edgeCheck.estimatedCardinality = step.estimatedCardinality;
+      result.add(intersect);
+      result.add(edgeCheck);
+    }
+    return result;
+  }
+
+  /**
+   * @return the cheapest sequence of actions, found by dynamic programming over the sets of bound vertices
+   */
+  private List<Integer> orderExhaustively() {
+    int numSets = 1 << vertices.size();
+    Partial[] best = new Partial[numSets];
+    best[0] = new Partial(0, 1, -1, null);
+    // actions only add vertices, so a set is complete before any of its supersets is visited
+    for (int set = 0; set < numSets - 1; set++) {
+      Partial partial = best[set];
+      if (partial == null) {
+        continue;
+      }
+      for (int action : getCandidateActions(set)) {
+        Transition transition = apply(set, action, null, 0);
+        double cost = partial.cost + partial.cardinality * transition.unitCost;
+        int newSet = (int) transition.boundVertices;
+        if (best[newSet] == null || cost < best[newSet].cost) {
+          best[newSet] = new Partial(cost, partial.cardinality * transition.multiplier, action, partial);
+        }
+      }
+    }
+
+    List<Integer> result = new ArrayList<>();
+    for (Partial partial = best[numSets - 1]; partial.action != -1; partial = partial.previous) {
+      result.add(0, partial.action);
+    }
+    return result;
+  }
+
+  /**
+   * @return a sequence of actions that each time takes the action that results in the fewest intermediate results
+   */
+  private List<Integer> orderGreedily() {
+    List<Integer> result = new ArrayList<>();
+    long boundVertices = 0;
+    while (Long.bitCount(boundVertices) < vertices.size()) {
+      int bestAction = -1;
+      Transition bestTransition = null;
+      for (int action : getCandidateActions(boundVertices)) {
+        Transition transition = apply(boundVertices, action, null, 0);
+        if (bestTransition == null || transition.multiplier < bestTransition.multiplier
+            || (transition.multiplier == bestTransition.multiplier && transition.unitCost < bestTransition.unitCost)) {
+          bestAction = action;
+          bestTransition = transition;
+        }
+      }
+      result.add(bestAction);
+      boundVertices = bestTransition.boundVertices;
+    }
+    return result;
+  }
+
+  /**
+   * An action is the slot of the edge or path to expand over or of the vertex to scan.
+   */
+  private List<Integer> getCandidateActions(long boundVertices) {
+    List<Integer> result = new ArrayList<>();
+    for (VertexPairConnection edge : edges) {
+      if (isBound(boundVertices, edge.getSrc()) != isBound(boundVertices, edge.getDst())) {
+        result.add(slots.get(edge));
+      }
+    }
+    if (result.isEmpty()) {
+      for (int vertex = 0; vertex < vertices.size(); vertex++) {
+        if ((boundVertices & (1L << vertex)) == 0) {
+          result.add(vertex);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Estimates the effect of an action and of the edge checks that follow it. Per intermediate result before the action,
+   * the action visits unitCost vertices or edges and results in multiplier intermediate results.
+   *
+   * @param steps
+   *          if not null, the match steps for the action are added to this list
+   * @param cardinality
+   *          the estimated number of intermediate results before the action, to annotate the match steps with
+   */
+  private Transition apply(long boundVertices, int action, List<MatchStep> steps, double cardinality) {
+    BitSet boundSlots = getBoundSlots(boundVertices);
+    double multiplier;
+    double unitCost;
+    long newBoundVertices;
+    MatchStep step;
+    BitSet before = (BitSet) boundSlots.clone();
+    if (action < vertices.size()) {
+      newBoundVertices = boundVertices | (1L << action);
+      unitCost = numVertices;
+      multiplier = numVertices;
+      boundSlots.set(action);
+      step = addStep(steps, Kind.SCAN_VERTEX, -1, -1, action, false);
+    } else {
+      VertexPairConnection edge = edges.get(action - vertices.size());
+      boolean forward = isBound(boundVertices, edge.getSrc());
+      int from = slots.get(forward ? edge.getSrc() : edge.getDst());
+      int to = slots.get(forward ? edge.getDst() : edge.getSrc());
+      newBoundVertices = boundVertices | (1L << to);
+      double fanOut = getFanOut(edge, forward);
+      unitCost = getExpansionCost(edge, forward);
+      multiplier = fanOut;
+      boundSlots.set(action);
+      boundSlots.set(to);
+      Kind kind;
+      if (edge instanceof QueryPath) {
+        kind = forward ? Kind.REACH_OUT : Kind.REACH_IN;
+      } else {
+        kind = !((QueryEdge) edge).isDirected() ? Kind.EXPAND_UNDIRECTED : forward ? Kind.EXPAND_OUT : Kind.EXPAND_IN;
+      }
+      step = addStep(steps, kind, from, action, to, false);
+    }
+    multiplier *= applyConstraints(before, boundSlots, step);
+    setEstimatedCardinality(step, cardinality * multiplier);
+
+    // check the edges of which both endpoints are now bound; such a check finds the other endpoint through a binary
+    // search and is expected to succeed for (degree / number of vertices) of the intermediate results
+    for (VertexPairConnection edge : edges) {
+      int edgeSlot = slots.get(edge);
+      if (!boundSlots.get(edgeSlot) && isBound(newBoundVertices, edge.getSrc())
+          && isBound(newBoundVertices, edge.getDst())) {
+        double fanOut = getFanOut(edge, true);
+        if (edge instanceof QueryPath) {
+          // a search from both ends that stops when they meet
+          unitCost += multiplier * getExpansionCost(edge, true);
+        } else {
+          unitCost += multiplier * (1 + log2(1 + fanOut));
+        }
+        multiplier *= fanOut / numVertices;
+        before = (BitSet) boundSlots.clone();
+        boundSlots.set(edgeSlot);
+        Kind kind;
+        if (edge instanceof QueryPath) {
+          kind = Kind.REACH_OUT;
+        } else {
+          kind = ((QueryEdge) edge).isDirected() ? Kind.EXPAND_OUT : Kind.EXPAND_UNDIRECTED;
+        }
+        step = addStep(steps, kind, slots.get(edge.getSrc()), edgeSlot, slots.get(edge.getDst()), true);
+        multiplier *= applyConstraints(before, boundSlots, step);
+        setEstimatedCardinality(step, cardinality * multiplier);
+      }
+    }
+    return new Transition(newBoundVertices, multiplier, unitCost);
+  }
+
+  private static void setEstimatedCardinality(MatchStep step, double cardinality) {
+    if (step != null) {
+      step.estimatedCardinality = cardinality;
+    }
+  }
+
+  private MatchStep addStep(List<MatchStep> steps, Kind kind, int fromSlot, int edgeSlot, int toSlot,
+      boolean toBound) {
+    if (steps == null) {
+      return null;
+    }
+    String description = kind == Kind.SCAN_VERTEX ? vertices.get(toSlot).getName()
+        : describe(fromSlot, edgeSlot, toSlot);
+    PathAutomaton automaton = kind == Kind.REACH_OUT || kind == Kind.REACH_IN
+        ? automata.get(edges.get(edgeSlot - vertices.size()))
+        : null;
+    MatchStep step = new MatchStep(kind, fromSlot, edgeSlot, toSlot, toBound, automaton, description);
+    steps.add(step);
+    return step;
+  }
+
+  private String describe(int fromSlot, int edgeSlot, int toSlot) {
+    return vertices.get(fromSlot).getName() + " " + edges.get(edgeSlot - vertices.size()).getName() + " "
+        + vertices.get(toSlot).getName();
+  }
+
+  /**
+   * Attaches the constraints that have become evaluable to the step (if any)
+   *
+   * @return the combined selectivity of these constraints
+   */
+  private double applyConstraints(BitSet boundBefore, BitSet boundAfter, MatchStep step) {
+    double selectivity = 1;
+    for (Map.Entry<QueryExpression, BitSet> entry : constraintSlots.entrySet()) {
+      BitSet required = entry.getValue();
+      if (containsAll(boundAfter, required) && !containsAll(boundBefore, required)) {
+        selectivity *= selectivities.get(entry.getKey());
+        if (step != null) {
+          step.filters.add(entry.getKey());
+        }
+      }
+    }
+    return selectivity;
+  }
+
+  /**
+   * @return the estimated number of vertices that are bound per intermediate result by expanding over the edge or path
+   */
+  private double getFanOut(VertexPairConnection connection, boolean forward) {
+    if (connection instanceof QueryPath) {
+      return getPathEstimates(automata.get(connection))[0];
+    }
+    QueryEdge edge = (QueryEdge) connection;
+    if (!edge.isDirected()) {
+      return meanOutDegree + meanInDegree;
+    }
+    return forward ? meanOutDegree : meanInDegree;
+  }
+
+  /**
+   * @return the estimated number of edges that are visited per intermediate result by expanding over the edge or path
+   */
+  private double getExpansionCost(VertexPairConnection connection, boolean forward) {
+    if (connection instanceof QueryPath) {
+      return getPathEstimates(automata.get(connection))[1];
+    }
+    return getFanOut(connection, forward);
+  }
+
+  /**
+   * Estimates a path as if every vertex had the mean degree and there were no filters. The number of vertices at a
+   * distance of h hops grows with the (mean degree)^(edges in the path pattern) per hop, and is capped by the number
+   * of vertices of the graph.
+   *
+   * @return the estimated number of reachable vertices and the estimated number of edges that the search follows
+   */
+  private double[] getPathEstimates(PathAutomaton automaton) {
+    double growth = 1;
+    for (PathAutomaton.Direction direction : automaton.directions) {
+      growth *= direction == PathAutomaton.Direction.BOTH ? meanOutDegree + meanInDegree
+          : direction == PathAutomaton.Direction.OUT ? meanOutDegree : meanInDegree;
+    }
+    double reachable = 0;
+    double visited = 0;
+    double level = 1;
+    for (long hop = 0; hop < MAX_ESTIMATED_HOPS && (automaton.maxHops == -1 || hop <= automaton.maxHops); hop++) {
+      if (hop >= automaton.minHops) {
+        reachable += level;
+      }
+      visited += level;
+      if (visited >= numVertices) {
+        break;
+      }
+      level *= growth;
+    }
+    double edgesPerVertex = meanOutDegree * automaton.numTransitions;
+    return new double[] { Math.min(Math.max(reachable, 1), numVertices),
+        Math.min(visited, numVertices) * edgesPerVertex };
+  }
+
+  private BitSet getBoundSlots(long boundVertices) {
+    BitSet result = new BitSet();
+    for (int vertex = 0; vertex < vertices.size(); vertex++) {
+      if ((boundVertices & (1L << vertex)) != 0) {
+        result.set(vertex);
+      }
+    }
+    for (VertexPairConnection edge : edges) {
+      if (isBound(boundVertices, edge.getSrc()) && isBound(boundVertices, edge.getDst())) {
+        result.set(slots.get(edge));
+      }
+    }
+    return result;
+  }
+
+  private boolean isBound(long boundVertices, QueryVertex vertex) {
+    return (boundVertices & (1L << slots.get(vertex))) != 0;
+  }
+
+  private static boolean containsAll(BitSet set, BitSet subset) {
+    BitSet missing = (BitSet) subset.clone();
+    missing.andNot(set);
+    return missing.isEmpty();
+  }
+
+  private static double log2(double value) {
+    return Math.log(value) / Math.log(2);
+  }
+
+  private static final class Transition {
+
+    final long boundVertices;
+
+    final double multiplier;
+
+    final double unitCost;
+
+    Transition(long boundVertices, double multiplier, double unitCost) {
+      this.boundVertices = boundVertices;
+      this.multiplier = multiplier;
+      this.unitCost = unitCost;
+    }
+  }
+
+  /**
+   * The cheapest known way to bind a set of vertices
+   */
+  private static final class Partial {
+
+    final double cost;
+
+    final double cardinality;
+
+    final int action;
+
+    final Partial previous;
+
+    Partial(double cost, double cardinality, int action, Partial previous) {
+      this.cost = cost;
+      this.cardinality = cardinality;
+      this.action = action;
+      this.previous = previous;
+    }
+  }
+}
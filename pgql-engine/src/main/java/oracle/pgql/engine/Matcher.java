@@ -0,0 +1,487 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import oracle.pgql.engine.CompiledExpression.BooleanEvaluator;
+import oracle.pgql.engine.CompiledExpression.Frame;
+import oracle.pgql.engine.QueryPlan.MatchStep;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.ir.QueryVariable.VariableType;
+
+/**
+ * Enumerates the matches of the graph pattern of a {@link QueryPlan} by backtracking over its steps. A match is an
+ * array with the id of the vertex or edge in each slot of the plan.
+ *
+ * Scans and expansions to vertices that are not yet bound collect their candidate bindings into a {@link BindingBatch}
+ * and evaluate their filters on the whole batch with a {@link VectorizedFilter}. The filters of expansions to bound
+ * vertices, which have few candidates, are evaluated one binding at a time as {@link CompiledExpression}s.
+ *
+ * Paths are followed with a {@link ReachabilityEvaluator}, which binds each reachable vertex once.
+ *
+ * INTERSECT steps find the common neighbors of several bound vertices with a leapfrog join over their sorted neighbor
+ * lists: the candidate is the largest value seen so far, and each list in turn gallops ahead to the first value that
+ * is not smaller than the candidate, until all lists agree on it. Galloping takes time logarithmic in the distance
+ * skipped, so a short list is intersected with a long list in time close to the length of the short one.
+ */
+final class Matcher {
+
+  interface BindingConsumer {
+
+    /**
+     * @return false to stop matching
+     */
+    boolean accept(int[] binding);
+  }
+
+  private final PropertyGraph graph;
+
+  private final QueryPlan plan;
+
+  private final int[] binding;
+
+  private final BindingContext ctx;
+
+  /**
+   * The compiled filters of each step
+   */
+  private final BooleanEvaluator[][] filters;
+
+  private final Frame frame;
+
+  /**
+   * The batch of each step that evaluates its filters a batch at a time, or null
+   */
+  private final BindingBatch[] batches;
+
+  private final VectorizedFilter[] vectorizedFilters;
+
+  /**
+   * The evaluator of each step that follows a path, or null
+   */
+  private final ReachabilityEvaluator[] reachabilityEvaluators;
+
+  /**
+   * Per INTERSECT step, the neighbor array of each list and its current and end position in that array
+   */
+  private final int[][][] intersectArrays;
+
+  private final int[][] intersectPositions;
+
+  private final int[][] intersectEnds;
+
+  Matcher(PropertyGraph graph, QueryPlan plan, ExpressionInterpreter interpreter) {
+    this.graph = graph;
+    this.plan = plan;
+    binding = new int[plan.getNumSlots()];
+    Arrays.fill(binding, -1);
+    ctx = new BindingContext(graph, plan.slots, binding);
+    frame = new Frame(binding, interpreter, ctx);
+
+    ExpressionCompiler compiler = graph.getExpressionCompiler();
+    filters = new BooleanEvaluator[plan.steps.size()][];
+    batches = new BindingBatch[plan.steps.size()];
+    vectorizedFilters = new VectorizedFilter[plan.steps.size()];
+    reachabilityEvaluators = new ReachabilityEvaluator[plan.steps.size()];
+    intersectArrays = new int[plan.steps.size()][][];
+    intersectPositions = new int[plan.steps.size()][];
+    intersectEnds = new int[plan.steps.size()][];
+    for (int i = 0; i < filters.length; i++) {
+      MatchStep step = plan.steps.get(i);
+      if (step.automaton != null) {
+        reachabilityEvaluators[i] = new ReachabilityEvaluator(graph, step.automaton, interpreter);
+      }
+      if (step.kind == MatchStep.Kind.INTERSECT) {
+        int numLists = step.intersectFromSlots.length;
+        intersectArrays[i] = new int[numLists][];
+        intersectPositions[i] = new int[numLists];
+        intersectEnds[i] = new int[numLists];
+      }
+      List<QueryExpression> stepFilters = step.filters;
+      if (!stepFilters.isEmpty() && !step.toBound && step.automaton == null) {
+        batches[i] = step.kind == MatchStep.Kind.SCAN_VERTEX || step.kind == MatchStep.Kind.INTERSECT
+            ? new BindingBatch(binding, step.toSlot)
+            : new BindingBatch(binding, step.edgeSlot, step.toSlot);
+        vectorizedFilters[i] = new VectorizedFilter(graph, plan.slots, stepFilters, frame);
+      }
+      filters[i] = new BooleanEvaluator[stepFilters.size()];
+      for (int j = 0; j < stepFilters.size(); j++) {
+        filters[i][j] = compiler.compile(stepFilters.get(j), plan.slots).asBoolean();
+      }
+    }
+  }
+
+  /**
+   * @return the context for evaluating expressions on the current match
+   */
+  EvaluationContext getContext() {
+    return ctx;
+  }
+
+  void match(BindingConsumer consumer) {
+    match(0, consumer);
+  }
+
+  /**
+   * @return false if matching was stopped by the consumer
+   */
+  private boolean match(int stepIndex, BindingConsumer consumer) {
+    if (stepIndex == plan.steps.size()) {
+      return consumer.accept(binding);
+    }
+
+    MatchStep step = plan.steps.get(stepIndex);
+    int from = step.fromSlot == -1 ? -1 : binding[step.fromSlot];
+    switch (step.kind) {
+      case SCAN_VERTEX:
+        BindingBatch batch = batches[stepIndex];
+        if (batch == null) {
+          for (int vertex = 0; vertex < graph.getNumVertices(); vertex++) {
+            binding[step.toSlot] = vertex;
+            if (passes(filters[stepIndex]) && !match(stepIndex + 1, consumer)) {
+              return false;
+            }
+          }
+        } else {
+          int[] vertices = batch.columns[step.toSlot];
+          for (int vertex = 0; vertex < graph.getNumVertices(); vertex++) {
+            vertices[batch.size++] = vertex;
+            if (batch.isFull() && !matchBatch(stepIndex, consumer)) {
+              return false;
+            }
+          }
+          if (!matchBatch(stepIndex, consumer)) {
+            return false;
+          }
+        }
+        binding[step.toSlot] = -1;
+        return true;
+      case EXPAND_OUT:
+        if (!expandOut(step, from, stepIndex, consumer)) {
+          return false;
+        }
+        break;
+      case EXPAND_IN:
+        if (!expandIn(step, from, stepIndex, consumer)) {
+          return false;
+        }
+        break;
+      case EXPAND_UNDIRECTED:
+        if (!expandOut(step, from, stepIndex, consumer)) {
+          return false;
+        }
+        // self-loops were already matched in the outgoing direction
+        if (!expandIn(step, from, stepIndex, consumer)) {
+          return false;
+        }
+        break;
+      case REACH_OUT:
+      case REACH_IN:
+        return reach(step, from, stepIndex, consumer);
+      case INTERSECT:
+        if (!intersect(step, stepIndex, consumer)) {
+          return false;
+        }
+        binding[step.toSlot] = -1;
+        return true;
+      default:
+        throw new IllegalStateException(step.kind.toString());
+    }
+    binding[step.edgeSlot] = -1;
+    if (!step.toBound) {
+      binding[step.toSlot] = -1;
+    }
+    return true;
+  }
+
+  private boolean expandOut(MatchStep step, int from, int stepIndex, BindingConsumer consumer) {
+    int start = graph.outOffsets[from];
+    int end = graph.outOffsets[from + 1];
+    if (step.toBound) {
+      // the neighbors are sorted, so the edges to the bound vertex are consecutive
+      int to = binding[step.toSlot];
+      for (int edge = lowerBound(graph.outNeighbors, start, end, to); edge < end
+          && graph.outNeighbors[edge] == to; edge++) {
+        binding[step.edgeSlot] = edge;
+        if (passes(filters[stepIndex]) && !match(stepIndex + 1, consumer)) {
+          return false;
+        }
+      }
+    } else if (batches[stepIndex] == null) {
+      for (int edge = start; edge < end; edge++) {
+        binding[step.edgeSlot] = edge;
+        binding[step.toSlot] = graph.outNeighbors[edge];
+        if (passes(filters[stepIndex]) && !match(stepIndex + 1, consumer)) {
+          return false;
+        }
+      }
+    } else {
+      BindingBatch batch = batches[stepIndex];
+      int[] edges = batch.columns[step.edgeSlot];
+      int[] vertices = batch.columns[step.toSlot];
+      for (int edge = start; edge < end; edge++) {
+        edges[batch.size] = edge;
+        vertices[batch.size++] = graph.outNeighbors[edge];
+        if (batch.isFull() && !matchBatch(stepIndex, consumer)) {
+          return false;
+        }
+      }
+      return matchBatch(stepIndex, consumer);
+    }
+    return true;
+  }
+
+  private boolean expandIn(MatchStep step, int from, int stepIndex, BindingConsumer consumer) {
+    boolean skipSelfLoops = step.kind == MatchStep.Kind.EXPAND_UNDIRECTED;
+    int start = graph.inOffsets[from];
+    int end = graph.inOffsets[from + 1];
+    if (step.toBound) {
+      int to = binding[step.toSlot];
+      if (skipSelfLoops && to == from) {
+        return true;
+      }
+      for (int i = lowerBound(graph.inNeighbors, start, end, to); i < end && graph.inNeighbors[i] == to; i++) {
+        binding[step.edgeSlot] = graph.inEdges[i];
+        if (passes(filters[stepIndex]) && !match(stepIndex + 1, consumer)) {
+          return false;
+        }
+      }
+    } else if (batches[stepIndex] == null) {
+      for (int i = start; i < end; i++) {
+        int to = graph.inNeighbors[i];
+        if (skipSelfLoops && to == from) {
+          continue;
+        }
+        binding[step.edgeSlot] = graph.inEdges[i];
+        binding[step.toSlot] = to;
+        if (passes(filters[stepIndex]) && !match(stepIndex + 1, consumer)) {
+          return false;
+        }
+      }
+    } else {
+      BindingBatch batch = batches[stepIndex];
+      int[] edges = batch.columns[step.edgeSlot];
+      int[] vertices = batch.columns[step.toSlot];
+      for (int i = start; i < end; i++) {
+        int to = graph.inNeighbors[i];
+        if (skipSelfLoops && to == from) {
+          continue;
+        }
+        edges[batch.size] = graph.inEdges[i];
+        vertices[batch.size++] = to;
+        if (batch.isFull() && !matchBatch(stepIndex, consumer)) {
+          return false;
+        }
+      }
+      return matchBatch(stepIndex, consumer);
+    }
+    return true;
+  }
+
+  private boolean reach(MatchStep step, int from, int stepIndex, BindingConsumer consumer) {
+    ReachabilityEvaluator evaluator = reachabilityEvaluators[stepIndex];
+    if (step.toBound) {
+      return !evaluator.reaches(from, binding[step.toSlot]) || !passes(filters[stepIndex])
+          || match(stepIndex + 1, consumer);
+    }
+    int numReachable = evaluator.reachable(from, step.kind == MatchStep.Kind.REACH_OUT);
+    int[] reachable = evaluator.getResult();
+    for (int i = 0; i < numReachable; i++) {
+      binding[step.toSlot] = reachable[i];
+      if (passes(filters[stepIndex]) && !match(stepIndex + 1, consumer)) {
+        return false;
+      }
+    }
+    binding[step.toSlot] = -1;
+    return true;
+  }
+
+  /**
+   * Binds each common neighbor of the vertices of an INTERSECT step
+   */
+  private boolean intersect(MatchStep step, int stepIndex, BindingConsumer consumer) {
+    int[][] arrays = intersectArrays[stepIndex];
+    int[] positions = intersectPositions[stepIndex];
+    int[] ends = intersectEnds[stepIndex];
+    int numLists = arrays.length;
+    for (int i = 0; i < numLists; i++) {
+      int vertex = binding[step.intersectFromSlots[i]];
+      boolean outgoing = step.intersectOutgoing[i];
+      arrays[i] = outgoing ? graph.outNeighbors : graph.inNeighbors;
+      positions[i] = outgoing ? graph.outOffsets[vertex] : graph.inOffsets[vertex];
+      ends[i] = outgoing ? graph.outOffsets[vertex + 1] : graph.inOffsets[vertex + 1];
+      if (positions[i] == ends[i]) {
+        return true;
+      }
+      // the shortest list goes first, since its first value is the first candidate
+      for (int j = i; j > 0 && ends[j] - positions[j] < ends[j - 1] - positions[j - 1]; j--) {
+        swap(arrays, j);
+        swap(positions, j);
+        swap(ends, j);
+      }
+    }
+
+    BindingBatch batch = batches[stepIndex];
+    int candidate = arrays[0][positions[0]];
+    int numAgreeing = 1;
+    for (int i = 1;; i = i + 1 == numLists ? 0 : i + 1) {
+      positions[i] = gallop(arrays[i], positions[i], ends[i], candidate);
+      if (positions[i] == ends[i]) {
+        break;
+      }
+      int value = arrays[i][positions[i]];
+      if (value != candidate) {
+        candidate = value;
+        numAgreeing = 1;
+        continue;
+      }
+      if (++numAgreeing < numLists) {
+        continue;
+      }
+
+      if (batch == null) {
+        binding[step.toSlot] = candidate;
+        if (passes(filters[stepIndex]) && !match(stepIndex + 1, consumer)) {
+          return false;
+        }
+      } else {
+        batch.columns[step.toSlot][batch.size++] = candidate;
+        if (batch.isFull() && !matchBatch(stepIndex, consumer)) {
+          return false;
+        }
+      }
+      // skip the parallel edges to the candidate
+      positions[i] = gallop(arrays[i], positions[i], ends[i], candidate + 1);
+      if (positions[i] == ends[i]) {
+        break;
+      }
+      candidate = arrays[i][positions[i]];
+      numAgreeing = 1;
+    }
+    return batch == null || matchBatch(stepIndex, consumer);
+  }
+
+  private static void swap(int[] values, int index) {
+    int tmp = values[index];
+    values[index] = values[index - 1];
+    values[index - 1] = tmp;
+  }
+
+  private static void swap(int[][] values, int index) {
+    int[] tmp = values[index];
+    values[index] = values[index - 1];
+    values[index - 1] = tmp;
+  }
+
+  /**
+   * Filters the candidate bindings in the batch of the step and continues matching from the ones that pass, after
+   * which the batch is empty
+   *
+   * @return false if matching was stopped by the consumer
+   */
+  private boolean matchBatch(int stepIndex, BindingConsumer consumer) {
+    BindingBatch batch = batches[stepIndex];
+    if (batch.size == 0) {
+      return true;
+    }
+    int numSelected = vectorizedFilters[stepIndex].filter(batch);
+    batch.size = 0;
+    int[] selection = batch.selection;
+    for (int i = 0; i < numSelected; i++) {
+      batch.bindRow(selection[i]);
+      if (!match(stepIndex + 1, consumer)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean passes(BooleanEvaluator[] stepFilters) {
+    for (BooleanEvaluator filter : stepFilters) {
+      if (filter.evaluate(frame) != CompiledExpression.TRUE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the first index in [start, end) of which the value is not smaller than the given value
+   */
+  static int lowerBound(int[] values, int start, int end, int value) {
+    int low = start;
+    int high = end;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (values[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the first index in [start, end) of which the value is not smaller than the given value, found by doubling
+   *         the distance from the start until a value is not smaller and then searching the last interval, in time
+   *         logarithmic in the distance to that index rather than in the length of the range
+   */
+  static int gallop(int[] values, int start, int end, int value) {
+    if (start == end || values[start] >= value) {
+      return start;
+    }
+    // values[low] is smaller than the value
+    int low = start;
+    int distance = 1;
+    while (low + distance < end && values[low + distance] < value) {
+      low += distance;
+      distance <<= 1;
+    }
+    return lowerBound(values, low + 1, Math.min(low + distance, end), value);
+  }
+
+  /**
+   * Makes the vertices and edges of a (partial) match available to the expression interpreter
+   */
+  private static final class BindingContext implements EvaluationContext {
+
+    private final PropertyGraph graph;
+
+    private final Map<QueryVariable, Integer> slots;
+
+    private final int[] binding;
+
+    BindingContext(PropertyGraph graph, Map<QueryVariable, Integer> slots, int[] binding) {
+      this.graph = graph;
+      this.slots = slots;
+      this.binding = binding;
+    }
+
+    @Override
+    public int getElementId(QueryVariable variable) {
+      Integer slot = slots.get(variable);
+      return slot == null ? -1 : binding[slot];
+    }
+
+    @Override
+    public Object getValue(QueryVariable variable) {
+      int id = getElementId(variable);
+      if (id == -1) {
+        return null;
+      }
+      return variable.getVariableType() == VariableType.VERTEX ? new Vertex(graph, id) : new Edge(graph, id);
+    }
+
+    @Override
+    public Object getAggregate(Aggregation aggregation) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,463 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import oracle.pgql.lang.ColumnVector;
+import oracle.pgql.lang.PgqlException;
+import oracle.pgql.lang.ResultBatch;
+import oracle.pgql.lang.ResultSet;
+
+/**
+ * A result set of which all rows are held in memory. Elements are numbered from 1, as in JDBC. The values are Long,
+ * Double, Boolean, String, temporal values, {@link Vertex}, {@link Edge} or (for VERTEX_LABELS) a set of strings.
+ */
+final class MaterializedResultSet implements ResultSet {
+
+  private final List<String> columnNames;
+
+  private final Map<String, Integer> columnIndices = new HashMap<>();
+
+  private final List<Object[]> rows;
+
+  /**
+   * The current row: 0 is before the first row and rows.size() + 1 is after the last row
+   */
+  private long position;
+
+  private boolean closed;
+
+  /**
+   * Whether the value that was last read was null
+   */
+  private boolean wasNull;
+
+  /**
+   * The type of the column vectors of each element, which is the same for all batches; computed on the first call to
+   * {@link #nextBatch(int)}
+   */
+  private ColumnVector.Type[] columnTypes;
+
+  MaterializedResultSet(List<String> columnNames, List<Object[]> rows) {
+    this.columnNames = columnNames;
+    this.rows = rows;
+    for (int i = 0; i < columnNames.size(); i++) {
+      columnIndices.putIfAbsent(columnNames.get(i), i + 1);
+    }
+  }
+
+  List<String> getColumnNames() {
+    return Collections.unmodifiableList(columnNames);
+  }
+
+  int getNumRows() {
+    return rows.size();
+  }
+
+  @Override
+  public boolean next() throws PgqlException {
+    return absolute(position + 1);
+  }
+
+  @Override
+  public boolean previous() throws PgqlException {
+    return absolute(position - 1);
+  }
+
+  @Override
+  public void beforeFirst() throws PgqlException {
+    absolute(0);
+  }
+
+  @Override
+  public void afterLast() throws PgqlException {
+    absolute(rows.size() + 1);
+  }
+
+  @Override
+  public boolean first() throws PgqlException {
+    return absolute(1);
+  }
+
+  @Override
+  public boolean last() throws PgqlException {
+    return absolute(rows.size());
+  }
+
+  /**
+   * @param row
+   *          the row number, starting from 1; a negative number counts from the end, so that -1 is the last row
+   */
+  @Override
+  public boolean absolute(long row) throws PgqlException {
+    checkOpen();
+    long newPosition = row < 0 ? rows.size() + 1 + row : row;
+    position = Math.max(0, Math.min(newPosition, rows.size() + 1));
+    return position >= 1 && position <= rows.size();
+  }
+
+  @Override
+  public boolean relative(long rows) throws PgqlException {
+    checkOpen();
+    return absolute(Math.max(0, position + rows));
+  }
+
+  @Override
+  public ResultBatch nextBatch(int maxRows) throws PgqlException {
+    checkOpen();
+    if (maxRows < 1) {
+      throw new PgqlException("The maximum number of rows of a batch should be at least 1, but is " + maxRows);
+    }
+    if (columnTypes == null) {
+      columnTypes = getColumnTypes();
+    }
+
+    // the row after the current position has index position in the list of rows
+    int start = (int) Math.min(position, rows.size());
+    int numRows = Math.min(maxRows, rows.size() - start);
+    List<ColumnVector> columns = new ArrayList<>(columnNames.size());
+    for (int i = 0; i < columnNames.size(); i++) {
+      ColumnVector column = new ColumnVector(columnNames.get(i), columnTypes[i], numRows);
+      for (int row = 0; row < numRows; row++) {
+        Object value = rows.get(start + row)[i];
+        if (value == null) {
+          column.setNull(row);
+          continue;
+        }
+        switch (columnTypes[i]) {
+          case LONG:
+            column.setLong(row, (Long) value);
+            break;
+          case DOUBLE:
+            column.setDouble(row, (Double) value);
+            break;
+          case BOOLEAN:
+            column.setBoolean(row, (Boolean) value);
+            break;
+          default:
+            column.setObject(row, value);
+        }
+      }
+      columns.add(column);
+    }
+    position = numRows == 0 ? rows.size() + 1 : start + numRows;
+    return new ResultBatch(numRows, columns);
+  }
+
+  /**
+   * @return LONG, DOUBLE or BOOLEAN for the elements of which all values that are not null are of that type, and
+   *         OBJECT for the other elements
+   */
+  private ColumnVector.Type[] getColumnTypes() {
+    ColumnVector.Type[] types = new ColumnVector.Type[columnNames.size()];
+    for (int i = 0; i < types.length; i++) {
+      Class<?> valueClass = null;
+      for (Object[] row : rows) {
+        if (row[i] == null) {
+          continue;
+        } else if (valueClass == null) {
+          valueClass = row[i].getClass();
+        } else if (valueClass != row[i].getClass()) {
+          valueClass = Object.class;
+          break;
+        }
+      }
+      if (valueClass == Long.class) {
+        types[i] = ColumnVector.Type.LONG;
+      } else if (valueClass == Double.class) {
+        types[i] = ColumnVector.Type.DOUBLE;
+      } else if (valueClass == Boolean.class) {
+        types[i] = ColumnVector.Type.BOOLEAN;
+      } else {
+        types[i] = ColumnVector.Type.OBJECT;
+      }
+    }
+    return types;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+  }
+
+  @Override
+  public Object getObject(int elementIdx) throws PgqlException {
+    checkOpen();
+    if (position < 1 || position > rows.size()) {
+      throw new PgqlException("The cursor is not positioned on a row");
+    }
+    if (elementIdx < 1 || elementIdx > columnNames.size()) {
+      throw new PgqlException("Element index " + elementIdx + " is out of range; the result has "
+          + columnNames.size() + " elements");
+    }
+    Object value = rows.get((int) position - 1)[elementIdx - 1];
+    wasNull = value == null;
+    return value;
+  }
+
+  @Override
+  public Object getObject(String elementName) throws PgqlException {
+    return getObject(getElementIndex(elementName));
+  }
+
+  @Override
+  public String getString(int elementIdx) throws PgqlException {
+    return get(elementIdx, String.class);
+  }
+
+  @Override
+  public String getString(String elementName) throws PgqlException {
+    return getString(getElementIndex(elementName));
+  }
+
+  @Override
+  public Integer getInteger(int elementIdx) throws PgqlException {
+    Number number = get(elementIdx, Number.class);
+    return number == null ? null : number.intValue();
+  }
+
+  @Override
+  public Integer getInteger(String elementName) throws PgqlException {
+    return getInteger(getElementIndex(elementName));
+  }
+
+  @Override
+  public Long getLong(int elementIdx) throws PgqlException {
+    Number number = get(elementIdx, Number.class);
+    return number == null ? null : number.longValue();
+  }
+
+  @Override
+  public Long getLong(String elementName) throws PgqlException {
+    return getLong(getElementIndex(elementName));
+  }
+
+  @Override
+  public Float getFloat(int elementIdx) throws PgqlException {
+    Number number = get(elementIdx, Number.class);
+    return number == null ? null : number.floatValue();
+  }
+
+  @Override
+  public Float getFloat(String elementName) throws PgqlException {
+    return getFloat(getElementIndex(elementName));
+  }
+
+  @Override
+  public Double getDouble(int elementIdx) throws PgqlException {
+    Number number = get(elementIdx, Number.class);
+    return number == null ? null : number.doubleValue();
+  }
+
+  @Override
+  public Double getDouble(String elementName) throws PgqlException {
+    return getDouble(getElementIndex(elementName));
+  }
+
+  @Override
+  public Boolean getBoolean(int elementIdx) throws PgqlException {
+    return get(elementIdx, Boolean.class);
+  }
+
+  @Override
+  public Boolean getBoolean(String elementName) throws PgqlException {
+    return getBoolean(getElementIndex(elementName));
+  }
+
+  @Override
+  public int getIntegerValue(int elementIdx) throws PgqlException {
+    Number number = get(elementIdx, Number.class);
+    return number == null ? 0 : number.intValue();
+  }
+
+  @Override
+  public int getIntegerValue(String elementName) throws PgqlException {
+    return getIntegerValue(getElementIndex(elementName));
+  }
+
+  @Override
+  public long getLongValue(int elementIdx) throws PgqlException {
+    Number number = get(elementIdx, Number.class);
+    return number == null ? 0 : number.longValue();
+  }
+
+  @Override
+  public long getLongValue(String elementName) throws PgqlException {
+    return getLongValue(getElementIndex(elementName));
+  }
+
+  @Override
+  public float getFloatValue(int elementIdx) throws PgqlException {
+    Number number = get(elementIdx, Number.class);
+    return number == null ? 0 : number.floatValue();
+  }
+
+  @Override
+  public float getFloatValue(String elementName) throws PgqlException {
+    return getFloatValue(getElementIndex(elementName));
+  }
+
+  @Override
+  public double getDoubleValue(int elementIdx) throws PgqlException {
+    Number number = get(elementIdx, Number.class);
+    return number == null ? 0 : number.doubleValue();
+  }
+
+  @Override
+  public double getDoubleValue(String elementName) throws PgqlException {
+    return getDoubleValue(getElementIndex(elementName));
+  }
+
+  @Override
+  public boolean getBooleanValue(int elementIdx) throws PgqlException {
+    Boolean value = get(elementIdx, Boolean.class);
+    return value != null && value;
+  }
+
+  @Override
+  public boolean getBooleanValue(String elementName) throws PgqlException {
+    return getBooleanValue(getElementIndex(elementName));
+  }
+
+  @Override
+  public boolean wasNull() {
+    return wasNull;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public Set<String> getVertexLabels(int elementIdx) throws PgqlException {
+    return get(elementIdx, Set.class);
+  }
+
+  @Override
+  public Set<String> getVertexLabels(String elementName) throws PgqlException {
+    return getVertexLabels(getElementIndex(elementName));
+  }
+
+  @Override
+  public LocalDate getDate(int elementIdx) throws PgqlException {
+    return get(elementIdx, LocalDate.class);
+  }
+
+  @Override
+  public LocalDate getDate(String elementName) throws PgqlException {
+    return getDate(getElementIndex(elementName));
+  }
+
+  @Override
+  public LocalTime getTime(int elementIdx) throws PgqlException {
+    return get(elementIdx, LocalTime.class);
+  }
+
+  @Override
+  public LocalTime getTime(String elementName) throws PgqlException {
+    return getTime(getElementIndex(elementName));
+  }
+
+  @Override
+  public LocalDateTime getTimestamp(int elementIdx) throws PgqlException {
+    return get(elementIdx, LocalDateTime.class);
+  }
+
+  @Override
+  public LocalDateTime getTimestamp(String elementName) throws PgqlException {
+    return getTimestamp(getElementIndex(elementName));
+  }
+
+  @Override
+  public OffsetTime getTimeWithTimezone(int elementIdx) throws PgqlException {
+    return get(elementIdx, OffsetTime.class);
+  }
+
+  @Override
+  public OffsetTime getTimeWithTimezone(String elementName) throws PgqlException {
+    return getTimeWithTimezone(getElementIndex(elementName));
+  }
+
+  @Override
+  public OffsetDateTime getTimestampWithTimezone(int elementIdx) throws PgqlException {
+    return get(elementIdx, OffsetDateTime.class);
+  }
+
+  @Override
+  public OffsetDateTime getTimestampWithTimezone(String elementName) throws PgqlException {
+    return getTimestampWithTimezone(getElementIndex(elementName));
+  }
+
+  /**
+   * Converts dates and timestamps without time zone using the default time zone of the JVM.
+   */
+  @Override
+  public Date getLegacyDate(int elementIdx) throws PgqlException {
+    Object value = getObject(elementIdx);
+    if (value == null) {
+      return null;
+    } else if (value instanceof LocalDate) {
+      return Date.from(((LocalDate) value).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    } else if (value instanceof LocalDateTime) {
+      return Date.from(((LocalDateTime) value).atZone(ZoneId.systemDefault()).toInstant());
+    } else if (value instanceof OffsetDateTime) {
+      return Date.from(((OffsetDateTime) value).toInstant());
+    }
+    throw typeMismatch(elementIdx, value, "Date");
+  }
+
+  @Override
+  public Date getLegacyDate(String elementName) throws PgqlException {
+    return getLegacyDate(getElementIndex(elementName));
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(String.join(" | ", columnNames));
+    for (Object[] row : rows) {
+      sb.append("\n");
+      for (int i = 0; i < row.length; i++) {
+        sb.append(i == 0 ? "" : " | ").append(row[i]);
+      }
+    }
+    return sb.toString();
+  }
+
+  private <T> T get(int elementIdx, Class<T> type) throws PgqlException {
+    Object value = getObject(elementIdx);
+    if (value == null || type.isInstance(value)) {
+      return type.cast(value);
+    }
+    throw typeMismatch(elementIdx, value, type.getSimpleName());
+  }
+
+  private PgqlException typeMismatch(int elementIdx, Object value, String typeName) {
+    return new PgqlException("Element " + columnNames.get(elementIdx - 1) + " has a value of type "
+        + value.getClass().getSimpleName() + " that cannot be converted to " + typeName);
+  }
+
+  private int getElementIndex(String elementName) throws PgqlException {
+    Integer index = columnIndices.get(elementName);
+    if (index == null) {
+      throw new PgqlException("The result has no element " + elementName + "; elements are " + columnNames);
+    }
+    return index;
+  }
+
+  private void checkOpen() throws PgqlException {
+    if (closed) {
+      throw new PgqlException("The result set is closed");
+    }
+  }
+}
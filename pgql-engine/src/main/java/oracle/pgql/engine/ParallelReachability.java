@@ -0,0 +1,350 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import oracle.pgql.engine.CompiledExpression.Frame;
+
+/**
+ * Continues a search of a {@link ReachabilityEvaluator} in parallel, once its frontier has become large. The search
+ * starts from all vertices of the handed over frontier at once and is level-synchronous: each level expands the whole
+ * frontier by one transition of the {@link PathAutomaton}, split into ranges of vertices that are expanded by the tasks
+ * of a {@link ForkJoinPool}. The frontiers and the vertices that were visited in each state are bitsets in
+ * {@link AtomicLongArray}s, of which the bits are set with compare-and-swap, so tasks never wait for each other.
+ *
+ * Each level is expanded either top-down, from each vertex of the frontier to its neighbors that were not visited yet,
+ * or bottom-up, from each vertex that was not visited yet to its first neighbor in the frontier. Top-down is cheaper
+ * while the frontier is small. Once the frontier has more than 1 / {@link #ALPHA} of the edges that were not explored
+ * yet, most vertices that are not visited yet have a neighbor in the frontier and bottom-up is cheaper, until the
+ * frontier has fewer than 1 / {@link #BETA} of the vertices again (Beamer et al., Direction-Optimizing Breadth-First
+ * Search).
+ *
+ * Instances reuse their bitsets between searches and cannot be shared between matchers.
+ */
+final class ParallelReachability {
+
+  /**
+   * The number of words of the bitsets that a task expands without splitting
+   */
+  private static final int WORDS_PER_TASK = 64;
+
+  private static final long ALPHA = 14;
+
+  private static final long BETA = 24;
+
+  private final PropertyGraph graph;
+
+  private final PathAutomaton automaton;
+
+  /**
+   * Evaluates the filters of the transitions and computes degrees
+   */
+  private final ReachabilityEvaluator evaluator;
+
+  private final ExpressionInterpreter interpreter;
+
+  private final ForkJoinPool pool;
+
+  private final int numVertices;
+
+  private final int numWords;
+
+  /**
+   * Per state, the vertices that were visited in that state
+   */
+  private final AtomicLongArray[] visited;
+
+  private AtomicLongArray frontier;
+
+  private AtomicLongArray nextFrontier;
+
+  private boolean isForward;
+
+  private int state;
+
+  private long frontierSize;
+
+  /**
+   * The number of edges that expanding the frontier top-down follows
+   */
+  private long frontierCost;
+
+  /**
+   * The number of edges that were not followed yet, counting the edges of a vertex once per transition
+   */
+  private long unexploredCost;
+
+  private boolean bottomUp;
+
+  ParallelReachability(PropertyGraph graph, PathAutomaton automaton, ReachabilityEvaluator evaluator,
+      ExpressionInterpreter interpreter, ForkJoinPool pool) {
+    this.graph = graph;
+    this.automaton = automaton;
+    this.evaluator = evaluator;
+    this.interpreter = interpreter;
+    this.pool = pool;
+    numVertices = graph.getNumVertices();
+    numWords = (numVertices + 63) / 64;
+    visited = new AtomicLongArray[automaton.numTransitions];
+    for (int i = 0; i < visited.length; i++) {
+      visited[i] = new AtomicLongArray(numWords);
+    }
+    frontier = new AtomicLongArray(numWords);
+    nextFrontier = new AtomicLongArray(numWords);
+  }
+
+  /**
+   * Starts a new search with an empty frontier and no visited vertices
+   *
+   * @param state
+   *          the state of the vertices of the frontier
+   */
+  void start(boolean isForward, int state) {
+    for (AtomicLongArray bits : visited) {
+      clear(bits);
+    }
+    clear(frontier);
+    this.isForward = isForward;
+    this.state = state;
+    frontierSize = 0;
+    frontierCost = 0;
+    unexploredCost = (long) graph.getNumEdges() * automaton.numTransitions;
+    bottomUp = false;
+  }
+
+  void markVisited(int state, int vertex) {
+    setBit(visited[state], vertex);
+  }
+
+  void addToFrontier(int vertex) {
+    if (setBit(frontier, vertex)) {
+      frontierSize++;
+      frontierCost += evaluator.getDegree(vertex, automaton.getTransition(state, isForward), isForward);
+    }
+  }
+
+  /**
+   * Expands the frontier until it is empty or the maximum number of transitions was followed
+   */
+  void search(long maxTransitions) {
+    for (long transitions = 0; transitions < maxTransitions && frontierSize > 0; transitions++) {
+      unexploredCost -= frontierCost;
+      bottomUp = bottomUp ? frontierSize * BETA >= numVertices : frontierCost * ALPHA > unexploredCost;
+      clear(nextFrontier);
+      Level level = new Level(0, numWords, automaton.getTransition(state, isForward),
+          automaton.getNextState(state, isForward));
+      pool.invoke(level);
+
+      AtomicLongArray tmp = frontier;
+      frontier = nextFrontier;
+      nextFrontier = tmp;
+      state = level.nextState;
+      frontierSize = level.numFound;
+      frontierCost = level.foundCost;
+    }
+  }
+
+  /**
+   * @return the number of vertices that were visited in the state
+   */
+  int getNumVisited(int state) {
+    int result = 0;
+    for (int i = 0; i < numWords; i++) {
+      result += Long.bitCount(visited[state].get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Stores the vertices that were visited in the state into the array, in ascending order
+   */
+  void getVisited(int state, int[] result) {
+    int size = 0;
+    for (int i = 0; i < numWords; i++) {
+      long word = visited[state].get(i);
+      while (word != 0) {
+        result[size++] = i * 64 + Long.numberOfTrailingZeros(word);
+        word &= word - 1;
+      }
+    }
+  }
+
+  private static boolean isSet(AtomicLongArray bits, int index) {
+    return (bits.get(index >>> 6) & (1L << index)) != 0;
+  }
+
+  /**
+   * @return false if the bit was already set
+   */
+  private static boolean setBit(AtomicLongArray bits, int index) {
+    int wordIndex = index >>> 6;
+    long bit = 1L << index;
+    while (true) {
+      long word = bits.get(wordIndex);
+      if ((word & bit) != 0) {
+        return false;
+      }
+      if (bits.compareAndSet(wordIndex, word, word | bit)) {
+        return true;
+      }
+    }
+  }
+
+  private static void clear(AtomicLongArray bits) {
+    for (int i = 0; i < bits.length(); i++) {
+      bits.set(i, 0);
+    }
+  }
+
+  /**
+   * Expands the vertices of a range of words of the bitsets by one transition: the vertices of the frontier in the
+   * range when expanding top-down, or the vertices that were not visited yet in the range when expanding bottom-up
+   */
+  private final class Level extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int fromWord;
+
+    private final int toWord;
+
+    private final int transition;
+
+    private final int nextState;
+
+    private final int nextTransition;
+
+    /**
+     * The number of vertices that were added to the next frontier
+     */
+    private long numFound;
+
+    /**
+     * The number of edges of the vertices that were added to the next frontier
+     */
+    private long foundCost;
+
+    Level(int fromWord, int toWord, int transition, int nextState) {
+      this.fromWord = fromWord;
+      this.toWord = toWord;
+      this.transition = transition;
+      this.nextState = nextState;
+      nextTransition = automaton.getTransition(nextState, isForward);
+    }
+
+    @Override
+    protected void compute() {
+      if (toWord - fromWord > WORDS_PER_TASK) {
+        int mid = (fromWord + toWord) >>> 1;
+        Level left = new Level(fromWord, mid, transition, nextState);
+        Level right = new Level(mid, toWord, transition, nextState);
+        invokeAll(left, right);
+        numFound = left.numFound + right.numFound;
+        foundCost = left.foundCost + right.foundCost;
+        return;
+      }
+
+      int[] binding = new int[automaton.getNumSlots()];
+      Arrays.fill(binding, -1);
+      Frame frame = new Frame(binding, interpreter, EvaluationContext.EMPTY);
+      if (bottomUp) {
+        expandBottomUp(frame);
+      } else {
+        expandTopDown(frame);
+      }
+    }
+
+    private void expandTopDown(Frame frame) {
+      boolean out = automaton.followsOut(transition, isForward);
+      boolean in = automaton.followsIn(transition, isForward);
+      for (int i = fromWord; i < toWord; i++) {
+        long word = frontier.get(i);
+        while (word != 0) {
+          int vertex = i * 64 + Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+          if (out) {
+            for (int edge = graph.outOffsets[vertex]; edge < graph.outOffsets[vertex + 1]; edge++) {
+              visit(frame, vertex, edge, graph.outNeighbors[edge]);
+            }
+          }
+          if (in) {
+            for (int j = graph.inOffsets[vertex]; j < graph.inOffsets[vertex + 1]; j++) {
+              int neighbor = graph.inNeighbors[j];
+              // self-loops were already followed in the outgoing direction
+              if (!out || neighbor != vertex) {
+                visit(frame, vertex, graph.inEdges[j], neighbor);
+              }
+            }
+          }
+        }
+      }
+    }
+
+    private void visit(Frame frame, int vertex, int edge, int neighbor) {
+      AtomicLongArray nextVisited = visited[nextState];
+      if (!isSet(nextVisited, neighbor) && passes(frame, vertex, edge, neighbor) && setBit(nextVisited, neighbor)) {
+        found(neighbor);
+      }
+    }
+
+    private void expandBottomUp(Frame frame) {
+      // the edges that lead from a vertex of the frontier to the vertex, seen from the vertex
+      boolean in = automaton.followsOut(transition, isForward);
+      boolean out = automaton.followsIn(transition, isForward);
+      AtomicLongArray nextVisited = visited[nextState];
+      for (int i = fromWord; i < toWord; i++) {
+        long unvisited = ~nextVisited.get(i);
+        while (unvisited != 0) {
+          int vertex = i * 64 + Long.numberOfTrailingZeros(unvisited);
+          unvisited &= unvisited - 1;
+          if (vertex >= numVertices) {
+            break;
+          }
+          if ((in && hasInNeighborInFrontier(frame, vertex)) || (out && hasOutNeighborInFrontier(frame, vertex))) {
+            setBit(nextVisited, vertex);
+            found(vertex);
+          }
+        }
+      }
+    }
+
+    private boolean hasInNeighborInFrontier(Frame frame, int vertex) {
+      for (int j = graph.inOffsets[vertex]; j < graph.inOffsets[vertex + 1]; j++) {
+        int neighbor = graph.inNeighbors[j];
+        if (isSet(frontier, neighbor) && passes(frame, neighbor, graph.inEdges[j], vertex)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private boolean hasOutNeighborInFrontier(Frame frame, int vertex) {
+      for (int edge = graph.outOffsets[vertex]; edge < graph.outOffsets[vertex + 1]; edge++) {
+        int neighbor = graph.outNeighbors[edge];
+        if (isSet(frontier, neighbor) && passes(frame, neighbor, edge, vertex)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void found(int vertex) {
+      setBit(nextFrontier, vertex);
+      numFound++;
+      foundCost += evaluator.getDegree(vertex, nextTransition, isForward);
+    }
+
+    /**
+     * Evaluates the filters of the transition on an edge from a vertex of the frontier to a neighbor
+     */
+    private boolean passes(Frame frame, int vertex, int edge, int neighbor) {
+      return isForward ? evaluator.passes(frame, transition, vertex, edge, neighbor)
+          : evaluator.passes(frame, transition, neighbor, edge, vertex);
+    }
+  }
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import oracle.pgql.lang.PgqlException;
+import oracle.pgql.lang.ir.QueryEdge;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.BindVariable;
+import oracle.pgql.lang.ir.QueryPath;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.ir.QueryVertex;
+import oracle.pgql.lang.ir.VertexPairConnection;
+import oracle.pgql.lang.util.AbstractQueryExpressionVisitor;
+import oracle.pgql.lang.util.ConstraintPushdown;
+
+/**
+ * The path pattern of a {@link QueryPath} as a cyclic automaton. The path pattern is a chain of edges from its first
+ * vertex v0 to its last vertex vk; state i of the automaton is at vertex vi of the chain, and transition i follows the
+ * edge from vi to vi+1. One hop of the path is one pass through the chain, after which the automaton is back in state
+ * 0, at the vertex where the next hop starts.
+ *
+ * Each constraint of the path pattern is split into conjuncts, and each conjunct is attached to the first transition
+ * that binds all its variables. For example, in "PATH p := (a) -[e:knows]-> (b) WHERE b.age > 30", transition 0
+ * checks the label of e and the age of b.
+ */
+final class PathAutomaton {
+
+  enum Direction {
+    OUT,
+    IN,
+    BOTH
+  }
+
+  final QueryPath path;
+
+  final int numTransitions;
+
+  /**
+   * The direction of the edge of each transition, relative to the chain
+   */
+  final Direction[] directions;
+
+  /**
+   * The filters of each transition
+   */
+  final List<List<QueryExpression>> filters;
+
+  /**
+   * Slot of each vertex and edge of the path pattern in the binding that the filters are evaluated on: vertex vi has
+   * slot i and the edge of transition i has slot k + 1 + i
+   */
+  final Map<QueryVariable, Integer> slots;
+
+  final long minHops;
+
+  /**
+   * The maximum number of hops, or -1 if unbounded
+   */
+  final long maxHops;
+
+  private PathAutomaton(QueryPath path, Direction[] directions, List<List<QueryExpression>> filters,
+      Map<QueryVariable, Integer> slots, long minHops, long maxHops) {
+    this.path = path;
+    this.numTransitions = directions.length;
+    this.directions = directions;
+    this.filters = filters;
+    this.slots = slots;
+    this.minHops = minHops;
+    this.maxHops = maxHops;
+  }
+
+  static PathAutomaton create(QueryPath path) throws PgqlException {
+    List<VertexPairConnection> connections = path.getConnections();
+    if (connections.isEmpty() || path.getVertices().isEmpty()) {
+      throw new PgqlException("Path pattern " + path.getPathExpressionName() + " has no edges");
+    }
+
+    // follow the chain from the first vertex, which is where a hop starts
+    List<QueryVertex> chain = new ArrayList<>();
+    Set<QueryVariable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    chain.add(path.getVertices().get(0));
+    visited.add(chain.get(0));
+    Direction[] directions = new Direction[connections.size()];
+    for (int i = 0; i < connections.size(); i++) {
+      if (!(connections.get(i) instanceof QueryEdge)) {
+        throw new PgqlException("Path patterns that contain paths are not supported: " + path.getPathExpressionName());
+      }
+      QueryEdge edge = (QueryEdge) connections.get(i);
+      QueryVertex current = chain.get(i);
+      QueryVertex next;
+      if (edge.getSrc() == current) {
+        next = edge.getDst();
+        directions[i] = edge.isDirected() ? Direction.OUT : Direction.BOTH;
+      } else if (edge.getDst() == current) {
+        next = edge.getSrc();
+        directions[i] = edge.isDirected() ? Direction.IN : Direction.BOTH;
+      } else {
+        throw new PgqlException("Path patterns that are not a chain of edges are not supported: "
+            + path.getPathExpressionName());
+      }
+      if (!visited.add(next)) {
+        throw new PgqlException("Path patterns that visit a vertex twice are not supported: "
+            + path.getPathExpressionName());
+      }
+      chain.add(next);
+    }
+
+    int k = connections.size();
+    Map<QueryVariable, Integer> slots = new IdentityHashMap<>();
+    for (int i = 0; i <= k; i++) {
+      slots.put(chain.get(i), i);
+    }
+    for (int i = 0; i < k; i++) {
+      slots.put(connections.get(i), k + 1 + i);
+    }
+
+    List<List<QueryExpression>> filters = new ArrayList<>();
+    for (int i = 0; i < k; i++) {
+      filters.add(new ArrayList<>());
+    }
+    for (QueryExpression constraint : path.getConstraints()) {
+      for (QueryExpression conjunct : ConstraintPushdown.splitConjunction(constraint)) {
+        filters.get(getTransition(conjunct, slots, k, path)).add(conjunct);
+      }
+    }
+    return new PathAutomaton(path, directions, filters, slots, path.getMinHops(), path.getMaxHops());
+  }
+
+  /**
+   * @return the same automaton with other bounds on the number of hops
+   */
+  PathAutomaton withHops(long minHops, long maxHops) {
+    return new PathAutomaton(path, directions, filters, slots, minHops, maxHops);
+  }
+
+  /**
+   * @return a string that is equal for two automata if and only if they have the same transitions with structurally
+   *         equal filters, regardless of the names of the variables and of the bounds on the number of hops, or null if
+   *         a filter cannot be identified by its structure or depends on the values of bind variables
+   */
+  String getStructuralKey() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < numTransitions; i++) {
+      sb.append(directions[i]).append('[');
+      for (QueryExpression filter : filters.get(i)) {
+        String filterKey = ExpressionCompiler.getStructuralKey(filter, slots);
+        if (filterKey == null || hasBindVariables(filter)) {
+          return null;
+        }
+        sb.append(filterKey).append(';');
+      }
+      sb.append(']');
+    }
+    return sb.toString();
+  }
+
+  private static boolean hasBindVariables(QueryExpression exp) {
+    boolean[] result = { false };
+    exp.accept(new AbstractQueryExpressionVisitor() {
+
+      @Override
+      public void visit(BindVariable bindVariable) {
+        result[0] = true;
+      }
+    });
+    return result[0];
+  }
+
+  /**
+   * @return the first transition that binds all the variables of the constraint
+   */
+  private static int getTransition(QueryExpression constraint, Map<QueryVariable, Integer> slots, int k,
+      QueryPath path) throws PgqlException {
+    for (QueryVariable variable : QueryPlanner.getPatternVariables(constraint)) {
+      if (!slots.containsKey(variable)) {
+        throw new PgqlException("Constraint " + constraint + " of path pattern " + path.getPathExpressionName()
+            + " refers to a variable outside the path pattern");
+      }
+    }
+    for (int transition = 0; transition < k; transition++) {
+      if (isBoundBy(constraint, slots, k, transition)) {
+        return transition;
+      }
+    }
+    throw new PgqlException("Constraint " + constraint + " of path pattern " + path.getPathExpressionName()
+        + " refers to vertices or edges that are not adjacent in the path pattern");
+  }
+
+  /**
+   * Transition i binds vertices i and i + 1 and edge k + 1 + i
+   */
+  private static boolean isBoundBy(QueryExpression constraint, Map<QueryVariable, Integer> slots, int k,
+      int transition) {
+    for (QueryVariable variable : QueryPlanner.getPatternVariables(constraint)) {
+      int slot = slots.get(variable);
+      if (slot != transition && slot != transition + 1 && slot != k + 1 + transition) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  int getNumSlots() {
+    return 2 * numTransitions + 1;
+  }
+
+  /**
+   * @return the slot of the vertex at which transition i starts
+   */
+  int getFromSlot(int transition) {
+    return transition;
+  }
+
+  int getEdgeSlot(int transition) {
+    return numTransitions + 1 + transition;
+  }
+
+  int getToSlot(int transition) {
+    return transition + 1;
+  }
+
+  /**
+   * @param isForward
+   *          whether the automaton is run in the direction of the path or against it
+   * @return the transition that leaves the state
+   */
+  int getTransition(int state, boolean isForward) {
+    return isForward ? state : (state + numTransitions - 1) % numTransitions;
+  }
+
+  /**
+   * @return the state that the transition that leaves the state leads to
+   */
+  int getNextState(int state, boolean isForward) {
+    return isForward ? (state + 1) % numTransitions : (state + numTransitions - 1) % numTransitions;
+  }
+
+  /**
+   * @return whether the transition follows the outgoing edges of a vertex in the graph
+   */
+  boolean followsOut(int transition, boolean isForward) {
+    // against the direction of the path, an outgoing edge of the chain is an incoming edge in the graph
+    Direction direction = directions[transition];
+    return direction == Direction.BOTH || (direction == Direction.OUT) == isForward;
+  }
+
+  /**
+   * @return whether the transition follows the incoming edges of a vertex in the graph
+   */
+  boolean followsIn(int transition, boolean isForward) {
+    Direction direction = directions[transition];
+    return direction == Direction.BOTH || (direction == Direction.IN) == isForward;
+  }
+
+  @Override
+  public String toString() {
+    return path.toString();
+  }
+}
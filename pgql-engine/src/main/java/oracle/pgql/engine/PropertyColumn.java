@@ -0,0 +1,332 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.util.Arrays;
+
+/**
+ * The values of one property for all vertices or for all edges of a graph. Integer, decimal and boolean values are
+ * stored in primitive arrays; other values (strings and temporal values) are stored as objects. Elements that do not
+ * have the property have a null value, which is tracked in a bitmap.
+ */
+abstract class PropertyColumn {
+
+  enum Type {
+    LONG,
+    DOUBLE,
+    BOOLEAN,
+    OBJECT
+  }
+
+  /**
+   * Bit i is set if element i has a value
+   */
+  private final long[] nonNulls;
+
+  PropertyColumn(long[] nonNulls) {
+    this.nonNulls = nonNulls;
+  }
+
+  abstract Type getType();
+
+  /**
+   * @return the value of the element as a Long, Double, Boolean, String or temporal value, or null
+   */
+  abstract Object get(int index);
+
+  boolean isNull(int index) {
+    return !isSet(nonNulls, index);
+  }
+
+  int getNumNonNulls() {
+    int result = 0;
+    for (long word : nonNulls) {
+      result += Long.bitCount(word);
+    }
+    return result;
+  }
+
+  /**
+   * @return the value of the element, or 0 if the element has no value
+   */
+  long getLong(int index) {
+    throw new UnsupportedOperationException(getType() + " column");
+  }
+
+  /**
+   * @return the value of the element, or 0 if the element has no value
+   */
+  double getDouble(int index) {
+    throw new UnsupportedOperationException(getType() + " column");
+  }
+
+  /**
+   * @return the value of the element, or false if the element has no value
+   */
+  boolean getBoolean(int index) {
+    throw new UnsupportedOperationException(getType() + " column");
+  }
+
+  static boolean isSet(long[] bits, int index) {
+    int word = index >>> 6;
+    return word < bits.length && (bits[word] & (1L << index)) != 0;
+  }
+
+  static final class LongColumn extends PropertyColumn {
+
+    private final long[] values;
+
+    LongColumn(long[] values, long[] nonNulls) {
+      super(nonNulls);
+      this.values = values;
+    }
+
+    @Override
+    Type getType() {
+      return Type.LONG;
+    }
+
+    @Override
+    Object get(int index) {
+      return isNull(index) ? null : values[index];
+    }
+
+    @Override
+    long getLong(int index) {
+      return values[index];
+    }
+
+    @Override
+    double getDouble(int index) {
+      return values[index];
+    }
+  }
+
+  static final class DoubleColumn extends PropertyColumn {
+
+    private final double[] values;
+
+    DoubleColumn(double[] values, long[] nonNulls) {
+      super(nonNulls);
+      this.values = values;
+    }
+
+    @Override
+    Type getType() {
+      return Type.DOUBLE;
+    }
+
+    @Override
+    Object get(int index) {
+      return isNull(index) ? null : values[index];
+    }
+
+    @Override
+    double getDouble(int index) {
+      return values[index];
+    }
+  }
+
+  static final class BooleanColumn extends PropertyColumn {
+
+    private final long[] values;
+
+    BooleanColumn(long[] values, long[] nonNulls) {
+      super(nonNulls);
+      this.values = values;
+    }
+
+    @Override
+    Type getType() {
+      return Type.BOOLEAN;
+    }
+
+    @Override
+    Object get(int index) {
+      return isNull(index) ? null : isSet(values, index);
+    }
+
+    @Override
+    boolean getBoolean(int index) {
+      return isSet(values, index);
+    }
+  }
+
+  static final class ObjectColumn extends PropertyColumn {
+
+    private final Object[] values;
+
+    ObjectColumn(Object[] values, long[] nonNulls) {
+      super(nonNulls);
+      this.values = values;
+    }
+
+    @Override
+    Type getType() {
+      return Type.OBJECT;
+    }
+
+    @Override
+    Object get(int index) {
+      return isNull(index) ? null : values[index];
+    }
+  }
+
+  /**
+   * Collects the values of a property while a graph is being built. The type of the column is determined by the first
+   * value that is set.
+   */
+  static final class Builder {
+
+    private final String name;
+
+    private Type type;
+
+    private long[] longValues = new long[0];
+
+    private double[] doubleValues = new double[0];
+
+    private Object[] objectValues = new Object[0];
+
+    private long[] nonNulls = new long[0];
+
+    Builder(String name) {
+      this.name = name;
+    }
+
+    void set(int index, Object value) {
+      if (value == null) {
+        if (index >>> 6 < nonNulls.length) {
+          nonNulls[index >>> 6] &= ~(1L << index);
+        }
+        return;
+      }
+
+      Type valueType = getType(value);
+      if (type == null) {
+        type = valueType;
+      } else if (type != valueType) {
+        throw new IllegalArgumentException("Property " + name + " has values of type " + type + " and " + valueType);
+      }
+
+      ensureCapacity(index);
+      switch (type) {
+        case LONG:
+          longValues[index] = ((Number) value).longValue();
+          break;
+        case DOUBLE:
+          doubleValues[index] = ((Number) value).doubleValue();
+          break;
+        case BOOLEAN:
+          longValues[index] = ((Boolean) value) ? 1 : 0;
+          break;
+        case OBJECT:
+          objectValues[index] = value;
+          break;
+        default:
+          throw new IllegalStateException(type.toString());
+      }
+      nonNulls[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * @param size
+     *          the number of elements
+     * @param order
+     *          for each element of the column, the index at which its value was set; null if the elements are in the
+     *          same order
+     */
+    PropertyColumn build(int size, int[] order) {
+      long[] newNonNulls = new long[(size + 63) >>> 6];
+      for (int i = 0; i < size; i++) {
+        if (isSet(nonNulls, order == null ? i : order[i])) {
+          newNonNulls[i >>> 6] |= 1L << i;
+        }
+      }
+
+      switch (type == null ? Type.OBJECT : type) {
+        case LONG: {
+          long[] values = new long[size];
+          for (int i = 0; i < size; i++) {
+            values[i] = get(longValues, order == null ? i : order[i]);
+          }
+          return new LongColumn(values, newNonNulls);
+        }
+        case DOUBLE: {
+          double[] values = new double[size];
+          for (int i = 0; i < size; i++) {
+            int index = order == null ? i : order[i];
+            values[i] = index < doubleValues.length ? doubleValues[index] : 0;
+          }
+          return new DoubleColumn(values, newNonNulls);
+        }
+        case BOOLEAN: {
+          long[] values = new long[(size + 63) >>> 6];
+          for (int i = 0; i < size; i++) {
+            if (get(longValues, order == null ? i : order[i]) != 0) {
+              values[i >>> 6] |= 1L << i;
+            }
+          }
+          return new BooleanColumn(values, newNonNulls);
+        }
+        case OBJECT: {
+          Object[] values = new Object[size];
+          for (int i = 0; i < size; i++) {
+            int index = order == null ? i : order[i];
+            values[i] = index < objectValues.length ? objectValues[index] : null;
+          }
+          return new ObjectColumn(values, newNonNulls);
+        }
+        default:
+          throw new IllegalStateException(type.toString());
+      }
+    }
+
+    private static long get(long[] values, int index) {
+      return index < values.length ? values[index] : 0;
+    }
+
+    private void ensureCapacity(int index) {
+      if (index >>> 6 >= nonNulls.length) {
+        nonNulls = Arrays.copyOf(nonNulls, Math.max((index >>> 6) + 1, nonNulls.length * 2));
+      }
+      switch (type) {
+        case LONG:
+        case BOOLEAN:
+          if (index >= longValues.length) {
+            longValues = Arrays.copyOf(longValues, Math.max(index + 1, longValues.length * 2));
+          }
+          break;
+        case DOUBLE:
+          if (index >= doubleValues.length) {
+            doubleValues = Arrays.copyOf(doubleValues, Math.max(index + 1, doubleValues.length * 2));
+          }
+          break;
+        default:
+          if (index >= objectValues.length) {
+            objectValues = Arrays.copyOf(objectValues, Math.max(index + 1, objectValues.length * 2));
+          }
+      }
+    }
+
+    private Type getType(Object value) {
+      if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+        return Type.LONG;
+      } else if (value instanceof Double || value instanceof Float) {
+        return Type.DOUBLE;
+      } else if (value instanceof Boolean) {
+        return Type.BOOLEAN;
+      } else if (value instanceof String || value instanceof LocalDate || value instanceof LocalTime
+          || value instanceof LocalDateTime || value instanceof OffsetTime || value instanceof OffsetDateTime) {
+        return Type.OBJECT;
+      }
+      throw new IllegalArgumentException("Unsupported value for property " + name + ": " + value.getClass().getName());
+    }
+  }
+}
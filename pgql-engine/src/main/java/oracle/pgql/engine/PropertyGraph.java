@@ -0,0 +1,293 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import oracle.pgql.lang.PgqlException;
+import oracle.pgql.lang.PreparedStatement;
+import oracle.pgql.lang.ResultSet;
+import oracle.pgql.lang.ir.GraphQuery;
+
+/**
+ * An immutable in-memory property graph that can be queried with PGQL. Use {@link PropertyGraphBuilder} to create one.
+ *
+ * Vertices and edges are identified by dense integer ids. The topology is stored in compressed sparse row (CSR) form in
+ * both directions: the outgoing edges of a vertex are sorted on their destination and its incoming edges on their
+ * source. The id of an edge is its position in the outgoing CSR, so edge ids are assigned in order of (source,
+ * destination) rather than in the order in which the edges were added. Properties are stored column-wise, see
+ * {@link PropertyColumn}.
+ *
+ * Besides the graph, instances hold settings for the execution of queries, which apply to the queries that start after
+ * they are changed.
+ */
+public final class PropertyGraph {
+
+  private final int numVertices;
+
+  private final int numEdges;
+
+  /**
+   * The outgoing edges of vertex v are the edges with ids outOffsets[v] until outOffsets[v + 1]
+   */
+  final int[] outOffsets;
+
+  /**
+   * The destination of each edge
+   */
+  final int[] outNeighbors;
+
+  /**
+   * The source of each edge
+   */
+  final int[] edgeSources;
+
+  /**
+   * The incoming edges of vertex v are the edges inEdges[inOffsets[v]] until inEdges[inOffsets[v + 1]]
+   */
+  final int[] inOffsets;
+
+  /**
+   * The source of each incoming edge, in the order of inEdges
+   */
+  final int[] inNeighbors;
+
+  final int[] inEdges;
+
+  /**
+   * The names of all vertex and edge labels, by label id
+   */
+  private final String[] labels;
+
+  private final Map<String, Integer> labelIds;
+
+  /**
+   * The labels of vertex v are vertexLabels[vertexLabelOffsets[v]] until vertexLabels[vertexLabelOffsets[v + 1]]
+   */
+  private final int[] vertexLabelOffsets;
+
+  private final int[] vertexLabels;
+
+  /**
+   * The label of each edge, or -1 if the edge has no label
+   */
+  private final int[] edgeLabels;
+
+  private final Map<String, PropertyColumn> vertexProperties;
+
+  private final Map<String, PropertyColumn> edgeProperties;
+
+  private volatile GraphStatistics statistics;
+
+  private final ExpressionCompiler expressionCompiler = new ExpressionCompiler(this);
+
+  private final ReachabilityIndexCache reachabilityIndexCache = new ReachabilityIndexCache(this);
+
+  private volatile long groupMemoryBudget = Runtime.getRuntime().maxMemory() / 4;
+
+  private volatile Path spillDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+
+  PropertyGraph(int numVertices, int numEdges, int[] outOffsets, int[] outNeighbors, int[] edgeSources,
+      int[] inOffsets, int[] inNeighbors, int[] inEdges, String[] labels, Map<String, Integer> labelIds,
+      int[] vertexLabelOffsets, int[] vertexLabels, int[] edgeLabels, Map<String, PropertyColumn> vertexProperties,
+      Map<String, PropertyColumn> edgeProperties) {
+    this.numVertices = numVertices;
+    this.numEdges = numEdges;
+    this.outOffsets = outOffsets;
+    this.outNeighbors = outNeighbors;
+    this.edgeSources = edgeSources;
+    this.inOffsets = inOffsets;
+    this.inNeighbors = inNeighbors;
+    this.inEdges = inEdges;
+    this.labels = labels;
+    this.labelIds = labelIds;
+    this.vertexLabelOffsets = vertexLabelOffsets;
+    this.vertexLabels = vertexLabels;
+    this.edgeLabels = edgeLabels;
+    this.vertexProperties = vertexProperties;
+    this.edgeProperties = edgeProperties;
+  }
+
+  public int getNumVertices() {
+    return numVertices;
+  }
+
+  public int getNumEdges() {
+    return numEdges;
+  }
+
+  public int getOutDegree(int vertex) {
+    return outOffsets[vertex + 1] - outOffsets[vertex];
+  }
+
+  public int getInDegree(int vertex) {
+    return inOffsets[vertex + 1] - inOffsets[vertex];
+  }
+
+  public int getEdgeSource(int edge) {
+    return edgeSources[edge];
+  }
+
+  public int getEdgeDestination(int edge) {
+    return outNeighbors[edge];
+  }
+
+  public Set<String> getVertexLabels(int vertex) {
+    int start = vertexLabelOffsets[vertex];
+    int end = vertexLabelOffsets[vertex + 1];
+    if (start == end) {
+      return Collections.emptySet();
+    }
+    Set<String> result = new HashSet<>();
+    for (int i = start; i < end; i++) {
+      result.add(labels[vertexLabels[i]]);
+    }
+    return result;
+  }
+
+  public boolean hasVertexLabel(int vertex, String label) {
+    Integer labelId = labelIds.get(label);
+    return labelId != null && hasVertexLabel(vertex, labelId);
+  }
+
+  /**
+   * @return the label of the edge, or null if it has none
+   */
+  public String getEdgeLabel(int edge) {
+    int labelId = edgeLabels[edge];
+    return labelId == -1 ? null : labels[labelId];
+  }
+
+  /**
+   * @return the value of the property, or null if the vertex does not have the property
+   */
+  public Object getVertexProperty(int vertex, String propertyName) {
+    PropertyColumn column = vertexProperties.get(propertyName);
+    return column == null ? null : column.get(vertex);
+  }
+
+  /**
+   * @return the value of the property, or null if the edge does not have the property
+   */
+  public Object getEdgeProperty(int edge, String propertyName) {
+    PropertyColumn column = edgeProperties.get(propertyName);
+    return column == null ? null : column.get(edge);
+  }
+
+  /**
+   * @return the statistics of this graph, which are computed the first time they are needed
+   */
+  public GraphStatistics getStatistics() {
+    GraphStatistics result = statistics;
+    if (result == null) {
+      synchronized (this) {
+        result = statistics;
+        if (result == null) {
+          result = new PropertyGraphStatistics(this);
+          statistics = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sets the estimated number of bytes that the groups of a query with GROUP BY or aggregations may take before they
+   * are spilled to disk. Defaults to a quarter of the maximum heap size.
+   */
+  public void setGroupMemoryBudget(long groupMemoryBudget) {
+    if (groupMemoryBudget < 0) {
+      throw new IllegalArgumentException("groupMemoryBudget must not be negative: " + groupMemoryBudget);
+    }
+    this.groupMemoryBudget = groupMemoryBudget;
+  }
+
+  public long getGroupMemoryBudget() {
+    return groupMemoryBudget;
+  }
+
+  /**
+   * Sets the directory in which the groups of a query are spilled. Defaults to the temporary directory of the JVM.
+   */
+  public void setSpillDirectory(Path spillDirectory) {
+    this.spillDirectory = Objects.requireNonNull(spillDirectory, "spillDirectory");
+  }
+
+  public Path getSpillDirectory() {
+    return spillDirectory;
+  }
+
+  /**
+   * Prepares a query for (repeated) execution against this graph.
+   *
+   * @throws PgqlException
+   *           if the query uses features that are not supported by this engine
+   */
+  public PreparedStatement prepareStatement(GraphQuery query) throws PgqlException {
+    return prepareStatement(query, getStatistics());
+  }
+
+  /**
+   * Prepares a query for (repeated) execution against this graph, choosing the matching order based on the given
+   * statistics rather than on the statistics of this graph.
+   */
+  public PreparedStatement prepareStatement(GraphQuery query, GraphStatistics statistics) throws PgqlException {
+    return new EnginePreparedStatement(this, QueryPlanner.plan(query, statistics));
+  }
+
+  /**
+   * Executes a query that does not have bind variables.
+   */
+  public ResultSet executeQuery(GraphQuery query) throws PgqlException {
+    return QueryExecutor.execute(this, QueryPlanner.plan(query, getStatistics()), new Object[0]);
+  }
+
+  /**
+   * @return the id of the label, or -1 if no vertex or edge has the label
+   */
+  int getLabelId(String label) {
+    Integer labelId = labelIds.get(label);
+    return labelId == null ? -1 : labelId;
+  }
+
+  boolean hasVertexLabel(int vertex, int labelId) {
+    for (int i = vertexLabelOffsets[vertex]; i < vertexLabelOffsets[vertex + 1]; i++) {
+      if (vertexLabels[i] == labelId) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  int getEdgeLabelId(int edge) {
+    return edgeLabels[edge];
+  }
+
+  PropertyColumn getVertexPropertyColumn(String propertyName) {
+    return vertexProperties.get(propertyName);
+  }
+
+  PropertyColumn getEdgePropertyColumn(String propertyName) {
+    return edgeProperties.get(propertyName);
+  }
+
+  ExpressionCompiler getExpressionCompiler() {
+    return expressionCompiler;
+  }
+
+  ReachabilityIndexCache getReachabilityIndexCache() {
+    return reachabilityIndexCache;
+  }
+
+  @Override
+  public String toString() {
+    return "PropertyGraph[vertices=" + numVertices + ", edges=" + numEdges + "]";
+  }
+}
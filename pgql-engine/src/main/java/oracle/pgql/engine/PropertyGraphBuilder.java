@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a {@link PropertyGraph}. Vertices get consecutive ids starting from 0 in the order in which they are added.
+ * Edges are identified by the index returned by {@link #addEdge(int, int, String)} while building, but get new ids in
+ * the built graph (see {@link PropertyGraph}).
+ *
+ * Property values can be Integer, Long, Float, Double, Boolean, String, LocalDate, LocalTime, LocalDateTime,
+ * OffsetTime or OffsetDateTime; integer values are stored as Long and decimal values as Double. All values of a
+ * property need to have the same type.
+ */
+public class PropertyGraphBuilder {
+
+  private int numVertices;
+
+  private int numEdges;
+
+  private int[] vertexLabelOffsets = new int[16];
+
+  private int[] vertexLabels = new int[16];
+
+  private int numVertexLabels;
+
+  private int[] edgeSources = new int[16];
+
+  private int[] edgeDestinations = new int[16];
+
+  private int[] edgeLabels = new int[16];
+
+  private final List<String> labels = new ArrayList<>();
+
+  private final Map<String, Integer> labelIds = new HashMap<>();
+
+  private final Map<String, PropertyColumn.Builder> vertexProperties = new HashMap<>();
+
+  private final Map<String, PropertyColumn.Builder> edgeProperties = new HashMap<>();
+
+  /**
+   * @return the id of the new vertex
+   */
+  public int addVertex(String... vertexLabels) {
+    if (numVertices + 2 > vertexLabelOffsets.length) {
+      vertexLabelOffsets = Arrays.copyOf(vertexLabelOffsets, vertexLabelOffsets.length * 2);
+    }
+    for (String label : vertexLabels) {
+      if (numVertexLabels == this.vertexLabels.length) {
+        this.vertexLabels = Arrays.copyOf(this.vertexLabels, this.vertexLabels.length * 2);
+      }
+      this.vertexLabels[numVertexLabels++] = getLabelId(label);
+    }
+    vertexLabelOffsets[numVertices + 1] = numVertexLabels;
+    return numVertices++;
+  }
+
+  public PropertyGraphBuilder setVertexProperty(int vertex, String propertyName, Object value) {
+    if (vertex < 0 || vertex >= numVertices) {
+      throw new IllegalArgumentException("Vertex " + vertex + " does not exist");
+    }
+    vertexProperties.computeIfAbsent(propertyName, PropertyColumn.Builder::new).set(vertex, value);
+    return this;
+  }
+
+  /**
+   * @param label
+   *          the label of the edge, or null
+   * @return the index of the new edge, to be used for {@link #setEdgeProperty(int, String, Object)}
+   */
+  public int addEdge(int src, int dst, String label) {
+    if (src < 0 || src >= numVertices || dst < 0 || dst >= numVertices) {
+      throw new IllegalArgumentException("Edge between non-existing vertices " + src + " and " + dst);
+    }
+    if (numEdges == edgeSources.length) {
+      edgeSources = Arrays.copyOf(edgeSources, numEdges * 2);
+      edgeDestinations = Arrays.copyOf(edgeDestinations, numEdges * 2);
+      edgeLabels = Arrays.copyOf(edgeLabels, numEdges * 2);
+    }
+    edgeSources[numEdges] = src;
+    edgeDestinations[numEdges] = dst;
+    edgeLabels[numEdges] = label == null ? -1 : getLabelId(label);
+    return numEdges++;
+  }
+
+  public PropertyGraphBuilder setEdgeProperty(int edge, String propertyName, Object value) {
+    if (edge < 0 || edge >= numEdges) {
+      throw new IllegalArgumentException("Edge " + edge + " does not exist");
+    }
+    edgeProperties.computeIfAbsent(propertyName, PropertyColumn.Builder::new).set(edge, value);
+    return this;
+  }
+
+  public PropertyGraph build() {
+    // sort the edges on (source, destination) using two stable counting sorts
+    int[] byDestination = countingSort(edgeDestinations, identity(numEdges), numVertices);
+    int[] order = countingSort(edgeSources, byDestination, numVertices);
+
+    int[] outOffsets = offsets(edgeSources, numEdges, numVertices);
+    int[] outNeighbors = new int[numEdges];
+    int[] sources = new int[numEdges];
+    int[] labelsOfEdges = new int[numEdges];
+    for (int edge = 0; edge < numEdges; edge++) {
+      outNeighbors[edge] = edgeDestinations[order[edge]];
+      sources[edge] = edgeSources[order[edge]];
+      labelsOfEdges[edge] = edgeLabels[order[edge]];
+    }
+
+    // incoming edges, sorted on (destination, source); the edges are already sorted on source
+    int[] inEdges = countingSort(outNeighbors, identity(numEdges), numVertices);
+    int[] inOffsets = offsets(outNeighbors, numEdges, numVertices);
+    int[] inNeighbors = new int[numEdges];
+    for (int i = 0; i < numEdges; i++) {
+      inNeighbors[i] = sources[inEdges[i]];
+    }
+
+    Map<String, PropertyColumn> vertexColumns = new HashMap<>();
+    for (Map.Entry<String, PropertyColumn.Builder> entry : vertexProperties.entrySet()) {
+      vertexColumns.put(entry.getKey(), entry.getValue().build(numVertices, null));
+    }
+    Map<String, PropertyColumn> edgeColumns = new HashMap<>();
+    for (Map.Entry<String, PropertyColumn.Builder> entry : edgeProperties.entrySet()) {
+      edgeColumns.put(entry.getKey(), entry.getValue().build(numEdges, order));
+    }
+
+    return new PropertyGraph(numVertices, numEdges, outOffsets, outNeighbors, sources, inOffsets, inNeighbors, inEdges,
+        labels.toArray(new String[labels.size()]), new HashMap<>(labelIds),
+        Arrays.copyOf(vertexLabelOffsets, numVertices + 1), Arrays.copyOf(vertexLabels, numVertexLabels),
+        labelsOfEdges, vertexColumns, edgeColumns);
+  }
+
+  private int getLabelId(String label) {
+    Integer labelId = labelIds.get(label);
+    if (labelId == null) {
+      labelId = labels.size();
+      labels.add(label);
+      labelIds.put(label, labelId);
+    }
+    return labelId;
+  }
+
+  private static int[] identity(int size) {
+    int[] result = new int[size];
+    for (int i = 0; i < size; i++) {
+      result[i] = i;
+    }
+    return result;
+  }
+
+  /**
+   * @return the given elements, stably sorted on their key
+   */
+  private static int[] countingSort(int[] keys, int[] elements, int numKeys) {
+    int[] positions = offsets(keys, elements.length, numKeys);
+    int[] result = new int[elements.length];
+    for (int element : elements) {
+      result[positions[keys[element]]++] = element;
+    }
+    return result;
+  }
+
+  /**
+   * @return for each key, the number of elements with a smaller key; plus the total number of elements at the end
+   */
+  private static int[] offsets(int[] keys, int numElements, int numKeys) {
+    int[] result = new int[numKeys + 1];
+    for (int i = 0; i < numElements; i++) {
+      result[keys[i] + 1]++;
+    }
+    for (int i = 0; i < numKeys; i++) {
+      result[i + 1] += result[i];
+    }
+    return result;
+  }
+}
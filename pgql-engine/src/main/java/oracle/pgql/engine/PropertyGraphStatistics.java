@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Statistics computed from a {@link PropertyGraph}. Label counts and degree histograms are computed up front; the
+ * selectivity of a property is computed when it is first needed, from a sample of its values.
+ */
+final class PropertyGraphStatistics implements GraphStatistics {
+
+  /**
+   * The number of values that is sampled to estimate the number of distinct values of a property
+   */
+  static final int SAMPLE_SIZE = 16 * 1024;
+
+  private final PropertyGraph graph;
+
+  private final Map<String, Long> numVerticesWithLabel = new HashMap<>();
+
+  private final Map<String, Long> numEdgesWithLabel = new HashMap<>();
+
+  private final DegreeHistogram outDegreeHistogram;
+
+  private final DegreeHistogram inDegreeHistogram;
+
+  private final Map<String, Double> vertexPropertySelectivities = new ConcurrentHashMap<>();
+
+  private final Map<String, Double> edgePropertySelectivities = new ConcurrentHashMap<>();
+
+  PropertyGraphStatistics(PropertyGraph graph) {
+    this.graph = graph;
+    for (int vertex = 0; vertex < graph.getNumVertices(); vertex++) {
+      for (String label : graph.getVertexLabels(vertex)) {
+        numVerticesWithLabel.merge(label, 1L, Long::sum);
+      }
+    }
+    for (int edge = 0; edge < graph.getNumEdges(); edge++) {
+      String label = graph.getEdgeLabel(edge);
+      if (label != null) {
+        numEdgesWithLabel.merge(label, 1L, Long::sum);
+      }
+    }
+    outDegreeHistogram = DegreeHistogram.fromOffsets(graph.outOffsets);
+    inDegreeHistogram = DegreeHistogram.fromOffsets(graph.inOffsets);
+  }
+
+  @Override
+  public long getNumVertices() {
+    return graph.getNumVertices();
+  }
+
+  @Override
+  public long getNumEdges() {
+    return graph.getNumEdges();
+  }
+
+  @Override
+  public long getNumVerticesWithLabel(String label) {
+    return numVerticesWithLabel.getOrDefault(label, 0L);
+  }
+
+  @Override
+  public long getNumEdgesWithLabel(String label) {
+    return numEdgesWithLabel.getOrDefault(label, 0L);
+  }
+
+  @Override
+  public DegreeHistogram getOutDegreeHistogram() {
+    return outDegreeHistogram;
+  }
+
+  @Override
+  public DegreeHistogram getInDegreeHistogram() {
+    return inDegreeHistogram;
+  }
+
+  @Override
+  public double getVertexPropertySelectivity(String propertyName) {
+    return vertexPropertySelectivities.computeIfAbsent(propertyName,
+        name -> getSelectivity(graph.getVertexPropertyColumn(name), graph.getNumVertices()));
+  }
+
+  @Override
+  public double getEdgePropertySelectivity(String propertyName) {
+    return edgePropertySelectivities.computeIfAbsent(propertyName,
+        name -> getSelectivity(graph.getEdgePropertyColumn(name), graph.getNumEdges()));
+  }
+
+  /**
+   * Estimates the number of distinct values from a sample with the GEE estimator (Charikar et al., "Towards Estimation
+   * Error Guarantees for Distinct Values"): values that occur once in the sample are scaled up by sqrt(n / r) since
+   * they are likely rare in the whole column, while values that occur multiple times are counted once.
+   */
+  private static double getSelectivity(PropertyColumn column, int size) {
+    if (column == null || size == 0) {
+      return 0;
+    }
+    int numNonNulls = column.getNumNonNulls();
+    if (numNonNulls == 0) {
+      return 0;
+    }
+
+    int step = Math.max(1, size / SAMPLE_SIZE);
+    Map<Object, Integer> frequencies = new HashMap<>();
+    int sampleSize = 0;
+    for (int i = 0; i < size; i += step) {
+      if (!column.isNull(i)) {
+        frequencies.merge(column.get(i), 1, Integer::sum);
+        sampleSize++;
+      }
+    }
+    if (sampleSize == 0) {
+      return 1.0 / numNonNulls;
+    }
+
+    long singletons = frequencies.values().stream().filter(frequency -> frequency == 1).count();
+    double distinct = Math.sqrt(numNonNulls / (double) sampleSize) * singletons + (frequencies.size() - singletons);
+    distinct = Math.max(1, Math.min(distinct, numNonNulls));
+    return numNonNulls / (double) size / distinct;
+  }
+}
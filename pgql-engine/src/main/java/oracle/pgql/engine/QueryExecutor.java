@@ -0,0 +1,304 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import oracle.pgql.lang.PgqlException;
+import oracle.pgql.lang.ir.ExpAsVar;
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.OrderByElem;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation;
+import oracle.pgql.lang.ir.QueryExpression.ExpressionType;
+import oracle.pgql.lang.ir.QueryExpression.UnaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.VarRef;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.ir.QueryVariable.VariableType;
+
+/**
+ * Executes a {@link QueryPlan}: matches the graph pattern, groups and aggregates the matches if needed, evaluates the
+ * SELECT and ORDER BY expressions and then sorts the rows and applies OFFSET and LIMIT. The result is fully
+ * materialized. Matches are grouped in a {@link GroupTable}, which spills to disk if the groups exceed the memory
+ * budget of the graph.
+ */
+final class QueryExecutor {
+
+  private QueryExecutor() {
+  }
+
+  /**
+   * @param parameters
+   *          the values of the bind variables, by (zero-based) parameter index
+   */
+  static MaterializedResultSet execute(PropertyGraph graph, QueryPlan plan, Object[] parameters) throws PgqlException {
+    GraphQuery query = plan.query;
+    ExpressionInterpreter interpreter = new ExpressionInterpreter(graph, parameters);
+    long offset = getLongValue(query.getOffset(), "OFFSET", interpreter, 0);
+    long limit = getLongValue(query.getLimit(), "LIMIT", interpreter, Long.MAX_VALUE);
+
+    List<String> columnNames = new ArrayList<>();
+    for (ExpAsVar column : plan.columns) {
+      columnNames.add(column.getName());
+    }
+
+    for (QueryExpression preFilter : plan.preFilters) {
+      if (!interpreter.isTrue(preFilter, EvaluationContext.EMPTY)) {
+        return new MaterializedResultSet(columnNames, new ArrayList<>());
+      }
+    }
+
+    List<OrderByElem> orderBy = query.getOrderBy().getElements();
+    List<Row> rows = plan.grouped ? executeGrouped(graph, plan, interpreter)
+        : executeUngrouped(graph, plan, interpreter, orderBy.isEmpty() ? saturatedAdd(offset, limit) : Long.MAX_VALUE);
+
+    if (!orderBy.isEmpty()) {
+      rows.sort((row1, row2) -> {
+        for (int i = 0; i < orderBy.size(); i++) {
+          int result = Values.ORDER.compare(row1.orderKeys[i], row2.orderKeys[i]);
+          if (result != 0) {
+            return orderBy.get(i).isAscending() ? result : -result;
+          }
+        }
+        return 0;
+      });
+    }
+
+    List<Object[]> result = new ArrayList<>();
+    for (long i = offset; i < rows.size() && i - offset < limit; i++) {
+      result.add(rows.get((int) i).values);
+    }
+    return new MaterializedResultSet(columnNames, result);
+  }
+
+  private static List<Row> executeUngrouped(PropertyGraph graph, QueryPlan plan, ExpressionInterpreter interpreter,
+      long maxRows) {
+    List<Row> rows = new ArrayList<>();
+    Matcher matcher = new Matcher(graph, plan, interpreter);
+    List<OrderByElem> orderBy = plan.query.getOrderBy().getElements();
+    Map<String, Integer> columnIndices = getColumnIndices(plan.columns);
+    EvaluationContext bindingCtx = matcher.getContext();
+    if (maxRows == 0) {
+      return rows;
+    }
+
+    matcher.match(binding -> {
+      Object[] values = new Object[plan.columns.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = interpreter.evaluate(plan.columns.get(i).getExp(), bindingCtx);
+      }
+      Object[] orderKeys = new Object[orderBy.size()];
+      if (!orderBy.isEmpty()) {
+        EvaluationContext rowCtx = new RowContext(bindingCtx, columnIndices, values);
+        for (int i = 0; i < orderKeys.length; i++) {
+          orderKeys[i] = interpreter.evaluate(orderBy.get(i).getExp(), rowCtx);
+        }
+      }
+      rows.add(new Row(values, orderKeys));
+      return rows.size() < maxRows;
+    });
+    return rows;
+  }
+
+  private static List<Row> executeGrouped(PropertyGraph graph, QueryPlan plan, ExpressionInterpreter interpreter)
+      throws PgqlException {
+    List<ExpAsVar> groupKeys = plan.query.getGroupBy().getElements();
+    Matcher matcher = new Matcher(graph, plan, interpreter);
+    EvaluationContext bindingCtx = matcher.getContext();
+
+    // vertices and edges that are grouped on are looked up by their id rather than as objects
+    QueryVariable[] elementKeys = new QueryVariable[groupKeys.size()];
+    VariableType[] keyTypes = new VariableType[groupKeys.size()];
+    for (int i = 0; i < groupKeys.size(); i++) {
+      QueryExpression exp = groupKeys.get(i).getExp();
+      if (exp.getExpType() == ExpressionType.VARREF) {
+        QueryVariable variable = ((VarRef) exp).getVariable();
+        if (variable.getVariableType() == VariableType.VERTEX || variable.getVariableType() == VariableType.EDGE) {
+          elementKeys[i] = variable;
+          keyTypes[i] = variable.getVariableType();
+        }
+      }
+    }
+    ExpressionType[] aggregationTypes = new ExpressionType[plan.aggregations.size()];
+    for (int i = 0; i < aggregationTypes.length; i++) {
+      aggregationTypes[i] = plan.aggregations.get(i).getExpType();
+    }
+
+    List<OrderByElem> orderBy = plan.query.getOrderBy().getElements();
+    Map<String, Integer> columnIndices = getColumnIndices(plan.columns);
+    List<Row> rows = new ArrayList<>();
+    try (GroupTable groups = new GroupTable(graph, keyTypes, aggregationTypes, graph.getGroupMemoryBudget(),
+        graph.getSpillDirectory())) {
+      matcher.match(binding -> {
+        for (int i = 0; i < elementKeys.length; i++) {
+          if (elementKeys[i] == null) {
+            groups.setValueKey(i, interpreter.evaluate(groupKeys.get(i).getExp(), bindingCtx));
+          } else {
+            groups.setElementKey(i, bindingCtx.getElementId(elementKeys[i]));
+          }
+        }
+        int group = groups.findOrInsert();
+        for (int i = 0; i < aggregationTypes.length; i++) {
+          QueryExpression exp = ((UnaryExpression) plan.aggregations.get(i)).getExp();
+          groups.add(group, i, exp.getExpType() == ExpressionType.STAR ? Boolean.TRUE : interpreter.evaluate(exp,
+              bindingCtx));
+        }
+        return true;
+      });
+
+      // without GROUP BY, there is a single group even if there are no matches
+      if (groupKeys.isEmpty() && groups.size() == 0) {
+        groups.findOrInsert();
+      }
+
+      groups.forEachGroup((table, group) -> {
+        GroupContext groupCtx = new GroupContext(plan, groupKeys, table, group);
+        Object[] values = new Object[plan.columns.size()];
+        for (int i = 0; i < values.length; i++) {
+          values[i] = interpreter.evaluate(plan.columns.get(i).getExp(), groupCtx);
+        }
+        EvaluationContext rowCtx = new RowContext(groupCtx, columnIndices, values);
+        Object[] orderKeys = new Object[orderBy.size()];
+        for (int i = 0; i < orderKeys.length; i++) {
+          orderKeys[i] = interpreter.evaluate(orderBy.get(i).getExp(), rowCtx);
+        }
+        rows.add(new Row(values, orderKeys));
+      });
+    } catch (UncheckedIOException e) {
+      throw new PgqlException("Failed to spill groups to " + graph.getSpillDirectory(), e.getCause());
+    }
+    return rows;
+  }
+
+  private static Map<String, Integer> getColumnIndices(List<ExpAsVar> columns) {
+    Map<String, Integer> result = new HashMap<>();
+    for (int i = 0; i < columns.size(); i++) {
+      result.putIfAbsent(columns.get(i).getName(), i);
+    }
+    return result;
+  }
+
+  private static long getLongValue(QueryExpression exp, String clause, ExpressionInterpreter interpreter,
+      long defaultValue) throws PgqlException {
+    if (exp == null) {
+      return defaultValue;
+    }
+    Object value = interpreter.evaluate(exp, EvaluationContext.EMPTY);
+    if (!(value instanceof Long) || (Long) value < 0) {
+      throw new PgqlException(clause + " requires a non-negative integer but got " + value);
+    }
+    return (Long) value;
+  }
+
+  private static long saturatedAdd(long value1, long value2) {
+    long result = value1 + value2;
+    return result < 0 ? Long.MAX_VALUE : result;
+  }
+
+  private static final class Row {
+
+    final Object[] values;
+
+    final Object[] orderKeys;
+
+    Row(Object[] values, Object[] orderKeys) {
+      this.values = values;
+      this.orderKeys = orderKeys;
+    }
+  }
+
+  /**
+   * Resolves references to SELECT aliases (e.g. in ORDER BY) to the values of the row
+   */
+  private static final class RowContext implements EvaluationContext {
+
+    private final EvaluationContext ctx;
+
+    private final Map<String, Integer> columnIndices;
+
+    private final Object[] values;
+
+    RowContext(EvaluationContext ctx, Map<String, Integer> columnIndices, Object[] values) {
+      this.ctx = ctx;
+      this.columnIndices = columnIndices;
+      this.values = values;
+    }
+
+    @Override
+    public int getElementId(QueryVariable variable) {
+      return ctx.getElementId(variable);
+    }
+
+    @Override
+    public Object getValue(QueryVariable variable) {
+      if (variable.getVariableType() == VariableType.EXP_AS_VAR) {
+        Integer index = columnIndices.get(variable.getName());
+        if (index != null) {
+          return values[index];
+        }
+      }
+      return ctx.getValue(variable);
+    }
+
+    @Override
+    public Object getAggregate(Aggregation aggregation) {
+      return ctx.getAggregate(aggregation);
+    }
+  }
+
+  /**
+   * Resolves references to GROUP BY keys and aggregations to the values of a group. Vertices and edges that are
+   * grouped on can also be referred to directly.
+   */
+  private static final class GroupContext implements EvaluationContext {
+
+    private final QueryPlan plan;
+
+    private final Map<String, Object> keyValues = new HashMap<>();
+
+    private final GroupTable table;
+
+    private final int group;
+
+    GroupContext(QueryPlan plan, List<ExpAsVar> groupKeys, GroupTable table, int group) {
+      this.plan = plan;
+      this.table = table;
+      this.group = group;
+      for (int i = 0; i < groupKeys.size(); i++) {
+        ExpAsVar groupKey = groupKeys.get(i);
+        Object key = table.getKey(group, i);
+        keyValues.putIfAbsent(groupKey.getName(), key);
+        if (groupKey.getExp().getExpType() == ExpressionType.VARREF) {
+          keyValues.putIfAbsent(((VarRef) groupKey.getExp()).getVariable().getName(), key);
+        }
+      }
+    }
+
+    @Override
+    public int getElementId(QueryVariable variable) {
+      Object value = getValue(variable);
+      if (value instanceof Vertex) {
+        return ((Vertex) value).getId();
+      } else if (value instanceof Edge) {
+        return ((Edge) value).getId();
+      }
+      return -1;
+    }
+
+    @Override
+    public Object getValue(QueryVariable variable) {
+      return keyValues.get(variable.getName());
+    }
+
+    @Override
+    public Object getAggregate(Aggregation aggregation) {
+      int index = plan.aggregations.indexOf(aggregation);
+      return index == -1 ? null : table.getAggregate(group, index);
+    }
+  }
+}
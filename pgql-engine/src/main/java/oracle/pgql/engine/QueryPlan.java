@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import oracle.pgql.lang.ir.ExpAsVar;
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation;
+import oracle.pgql.lang.ir.QueryVariable;
+
+/**
+ * A query prepared for execution: the order in which the vertices and edges of the graph pattern are matched, as chosen
+ * by the {@link JoinOrderOptimizer}, with each WHERE constraint attached to the first step after which all its
+ * variables are bound.
+ *
+ * During matching, the vertices and edges of the pattern are bound to ids in an int array; each variable has a fixed
+ * slot in this array.
+ */
+final class QueryPlan {
+
+  final GraphQuery query;
+
+  /**
+   * Slot of each vertex and edge variable, by identity
+   */
+  final Map<QueryVariable, Integer> slots;
+
+  /**
+   * Constraints that do not refer to any variable and are evaluated once before matching
+   */
+  final List<QueryExpression> preFilters;
+
+  final List<MatchStep> steps;
+
+  /**
+   * The SELECT elements, or the vertices and edges of the pattern in case of SELECT *
+   */
+  final List<ExpAsVar> columns;
+
+  /**
+   * Whether the query is evaluated per group, which is the case if it has a GROUP BY or uses aggregations
+   */
+  final boolean grouped;
+
+  /**
+   * The distinct aggregations in SELECT and ORDER BY
+   */
+  final List<Aggregation> aggregations;
+
+  final int numParameters;
+
+  QueryPlan(GraphQuery query, Map<QueryVariable, Integer> slots, List<QueryExpression> preFilters,
+      List<MatchStep> steps, List<ExpAsVar> columns, boolean grouped, List<Aggregation> aggregations,
+      int numParameters) {
+    this.query = query;
+    this.slots = slots;
+    this.preFilters = preFilters;
+    this.steps = steps;
+    this.columns = columns;
+    this.grouped = grouped;
+    this.aggregations = aggregations;
+    this.numParameters = numParameters;
+  }
+
+  int getNumSlots() {
+    return slots.size();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (QueryExpression preFilter : preFilters) {
+      sb.append("PRE-FILTER " + preFilter + "\n");
+    }
+    for (MatchStep step : steps) {
+      sb.append(step).append("\n");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Binds one vertex, either by scanning all vertices, by following an edge from an already bound vertex, by
+   * intersecting the neighbors of several bound vertices or by following a path from an already bound vertex, and then
+   * applies the filters that have become evaluable.
+   */
+  static final class MatchStep {
+
+    enum Kind {
+      SCAN_VERTEX,
+      EXPAND_OUT,
+      EXPAND_IN,
+      EXPAND_UNDIRECTED,
+
+      /**
+       * Binds each vertex that is reachable from the bound vertex over the path, once
+       */
+      REACH_OUT,
+
+      /**
+       * Binds each vertex from which the bound vertex is reachable over the path, once
+       */
+      REACH_IN,
+
+      /**
+       * Binds each vertex that is a neighbor of all the vertices in {@link MatchStep#intersectFromSlots}, once; the
+       * edges to these vertices are bound by the checks that follow
+       */
+      INTERSECT
+    }
+
+    final Kind kind;
+
+    /**
+     * The slot of the already bound vertex from which an edge is followed, or -1 for a scan or an intersection
+     */
+    final int fromSlot;
+
+    /**
+     * The slot of the edge or path that is followed, or -1 for a scan or an intersection
+     */
+    final int edgeSlot;
+
+    final int toSlot;
+
+    /**
+     * Whether the vertex at the other end of the edge was bound by an earlier step, in which case the step only checks
+     * that the edge leads to it
+     */
+    final boolean toBound;
+
+    final List<QueryExpression> filters = new ArrayList<>();
+
+    /**
+     * The path pattern of a REACH_OUT or REACH_IN step, or null
+     */
+    final PathAutomaton automaton;
+
+    /**
+     * The slots of the bound vertices of which an INTERSECT step intersects the neighbors, or null
+     */
+    final int[] intersectFromSlots;
+
+    /**
+     * Per slot in {@link #intersectFromSlots}, whether the outgoing neighbors of the vertex are intersected rather than
+     * its incoming neighbors
+     */
+    final boolean[] intersectOutgoing;
+
+    /**
+     * The number of intermediate results after this step as estimated by the planner, or -1 if unknown
+     */
+    double estimatedCardinality = -1;
+
+    /**
+     * For printing only
+     */
+    private final String description;
+
+    MatchStep(Kind kind, int fromSlot, int edgeSlot, int toSlot, boolean toBound, PathAutomaton automaton,
+        String description) {
+      this.kind = kind;
+      this.fromSlot = fromSlot;
+      this.edgeSlot = edgeSlot;
+      this.toSlot = toSlot;
+      this.toBound = toBound;
+      this.automaton = automaton;
+      this.description = description;
+      intersectFromSlots = null;
+      intersectOutgoing = null;
+    }
+
+    /**
+     * Creates an INTERSECT step
+     */
+    MatchStep(int[] intersectFromSlots, boolean[] intersectOutgoing, int toSlot, String description) {
+      this.kind = Kind.INTERSECT;
+      this.fromSlot = -1;
+      this.edgeSlot = -1;
+      this.toSlot = toSlot;
+      this.toBound = false;
+      this.automaton = null;
+      this.description = description;
+      this.intersectFromSlots = intersectFromSlots;
+      this.intersectOutgoing = intersectOutgoing;
+    }
+
+    @Override
+    public String toString() {
+      String result = kind + " " + description;
+      if (!filters.isEmpty()) {
+        result += " FILTER " + filters;
+      }
+      if (estimatedCardinality >= 0) {
+        result += String.format(" (estimated rows: %.1f)", estimatedCardinality);
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import static oracle.pgql.lang.ir.PgqlUtils.getAggregations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import oracle.pgql.engine.QueryPlan.MatchStep;
+import oracle.pgql.lang.PgqlException;
+import oracle.pgql.lang.ir.ExpAsVar;
+import oracle.pgql.lang.ir.GraphPattern;
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.OrderByElem;
+import oracle.pgql.lang.ir.QueryEdge;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation;
+import oracle.pgql.lang.ir.QueryExpression.BindVariable;
+import oracle.pgql.lang.ir.QueryExpression.CallStatement;
+import oracle.pgql.lang.ir.QueryExpression.PropertyAccess;
+import oracle.pgql.lang.ir.QueryExpression.VarRef;
+import oracle.pgql.lang.ir.QueryPath;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.ir.QueryVariable.VariableType;
+import oracle.pgql.lang.ir.QueryVertex;
+import oracle.pgql.lang.ir.SpatialFunction.StPointFromText;
+import oracle.pgql.lang.ir.SpatialFunction.StX;
+import oracle.pgql.lang.ir.SpatialFunction.StY;
+import oracle.pgql.lang.ir.VertexPairConnection;
+import oracle.pgql.lang.util.AbstractQueryExpressionVisitor;
+import oracle.pgql.lang.util.ConstantFolding;
+import oracle.pgql.lang.util.ConstraintPushdown;
+
+/**
+ * Creates a {@link QueryPlan}: checks that the query is supported, folds its constant expressions, assigns slots to
+ * the vertices and edges of the pattern, lets the {@link JoinOrderOptimizer} choose a matching order based on the
+ * statistics of the graph, and determines the columns and aggregations of the result.
+ */
+final class QueryPlanner {
+
+  /**
+   * The join order optimizer represents sets of vertices as bitmaps in a long
+   */
+  static final int MAX_VERTICES = 63;
+
+  private QueryPlanner() {
+  }
+
+  static QueryPlan plan(GraphQuery query, GraphStatistics statistics) throws PgqlException {
+    checkSupported(query);
+    // evaluate the literal parts of expressions once instead of for every match; a WHERE clause that is always false
+    // becomes a single pre-filter that makes execution return before matching
+    query = ConstantFolding.fold(query);
+    GraphPattern graphPattern = query.getGraphPattern();
+
+    List<QueryVertex> vertices = new ArrayList<>(graphPattern.getVertices());
+    Collections.sort(vertices, Comparator.comparing(QueryVariable::getName));
+    List<VertexPairConnection> edges = new ArrayList<>(graphPattern.getConnections());
+    Collections.sort(edges, Comparator.comparing(QueryVariable::getName));
+    Map<QueryPath, PathAutomaton> automata = new IdentityHashMap<>();
+    for (VertexPairConnection connection : edges) {
+      if (connection instanceof QueryPath) {
+        automata.put((QueryPath) connection, PathAutomaton.create((QueryPath) connection));
+      }
+    }
+
+    // paths have a slot so that they can be referred to by the match steps, but are never bound
+    Map<QueryVariable, Integer> slots = new IdentityHashMap<>();
+    for (QueryVertex vertex : vertices) {
+      slots.put(vertex, slots.size());
+    }
+    for (VertexPairConnection edge : edges) {
+      slots.put(edge, slots.size());
+    }
+
+    // split conjunctions so that each conjunct can be evaluated as soon as its own variables are bound
+    List<QueryExpression> preFilters = new ArrayList<>();
+    Map<QueryExpression, Set<QueryVariable>> constraintVariables = new LinkedHashMap<>();
+    for (QueryExpression constraint : ConstraintPushdown.create(graphPattern).getConjuncts()) {
+      Set<QueryVariable> variables = getPatternVariables(constraint);
+      if (variables.isEmpty()) {
+        preFilters.add(constraint);
+      } else {
+        constraintVariables.put(constraint, variables);
+      }
+    }
+
+    List<MatchStep> steps = new JoinOrderOptimizer(vertices, edges, slots, automata, constraintVariables,
+        new SelectivityEstimator(statistics)).optimize();
+
+    List<ExpAsVar> columns = query.getProjection().getElements();
+    if (columns.isEmpty()) { // SELECT *
+      columns = new ArrayList<>();
+      for (QueryVertex vertex : vertices) {
+        if (!vertex.isAnonymous()) {
+          columns.add(new ExpAsVar(new VarRef(vertex), vertex.getName(), false));
+        }
+      }
+      for (VertexPairConnection edge : edges) {
+        if (!edge.isAnonymous() && edge instanceof QueryEdge) {
+          columns.add(new ExpAsVar(new VarRef(edge), edge.getName(), false));
+        }
+      }
+    }
+
+    Set<Aggregation> aggregations = new LinkedHashSet<>();
+    for (ExpAsVar column : columns) {
+      aggregations.addAll(getAggregations(column.getExp()));
+    }
+    for (OrderByElem orderByElem : query.getOrderBy().getElements()) {
+      aggregations.addAll(getAggregations(orderByElem.getExp()));
+    }
+    boolean grouped = !query.getGroupBy().getElements().isEmpty() || !aggregations.isEmpty();
+
+    return new QueryPlan(query, slots, preFilters, steps, columns, grouped, new ArrayList<>(aggregations),
+        getNumParameters(query));
+  }
+
+  /**
+   * @return the vertices and edges that the expression refers to, by identity
+   */
+  static Set<QueryVariable> getPatternVariables(QueryExpression exp) {
+    Set<QueryVariable> result = Collections.newSetFromMap(new IdentityHashMap<>());
+    exp.accept(new AbstractQueryExpressionVisitor() {
+
+      @Override
+      public void visit(VarRef varRef) {
+        add(varRef.getVariable());
+      }
+
+      @Override
+      public void visit(PropertyAccess propAccess) {
+        add(propAccess.getVariable());
+      }
+
+      private void add(QueryVariable variable) {
+        if (variable.getVariableType() == VariableType.VERTEX || variable.getVariableType() == VariableType.EDGE) {
+          result.add(variable);
+        }
+      }
+    });
+    return result;
+  }
+
+  private static void checkSupported(GraphQuery query) throws PgqlException {
+    if (query.getGraphPattern().getVertices().size() > MAX_VERTICES) {
+      throw new PgqlException("Patterns with more than " + MAX_VERTICES + " vertices are not supported");
+    }
+
+    final List<String> unsupported = new ArrayList<>();
+    AbstractQueryExpressionVisitor visitor = new AbstractQueryExpressionVisitor() {
+
+      @Override
+      public void visit(StX stX) {
+        unsupported.add(stX.toString());
+      }
+
+      @Override
+      public void visit(StY stY) {
+        unsupported.add(stY.toString());
+      }
+
+      @Override
+      public void visit(StPointFromText pointFromText) {
+        unsupported.add(pointFromText.toString());
+      }
+
+      @Override
+      public void visit(CallStatement callStatement) {
+        unsupported.add(callStatement.toString());
+      }
+    };
+    for (QueryExpression exp : getAllExpressions(query)) {
+      exp.accept(visitor);
+    }
+    if (!unsupported.isEmpty()) {
+      throw new PgqlException("Unsupported expressions: " + unsupported);
+    }
+  }
+
+  private static List<QueryExpression> getAllExpressions(GraphQuery query) {
+    List<QueryExpression> result = new ArrayList<>(query.getGraphPattern().getConstraints());
+    for (ExpAsVar expAsVar : query.getProjection().getElements()) {
+      result.add(expAsVar.getExp());
+    }
+    for (ExpAsVar expAsVar : query.getGroupBy().getElements()) {
+      result.add(expAsVar.getExp());
+    }
+    for (OrderByElem orderByElem : query.getOrderBy().getElements()) {
+      result.add(orderByElem.getExp());
+    }
+    if (query.getLimit() != null) {
+      result.add(query.getLimit());
+    }
+    if (query.getOffset() != null) {
+      result.add(query.getOffset());
+    }
+    return result;
+  }
+
+  private static int getNumParameters(GraphQuery query) {
+    int[] max = { -1 };
+    AbstractQueryExpressionVisitor visitor = new AbstractQueryExpressionVisitor() {
+
+      @Override
+      public void visit(BindVariable bindVariable) {
+        max[0] = Math.max(max[0], bindVariable.getParameterIndex());
+      }
+    };
+    for (QueryExpression exp : getAllExpressions(query)) {
+      exp.accept(visitor);
+    }
+    return max[0] + 1;
+  }
+}
@@ -0,0 +1,498 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import oracle.pgql.engine.CompiledExpression.BooleanEvaluator;
+import oracle.pgql.engine.CompiledExpression.Frame;
+import oracle.pgql.lang.ir.QueryExpression;
+
+/**
+ * Evaluates reachability over a {@link PathAutomaton} with breadth-first search on the CSR arrays of the graph. The
+ * search runs over pairs of a vertex and a state of the automaton. Frontiers are int arrays of vertex ids (all
+ * vertices of a frontier are in the same state), and the vertices that were already visited in each state are kept in
+ * bitsets.
+ *
+ * A vertex is reachable with between min and max hops if it is reachable with exactly L hops for some L in that
+ * range. The search first computes the exact set of vertices that are reachable with min hops, level by level without
+ * excluding vertices that were visited on earlier levels, and then continues with an ordinary search from that set
+ * for at most (max - min) more hops. If both ends are known, the second search runs from both ends at once, each time
+ * expanding the side whose frontier has fewer edges to follow, so that a hub with many edges is only expanded if the
+ * other side is even more expensive.
+ *
+ * Once the frontier of a search for the reachable vertices has more edges than {@link #parallelThreshold}, the search
+ * is handed over to a {@link ParallelReachability}, which expands each level in parallel.
+ *
+ * Paths that are used repeatedly are instead evaluated with the {@link ReachabilityIndex} from the
+ * {@link ReachabilityIndexCache} of the graph, if the automaton can be indexed.
+ *
+ * Instances reuse their frontiers and bitsets between searches and cannot be shared between matchers.
+ */
+final class ReachabilityEvaluator {
+
+  private static final int INITIAL_LOG_CAPACITY = 1024;
+
+  /**
+   * The minimum number of edges of a frontier for which the search continues in parallel
+   */
+  static final long MIN_PARALLEL_FRONTIER_COST = 1 << 14;
+
+  private final PropertyGraph graph;
+
+  private final PathAutomaton automaton;
+
+  private final int numTransitions;
+
+  private final int numVertices;
+
+  /**
+   * The compiled filters of each transition
+   */
+  private final BooleanEvaluator[][] filters;
+
+  private final Frame frame;
+
+  private final Search forward;
+
+  private final Search backward;
+
+  private final ForkJoinPool pool;
+
+  /**
+   * The number of edges of a frontier from which the search continues in parallel; at least the number of words of a
+   * bitset of all vertices, since each parallel level scans such bitsets
+   */
+  private final long parallelThreshold;
+
+  /**
+   * Allocated on first use
+   */
+  private ParallelReachability parallel;
+
+  /**
+   * The index that answers the queries instead of a search, or null
+   */
+  private final ReachabilityIndex index;
+
+  private final ReachabilityIndex.Traversal indexTraversal;
+
+  /**
+   * The vertices found by the last call to {@link #reachable(int, boolean)}
+   */
+  private int[] result = new int[0];
+
+  ReachabilityEvaluator(PropertyGraph graph, PathAutomaton automaton, ExpressionInterpreter interpreter) {
+    this(graph, automaton, interpreter, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism() > 1
+        ? Math.max(MIN_PARALLEL_FRONTIER_COST, (graph.getNumVertices() + 63) / 64) : Long.MAX_VALUE,
+        graph.getReachabilityIndexCache().get(automaton));
+  }
+
+  ReachabilityEvaluator(PropertyGraph graph, PathAutomaton automaton, ExpressionInterpreter interpreter,
+      ForkJoinPool pool, long parallelThreshold) {
+    this(graph, automaton, interpreter, pool, parallelThreshold, null);
+  }
+
+  ReachabilityEvaluator(PropertyGraph graph, PathAutomaton automaton, ExpressionInterpreter interpreter,
+      ForkJoinPool pool, long parallelThreshold, ReachabilityIndex index) {
+    this.graph = graph;
+    this.automaton = automaton;
+    numTransitions = automaton.numTransitions;
+    numVertices = graph.getNumVertices();
+    int[] binding = new int[automaton.getNumSlots()];
+    Arrays.fill(binding, -1);
+    frame = new Frame(binding, interpreter, EvaluationContext.EMPTY);
+
+    ExpressionCompiler compiler = graph.getExpressionCompiler();
+    filters = new BooleanEvaluator[numTransitions][];
+    for (int i = 0; i < numTransitions; i++) {
+      List<QueryExpression> transitionFilters = automaton.filters.get(i);
+      filters[i] = new BooleanEvaluator[transitionFilters.size()];
+      for (int j = 0; j < transitionFilters.size(); j++) {
+        filters[i][j] = compiler.compile(transitionFilters.get(j), automaton.slots).asBoolean();
+      }
+    }
+    forward = new Search(true);
+    backward = new Search(false);
+    this.pool = pool;
+    this.parallelThreshold = parallelThreshold;
+    this.index = index;
+    indexTraversal = index == null ? null : new ReachabilityIndex.Traversal(index);
+  }
+
+  /**
+   * Finds the vertices that are reachable from the given vertex, in the direction of the path or against it
+   *
+   * @param isForward
+   *          true to find the ends of the paths that start at the vertex, false to find the starts of the paths that
+   *          end at the vertex
+   * @return the number of vertices found, which are stored in ascending order in {@link #getResult()}
+   */
+  int reachable(int vertex, boolean isForward) {
+    if (index != null) {
+      int numReachable = index.reachable(vertex, isForward, automaton.minHops, indexTraversal);
+      result = indexTraversal.getResult();
+      return numReachable;
+    }
+    Search search = isForward ? forward : backward;
+    search.clear();
+    if (!search.searchExactHops(vertex)) {
+      return 0;
+    }
+    search.markFrontier();
+    long maxTransitions = getMaxRemainingTransitions();
+    for (long transitions = 0; transitions < maxTransitions && search.frontierSize > 0; transitions++) {
+      if (search.frontierCost >= parallelThreshold) {
+        return searchInParallel(search, maxTransitions - transitions);
+      }
+      search.expand(null);
+    }
+    return search.collectResult();
+  }
+
+  private int searchInParallel(Search search, long maxTransitions) {
+    if (parallel == null) {
+      parallel = new ParallelReachability(graph, automaton, this, frame.interpreter, pool);
+    }
+    parallel.start(search.isForward, search.state);
+    search.handOver(parallel);
+    parallel.search(maxTransitions);
+    int numReachable = parallel.getNumVisited(0);
+    if (result.length < numReachable) {
+      result = new int[numReachable];
+    }
+    parallel.getVisited(0, result);
+    return numReachable;
+  }
+
+  int[] getResult() {
+    return result;
+  }
+
+  /**
+   * @return whether there is a path from the first vertex to the second vertex
+   */
+  boolean reaches(int from, int to) {
+    if (index != null) {
+      return index.reaches(from, to, automaton.minHops, indexTraversal);
+    }
+    forward.clear();
+    backward.clear();
+    if (!forward.searchExactHops(from)) {
+      return false;
+    }
+    forward.markFrontier();
+    if (forward.isVisited(0, to)) {
+      return true;
+    }
+    backward.setFrontier(to);
+    backward.markFrontier();
+
+    long maxTransitions = getMaxRemainingTransitions();
+    for (long transitions = 0; transitions < maxTransitions; transitions++) {
+      if (forward.frontierSize == 0 || backward.frontierSize == 0) {
+        return false;
+      }
+      boolean met = forward.frontierCost <= backward.frontierCost ? forward.expand(backward)
+          : backward.expand(forward);
+      if (met) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the maximum number of transitions after the minimum number of hops
+   */
+  private long getMaxRemainingTransitions() {
+    if (automaton.maxHops == -1) {
+      return Long.MAX_VALUE;
+    }
+    return (automaton.maxHops - automaton.minHops) * numTransitions;
+  }
+
+  private boolean passes(int transition, int from, int edge, int to) {
+    return passes(frame, transition, from, edge, to);
+  }
+
+  /**
+   * Evaluates the filters of a transition on an edge
+   *
+   * @param frame
+   *          a frame of which the binding has a slot for each vertex and edge of the automaton
+   */
+  boolean passes(Frame frame, int transition, int from, int edge, int to) {
+    BooleanEvaluator[] transitionFilters = filters[transition];
+    if (transitionFilters.length == 0) {
+      return true;
+    }
+    int[] binding = frame.binding;
+    binding[automaton.getFromSlot(transition)] = from;
+    binding[automaton.getEdgeSlot(transition)] = edge;
+    binding[automaton.getToSlot(transition)] = to;
+    for (BooleanEvaluator filter : transitionFilters) {
+      if (filter.evaluate(frame) != CompiledExpression.TRUE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the number of edges that expanding the vertex over the transition follows
+   */
+  long getDegree(int vertex, int transition, boolean isForward) {
+    long degree = 0;
+    if (automaton.followsOut(transition, isForward)) {
+      degree += graph.outOffsets[vertex + 1] - graph.outOffsets[vertex];
+    }
+    if (automaton.followsIn(transition, isForward)) {
+      degree += graph.inOffsets[vertex + 1] - graph.inOffsets[vertex];
+    }
+    return degree;
+  }
+
+  /**
+   * The state of a search in one direction. The frontier holds the vertices of the current level, which are all in the
+   * same state of the automaton.
+   */
+  private final class Search {
+
+    private final boolean isForward;
+
+    private int[] frontier;
+
+    private int frontierSize;
+
+    private int[] nextFrontier;
+
+    private int nextFrontierSize;
+
+    /**
+     * The number of edges that expanding the frontier follows
+     */
+    private long frontierCost;
+
+    private int state;
+
+    /**
+     * Per state, the vertices that were visited in that state; allocated on first use
+     */
+    private final long[][] visited;
+
+    /**
+     * The bits that were set in the visited bitsets, as (state * number of vertices + vertex), so that they can be
+     * cleared without clearing the whole bitsets
+     */
+    private long[] log = new long[INITIAL_LOG_CAPACITY];
+
+    private int logSize;
+
+    /**
+     * Whether the search is computing the exact set of vertices that are reachable with the minimum number of hops,
+     * in which case the visited vertices are only excluded within a level
+     */
+    private boolean exactHops;
+
+    /**
+     * The vertices of the next level while searching for an exact number of hops
+     */
+    private final long[] nextLevel;
+
+    Search(boolean isForward) {
+      this.isForward = isForward;
+      frontier = new int[numVertices];
+      nextFrontier = new int[numVertices];
+      visited = new long[numTransitions][];
+      nextLevel = new long[(numVertices + 63) / 64];
+    }
+
+    void clear() {
+      for (int i = 0; i < logSize; i++) {
+        long entry = log[i];
+        int vertex = (int) (entry % numVertices);
+        visited[(int) (entry / numVertices)][vertex >>> 6] &= ~(1L << vertex);
+      }
+      logSize = 0;
+      frontierSize = 0;
+      frontierCost = 0;
+      state = 0;
+    }
+
+    void setFrontier(int vertex) {
+      state = 0;
+      frontier[0] = vertex;
+      frontierSize = 1;
+      frontierCost = getDegree(vertex, getTransition(), isForward);
+    }
+
+    /**
+     * Computes the exact set of vertices that are reachable from the vertex with the minimum number of hops
+     *
+     * @return false if there is no such vertex
+     */
+    boolean searchExactHops(int vertex) {
+      if (automaton.maxHops != -1 && automaton.minHops > automaton.maxHops) {
+        return false;
+      }
+      setFrontier(vertex);
+      long transitions = automaton.minHops * numTransitions;
+      exactHops = true;
+      for (long i = 0; i < transitions && frontierSize > 0; i++) {
+        expand(null);
+        for (int j = 0; j < frontierSize; j++) {
+          int next = frontier[j];
+          nextLevel[next >>> 6] &= ~(1L << next);
+        }
+      }
+      exactHops = false;
+      return frontierSize > 0;
+    }
+
+    /**
+     * Marks the vertices of the frontier as visited
+     */
+    void markFrontier() {
+      for (int i = 0; i < frontierSize; i++) {
+        markVisited(state, frontier[i]);
+      }
+    }
+
+    /**
+     * Expands the frontier by one transition, to the vertices that were not visited before in the next state
+     *
+     * @param other
+     *          the search in the other direction when searching from both ends, or null
+     * @return whether a new vertex was already visited in the same state by the other search
+     */
+    boolean expand(Search other) {
+      int transition = getTransition();
+      int nextState = getNextState();
+      nextFrontierSize = 0;
+      boolean met = false;
+      for (int i = 0; i < frontierSize && !met; i++) {
+        met = expandVertex(frontier[i], transition, nextState, other);
+      }
+
+      int[] tmp = frontier;
+      frontier = nextFrontier;
+      nextFrontier = tmp;
+      frontierSize = nextFrontierSize;
+      state = nextState;
+      frontierCost = 0;
+      int nextTransition = getTransition();
+      for (int i = 0; i < frontierSize; i++) {
+        frontierCost += getDegree(frontier[i], nextTransition, isForward);
+      }
+      return met;
+    }
+
+    /**
+     * @return the transition that expanding the frontier follows
+     */
+    private int getTransition() {
+      return automaton.getTransition(state, isForward);
+    }
+
+    private int getNextState() {
+      return automaton.getNextState(state, isForward);
+    }
+
+    /**
+     * Adds the neighbors of the vertex over the transition that were not visited yet to the next frontier
+     *
+     * @return true if a neighbor was visited in the next state by the other search
+     */
+    private boolean expandVertex(int vertex, int transition, int nextState, Search other) {
+      boolean out = automaton.followsOut(transition, isForward);
+      if (out) {
+        for (int edge = graph.outOffsets[vertex]; edge < graph.outOffsets[vertex + 1]; edge++) {
+          if (visit(vertex, edge, graph.outNeighbors[edge], transition, nextState, other)) {
+            return true;
+          }
+        }
+      }
+      if (automaton.followsIn(transition, isForward)) {
+        for (int i = graph.inOffsets[vertex]; i < graph.inOffsets[vertex + 1]; i++) {
+          int neighbor = graph.inNeighbors[i];
+          // self-loops were already followed in the outgoing direction
+          if ((!out || neighbor != vertex) && visit(vertex, graph.inEdges[i], neighbor, transition, nextState,
+              other)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    private boolean visit(int vertex, int edge, int neighbor, int transition, int nextState, Search other) {
+      long bit = 1L << neighbor;
+      if (exactHops ? (nextLevel[neighbor >>> 6] & bit) != 0 : isVisited(nextState, neighbor)) {
+        return false;
+      }
+      boolean passes = isForward ? passes(transition, vertex, edge, neighbor)
+          : passes(transition, neighbor, edge, vertex);
+      if (!passes) {
+        return false;
+      }
+      if (exactHops) {
+        nextLevel[neighbor >>> 6] |= bit;
+      } else {
+        markVisited(nextState, neighbor);
+      }
+      nextFrontier[nextFrontierSize++] = neighbor;
+      return other != null && other.isVisited(nextState, neighbor);
+    }
+
+    boolean isVisited(int state, int vertex) {
+      long[] bits = visited[state];
+      return bits != null && (bits[vertex >>> 6] & (1L << vertex)) != 0;
+    }
+
+    private void markVisited(int state, int vertex) {
+      if (visited[state] == null) {
+        visited[state] = new long[(numVertices + 63) / 64];
+      }
+      visited[state][vertex >>> 6] |= 1L << vertex;
+      if (logSize == log.length) {
+        log = Arrays.copyOf(log, log.length * 2);
+      }
+      log[logSize++] = (long) state * numVertices + vertex;
+    }
+
+    /**
+     * Copies the visited vertices and the frontier to the parallel search
+     */
+    void handOver(ParallelReachability parallel) {
+      for (int i = 0; i < logSize; i++) {
+        parallel.markVisited((int) (log[i] / numVertices), (int) (log[i] % numVertices));
+      }
+      for (int i = 0; i < frontierSize; i++) {
+        parallel.addToFrontier(frontier[i]);
+      }
+    }
+
+    /**
+     * Stores the vertices that were visited in state 0 into the result of the evaluator, in ascending order
+     *
+     * @return the number of vertices
+     */
+    int collectResult() {
+      int size = 0;
+      for (int i = 0; i < logSize; i++) {
+        if (log[i] < numVertices) {
+          if (size == result.length) {
+            result = Arrays.copyOf(result, Math.max(16, 2 * size));
+          }
+          result[size++] = (int) log[i];
+        }
+      }
+      Arrays.sort(result, 0, size);
+      return size;
+    }
+  }
+}
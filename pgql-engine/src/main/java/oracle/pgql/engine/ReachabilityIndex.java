@@ -0,0 +1,486 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A reachability index for the paths of a {@link PathAutomaton} with at most one hop as lower bound and no upper
+ * bound, e.g. "-/:knows*\/->". The index materializes the relation between the vertices where a hop starts and the
+ * vertices where it ends, and condenses it into its strongly connected components, which form a directed acyclic
+ * graph (DAG). A vertex reaches another vertex if it is in the same component, or if its component reaches the
+ * component of the other vertex in the DAG.
+ *
+ * Components are numbered by Tarjan's algorithm in the order in which they are completed, so a component only reaches
+ * components with a lower number. Each component is further labelled with intervals from {@link #NUM_TRAVERSALS}
+ * randomized depth-first traversals of the DAG (Yildirim et al., GRAIL): [low, post] where post is the rank of the
+ * component in post-order and low is the lowest rank of a component that it reaches. A component can only reach
+ * another component if its interval contains the interval of the other one. The last traversal also labels each
+ * component with the range of pre-order ranks of its descendants in the DFS tree, which proves that it reaches them.
+ * Most queries are answered by these labels in constant time; the others fall back to a depth-first search of the
+ * DAG that skips the components that the labels exclude.
+ *
+ * The index is immutable and can be queried by multiple threads at once, each with its own {@link Traversal}.
+ */
+final class ReachabilityIndex {
+
+  static final int NUM_TRAVERSALS = 2;
+
+  private final int numVertices;
+
+  private final int numComponents;
+
+  /**
+   * The component of each vertex
+   */
+  private final int[] components;
+
+  /**
+   * The vertices of component c are members[memberOffsets[c]] until members[memberOffsets[c + 1]], in ascending order
+   */
+  private final int[] memberOffsets;
+
+  private final int[] members;
+
+  /**
+   * Whether a vertex of the component reaches itself with at least one hop: the component has more than one vertex,
+   * or its vertex has a hop to itself
+   */
+  private final boolean[] cyclic;
+
+  /**
+   * The DAG of the components, without duplicate edges, in both directions
+   */
+  private final int[] successorOffsets;
+
+  private final int[] successors;
+
+  private final int[] predecessorOffsets;
+
+  private final int[] predecessors;
+
+  /**
+   * The interval [low, post] of each component in each traversal
+   */
+  private final int[][] lows;
+
+  private final int[][] posts;
+
+  /**
+   * The component is an ancestor of the components with a pre-order rank in [pre, treeEnd) in the DFS tree of the
+   * last traversal
+   */
+  private final int[] pres;
+
+  private final int[] treeEnds;
+
+  private ReachabilityIndex(int numVertices, int[] hopOffsets, int[] hops) {
+    this.numVertices = numVertices;
+    components = new int[numVertices];
+    numComponents = computeComponents(hopOffsets, hops);
+
+    memberOffsets = new int[numComponents + 1];
+    for (int vertex = 0; vertex < numVertices; vertex++) {
+      memberOffsets[components[vertex] + 1]++;
+    }
+    for (int c = 0; c < numComponents; c++) {
+      memberOffsets[c + 1] += memberOffsets[c];
+    }
+    members = new int[numVertices];
+    int[] position = Arrays.copyOf(memberOffsets, numComponents);
+    for (int vertex = 0; vertex < numVertices; vertex++) {
+      members[position[components[vertex]]++] = vertex;
+    }
+
+    cyclic = new boolean[numComponents];
+    int[][] dag = condense(hopOffsets, hops);
+    successorOffsets = dag[0];
+    successors = dag[1];
+    predecessorOffsets = dag[2];
+    predecessors = dag[3];
+
+    lows = new int[NUM_TRAVERSALS][numComponents];
+    posts = new int[NUM_TRAVERSALS][numComponents];
+    pres = new int[numComponents];
+    treeEnds = new int[numComponents];
+    Random random = new Random(numComponents);
+    for (int i = 0; i < NUM_TRAVERSALS; i++) {
+      label(i, random);
+    }
+  }
+
+  /**
+   * Materializes the hops of the automaton from every vertex and builds the index over them
+   */
+  static ReachabilityIndex build(PropertyGraph graph, PathAutomaton automaton) {
+    // the filters of an indexable automaton do not depend on bind variables
+    ExpressionInterpreter interpreter = new ExpressionInterpreter(graph, new Object[0]);
+    ReachabilityEvaluator oneHop = new ReachabilityEvaluator(graph, automaton.withHops(1, 1), interpreter, null,
+        Long.MAX_VALUE, null);
+    int numVertices = graph.getNumVertices();
+    int[] hopOffsets = new int[numVertices + 1];
+    int[] hops = new int[Math.max(16, graph.getNumEdges())];
+    for (int vertex = 0; vertex < numVertices; vertex++) {
+      int numReachable = oneHop.reachable(vertex, true);
+      int start = hopOffsets[vertex];
+      if (start + numReachable > hops.length) {
+        hops = Arrays.copyOf(hops, Math.max(2 * hops.length, start + numReachable));
+      }
+      System.arraycopy(oneHop.getResult(), 0, hops, start, numReachable);
+      hopOffsets[vertex + 1] = start + numReachable;
+    }
+    return new ReachabilityIndex(numVertices, hopOffsets, hops);
+  }
+
+  /**
+   * @return whether paths of the automaton can be evaluated with an index
+   */
+  static boolean canIndex(PathAutomaton automaton) {
+    return automaton.minHops <= 1 && automaton.maxHops == -1;
+  }
+
+  /**
+   * @return whether there is a path with at least the given minimum number of hops from the first vertex to the
+   *         second vertex
+   */
+  boolean reaches(int from, int to, long minHops, Traversal traversal) {
+    int fromComponent = components[from];
+    int toComponent = components[to];
+    if (fromComponent == toComponent) {
+      return (minHops == 0 && from == to) || cyclic[fromComponent];
+    }
+    return reaches(fromComponent, toComponent, traversal);
+  }
+
+  /**
+   * Finds the vertices that are reachable from the given vertex, in the direction of the path or against it
+   *
+   * @return the number of vertices found, which are stored in ascending order in {@link Traversal#getResult()}
+   */
+  int reachable(int vertex, boolean isForward, long minHops, Traversal traversal) {
+    int[] offsets = isForward ? successorOffsets : predecessorOffsets;
+    int[] neighbors = isForward ? successors : predecessors;
+    int start = components[vertex];
+    traversal.start();
+    int resultSize = 0;
+    // a component that is not cyclic only has the vertex itself
+    if (minHops == 0 || cyclic[start]) {
+      resultSize = traversal.addMembers(start, resultSize);
+    }
+    traversal.visit(start);
+    int stackSize = 0;
+    traversal.stack[stackSize++] = start;
+    while (stackSize > 0) {
+      int component = traversal.stack[--stackSize];
+      for (int i = offsets[component]; i < offsets[component + 1]; i++) {
+        int neighbor = neighbors[i];
+        if (traversal.visit(neighbor)) {
+          resultSize = traversal.addMembers(neighbor, resultSize);
+          traversal.stack[stackSize++] = neighbor;
+        }
+      }
+    }
+    Arrays.sort(traversal.result, 0, resultSize);
+    return resultSize;
+  }
+
+  /**
+   * @return whether the first component reaches the second, different component in the DAG
+   */
+  private boolean reaches(int fromComponent, int toComponent, Traversal traversal) {
+    if (excludes(fromComponent, toComponent)) {
+      return false;
+    }
+    if (isTreeAncestor(fromComponent, toComponent)) {
+      return true;
+    }
+    traversal.start();
+    traversal.visit(fromComponent);
+    int stackSize = 0;
+    traversal.stack[stackSize++] = fromComponent;
+    while (stackSize > 0) {
+      int component = traversal.stack[--stackSize];
+      for (int i = successorOffsets[component]; i < successorOffsets[component + 1]; i++) {
+        int successor = successors[i];
+        if (successor == toComponent || isTreeAncestor(successor, toComponent)) {
+          return true;
+        }
+        if (!excludes(successor, toComponent) && traversal.visit(successor)) {
+          traversal.stack[stackSize++] = successor;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return true if the labels prove that the first component does not reach the second, different component
+   */
+  private boolean excludes(int fromComponent, int toComponent) {
+    if (toComponent > fromComponent) {
+      return true;
+    }
+    for (int i = 0; i < NUM_TRAVERSALS; i++) {
+      if (lows[i][toComponent] < lows[i][fromComponent] || posts[i][toComponent] > posts[i][fromComponent]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isTreeAncestor(int ancestor, int component) {
+    return pres[ancestor] <= pres[component] && pres[component] < treeEnds[ancestor];
+  }
+
+  /**
+   * Computes the strongly connected components of the hops with an iterative version of Tarjan's algorithm
+   *
+   * @return the number of components
+   */
+  private int computeComponents(int[] hopOffsets, int[] hops) {
+    int[] indices = new int[numVertices];
+    Arrays.fill(indices, -1);
+    int[] lowLinks = new int[numVertices];
+    boolean[] onStack = new boolean[numVertices];
+    int[] stack = new int[numVertices];
+    int stackSize = 0;
+    // the vertices of which the hops are being followed, and the next hop of each
+    int[] callStack = new int[numVertices];
+    int[] nextHops = new int[numVertices];
+    int index = 0;
+    int numComponents = 0;
+    for (int root = 0; root < numVertices; root++) {
+      if (indices[root] != -1) {
+        continue;
+      }
+      int depth = 0;
+      callStack[depth] = root;
+      nextHops[depth] = hopOffsets[root];
+      indices[root] = lowLinks[root] = index++;
+      stack[stackSize++] = root;
+      onStack[root] = true;
+      while (depth >= 0) {
+        int vertex = callStack[depth];
+        if (nextHops[depth] < hopOffsets[vertex + 1]) {
+          int next = hops[nextHops[depth]++];
+          if (indices[next] == -1) {
+            depth++;
+            callStack[depth] = next;
+            nextHops[depth] = hopOffsets[next];
+            indices[next] = lowLinks[next] = index++;
+            stack[stackSize++] = next;
+            onStack[next] = true;
+          } else if (onStack[next]) {
+            lowLinks[vertex] = Math.min(lowLinks[vertex], indices[next]);
+          }
+          continue;
+        }
+        if (lowLinks[vertex] == indices[vertex]) {
+          int member;
+          do {
+            member = stack[--stackSize];
+            onStack[member] = false;
+            components[member] = numComponents;
+          } while (member != vertex);
+          numComponents++;
+        }
+        depth--;
+        if (depth >= 0) {
+          int parent = callStack[depth];
+          lowLinks[parent] = Math.min(lowLinks[parent], lowLinks[vertex]);
+        }
+      }
+    }
+    return numComponents;
+  }
+
+  /**
+   * Computes the edges between the components and which components are cyclic
+   *
+   * @return the offsets and neighbors of the DAG in both directions
+   */
+  private int[][] condense(int[] hopOffsets, int[] hops) {
+    // the DAG edges of each component, deduplicated with the last component that was seen as their source
+    int[] lastSource = new int[numComponents];
+    Arrays.fill(lastSource, -1);
+    int[] offsets = new int[numComponents + 1];
+    int[] targets = new int[Math.max(16, numComponents)];
+    int size = 0;
+    for (int c = 0; c < numComponents; c++) {
+      for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+        int vertex = members[m];
+        for (int i = hopOffsets[vertex]; i < hopOffsets[vertex + 1]; i++) {
+          int target = components[hops[i]];
+          if (target == c) {
+            cyclic[c] = true;
+          } else if (lastSource[target] != c) {
+            lastSource[target] = c;
+            if (size == targets.length) {
+              targets = Arrays.copyOf(targets, 2 * size);
+            }
+            targets[size++] = target;
+          }
+        }
+      }
+      if (memberOffsets[c + 1] - memberOffsets[c] > 1) {
+        cyclic[c] = true;
+      }
+      offsets[c + 1] = size;
+    }
+    int[] successors = Arrays.copyOf(targets, size);
+
+    int[] reverseOffsets = new int[numComponents + 1];
+    for (int i = 0; i < size; i++) {
+      reverseOffsets[successors[i] + 1]++;
+    }
+    for (int c = 0; c < numComponents; c++) {
+      reverseOffsets[c + 1] += reverseOffsets[c];
+    }
+    int[] predecessors = new int[size];
+    int[] position = Arrays.copyOf(reverseOffsets, numComponents);
+    for (int c = 0; c < numComponents; c++) {
+      for (int i = offsets[c]; i < offsets[c + 1]; i++) {
+        predecessors[position[successors[i]]++] = c;
+      }
+    }
+    return new int[][] { offsets, successors, reverseOffsets, predecessors };
+  }
+
+  /**
+   * Labels the components with the intervals of a depth-first traversal of the DAG that visits the roots and the
+   * successors of each component in random order
+   */
+  private void label(int traversalIndex, Random random) {
+    int[] low = lows[traversalIndex];
+    int[] post = posts[traversalIndex];
+    boolean[] visited = new boolean[numComponents];
+    int[] callStack = new int[numComponents];
+    int[] nextSuccessors = new int[numComponents];
+    int[] order = shuffledOrder(numComponents, random);
+    int[] successorOrder = successors.clone();
+    for (int c = 0; c < numComponents; c++) {
+      shuffle(successorOrder, successorOffsets[c], successorOffsets[c + 1], random);
+    }
+
+    int postRank = 0;
+    int preRank = 0;
+    for (int root : order) {
+      if (visited[root]) {
+        continue;
+      }
+      int depth = 0;
+      callStack[0] = root;
+      nextSuccessors[0] = successorOffsets[root];
+      visited[root] = true;
+      pres[root] = preRank++;
+      low[root] = Integer.MAX_VALUE;
+      while (depth >= 0) {
+        int component = callStack[depth];
+        if (nextSuccessors[depth] < successorOffsets[component + 1]) {
+          int successor = successorOrder[nextSuccessors[depth]++];
+          if (!visited[successor]) {
+            visited[successor] = true;
+            pres[successor] = preRank++;
+            low[successor] = Integer.MAX_VALUE;
+            depth++;
+            callStack[depth] = successor;
+            nextSuccessors[depth] = successorOffsets[successor];
+          } else {
+            low[component] = Math.min(low[component], low[successor]);
+          }
+          continue;
+        }
+        post[component] = postRank++;
+        low[component] = Math.min(low[component], post[component]);
+        treeEnds[component] = preRank;
+        depth--;
+        if (depth >= 0) {
+          int parent = callStack[depth];
+          low[parent] = Math.min(low[parent], low[component]);
+        }
+      }
+    }
+  }
+
+  private static int[] shuffledOrder(int size, Random random) {
+    int[] result = new int[size];
+    for (int i = 0; i < size; i++) {
+      result[i] = i;
+    }
+    shuffle(result, 0, size, random);
+    return result;
+  }
+
+  private static void shuffle(int[] values, int start, int end, Random random) {
+    for (int i = end - 1; i > start; i--) {
+      int j = start + random.nextInt(i - start + 1);
+      int tmp = values[i];
+      values[i] = values[j];
+      values[j] = tmp;
+    }
+  }
+
+  /**
+   * The state of the queries of one thread: the components visited by the current query, marked with the number of
+   * the query so that they do not need to be cleared, and the vertices found by the last call to
+   * {@link ReachabilityIndex#reachable(int, boolean, long, Traversal)}
+   */
+  static final class Traversal {
+
+    private final ReachabilityIndex index;
+
+    private final int[] visitedBy;
+
+    private int query;
+
+    private final int[] stack;
+
+    private int[] result = new int[0];
+
+    Traversal(ReachabilityIndex index) {
+      this.index = index;
+      visitedBy = new int[index.numComponents];
+      stack = new int[index.numComponents];
+    }
+
+    int[] getResult() {
+      return result;
+    }
+
+    private void start() {
+      query++;
+      if (query == 0) {
+        // the number of the query wrapped around
+        Arrays.fill(visitedBy, 0);
+        query = 1;
+      }
+    }
+
+    /**
+     * @return false if the component was already visited by the current query
+     */
+    private boolean visit(int component) {
+      if (visitedBy[component] == query) {
+        return false;
+      }
+      visitedBy[component] = query;
+      return true;
+    }
+
+    private int addMembers(int component, int resultSize) {
+      int start = index.memberOffsets[component];
+      int numMembers = index.memberOffsets[component + 1] - start;
+      ensureResultCapacity(resultSize + numMembers);
+      System.arraycopy(index.members, start, result, resultSize, numMembers);
+      return resultSize + numMembers;
+    }
+
+    private void ensureResultCapacity(int capacity) {
+      if (result.length < capacity) {
+        result = Arrays.copyOf(result, Math.max(capacity, 2 * result.length));
+      }
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@link ReachabilityIndex}es of the path patterns that are used repeatedly on a graph, identified by the
+ * structural key of their {@link PathAutomaton}, so that different queries with the same PATH definition share an
+ * index. Since the graph is immutable, an index never becomes stale.
+ *
+ * Building an index takes time linear in the number of hops in the graph, which is only worth it if the path pattern
+ * is used again, so an index is built when a path pattern is used for the {@link #MIN_USES}th time. The least
+ * recently used path patterns are evicted once the cache holds {@link #MAX_SIZE} of them.
+ */
+final class ReachabilityIndexCache {
+
+  static final int MIN_USES = 2;
+
+  static final int MAX_SIZE = 16;
+
+  private final PropertyGraph graph;
+
+  private final Map<String, CachedIndex> entries = new LinkedHashMap<String, CachedIndex>(16, 0.75f, true) {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, CachedIndex> eldest) {
+      return size() > MAX_SIZE;
+    }
+  };
+
+  ReachabilityIndexCache(PropertyGraph graph) {
+    this.graph = graph;
+  }
+
+  /**
+   * Counts a use of the path pattern of the automaton
+   *
+   * @return the index of the path pattern, or null if the paths of the automaton cannot be evaluated with an index or
+   *         the path pattern was not used often enough yet
+   */
+  ReachabilityIndex get(PathAutomaton automaton) {
+    if (!ReachabilityIndex.canIndex(automaton)) {
+      return null;
+    }
+    String key = automaton.getStructuralKey();
+    if (key == null) {
+      return null;
+    }
+    CachedIndex entry;
+    synchronized (entries) {
+      entry = entries.computeIfAbsent(key, k -> new CachedIndex());
+    }
+    // other path patterns can be looked up while the index is being built
+    return entry.use(automaton);
+  }
+
+  private final class CachedIndex {
+
+    private int numUses;
+
+    private ReachabilityIndex index;
+
+    synchronized ReachabilityIndex use(PathAutomaton automaton) {
+      numUses++;
+      if (index == null && numUses >= MIN_USES) {
+        index = ReachabilityIndex.build(graph, automaton);
+      }
+      return index;
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.BinaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.ExpressionType;
+import oracle.pgql.lang.ir.QueryExpression.PropertyAccess;
+import oracle.pgql.lang.ir.QueryExpression.UnaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.VarRef;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.ir.QueryVariable.VariableType;
+
+/**
+ * Estimates the fraction of the matches that pass a WHERE constraint. Label tests and equality tests on properties use
+ * the {@link GraphStatistics}; other constraints get the textbook defaults of System R.
+ */
+final class SelectivityEstimator {
+
+  static final double RANGE_SELECTIVITY = 1.0 / 3;
+
+  static final double DEFAULT_SELECTIVITY = 0.5;
+
+  /**
+   * Lower bound for estimates, so that a label or value that does not occur in the statistics does not make the rest of
+   * the plan look free
+   */
+  static final double MIN_SELECTIVITY = 1e-9;
+
+  private final GraphStatistics statistics;
+
+  SelectivityEstimator(GraphStatistics statistics) {
+    this.statistics = statistics;
+  }
+
+  GraphStatistics getStatistics() {
+    return statistics;
+  }
+
+  double estimate(QueryExpression constraint) {
+    return Math.max(MIN_SELECTIVITY, Math.min(1, estimateUnbounded(constraint)));
+  }
+
+  private double estimateUnbounded(QueryExpression exp) {
+    switch (exp.getExpType()) {
+      case BOOLEAN:
+        return Boolean.TRUE.equals(((QueryExpression.Constant<?>) exp).getValue()) ? 1 : 0;
+      case AND: {
+        BinaryExpression and = (BinaryExpression) exp;
+        return estimate(and.getExp1()) * estimate(and.getExp2());
+      }
+      case OR: {
+        BinaryExpression or = (BinaryExpression) exp;
+        double selectivity1 = estimate(or.getExp1());
+        double selectivity2 = estimate(or.getExp2());
+        return selectivity1 + selectivity2 - selectivity1 * selectivity2;
+      }
+      case NOT:
+        return 1 - estimate(((UnaryExpression) exp).getExp());
+      case HAS_LABEL: {
+        BinaryExpression hasLabel = (BinaryExpression) exp;
+        return estimateLabel(hasLabel.getExp1(), hasLabel.getExp2());
+      }
+      case EQUAL:
+        return estimateEqual((BinaryExpression) exp);
+      case NOT_EQUAL:
+        return 1 - estimateEqual((BinaryExpression) exp);
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+        return RANGE_SELECTIVITY;
+      default:
+        return DEFAULT_SELECTIVITY;
+    }
+  }
+
+  private double estimateEqual(BinaryExpression equal) {
+    QueryExpression exp1 = equal.getExp1();
+    QueryExpression exp2 = equal.getExp2();
+
+    // label(e) = 'knows'
+    if (exp1.getExpType() == ExpressionType.EDGE_LABEL && isValue(exp2)) {
+      return estimateLabel(((UnaryExpression) exp1).getExp(), exp2);
+    } else if (exp2.getExpType() == ExpressionType.EDGE_LABEL && isValue(exp1)) {
+      return estimateLabel(((UnaryExpression) exp2).getExp(), exp1);
+    }
+
+    double selectivity1 = getPropertySelectivity(exp1);
+    double selectivity2 = getPropertySelectivity(exp2);
+    if (selectivity1 >= 0 && isValue(exp2)) {
+      return selectivity1;
+    } else if (selectivity2 >= 0 && isValue(exp1)) {
+      return selectivity2;
+    } else if (selectivity1 >= 0 && selectivity2 >= 0) {
+      // a join on two properties: each value of the property with the most distinct values matches at most once
+      return Math.min(selectivity1, selectivity2);
+    }
+    return DEFAULT_SELECTIVITY;
+  }
+
+  private double estimateLabel(QueryExpression element, QueryExpression label) {
+    if (element.getExpType() != ExpressionType.VARREF || label.getExpType() != ExpressionType.STRING) {
+      return DEFAULT_SELECTIVITY;
+    }
+    String labelName = (String) ((QueryExpression.Constant<?>) label).getValue();
+    QueryVariable variable = ((VarRef) element).getVariable();
+    if (variable.getVariableType() == VariableType.VERTEX) {
+      long numVertices = statistics.getNumVertices();
+      return numVertices == 0 ? 0 : statistics.getNumVerticesWithLabel(labelName) / (double) numVertices;
+    } else if (variable.getVariableType() == VariableType.EDGE) {
+      long numEdges = statistics.getNumEdges();
+      return numEdges == 0 ? 0 : statistics.getNumEdgesWithLabel(labelName) / (double) numEdges;
+    }
+    return DEFAULT_SELECTIVITY;
+  }
+
+  /**
+   * @return the selectivity of an equality test on the property, or -1 if the expression is not a property of a vertex
+   *         or edge
+   */
+  private double getPropertySelectivity(QueryExpression exp) {
+    if (exp.getExpType() != ExpressionType.PROP_ACCESS) {
+      return -1;
+    }
+    PropertyAccess propertyAccess = (PropertyAccess) exp;
+    switch (propertyAccess.getVariable().getVariableType()) {
+      case VERTEX:
+        return statistics.getVertexPropertySelectivity(propertyAccess.getPropertyName());
+      case EDGE:
+        return statistics.getEdgePropertySelectivity(propertyAccess.getPropertyName());
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * @return whether the expression has a single value for the whole query, i.e. it is a literal or a bind variable
+   */
+  private static boolean isValue(QueryExpression exp) {
+    switch (exp.getExpType()) {
+      case INTEGER:
+      case DECIMAL:
+      case STRING:
+      case BOOLEAN:
+      case DATE:
+      case TIME:
+      case TIMESTAMP:
+      case TIME_WITH_TIMEZONE:
+      case TIMESTAMP_WITH_TIMEZONE:
+      case BIND_VARIABLE:
+        return true;
+      default:
+        return false;
+    }
+  }
+}
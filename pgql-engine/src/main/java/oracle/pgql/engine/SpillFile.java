@@ -0,0 +1,335 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A temporary file to which data is written sequentially and from which it is read back sequentially through a
+ * memory-mapped window, so that reading does not copy the data into buffers on the heap. Values are written with a tag
+ * for their type, so any value of a property or expression can be read back as an equal value.
+ *
+ * I/O errors are thrown as {@link UncheckedIOException}s, since spilling happens inside the callbacks of the matcher.
+ */
+final class SpillFile implements AutoCloseable {
+
+  /**
+   * The number of bytes that is mapped at once when reading
+   */
+  private static final int WINDOW_SIZE = 1 << 24;
+
+  private static final byte NULL = 0;
+
+  private static final byte BOOLEAN = 1;
+
+  private static final byte INTEGER = 2;
+
+  private static final byte LONG = 3;
+
+  private static final byte DOUBLE = 4;
+
+  private static final byte STRING = 5;
+
+  private static final byte VERTEX = 6;
+
+  private static final byte EDGE = 7;
+
+  private static final byte DATE = 8;
+
+  private static final byte TIME = 9;
+
+  private static final byte TIMESTAMP = 10;
+
+  private static final byte TIME_WITH_TIMEZONE = 11;
+
+  private static final byte TIMESTAMP_WITH_TIMEZONE = 12;
+
+  private static final byte LABELS = 13;
+
+  private final PropertyGraph graph;
+
+  private final Path path;
+
+  private DataOutputStream out;
+
+  private FileChannel channel;
+
+  private long size;
+
+  private MappedByteBuffer window;
+
+  /**
+   * The position of the window in the file
+   */
+  private long windowStart;
+
+  SpillFile(PropertyGraph graph, Path directory) {
+    this.graph = graph;
+    try {
+      path = Files.createTempFile(directory, "pgql-spill-", ".run");
+      out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  void writeInt(int value) {
+    try {
+      out.writeInt(value);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  void writeLong(long value) {
+    try {
+      out.writeLong(value);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  void writeDouble(double value) {
+    try {
+      out.writeDouble(value);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  void writeBoolean(boolean value) {
+    try {
+      out.writeBoolean(value);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  void writeValue(Object value) {
+    try {
+      writeValue(out, value);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void writeValue(DataOutputStream out, Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(NULL);
+    } else if (value instanceof Boolean) {
+      out.writeByte(BOOLEAN);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof Integer) {
+      out.writeByte(INTEGER);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof String) {
+      out.writeByte(STRING);
+      writeString(out, (String) value);
+    } else if (value instanceof Vertex) {
+      out.writeByte(VERTEX);
+      out.writeInt(((Vertex) value).getId());
+    } else if (value instanceof Edge) {
+      out.writeByte(EDGE);
+      out.writeInt(((Edge) value).getId());
+    } else if (value instanceof LocalDate) {
+      out.writeByte(DATE);
+      out.writeLong(((LocalDate) value).toEpochDay());
+    } else if (value instanceof LocalTime) {
+      out.writeByte(TIME);
+      out.writeLong(((LocalTime) value).toNanoOfDay());
+    } else if (value instanceof LocalDateTime) {
+      LocalDateTime timestamp = (LocalDateTime) value;
+      out.writeByte(TIMESTAMP);
+      out.writeLong(timestamp.toLocalDate().toEpochDay());
+      out.writeLong(timestamp.toLocalTime().toNanoOfDay());
+    } else if (value instanceof OffsetTime) {
+      OffsetTime time = (OffsetTime) value;
+      out.writeByte(TIME_WITH_TIMEZONE);
+      out.writeLong(time.toLocalTime().toNanoOfDay());
+      out.writeInt(time.getOffset().getTotalSeconds());
+    } else if (value instanceof OffsetDateTime) {
+      OffsetDateTime timestamp = (OffsetDateTime) value;
+      out.writeByte(TIMESTAMP_WITH_TIMEZONE);
+      out.writeLong(timestamp.toLocalDate().toEpochDay());
+      out.writeLong(timestamp.toLocalTime().toNanoOfDay());
+      out.writeInt(timestamp.getOffset().getTotalSeconds());
+    } else if (value instanceof Set) {
+      Set<?> labels = (Set<?>) value;
+      out.writeByte(LABELS);
+      out.writeInt(labels.size());
+      for (Object label : labels) {
+        writeString(out, (String) label);
+      }
+    } else {
+      throw new IllegalArgumentException("Cannot spill value of type " + value.getClass().getName());
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Finishes writing and starts reading from the beginning of the file
+   */
+  void startReading() {
+    try {
+      out.close();
+      out = null;
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+      size = channel.size();
+      map(0, 0);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @return whether there is data left to read
+   */
+  boolean hasRemaining() {
+    return windowStart + window.position() < size;
+  }
+
+  int readInt() {
+    ensure(Integer.BYTES);
+    return window.getInt();
+  }
+
+  long readLong() {
+    ensure(Long.BYTES);
+    return window.getLong();
+  }
+
+  double readDouble() {
+    ensure(Double.BYTES);
+    return window.getDouble();
+  }
+
+  boolean readBoolean() {
+    ensure(1);
+    return window.get() != 0;
+  }
+
+  Object readValue() {
+    ensure(1);
+    byte tag = window.get();
+    switch (tag) {
+      case NULL:
+        return null;
+      case BOOLEAN:
+        return readBoolean();
+      case INTEGER:
+        return readInt();
+      case LONG:
+        return readLong();
+      case DOUBLE:
+        return readDouble();
+      case STRING:
+        return readString();
+      case VERTEX:
+        return new Vertex(graph, readInt());
+      case EDGE:
+        return new Edge(graph, readInt());
+      case DATE:
+        return LocalDate.ofEpochDay(readLong());
+      case TIME:
+        return LocalTime.ofNanoOfDay(readLong());
+      case TIMESTAMP: {
+        LocalDate date = LocalDate.ofEpochDay(readLong());
+        return LocalDateTime.of(date, LocalTime.ofNanoOfDay(readLong()));
+      }
+      case TIME_WITH_TIMEZONE: {
+        LocalTime time = LocalTime.ofNanoOfDay(readLong());
+        return OffsetTime.of(time, ZoneOffset.ofTotalSeconds(readInt()));
+      }
+      case TIMESTAMP_WITH_TIMEZONE: {
+        LocalDate date = LocalDate.ofEpochDay(readLong());
+        LocalTime time = LocalTime.ofNanoOfDay(readLong());
+        return OffsetDateTime.of(date, time, ZoneOffset.ofTotalSeconds(readInt()));
+      }
+      case LABELS: {
+        int numLabels = readInt();
+        Set<String> labels = new HashSet<>();
+        for (int i = 0; i < numLabels; i++) {
+          labels.add(readString());
+        }
+        return labels;
+      }
+      default:
+        throw new IllegalStateException("Corrupt spill file " + path + ": unknown value tag " + tag);
+    }
+  }
+
+  private String readString() {
+    int length = readInt();
+    ensure(length);
+    byte[] bytes = new byte[length];
+    window.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Moves the window to the current position if fewer than the given number of bytes are left in it
+   */
+  private void ensure(int numBytes) {
+    if (window.remaining() < numBytes) {
+      try {
+        map(windowStart + window.position(), numBytes);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private void map(long position, int minSize) throws IOException {
+    windowStart = position;
+    window = channel.map(MapMode.READ_ONLY, position, Math.min(size - position, Math.max(WINDOW_SIZE, minSize)));
+  }
+
+  /**
+   * Deletes the file
+   */
+  @Override
+  public void close() {
+    try {
+      if (out != null) {
+        out.close();
+      }
+      if (channel != null) {
+        channel.close();
+      }
+      window = null;
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.Comparator;
+
+/**
+ * Comparison of values, shared by expression evaluation, sorting and aggregation. Integers are represented as Long and
+ * decimals as Double; an integer and a decimal are compared numerically.
+ */
+final class Values {
+
+  private Values() {
+  }
+
+  /**
+   * Orders values of the same kind naturally and puts nulls last. Values that cannot be compared (e.g. a string and a
+   * number) are ordered on their type, so that sorting always succeeds.
+   */
+  static final Comparator<Object> ORDER = (value1, value2) -> {
+    if (value1 == null || value2 == null) {
+      return value1 == null ? (value2 == null ? 0 : 1) : -1;
+    }
+    Integer result = compare(value1, value2);
+    return result == null ? value1.getClass().getName().compareTo(value2.getClass().getName()) : result;
+  };
+
+  /**
+   * @return null if either value is null (unknown), and true if the values are equal
+   */
+  static Boolean equal(Object value1, Object value2) {
+    if (value1 == null || value2 == null) {
+      return null;
+    }
+    if (value1 instanceof Number && value2 instanceof Number) {
+      return compareNumbers((Number) value1, (Number) value2) == 0;
+    }
+    return value1.equals(value2);
+  }
+
+  /**
+   * @return the sign of the comparison, or null if either value is null or if the values cannot be compared
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  static Integer compare(Object value1, Object value2) {
+    if (value1 == null || value2 == null) {
+      return null;
+    }
+    if (value1 instanceof Number && value2 instanceof Number) {
+      return compareNumbers((Number) value1, (Number) value2);
+    }
+    if (value1 instanceof Vertex && value2 instanceof Vertex) {
+      return Integer.compare(((Vertex) value1).getId(), ((Vertex) value2).getId());
+    }
+    if (value1 instanceof Edge && value2 instanceof Edge) {
+      return Integer.compare(((Edge) value1).getId(), ((Edge) value2).getId());
+    }
+    if (value1.getClass() == value2.getClass() && value1 instanceof Comparable) {
+      return Integer.signum(((Comparable) value1).compareTo(value2));
+    }
+    return null;
+  }
+
+  private static int compareNumbers(Number number1, Number number2) {
+    if (number1 instanceof Long && number2 instanceof Long) {
+      return Long.compare(number1.longValue(), number2.longValue());
+    }
+    return Double.compare(number1.doubleValue(), number2.doubleValue());
+  }
+}
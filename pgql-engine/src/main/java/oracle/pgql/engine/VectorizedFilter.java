@@ -0,0 +1,958 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.List;
+import java.util.Map;
+
+import oracle.pgql.engine.CompiledExpression.BooleanEvaluator;
+import oracle.pgql.engine.CompiledExpression.DoubleEvaluator;
+import oracle.pgql.engine.CompiledExpression.Frame;
+import oracle.pgql.engine.CompiledExpression.LongEvaluator;
+import oracle.pgql.engine.CompiledExpression.ObjectEvaluator;
+import oracle.pgql.engine.CompiledExpression.Type;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.BinaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.BindVariable;
+import oracle.pgql.lang.ir.QueryExpression.Constant;
+import oracle.pgql.lang.ir.QueryExpression.ExpressionType;
+import oracle.pgql.lang.ir.QueryExpression.PropertyAccess;
+import oracle.pgql.lang.ir.QueryExpression.UnaryExpression;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.ir.QueryVariable.VariableType;
+
+/**
+ * Evaluates the filters of a match step on a {@link BindingBatch} at once rather than on one binding at a time. Each
+ * subexpression produces a {@link Vector} of primitive values with a bitmap of the rows for which the value is null,
+ * and each filter reduces the selection of rows that the next filter is evaluated on.
+ *
+ * Arithmetic, comparisons, AND, OR, NOT, constants, bind variables and properties of the vertices and edges of the
+ * pattern are evaluated a batch at a time, with the same semantics as the {@link ExpressionInterpreter}. Any other
+ * subexpression is evaluated row by row as a {@link CompiledExpression}.
+ *
+ * Instances hold the vectors of the subexpressions and cannot be shared between matchers.
+ */
+final class VectorizedFilter {
+
+  private static final int NUM_WORDS = BindingBatch.SIZE / 64;
+
+  private final PropertyGraph graph;
+
+  private final Map<QueryVariable, Integer> slots;
+
+  /**
+   * The frame of the matcher, for the subexpressions that are evaluated row by row
+   */
+  private final Frame frame;
+
+  private final VectorExpression[] filters;
+
+  VectorizedFilter(PropertyGraph graph, Map<QueryVariable, Integer> slots, List<QueryExpression> filters, Frame frame) {
+    this.graph = graph;
+    this.slots = slots;
+    this.frame = frame;
+    this.filters = new VectorExpression[filters.size()];
+    for (int i = 0; i < filters.size(); i++) {
+      this.filters[i] = toBoolean(compile(filters.get(i)));
+    }
+  }
+
+  /**
+   * Computes the rows of the batch that pass all filters
+   *
+   * @return the number of selected rows, which are stored in {@link BindingBatch#selection}
+   */
+  int filter(BindingBatch batch) {
+    int[] selection = batch.selection;
+    int selectionSize = batch.size;
+    for (int i = 0; i < selectionSize; i++) {
+      selection[i] = i;
+    }
+    for (VectorExpression filter : filters) {
+      if (selectionSize == 0) {
+        break;
+      }
+      filter.evaluate(batch, selection, selectionSize);
+      selectionSize = filter.result.selectTrue(selection, selectionSize, selection);
+    }
+    return selectionSize;
+  }
+
+  /**
+   * The values of an expression for the rows of a batch. Only the rows of the selection that the expression was last
+   * evaluated on are valid.
+   */
+  static final class Vector {
+
+    final Type type;
+
+    /**
+     * The values of a LONG vector, or of a BOOLEAN vector as 0 (false) and 1 (true)
+     */
+    final long[] longs;
+
+    final double[] doubles;
+
+    final Object[] objects;
+
+    /**
+     * Bit i is set if the value of row i is null
+     */
+    final long[] nulls = new long[NUM_WORDS];
+
+    Vector(Type type) {
+      this.type = type;
+      longs = type == Type.LONG || type == Type.BOOLEAN ? new long[BindingBatch.SIZE] : null;
+      doubles = type == Type.DOUBLE ? new double[BindingBatch.SIZE] : null;
+      objects = type == Type.OBJECT ? new Object[BindingBatch.SIZE] : null;
+    }
+
+    boolean isNull(int row) {
+      return (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    void setNull(int row) {
+      nulls[row >>> 6] |= 1L << row;
+    }
+
+    void clearNull(int row) {
+      nulls[row >>> 6] &= ~(1L << row);
+    }
+
+    void setNulls(long[] nulls1, long[] nulls2) {
+      for (int i = 0; i < NUM_WORDS; i++) {
+        nulls[i] = nulls1[i] | nulls2[i];
+      }
+    }
+
+    boolean isTrue(int row) {
+      return longs[row] == 1 && !isNull(row);
+    }
+
+    boolean isFalse(int row) {
+      return longs[row] == 0 && !isNull(row);
+    }
+
+    /**
+     * @return the value of the row as a Long, Double, Boolean or other object, or null
+     */
+    Object get(int row) {
+      if (isNull(row)) {
+        return null;
+      }
+      switch (type) {
+        case LONG:
+          return longs[row];
+        case DOUBLE:
+          return doubles[row];
+        case BOOLEAN:
+          return longs[row] == 1;
+        default:
+          return objects[row];
+      }
+    }
+
+    /**
+     * Stores the rows of the selection for which this BOOLEAN vector is true into the result, which may be the same
+     * array as the selection
+     *
+     * @return the number of rows stored
+     */
+    int selectTrue(int[] selection, int selectionSize, int[] result) {
+      int resultSize = 0;
+      for (int i = 0; i < selectionSize; i++) {
+        int row = selection[i];
+        if (isTrue(row)) {
+          result[resultSize++] = row;
+        }
+      }
+      return resultSize;
+    }
+
+    /**
+     * Stores the rows of the selection for which this BOOLEAN vector is not equal to the given value into the result
+     *
+     * @return the number of rows stored
+     */
+    int selectNot(boolean value, int[] selection, int selectionSize, int[] result) {
+      long longValue = value ? 1 : 0;
+      int resultSize = 0;
+      for (int i = 0; i < selectionSize; i++) {
+        int row = selection[i];
+        if (longs[row] != longValue || isNull(row)) {
+          result[resultSize++] = row;
+        }
+      }
+      return resultSize;
+    }
+  }
+
+  abstract static class VectorExpression {
+
+    final Vector result;
+
+    VectorExpression(Type type) {
+      result = new Vector(type);
+    }
+
+    Type getType() {
+      return result.type;
+    }
+
+    /**
+     * Evaluates the expression for the rows selection[0], ..., selection[selectionSize - 1]
+     */
+    abstract void evaluate(BindingBatch batch, int[] selection, int selectionSize);
+  }
+
+  private VectorExpression compile(QueryExpression exp) {
+    switch (exp.getExpType()) {
+      case INTEGER:
+      case DECIMAL:
+      case STRING:
+      case BOOLEAN:
+      case DATE:
+      case TIME:
+      case TIMESTAMP:
+      case TIME_WITH_TIMEZONE:
+      case TIMESTAMP_WITH_TIMEZONE:
+        return new ConstantVector(((Constant<?>) exp).getValue());
+      case NULL:
+        return new ConstantVector(null);
+      case SUB:
+      case ADD:
+      case MUL:
+      case DIV:
+      case MOD: {
+        BinaryExpression binaryExp = (BinaryExpression) exp;
+        VectorExpression operand1 = compile(binaryExp.getExp1());
+        VectorExpression operand2 = compile(binaryExp.getExp2());
+        if (operand1.getType() == Type.LONG && operand2.getType() == Type.LONG) {
+          return new LongArithmeticVector(exp.getExpType(), operand1, operand2);
+        } else if (isNumeric(operand1) && isNumeric(operand2)) {
+          return new DoubleArithmeticVector(exp.getExpType(), toDouble(operand1), toDouble(operand2));
+        }
+        return new ObjectArithmeticVector(exp.getExpType(), operand1, operand2);
+      }
+      case UMIN:
+        return new NegationVector(compile(((UnaryExpression) exp).getExp()));
+      case AND:
+      case OR: {
+        BinaryExpression binaryExp = (BinaryExpression) exp;
+        return new LogicalVector(exp.getExpType() == ExpressionType.AND, toBoolean(compile(binaryExp.getExp1())),
+            toBoolean(compile(binaryExp.getExp2())));
+      }
+      case NOT:
+        return new NotVector(toBoolean(compile(((UnaryExpression) exp).getExp())));
+      case EQUAL:
+      case NOT_EQUAL:
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL: {
+        BinaryExpression binaryExp = (BinaryExpression) exp;
+        VectorExpression operand1 = compile(binaryExp.getExp1());
+        VectorExpression operand2 = compile(binaryExp.getExp2());
+        if (operand1.getType() == Type.LONG && operand2.getType() == Type.LONG) {
+          return new LongComparisonVector(exp.getExpType(), operand1, operand2);
+        } else if (isNumeric(operand1) && isNumeric(operand2)) {
+          return new DoubleComparisonVector(exp.getExpType(), toDouble(operand1), toDouble(operand2));
+        }
+        return new ObjectComparisonVector(exp.getExpType(), operand1, operand2);
+      }
+      case BIND_VARIABLE:
+        return new BindVariableVector(((BindVariable) exp).getParameterIndex(), frame);
+      case PROP_ACCESS: {
+        PropertyAccess propertyAccess = (PropertyAccess) exp;
+        QueryVariable variable = propertyAccess.getVariable();
+        Integer slot = slots.get(variable);
+        if (slot == null) {
+          break;
+        }
+        PropertyColumn column = variable.getVariableType() == VariableType.VERTEX
+            ? graph.getVertexPropertyColumn(propertyAccess.getPropertyName())
+            : graph.getEdgePropertyColumn(propertyAccess.getPropertyName());
+        return column == null ? new ConstantVector(null) : new PropertyVector(slot, column);
+      }
+      default:
+        break;
+    }
+    return new RowByRowVector(graph.getExpressionCompiler().compile(exp, slots), frame);
+  }
+
+  private static boolean isNumeric(VectorExpression exp) {
+    return exp.getType() == Type.LONG || exp.getType() == Type.DOUBLE;
+  }
+
+  private static VectorExpression toDouble(VectorExpression exp) {
+    return exp.getType() == Type.DOUBLE ? exp : new ToDoubleVector(exp);
+  }
+
+  private static VectorExpression toBoolean(VectorExpression exp) {
+    return exp.getType() == Type.BOOLEAN ? exp : new ToBooleanVector(exp);
+  }
+
+  /**
+   * A constant, of which the vector is filled once
+   */
+  private static final class ConstantVector extends VectorExpression {
+
+    ConstantVector(Object value) {
+      super(getType(value));
+      for (int row = 0; row < BindingBatch.SIZE; row++) {
+        if (value == null) {
+          result.setNull(row);
+        } else if (value instanceof Long) {
+          result.longs[row] = (Long) value;
+        } else if (value instanceof Double) {
+          result.doubles[row] = (Double) value;
+        } else if (value instanceof Boolean) {
+          result.longs[row] = (Boolean) value ? 1 : 0;
+        } else {
+          result.objects[row] = value;
+        }
+      }
+    }
+
+    private static Type getType(Object value) {
+      if (value instanceof Long) {
+        return Type.LONG;
+      } else if (value instanceof Double) {
+        return Type.DOUBLE;
+      } else if (value instanceof Boolean) {
+        return Type.BOOLEAN;
+      }
+      return Type.OBJECT;
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+    }
+  }
+
+  private static final class BindVariableVector extends VectorExpression {
+
+    private final int parameterIndex;
+
+    private final Frame frame;
+
+    BindVariableVector(int parameterIndex, Frame frame) {
+      super(Type.OBJECT);
+      this.parameterIndex = parameterIndex;
+      this.frame = frame;
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+      Object value = frame.interpreter.getParameter(parameterIndex);
+      for (int i = 0; i < selectionSize; i++) {
+        int row = selection[i];
+        result.objects[row] = value;
+        if (value == null) {
+          result.setNull(row);
+        } else {
+          result.clearNull(row);
+        }
+      }
+    }
+  }
+
+  private static final class PropertyVector extends VectorExpression {
+
+    private final int slot;
+
+    private final PropertyColumn column;
+
+    PropertyVector(int slot, PropertyColumn column) {
+      super(column.getType() == PropertyColumn.Type.LONG ? Type.LONG
+          : column.getType() == PropertyColumn.Type.DOUBLE ? Type.DOUBLE
+              : column.getType() == PropertyColumn.Type.BOOLEAN ? Type.BOOLEAN : Type.OBJECT);
+      this.slot = slot;
+      this.column = column;
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+      for (int i = 0; i < selectionSize; i++) {
+        int row = selection[i];
+        int element = batch.getElementId(slot, row);
+        if (element == -1 || column.isNull(element)) {
+          result.setNull(row);
+          continue;
+        }
+        result.clearNull(row);
+        switch (result.type) {
+          case LONG:
+            result.longs[row] = column.getLong(element);
+            break;
+          case DOUBLE:
+            result.doubles[row] = column.getDouble(element);
+            break;
+          case BOOLEAN:
+            result.longs[row] = column.getBoolean(element) ? 1 : 0;
+            break;
+          default:
+            result.objects[row] = column.get(element);
+        }
+      }
+    }
+  }
+
+  private static final class LongArithmeticVector extends VectorExpression {
+
+    private final ExpressionType operator;
+
+    private final VectorExpression operand1;
+
+    private final VectorExpression operand2;
+
+    LongArithmeticVector(ExpressionType operator, VectorExpression operand1, VectorExpression operand2) {
+      super(Type.LONG);
+      this.operator = operator;
+      this.operand1 = operand1;
+      this.operand2 = operand2;
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+      operand1.evaluate(batch, selection, selectionSize);
+      operand2.evaluate(batch, selection, selectionSize);
+      result.setNulls(operand1.result.nulls, operand2.result.nulls);
+      long[] values1 = operand1.result.longs;
+      long[] values2 = operand2.result.longs;
+      long[] values = result.longs;
+      // the values of null rows are computed as well, but never read
+      switch (operator) {
+        case SUB:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            values[row] = values1[row] - values2[row];
+          }
+          break;
+        case ADD:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            values[row] = values1[row] + values2[row];
+          }
+          break;
+        case MUL:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            values[row] = values1[row] * values2[row];
+          }
+          break;
+        case DIV:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            if (values2[row] == 0) {
+              result.setNull(row);
+            } else {
+              values[row] = values1[row] / values2[row];
+            }
+          }
+          break;
+        default:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            if (values2[row] == 0) {
+              result.setNull(row);
+            } else {
+              values[row] = values1[row] % values2[row];
+            }
+          }
+      }
+    }
+  }
+
+  private static final class DoubleArithmeticVector extends VectorExpression {
+
+    private final ExpressionType operator;
+
+    private final VectorExpression operand1;
+
+    private final VectorExpression operand2;
+
+    DoubleArithmeticVector(ExpressionType operator, VectorExpression operand1, VectorExpression operand2) {
+      super(Type.DOUBLE);
+      this.operator = operator;
+      this.operand1 = operand1;
+      this.operand2 = operand2;
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+      operand1.evaluate(batch, selection, selectionSize);
+      operand2.evaluate(batch, selection, selectionSize);
+      result.setNulls(operand1.result.nulls, operand2.result.nulls);
+      double[] values1 = operand1.result.doubles;
+      double[] values2 = operand2.result.doubles;
+      double[] values = result.doubles;
+      switch (operator) {
+        case SUB:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            values[row] = values1[row] - values2[row];
+          }
+          break;
+        case ADD:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            values[row] = values1[row] + values2[row];
+          }
+          break;
+        case MUL:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            values[row] = values1[row] * values2[row];
+          }
+          break;
+        case DIV:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            if (values2[row] == 0) {
+              result.setNull(row);
+            } else {
+              values[row] = values1[row] / values2[row];
+            }
+          }
+          break;
+        default:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            if (values2[row] == 0) {
+              result.setNull(row);
+            } else {
+              values[row] = values1[row] % values2[row];
+            }
+          }
+      }
+    }
+  }
+
+  /**
+   * Arithmetic on operands of which the type is only known at runtime
+   */
+  private static final class ObjectArithmeticVector extends VectorExpression {
+
+    private final ExpressionType operator;
+
+    private final VectorExpression operand1;
+
+    private final VectorExpression operand2;
+
+    ObjectArithmeticVector(ExpressionType operator, VectorExpression operand1, VectorExpression operand2) {
+      super(Type.OBJECT);
+      this.operator = operator;
+      this.operand1 = operand1;
+      this.operand2 = operand2;
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+      operand1.evaluate(batch, selection, selectionSize);
+      operand2.evaluate(batch, selection, selectionSize);
+      for (int i = 0; i < selectionSize; i++) {
+        int row = selection[i];
+        Object value = ExpressionInterpreter.arithmetic(operator, operand1.result.get(row), operand2.result.get(row));
+        result.objects[row] = value;
+        if (value == null) {
+          result.setNull(row);
+        } else {
+          result.clearNull(row);
+        }
+      }
+    }
+  }
+
+  private static final class NegationVector extends VectorExpression {
+
+    private final VectorExpression operand;
+
+    NegationVector(VectorExpression operand) {
+      super(operand.getType() == Type.LONG || operand.getType() == Type.DOUBLE ? operand.getType() : Type.OBJECT);
+      this.operand = operand;
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+      operand.evaluate(batch, selection, selectionSize);
+      Vector values = operand.result;
+      if (result.type != Type.OBJECT) {
+        System.arraycopy(values.nulls, 0, result.nulls, 0, NUM_WORDS);
+      }
+      for (int i = 0; i < selectionSize; i++) {
+        int row = selection[i];
+        switch (result.type) {
+          case LONG:
+            result.longs[row] = -values.longs[row];
+            break;
+          case DOUBLE:
+            result.doubles[row] = -values.doubles[row];
+            break;
+          default:
+            Object value = values.get(row);
+            if (value instanceof Long) {
+              result.objects[row] = -(Long) value;
+              result.clearNull(row);
+            } else if (value instanceof Double) {
+              result.objects[row] = -(Double) value;
+              result.clearNull(row);
+            } else {
+              result.setNull(row);
+            }
+        }
+      }
+    }
+  }
+
+  private static final class ToDoubleVector extends VectorExpression {
+
+    private final VectorExpression operand;
+
+    ToDoubleVector(VectorExpression operand) {
+      super(Type.DOUBLE);
+      this.operand = operand;
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+      operand.evaluate(batch, selection, selectionSize);
+      System.arraycopy(operand.result.nulls, 0, result.nulls, 0, NUM_WORDS);
+      long[] values = operand.result.longs;
+      for (int i = 0; i < selectionSize; i++) {
+        int row = selection[i];
+        result.doubles[row] = values[row];
+      }
+    }
+  }
+
+  /**
+   * Converts a vector of another type than BOOLEAN into a BOOLEAN vector in which the values that are not booleans
+   * are null
+   */
+  private static final class ToBooleanVector extends VectorExpression {
+
+    private final VectorExpression operand;
+
+    ToBooleanVector(VectorExpression operand) {
+      super(Type.BOOLEAN);
+      this.operand = operand;
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+      operand.evaluate(batch, selection, selectionSize);
+      for (int i = 0; i < selectionSize; i++) {
+        int row = selection[i];
+        Object value = operand.result.type == Type.OBJECT ? operand.result.get(row) : null;
+        if (value instanceof Boolean) {
+          result.longs[row] = (Boolean) value ? 1 : 0;
+          result.clearNull(row);
+        } else {
+          result.setNull(row);
+        }
+      }
+    }
+  }
+
+  /**
+   * AND or OR. The second operand is only evaluated for the rows for which the first operand does not determine the
+   * result.
+   */
+  private static final class LogicalVector extends VectorExpression {
+
+    private final boolean isAnd;
+
+    private final VectorExpression operand1;
+
+    private final VectorExpression operand2;
+
+    private final int[] remainingRows = new int[BindingBatch.SIZE];
+
+    LogicalVector(boolean isAnd, VectorExpression operand1, VectorExpression operand2) {
+      super(Type.BOOLEAN);
+      this.isAnd = isAnd;
+      this.operand1 = operand1;
+      this.operand2 = operand2;
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+      operand1.evaluate(batch, selection, selectionSize);
+      Vector values1 = operand1.result;
+      // false determines the result of AND, and true the result of OR
+      boolean dominant = !isAnd;
+      long dominantValue = dominant ? 1 : 0;
+      int numRemainingRows = values1.selectNot(dominant, selection, selectionSize, remainingRows);
+      for (int i = 0; i < selectionSize; i++) {
+        int row = selection[i];
+        result.longs[row] = dominantValue;
+        result.clearNull(row);
+      }
+      if (numRemainingRows == 0) {
+        return;
+      }
+
+      operand2.evaluate(batch, remainingRows, numRemainingRows);
+      Vector values2 = operand2.result;
+      for (int i = 0; i < numRemainingRows; i++) {
+        int row = remainingRows[i];
+        if (values2.isNull(row)) {
+          result.setNull(row);
+        } else if (values2.longs[row] == dominantValue) {
+          continue;
+        } else if (values1.isNull(row)) {
+          result.setNull(row);
+        } else {
+          result.longs[row] = 1 - dominantValue;
+        }
+      }
+    }
+  }
+
+  private static final class NotVector extends VectorExpression {
+
+    private final VectorExpression operand;
+
+    NotVector(VectorExpression operand) {
+      super(Type.BOOLEAN);
+      this.operand = operand;
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+      operand.evaluate(batch, selection, selectionSize);
+      System.arraycopy(operand.result.nulls, 0, result.nulls, 0, NUM_WORDS);
+      long[] values = operand.result.longs;
+      for (int i = 0; i < selectionSize; i++) {
+        int row = selection[i];
+        result.longs[row] = 1 - values[row];
+      }
+    }
+  }
+
+  private abstract static class ComparisonVector extends VectorExpression {
+
+    final ExpressionType operator;
+
+    final VectorExpression operand1;
+
+    final VectorExpression operand2;
+
+    ComparisonVector(ExpressionType operator, VectorExpression operand1, VectorExpression operand2) {
+      super(Type.BOOLEAN);
+      this.operator = operator;
+      this.operand1 = operand1;
+      this.operand2 = operand2;
+    }
+
+    /**
+     * Stores whether the comparison of the row, which is negative, zero or positive, satisfies the operator
+     */
+    void setComparison(int row, int comparison) {
+      boolean value;
+      switch (operator) {
+        case EQUAL:
+          value = comparison == 0;
+          break;
+        case NOT_EQUAL:
+          value = comparison != 0;
+          break;
+        case GREATER:
+          value = comparison > 0;
+          break;
+        case GREATER_EQUAL:
+          value = comparison >= 0;
+          break;
+        case LESS:
+          value = comparison < 0;
+          break;
+        default:
+          value = comparison <= 0;
+      }
+      result.longs[row] = value ? 1 : 0;
+    }
+  }
+
+  private static final class LongComparisonVector extends ComparisonVector {
+
+    LongComparisonVector(ExpressionType operator, VectorExpression operand1, VectorExpression operand2) {
+      super(operator, operand1, operand2);
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+      operand1.evaluate(batch, selection, selectionSize);
+      operand2.evaluate(batch, selection, selectionSize);
+      result.setNulls(operand1.result.nulls, operand2.result.nulls);
+      long[] values1 = operand1.result.longs;
+      long[] values2 = operand2.result.longs;
+      long[] values = result.longs;
+      switch (operator) {
+        case EQUAL:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            values[row] = values1[row] == values2[row] ? 1 : 0;
+          }
+          break;
+        case NOT_EQUAL:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            values[row] = values1[row] != values2[row] ? 1 : 0;
+          }
+          break;
+        case GREATER:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            values[row] = values1[row] > values2[row] ? 1 : 0;
+          }
+          break;
+        case GREATER_EQUAL:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            values[row] = values1[row] >= values2[row] ? 1 : 0;
+          }
+          break;
+        case LESS:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            values[row] = values1[row] < values2[row] ? 1 : 0;
+          }
+          break;
+        default:
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            values[row] = values1[row] <= values2[row] ? 1 : 0;
+          }
+      }
+    }
+  }
+
+  private static final class DoubleComparisonVector extends ComparisonVector {
+
+    DoubleComparisonVector(ExpressionType operator, VectorExpression operand1, VectorExpression operand2) {
+      super(operator, operand1, operand2);
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+      operand1.evaluate(batch, selection, selectionSize);
+      operand2.evaluate(batch, selection, selectionSize);
+      result.setNulls(operand1.result.nulls, operand2.result.nulls);
+      double[] values1 = operand1.result.doubles;
+      double[] values2 = operand2.result.doubles;
+      for (int i = 0; i < selectionSize; i++) {
+        int row = selection[i];
+        // Double.compare rather than the primitive operators, for the same results as the interpreter on NaN and -0.0
+        setComparison(row, Double.compare(values1[row], values2[row]));
+      }
+    }
+  }
+
+  /**
+   * Comparison of operands of which the type is only known at runtime, or that are not numbers
+   */
+  private static final class ObjectComparisonVector extends ComparisonVector {
+
+    ObjectComparisonVector(ExpressionType operator, VectorExpression operand1, VectorExpression operand2) {
+      super(operator, operand1, operand2);
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+      operand1.evaluate(batch, selection, selectionSize);
+      operand2.evaluate(batch, selection, selectionSize);
+      boolean isEquality = operator == ExpressionType.EQUAL || operator == ExpressionType.NOT_EQUAL;
+      for (int i = 0; i < selectionSize; i++) {
+        int row = selection[i];
+        Object value1 = operand1.result.get(row);
+        Object value2 = operand2.result.get(row);
+        Integer comparison;
+        if (isEquality) {
+          Boolean equal = Values.equal(value1, value2);
+          comparison = equal == null ? null : equal ? 0 : 1;
+        } else {
+          comparison = Values.compare(value1, value2);
+        }
+        if (comparison == null) {
+          result.setNull(row);
+        } else {
+          result.clearNull(row);
+          setComparison(row, comparison);
+        }
+      }
+    }
+  }
+
+  /**
+   * Evaluates a {@link CompiledExpression} for one row at a time
+   */
+  private static final class RowByRowVector extends VectorExpression {
+
+    private final CompiledExpression compiled;
+
+    private final Frame frame;
+
+    RowByRowVector(CompiledExpression compiled, Frame frame) {
+      super(compiled.type);
+      this.compiled = compiled;
+      this.frame = frame;
+    }
+
+    @Override
+    void evaluate(BindingBatch batch, int[] selection, int selectionSize) {
+      switch (result.type) {
+        case LONG: {
+          LongEvaluator evaluator = compiled.asLong();
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            batch.bindRow(row);
+            result.longs[row] = evaluator.evaluate(frame);
+            setNull(row, frame.wasNull);
+          }
+          break;
+        }
+        case DOUBLE: {
+          DoubleEvaluator evaluator = compiled.asDouble();
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            batch.bindRow(row);
+            result.doubles[row] = evaluator.evaluate(frame);
+            setNull(row, frame.wasNull);
+          }
+          break;
+        }
+        case BOOLEAN: {
+          BooleanEvaluator evaluator = compiled.asBoolean();
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            batch.bindRow(row);
+            int value = evaluator.evaluate(frame);
+            result.longs[row] = value == CompiledExpression.TRUE ? 1 : 0;
+            setNull(row, value == CompiledExpression.UNKNOWN);
+          }
+          break;
+        }
+        default: {
+          ObjectEvaluator evaluator = compiled.asObject();
+          for (int i = 0; i < selectionSize; i++) {
+            int row = selection[i];
+            batch.bindRow(row);
+            Object value = evaluator.evaluate(frame);
+            result.objects[row] = value;
+            setNull(row, value == null);
+          }
+        }
+      }
+    }
+
+    private void setNull(int row, boolean isNull) {
+      if (isNull) {
+        result.setNull(row);
+      } else {
+        result.clearNull(row);
+      }
+    }
+  }
+}
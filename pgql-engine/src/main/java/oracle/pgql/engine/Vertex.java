@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.Set;
+
+/**
+ * A vertex of a {@link PropertyGraph}, as returned in query results
+ */
+public final class Vertex {
+
+  private final PropertyGraph graph;
+
+  private final int id;
+
+  Vertex(PropertyGraph graph, int id) {
+    this.graph = graph;
+    this.id = id;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public Set<String> getLabels() {
+    return graph.getVertexLabels(id);
+  }
+
+  public Object getProperty(String propertyName) {
+    return graph.getVertexProperty(id, propertyName);
+  }
+
+  @Override
+  public String toString() {
+    return "Vertex[" + id + "]";
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    Vertex vertex = (Vertex) o;
+
+    return id == vertex.id && graph == vertex.graph;
+  }
+
+  @Override
+  public int hashCode() {
+    return id;
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import oracle.pgql.engine.CompiledExpression.Frame;
+import oracle.pgql.engine.CompiledExpression.Type;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Add;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Div;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Mod;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Mul;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Sub;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.UMin;
+import oracle.pgql.lang.ir.QueryExpression.BindVariable;
+import oracle.pgql.lang.ir.QueryExpression.ConstNull;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstBoolean;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstDecimal;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstInteger;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstString;
+import oracle.pgql.lang.ir.QueryExpression.Function.AllDifferent;
+import oracle.pgql.lang.ir.QueryExpression.Function.Cast;
+import oracle.pgql.lang.ir.QueryExpression.Function.EdgeLabel;
+import oracle.pgql.lang.ir.QueryExpression.Function.HasLabel;
+import oracle.pgql.lang.ir.QueryExpression.Function.Id;
+import oracle.pgql.lang.ir.QueryExpression.Function.InDegree;
+import oracle.pgql.lang.ir.QueryExpression.Function.Regex;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.And;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.Not;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.Or;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Equal;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Greater;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.LessEqual;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.NotEqual;
+
+public class ExpressionCompilerTests {
+
+  private static PropertyGraph graph;
+
+  /**
+   * Vertices with properties of each type, some of which are missing, connected in a cycle with a chord
+   */
+  @BeforeClass
+  public static void setUp() {
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    for (int i = 0; i < 6; i++) {
+      int vertex = builder.addVertex(i % 2 == 0 ? "Person" : "Company");
+      if (i != 3) {
+        builder.setVertexProperty(vertex, "age", 20L + 7 * i);
+      }
+      if (i != 4) {
+        builder.setVertexProperty(vertex, "score", i * 0.5);
+      }
+      if (i != 5) {
+        builder.setVertexProperty(vertex, "flag", i % 3 == 0);
+      }
+      builder.setVertexProperty(vertex, "name", "" + (char) ('A' + i) + i);
+    }
+    for (int i = 0; i < 6; i++) {
+      builder.setEdgeProperty(builder.addEdge(i, (i + 1) % 6, i % 2 == 0 ? "knows" : null), "since", 2000 + i);
+    }
+    builder.addEdge(0, 3, "likes");
+    graph = builder.build();
+  }
+
+  @Test
+  public void testSameResultsAsInterpreter() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e", "b");
+    List<QueryExpression> exps = Arrays.asList( //
+        new Greater(new Add(q.prop("a", "age"), new ConstInteger(1)), q.prop("b", "age")), //
+        new Div(q.prop("a", "age"), new ConstInteger(0)), //
+        new Div(q.prop("a", "age"), new ConstInteger(3)), //
+        new Mod(q.prop("a", "age"), new ConstInteger(3)), //
+        new Sub(q.prop("a", "age"), q.prop("b", "score")), //
+        new Mul(q.prop("a", "age"), q.prop("a", "score")), //
+        new Div(q.prop("a", "score"), q.prop("b", "score")), //
+        new UMin(q.prop("a", "score")), //
+        new Add(q.prop("a", "age"), new ConstNull()), //
+        new Add(q.prop("a", "age"), q.prop("a", "name")), //
+        new Equal(q.prop("a", "age"), new ConstDecimal(20.0)), //
+        new Equal(q.prop("a", "name"), q.prop("b", "name")), //
+        new LessEqual(q.prop("a", "name"), q.prop("b", "name")), //
+        new Greater(q.prop("a", "age"), new ConstString("x")), //
+        new NotEqual(q.ref("a"), q.ref("b")), //
+        new And(q.prop("a", "flag"), q.prop("b", "flag")), //
+        new Or(q.prop("a", "flag"), new Not(q.prop("b", "flag"))), //
+        new And(q.prop("a", "age"), new ConstBoolean(true)), //
+        new Equal(q.prop("a", "flag"), new ConstBoolean(true)), //
+        new Regex(q.prop("a", "name"), new ConstString("[ACE].*")), //
+        new Regex(q.prop("a", "name"), new ConstString("[")), //
+        new Regex(q.prop("a", "age"), new ConstString(".*")), //
+        new HasLabel(q.ref("a"), new ConstString("Person")), //
+        new HasLabel(q.ref("e"), new ConstString("knows")), //
+        new HasLabel(q.ref("a"), new ConstString("Unknown")), //
+        new Equal(new EdgeLabel(q.ref("e")), new ConstString("likes")), //
+        new Add(new Id(q.ref("a")), new InDegree(q.ref("b"))), //
+        new Equal(q.prop("e", "since"), new ConstInteger(2002)), //
+        new Equal(q.prop("a", "missing"), new ConstInteger(1)), //
+        new Cast(q.prop("a", "age"), "STRING"), //
+        new Cast(q.prop("a", "name"), "INTEGER"), //
+        new Add(new Cast(new ConstString("3"), "INTEGER"), q.prop("a", "age")), //
+        new Cast(q.prop("a", "score"), "INTEGER"), //
+        new Cast(new ConstString("true"), "BOOLEAN"), //
+        new Greater(q.prop("a", "age"), new BindVariable(0)), //
+        new AllDifferent(Arrays.asList(q.ref("a"), q.ref("b"), q.ref("e"))));
+
+    QueryPlan plan = QueryPlanner.plan(q.build(), graph.getStatistics());
+    ExpressionInterpreter interpreter = new ExpressionInterpreter(graph, new Object[] { 30L });
+    Matcher matcher = new Matcher(graph, plan, interpreter);
+    ExpressionCompiler compiler = graph.getExpressionCompiler();
+    int[] numMatches = { 0 };
+    matcher.match(binding -> {
+      Frame frame = new Frame(binding, interpreter, matcher.getContext());
+      for (QueryExpression exp : exps) {
+        Object expected = interpreter.evaluate(exp, matcher.getContext());
+        assertEquals(exp.toString(), expected, compiler.compile(exp, plan.slots).asObject().evaluate(frame));
+      }
+      numMatches[0]++;
+      return true;
+    });
+    assertEquals(7, numMatches[0]);
+  }
+
+  @Test
+  public void testSpecialization() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e", "b");
+    QueryPlan plan = QueryPlanner.plan(q.build(), graph.getStatistics());
+    ExpressionCompiler compiler = graph.getExpressionCompiler();
+
+    assertEquals(Type.LONG, compiler.compile(new Add(q.prop("a", "age"), new ConstInteger(1)), plan.slots).type);
+    assertEquals(Type.DOUBLE, compiler.compile(new Mul(q.prop("a", "age"), q.prop("a", "score")), plan.slots).type);
+    assertEquals(Type.BOOLEAN, compiler.compile(new Greater(q.prop("a", "age"), q.prop("b", "age")), plan.slots).type);
+    assertEquals(Type.LONG, compiler.compile(new Cast(q.prop("a", "name"), "INTEGER"), plan.slots).type);
+    assertEquals(Type.OBJECT, compiler.compile(new Add(q.prop("a", "age"), new BindVariable(0)), plan.slots).type);
+  }
+
+  @Test
+  public void testCache() throws Exception {
+    QueryBuilder q1 = new QueryBuilder();
+    q1.edge("a", "e", "b");
+    QueryPlan plan1 = QueryPlanner.plan(q1.build(), graph.getStatistics());
+    QueryBuilder q2 = new QueryBuilder();
+    q2.edge("a", "e", "b");
+    QueryPlan plan2 = QueryPlanner.plan(q2.build(), graph.getStatistics());
+    ExpressionCompiler compiler = graph.getExpressionCompiler();
+
+    // structurally equal expressions of different queries
+    CompiledExpression compiled = compiler.compile(new Equal(q1.prop("a", "age"), new BindVariable(0)), plan1.slots);
+    assertSame(compiled, compiler.compile(new Equal(q2.prop("a", "age"), new BindVariable(0)), plan2.slots));
+
+    // different variable or different bind variable
+    assertNotSame(compiled, compiler.compile(new Equal(q1.prop("b", "age"), new BindVariable(0)), plan1.slots));
+    assertNotSame(compiled, compiler.compile(new Equal(q1.prop("a", "age"), new BindVariable(1)), plan1.slots));
+
+    // a cached fallback to the interpreter evaluates the variables of the query it is used for
+    AllDifferent allDifferent1 = new AllDifferent(Arrays.asList(q1.ref("a"), q1.ref("b")));
+    AllDifferent allDifferent2 = new AllDifferent(Arrays.asList(q2.ref("a"), q2.ref("b")));
+    assertSame(compiler.compile(allDifferent1, plan1.slots), compiler.compile(allDifferent2, plan2.slots));
+    ExpressionInterpreter interpreter = new ExpressionInterpreter(graph, new Object[0]);
+    int[] binding = new int[plan2.getNumSlots()];
+    Frame frame = new Frame(binding, interpreter, EvaluationContext.EMPTY);
+    assertEquals(Boolean.FALSE, compiler.compile(allDifferent2, plan2.slots).asObject().evaluate(frame));
+  }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import oracle.pgql.lang.ir.QueryExpression.ExpressionType;
+import oracle.pgql.lang.ir.QueryVariable.VariableType;
+
+public class GroupTableTests {
+
+  private static final VariableType[] KEY_TYPES = { VariableType.VERTEX, null };
+
+  private static final ExpressionType[] AGGREGATION_TYPES = { ExpressionType.AGGR_COUNT, ExpressionType.AGGR_MIN,
+      ExpressionType.AGGR_MAX, ExpressionType.AGGR_SUM, ExpressionType.AGGR_AVG };
+
+  private static PropertyGraph graph;
+
+  @Rule
+  public TemporaryFolder spillDirectory = new TemporaryFolder();
+
+  @BeforeClass
+  public static void setUp() {
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    for (int i = 0; i < 20; i++) {
+      builder.addVertex("Person");
+    }
+    graph = builder.build();
+  }
+
+  /**
+   * Groups on a vertex and on values of different types, with integer and decimal values that are aggregated, so that
+   * the partial sums of a group are integers in some runs and decimals in others
+   */
+  private static Map<List<Object>, List<Object>> group(GroupTable table, long seed) {
+    Random random = new Random(seed);
+    Object[] values = { null, "a", "b\u00e9", 1L, 2.0, true, LocalDate.of(2017, 1, 1),
+        LocalDateTime.of(2017, 1, 1, 12, 30), OffsetDateTime.of(2017, 1, 1, 12, 30, 0, 0, ZoneOffset.ofHours(2)) };
+    for (int i = 0; i < 20_000; i++) {
+      table.setElementKey(0, random.nextInt(21) - 1);
+      table.setValueKey(1, values[random.nextInt(values.length)]);
+      int group = table.findOrInsert();
+      Object value = random.nextInt(10) == 0 ? null
+          : random.nextBoolean() ? (Object) (long) random.nextInt(100) : (Object) (random.nextInt(100) + 0.5);
+      for (int j = 0; j < AGGREGATION_TYPES.length; j++) {
+        table.add(group, j, j == 0 ? Boolean.TRUE : value);
+      }
+    }
+
+    Map<List<Object>, List<Object>> result = new HashMap<>();
+    table.forEachGroup((groups, group) -> {
+      Object[] aggregates = new Object[AGGREGATION_TYPES.length];
+      for (int j = 0; j < aggregates.length; j++) {
+        aggregates[j] = groups.getAggregate(group, j);
+      }
+      List<Object> key = Arrays.asList(groups.getKey(group, 0), groups.getKey(group, 1));
+      assertEquals(null, result.put(key, Arrays.asList(aggregates)));
+    });
+    return result;
+  }
+
+  @Test
+  public void testSpilledGroupsAreMerged() {
+    Map<List<Object>, List<Object>> expected;
+    try (GroupTable table = new GroupTable(graph, KEY_TYPES, AGGREGATION_TYPES, Long.MAX_VALUE, null)) {
+      expected = group(table, 42);
+      assertEquals(0, table.getNumRuns());
+    }
+    assertEquals(21 * 9, expected.size());
+    long count = 0;
+    for (List<Object> aggregates : expected.values()) {
+      count += (Long) aggregates.get(0);
+    }
+    assertEquals(20_000, count);
+
+    try (GroupTable table = new GroupTable(graph, KEY_TYPES, AGGREGATION_TYPES, 0, spillDirectory.getRoot()
+        .toPath())) {
+      assertEquals(expected, group(table, 42));
+      assertTrue(table.getNumRuns() > 1);
+      assertTrue(spillDirectory.getRoot().list().length > 0);
+    }
+    File[] remaining = spillDirectory.getRoot().listFiles();
+    assertEquals(0, remaining.length);
+  }
+
+  @Test
+  public void testSingleGroupWithoutValues() {
+    try (GroupTable table = new GroupTable(graph, new VariableType[0], AGGREGATION_TYPES, 0, null)) {
+      int group = table.findOrInsert();
+      table.forEachGroup((groups, g) -> {
+        assertEquals(group, g);
+        assertEquals(0L, groups.getAggregate(g, 0));
+        for (int j = 1; j < AGGREGATION_TYPES.length; j++) {
+          assertEquals(null, groups.getAggregate(g, j));
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class PropertyGraphTests {
+
+  @Test
+  public void testEdgesSortedOnSourceAndDestination() {
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    for (int i = 0; i < 3; i++) {
+      builder.addVertex();
+    }
+    builder.setEdgeProperty(builder.addEdge(2, 0, "a"), "weight", 20);
+    builder.setEdgeProperty(builder.addEdge(0, 2, "b"), "weight", 2);
+    builder.setEdgeProperty(builder.addEdge(0, 1, null), "weight", 1);
+    builder.addEdge(1, 1, "c");
+    PropertyGraph graph = builder.build();
+
+    assertEquals(4, graph.getNumEdges());
+    int[][] expected = { { 0, 1 }, { 0, 2 }, { 1, 1 }, { 2, 0 } };
+    for (int edge = 0; edge < expected.length; edge++) {
+      assertEquals(expected[edge][0], graph.getEdgeSource(edge));
+      assertEquals(expected[edge][1], graph.getEdgeDestination(edge));
+    }
+
+    // labels and properties follow their edges
+    assertNull(graph.getEdgeLabel(0));
+    assertEquals("b", graph.getEdgeLabel(1));
+    assertEquals(1L, graph.getEdgeProperty(0, "weight"));
+    assertEquals(2L, graph.getEdgeProperty(1, "weight"));
+    assertNull(graph.getEdgeProperty(2, "weight"));
+    assertEquals(20L, graph.getEdgeProperty(3, "weight"));
+
+    assertEquals(2, graph.getOutDegree(0));
+    assertEquals(1, graph.getInDegree(0));
+    assertEquals(2, graph.getInDegree(1));
+  }
+
+  @Test
+  public void testIncomingEdgesSortedOnSource() {
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    for (int i = 0; i < 4; i++) {
+      builder.addVertex();
+    }
+    builder.addEdge(3, 0, null);
+    builder.addEdge(1, 0, null);
+    builder.addEdge(2, 0, null);
+    PropertyGraph graph = builder.build();
+
+    int[] sources = Arrays.copyOfRange(graph.inNeighbors, graph.inOffsets[0], graph.inOffsets[1]);
+    assertEquals(Arrays.toString(new int[] { 1, 2, 3 }), Arrays.toString(sources));
+    for (int i = graph.inOffsets[0]; i < graph.inOffsets[1]; i++) {
+      assertEquals(graph.inNeighbors[i], graph.getEdgeSource(graph.inEdges[i]));
+    }
+  }
+
+  @Test
+  public void testVertexLabelsAndProperties() {
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    int alice = builder.addVertex("Person", "Employee");
+    int acme = builder.addVertex("Company");
+    int unlabeled = builder.addVertex();
+    builder.setVertexProperty(alice, "name", "Alice").setVertexProperty(alice, "age", 30);
+    builder.setVertexProperty(acme, "name", "Acme").setVertexProperty(acme, "public", true);
+    PropertyGraph graph = builder.build();
+
+    assertEquals(new HashSet<>(Arrays.asList("Person", "Employee")), graph.getVertexLabels(alice));
+    assertTrue(graph.hasVertexLabel(acme, "Company"));
+    assertFalse(graph.hasVertexLabel(acme, "Person"));
+    assertTrue(graph.getVertexLabels(unlabeled).isEmpty());
+
+    assertEquals("Alice", graph.getVertexProperty(alice, "name"));
+    assertEquals(30L, graph.getVertexProperty(alice, "age"));
+    assertNull(graph.getVertexProperty(acme, "age"));
+    assertEquals(true, graph.getVertexProperty(acme, "public"));
+    assertNull(graph.getVertexProperty(alice, "public"));
+    assertNull(graph.getVertexProperty(unlabeled, "name"));
+    assertNull(graph.getVertexProperty(alice, "nonExistingProperty"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMixedPropertyTypes() {
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    builder.setVertexProperty(builder.addVertex(), "age", 30);
+    builder.setVertexProperty(builder.addVertex(), "age", "thirty");
+  }
+}
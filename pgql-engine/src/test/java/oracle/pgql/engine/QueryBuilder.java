@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import oracle.pgql.lang.ir.ExpAsVar;
+import oracle.pgql.lang.ir.GraphPattern;
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.GroupBy;
+import oracle.pgql.lang.ir.OrderBy;
+import oracle.pgql.lang.ir.OrderByElem;
+import oracle.pgql.lang.ir.Projection;
+import oracle.pgql.lang.ir.QueryEdge;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstInteger;
+import oracle.pgql.lang.ir.QueryExpression.PropertyAccess;
+import oracle.pgql.lang.ir.QueryExpression.VarRef;
+import oracle.pgql.lang.ir.QueryPath;
+import oracle.pgql.lang.ir.QueryVertex;
+import oracle.pgql.lang.ir.VertexPairConnection;
+
+/**
+ * Builds the IR of queries for the tests, since the engine does not depend on the parser
+ */
+class QueryBuilder {
+
+  private final Map<String, QueryVertex> vertices = new LinkedHashMap<>();
+
+  private final Map<String, QueryEdge> edges = new LinkedHashMap<>();
+
+  private final Map<String, QueryPath> paths = new LinkedHashMap<>();
+
+  private final Set<QueryExpression> constraints = new LinkedHashSet<>();
+
+  private final List<ExpAsVar> select = new ArrayList<>();
+
+  private final List<ExpAsVar> groupBy = new ArrayList<>();
+
+  private final List<OrderByElem> orderBy = new ArrayList<>();
+
+  private QueryExpression limit;
+
+  private QueryExpression offset;
+
+  QueryVertex vertex(String name) {
+    return vertices.computeIfAbsent(name, n -> new QueryVertex(n, false));
+  }
+
+  QueryEdge edge(String src, String name, String dst) {
+    return addEdge(src, name, dst, true);
+  }
+
+  QueryEdge undirectedEdge(String src, String name, String dst) {
+    return addEdge(src, name, dst, false);
+  }
+
+  private QueryEdge addEdge(String src, String name, String dst, boolean directed) {
+    QueryEdge edge = new QueryEdge(vertex(src), vertex(dst), name, false, directed);
+    edges.put(name, edge);
+    return edge;
+  }
+
+  /**
+   * @param pathPattern
+   *          the vertices, edges and constraints of the path pattern; its first vertex is where a hop starts
+   */
+  QueryPath path(String src, String name, String dst, QueryBuilder pathPattern, long minHops, long maxHops) {
+    QueryPath path = new QueryPath(vertex(src), vertex(dst), new ArrayList<>(pathPattern.vertices.values()),
+        new ArrayList<>(pathPattern.edges.values()), pathPattern.constraints, name, name, false, minHops, maxHops);
+    paths.put(name, path);
+    return path;
+  }
+
+  VarRef ref(String name) {
+    return new VarRef(vertices.containsKey(name) ? vertices.get(name) : edges.get(name));
+  }
+
+  PropertyAccess prop(String name, String propertyName) {
+    return new PropertyAccess(vertices.containsKey(name) ? vertices.get(name) : edges.get(name), propertyName);
+  }
+
+  QueryBuilder where(QueryExpression constraint) {
+    constraints.add(constraint);
+    return this;
+  }
+
+  ExpAsVar select(QueryExpression exp, String name) {
+    ExpAsVar expAsVar = new ExpAsVar(exp, name, false);
+    select.add(expAsVar);
+    return expAsVar;
+  }
+
+  ExpAsVar groupBy(QueryExpression exp, String name) {
+    ExpAsVar expAsVar = new ExpAsVar(exp, name, false);
+    groupBy.add(expAsVar);
+    return expAsVar;
+  }
+
+  QueryBuilder orderBy(QueryExpression exp, boolean ascending) {
+    orderBy.add(new OrderByElem(exp, ascending));
+    return this;
+  }
+
+  QueryBuilder limit(long limit) {
+    this.limit = new ConstInteger(limit);
+    return this;
+  }
+
+  QueryBuilder offset(long offset) {
+    this.offset = new ConstInteger(offset);
+    return this;
+  }
+
+  GraphQuery build() {
+    Set<VertexPairConnection> connections = new LinkedHashSet<>(edges.values());
+    connections.addAll(paths.values());
+    GraphPattern graphPattern = new GraphPattern(new LinkedHashSet<>(vertices.values()), connections, constraints);
+    return new GraphQuery(new Projection(select), null, graphPattern, new GroupBy(groupBy), new OrderBy(orderBy),
+        limit, offset);
+  }
+}
@@ -0,0 +1,458 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import oracle.pgql.lang.ColumnVector;
+import oracle.pgql.lang.PgqlException;
+import oracle.pgql.lang.PreparedStatement;
+import oracle.pgql.lang.ResultBatch;
+import oracle.pgql.lang.ResultSet;
+import oracle.pgql.lang.ir.ExpAsVar;
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Add;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation.AggrAvg;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation.AggrCount;
+import oracle.pgql.lang.ir.QueryExpression.BindVariable;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstInteger;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstString;
+import oracle.pgql.lang.ir.QueryExpression.Function.EdgeLabel;
+import oracle.pgql.lang.ir.QueryExpression.Function.HasLabel;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.Or;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Equal;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Greater;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.NotEqual;
+import oracle.pgql.lang.ir.QueryExpression.Star;
+import oracle.pgql.lang.ir.QueryExpression.VarRef;
+
+public class QueryExecutionTests {
+
+  private static PropertyGraph graph;
+
+  /**
+   * Alice, Bob and Carol know each other in a cycle, Alice also knows Carol, and Alice and Bob work at Acme
+   */
+  @BeforeClass
+  public static void setUp() {
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    int alice = person(builder, "Alice", 30);
+    int bob = person(builder, "Bob", 25);
+    int carol = person(builder, "Carol", 35);
+    int acme = builder.addVertex("Company");
+    builder.setVertexProperty(acme, "name", "Acme");
+    builder.setEdgeProperty(builder.addEdge(alice, bob, "knows"), "since", 2010);
+    builder.setEdgeProperty(builder.addEdge(bob, carol, "knows"), "since", 2012);
+    builder.setEdgeProperty(builder.addEdge(carol, alice, "knows"), "since", 2014);
+    builder.setEdgeProperty(builder.addEdge(alice, carol, "knows"), "since", 2016);
+    builder.addEdge(alice, acme, "worksAt");
+    builder.addEdge(bob, acme, "worksAt");
+    graph = builder.build();
+  }
+
+  private static int person(PropertyGraphBuilder builder, String name, int age) {
+    int vertex = builder.addVertex("Person");
+    builder.setVertexProperty(vertex, "name", name).setVertexProperty(vertex, "age", age);
+    return vertex;
+  }
+
+  @Test
+  public void testFilterOnVertex() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.vertex("n");
+    q.where(new Greater(q.prop("n", "age"), new ConstInteger(28)));
+    q.select(q.prop("n", "name"), "name");
+    q.orderBy(q.prop("n", "name"), true);
+    assertEquals(Arrays.asList("Alice", "Carol"), getStrings(graph.executeQuery(q.build()), 1));
+  }
+
+  @Test
+  public void testExpandOutAndIn() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e", "b");
+    q.where(new Equal(q.prop("b", "name"), new ConstString("Carol")));
+    q.where(new Equal(new EdgeLabel(q.ref("e")), new ConstString("knows")));
+    q.select(q.prop("a", "name"), "name");
+    q.orderBy(q.prop("e", "since"), true);
+    assertEquals(Arrays.asList("Bob", "Alice"), getStrings(graph.executeQuery(q.build()), 1));
+  }
+
+  @Test
+  public void testCycle() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e1", "b");
+    q.edge("b", "e2", "c");
+    q.edge("c", "e3", "a");
+    q.where(new Equal(q.prop("a", "name"), new ConstString("Alice")));
+    q.select(q.prop("b", "name"), "b");
+    q.select(q.prop("c", "name"), "c");
+    ResultSet resultSet = graph.executeQuery(q.build());
+    assertTrue(resultSet.next());
+    assertEquals("Bob", resultSet.getString("b"));
+    assertEquals("Carol", resultSet.getString("c"));
+    assertFalse(resultSet.next());
+  }
+
+  /**
+   * Counts the triangles in a random graph with parallel edges and self-loops, which are matched by intersecting
+   * neighbor lists, and compares the count with the count of a nested loop over the edges
+   */
+  @Test
+  public void testTrianglesWithParallelEdges() throws Exception {
+    Random random = new Random(3);
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    int numVertices = 50;
+    for (int i = 0; i < numVertices; i++) {
+      builder.addVertex("Person");
+    }
+    for (int i = 0; i < 400; i++) {
+      builder.addEdge(random.nextInt(numVertices), random.nextInt(numVertices), "knows");
+    }
+    PropertyGraph randomGraph = builder.build();
+
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e1", "b");
+    q.edge("b", "e2", "c");
+    q.edge("c", "e3", "a");
+    q.select(new AggrCount(new Star()), "count");
+    ResultSet resultSet = randomGraph.executeQuery(q.build());
+    assertTrue(resultSet.next());
+
+    long expected = 0;
+    int numEdges = randomGraph.getNumEdges();
+    for (int e1 = 0; e1 < numEdges; e1++) {
+      for (int e2 = 0; e2 < numEdges; e2++) {
+        if (randomGraph.getEdgeDestination(e1) != randomGraph.getEdgeSource(e2)) {
+          continue;
+        }
+        for (int e3 = 0; e3 < numEdges; e3++) {
+          if (randomGraph.getEdgeDestination(e2) == randomGraph.getEdgeSource(e3)
+              && randomGraph.getEdgeDestination(e3) == randomGraph.getEdgeSource(e1)) {
+            expected++;
+          }
+        }
+      }
+    }
+    assertTrue(expected > 0);
+    assertEquals(expected, (long) resultSet.getLong(1));
+  }
+
+  @Test
+  public void testUndirectedEdge() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.undirectedEdge("a", "e", "b");
+    q.where(new Equal(q.prop("a", "name"), new ConstString("Bob")));
+    q.select(q.prop("b", "name"), "name");
+    q.orderBy(q.prop("b", "name"), true);
+    assertEquals(Arrays.asList("Acme", "Alice", "Carol"), getStrings(graph.executeQuery(q.build()), 1));
+  }
+
+  @Test
+  public void testPath() throws Exception {
+    QueryBuilder knows = new QueryBuilder();
+    knows.edge("x", "e", "y");
+    knows.where(new HasLabel(knows.ref("e"), new ConstString("knows")));
+    knows.where(new Greater(knows.prop("y", "age"), new ConstInteger(26)));
+
+    // the people that Bob reaches in two or three hops over people older than 26
+    QueryBuilder q = new QueryBuilder();
+    q.path("a", "p", "b", knows, 2, 3);
+    q.where(new Equal(q.prop("a", "name"), new ConstString("Bob")));
+    q.select(q.prop("b", "name"), "name");
+    q.orderBy(q.prop("b", "name"), true);
+    assertEquals(Arrays.asList("Alice", "Carol"), getStrings(graph.executeQuery(q.build()), 1));
+
+    // both ends bound: Bob reaches Alice in exactly two hops, but not in exactly one
+    q = new QueryBuilder();
+    q.path("a", "p", "b", knows, 1, 1);
+    q.where(new Equal(q.prop("a", "name"), new ConstString("Bob")));
+    q.where(new Equal(q.prop("b", "name"), new ConstString("Alice")));
+    q.select(q.prop("b", "name"), "name");
+    assertEquals(Collections.emptyList(), getStrings(graph.executeQuery(q.build()), 1));
+  }
+
+  @Test
+  public void testRepeatedPath() throws Exception {
+    // the second execution uses the reachability index of the path pattern
+    for (int i = 0; i < ReachabilityIndexCache.MIN_USES + 1; i++) {
+      QueryBuilder worksAt = new QueryBuilder();
+      worksAt.undirectedEdge("x", "e", "y");
+      worksAt.where(new HasLabel(worksAt.ref("e"), new ConstString("worksAt")));
+      QueryBuilder q = new QueryBuilder();
+      q.path("a", "p", "b", worksAt, 1, -1);
+      q.where(new Equal(q.prop("a", "name"), new ConstString("Alice")));
+      q.select(q.prop("b", "name"), "name");
+      q.orderBy(q.prop("b", "name"), true);
+      assertEquals(Arrays.asList("Acme", "Alice", "Bob"), getStrings(graph.executeQuery(q.build()), 1));
+    }
+  }
+
+  @Test
+  public void testGroupByAndAggregation() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e", "b");
+    q.where(new HasLabel(q.ref("b"), new ConstString("Person")));
+    ExpAsVar name = q.groupBy(q.prop("a", "name"), "name");
+    q.select(new VarRef(name), "name");
+    q.select(new AggrCount(new Star()), "cnt");
+    q.select(new AggrAvg(q.prop("b", "age")), "avgAge");
+    q.orderBy(new VarRef(name), true);
+    ResultSet resultSet = graph.executeQuery(q.build());
+
+    assertTrue(resultSet.next());
+    assertEquals("Alice", resultSet.getString(1));
+    assertEquals(2L, (long) resultSet.getLong("cnt"));
+    assertEquals(30.0, resultSet.getDouble("avgAge"), 0.0);
+    assertTrue(resultSet.next());
+    assertEquals("Bob", resultSet.getString(1));
+    assertTrue(resultSet.next());
+    assertEquals("Carol", resultSet.getString(1));
+    assertEquals(1L, (long) resultSet.getLong("cnt"));
+    assertFalse(resultSet.next());
+  }
+
+  /**
+   * Groups more matches than fit in a memory budget of zero bytes, which spills the groups, and compares the result
+   * with the result without spilling
+   */
+  @Test
+  public void testGroupBySpilled() throws Exception {
+    Random random = new Random(7);
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    int numVertices = 300;
+    for (int i = 0; i < numVertices; i++) {
+      builder.setVertexProperty(builder.addVertex("Person"), "age", (long) random.nextInt(80));
+    }
+    for (int i = 0; i < 3000; i++) {
+      builder.addEdge(random.nextInt(numVertices), random.nextInt(numVertices), "knows");
+    }
+    PropertyGraph randomGraph = builder.build();
+
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e", "b");
+    ExpAsVar a = q.groupBy(q.ref("a"), "a");
+    q.select(new VarRef(a), "a");
+    q.select(new AggrCount(new Star()), "cnt");
+    q.select(new AggrAvg(q.prop("b", "age")), "avgAge");
+    q.orderBy(new VarRef(a), true);
+    GraphQuery query = q.build();
+
+    List<List<Object>> expected = getRows(randomGraph.executeQuery(query));
+    assertTrue(expected.size() > GroupTable.MIN_GROUPS_PER_RUN);
+    randomGraph.setGroupMemoryBudget(0);
+    assertEquals(expected, getRows(randomGraph.executeQuery(query)));
+  }
+
+  private static List<List<Object>> getRows(ResultSet resultSet) throws PgqlException {
+    List<List<Object>> result = new ArrayList<>();
+    while (resultSet.next()) {
+      result.add(Arrays.asList(resultSet.getObject(1), resultSet.getObject(2), resultSet.getObject(3)));
+    }
+    return result;
+  }
+
+  @Test
+  public void testAggregationWithoutMatches() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.vertex("n");
+    q.where(new Greater(q.prop("n", "age"), new ConstInteger(100)));
+    q.select(new AggrCount(new Star()), "cnt");
+    q.select(new AggrAvg(q.prop("n", "age")), "avgAge");
+    ResultSet resultSet = graph.executeQuery(q.build());
+    assertTrue(resultSet.next());
+    assertEquals(0L, (long) resultSet.getLong(1));
+    assertEquals(null, resultSet.getObject(2));
+    assertFalse(resultSet.next());
+  }
+
+  @Test
+  public void testOrderByLimitOffset() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.vertex("n");
+    ExpAsVar age = q.select(q.prop("n", "age"), "age");
+    q.orderBy(new VarRef(age), false).limit(2).offset(1);
+    ResultSet resultSet = graph.executeQuery(q.build());
+    List<Long> ages = new ArrayList<>();
+    while (resultSet.next()) {
+      ages.add(resultSet.getLong(1));
+    }
+    // the company has no age; nulls sort last in ascending order and therefore first in descending order
+    assertEquals(Arrays.asList(35L, 30L), ages);
+  }
+
+  @Test
+  public void testSelectStar() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e", "b");
+    q.where(new Equal(q.prop("e", "since"), new ConstInteger(2010)));
+    ResultSet resultSet = graph.executeQuery(q.build());
+    assertTrue(resultSet.next());
+    assertEquals("Alice", ((Vertex) resultSet.getObject("a")).getProperty("name"));
+    assertEquals("Bob", ((Vertex) resultSet.getObject("b")).getProperty("name"));
+    assertEquals("knows", ((Edge) resultSet.getObject("e")).getLabel());
+    assertFalse(resultSet.next());
+  }
+
+  @Test
+  public void testThreeValuedLogic() throws Exception {
+    // the company has no age, so "n.age <> 30" is unknown for it, but the OR is true
+    QueryBuilder q = new QueryBuilder();
+    q.vertex("n");
+    q.where(new Or(new NotEqual(q.prop("n", "age"), new ConstInteger(30)), new Equal(q.prop("n", "name"),
+        new ConstString("Acme"))));
+    q.select(q.prop("n", "name"), "name");
+    q.orderBy(q.prop("n", "name"), true);
+    assertEquals(Arrays.asList("Acme", "Bob", "Carol"), getStrings(graph.executeQuery(q.build()), 1));
+  }
+
+  @Test
+  public void testPreparedStatement() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.vertex("n");
+    q.where(new Equal(q.prop("n", "name"), new BindVariable(0)));
+    q.select(new Add(q.prop("n", "age"), new BindVariable(1)), "age");
+    GraphQuery query = q.build();
+
+    try (PreparedStatement statement = graph.prepareStatement(query)) {
+      statement.setString(1, "Bob");
+      statement.setInt(2, 10);
+      ResultSet resultSet = statement.executeQuery();
+      assertTrue(resultSet.next());
+      assertEquals(35L, (long) resultSet.getLong(1));
+
+      statement.setString(1, "Carol");
+      ResultSet previousResultSet = resultSet;
+      resultSet = statement.executeQuery();
+      assertTrue(resultSet.next());
+      assertEquals(45L, (long) resultSet.getLong(1));
+
+      // executing the statement again closed the previous result set
+      try {
+        previousResultSet.next();
+        fail();
+      } catch (PgqlException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test(expected = PgqlException.class)
+  public void testMissingParameter() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.vertex("n");
+    q.where(new Equal(q.prop("n", "name"), new BindVariable(0)));
+    q.select(q.prop("n", "name"), "name");
+    graph.prepareStatement(q.build()).executeQuery();
+  }
+
+  @Test
+  public void testPrimitiveGetters() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.vertex("n");
+    q.select(q.prop("n", "age"), "age");
+    q.select(new Greater(q.prop("n", "age"), new ConstInteger(28)), "old");
+    q.orderBy(q.prop("n", "age"), true);
+    ResultSet resultSet = graph.executeQuery(q.build());
+    assertTrue(resultSet.next());
+    assertEquals(25L, resultSet.getLongValue(1));
+    assertFalse(resultSet.wasNull());
+    assertEquals(25.0, resultSet.getDoubleValue("age"), 0.0);
+    assertEquals(25, resultSet.getIntegerValue(1));
+    assertFalse(resultSet.getBooleanValue("old"));
+    assertFalse(resultSet.wasNull());
+    assertTrue(resultSet.last());
+    // the company has no age
+    assertEquals(0L, resultSet.getLongValue("age"));
+    assertTrue(resultSet.wasNull());
+    assertFalse(resultSet.getBooleanValue(2));
+    assertTrue(resultSet.wasNull());
+  }
+
+  @Test
+  public void testNextBatch() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.vertex("n");
+    q.select(q.prop("n", "name"), "name");
+    q.select(q.prop("n", "age"), "age");
+    q.select(new Greater(q.prop("n", "age"), new ConstInteger(28)), "old");
+    q.orderBy(q.prop("n", "name"), true);
+    ResultSet resultSet = graph.executeQuery(q.build());
+    assertTrue(resultSet.next());
+
+    ResultBatch batch = resultSet.nextBatch(2);
+    assertEquals(2, batch.getNumRows());
+    assertEquals(ColumnVector.Type.OBJECT, batch.getColumn("name").getType());
+    assertEquals("Alice", batch.getColumn(1).getObject(0));
+    ColumnVector ages = batch.getColumn("age");
+    assertEquals(ColumnVector.Type.LONG, ages.getType());
+    assertEquals(30L, ages.getLongs()[0]);
+    assertEquals(25L, ages.getLong(1));
+    assertFalse(ages.isNull(1));
+    assertEquals(ColumnVector.Type.BOOLEAN, batch.getColumn("old").getType());
+    assertTrue(batch.getColumn("old").getBoolean(0));
+    assertEquals("Bob", resultSet.getString(1));
+
+    batch = resultSet.nextBatch(1024);
+    assertEquals(1, batch.getNumRows());
+    assertEquals("Carol", batch.getColumn("name").getObject(0));
+    assertEquals(0, resultSet.nextBatch(1024).getNumRows());
+    assertFalse(resultSet.next());
+
+    // Acme, which has no age, is before the first row that was read
+    resultSet.beforeFirst();
+    batch = resultSet.nextBatch(1);
+    assertEquals("Acme", batch.getColumn("name").getObject(0));
+    assertTrue(batch.getColumn("age").isNull(0));
+    assertEquals(null, batch.getColumn("age").getObject(0));
+  }
+
+  @Test(expected = PgqlException.class)
+  public void testTypeMismatch() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.vertex("n");
+    q.select(q.prop("n", "name"), "name");
+    ResultSet resultSet = graph.executeQuery(q.build());
+    resultSet.next();
+    resultSet.getLong(1);
+  }
+
+  @Test
+  public void testCursorMovement() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.vertex("n");
+    q.select(q.prop("n", "name"), "name");
+    q.orderBy(q.prop("n", "name"), true);
+    ResultSet resultSet = graph.executeQuery(q.build());
+    assertTrue(resultSet.last());
+    assertEquals("Carol", resultSet.getString(1));
+    assertTrue(resultSet.previous());
+    assertEquals("Bob", resultSet.getString(1));
+    assertTrue(resultSet.absolute(-4));
+    assertEquals("Acme", resultSet.getString(1));
+    assertFalse(resultSet.relative(-1));
+    assertTrue(resultSet.first());
+    resultSet.afterLast();
+    assertFalse(resultSet.next());
+  }
+
+  private static List<String> getStrings(ResultSet resultSet, int elementIdx) throws PgqlException {
+    List<String> result = new ArrayList<>();
+    while (resultSet.next()) {
+      result.add(resultSet.getString(elementIdx));
+    }
+    return Collections.unmodifiableList(result);
+  }
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import oracle.pgql.engine.QueryPlan.MatchStep;
+import oracle.pgql.engine.QueryPlan.MatchStep.Kind;
+import oracle.pgql.lang.PreparedStatement;
+import oracle.pgql.lang.ResultSet;
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Add;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstInteger;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstString;
+import oracle.pgql.lang.ir.QueryExpression.Function.HasLabel;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.And;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.Not;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Equal;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Greater;
+
+public class QueryPlannerTests {
+
+  /**
+   * Statistics of a graph with a million vertices with an average degree of 10
+   */
+  private static class FixedStatistics implements GraphStatistics {
+
+    final Map<String, Long> labelCounts = new HashMap<>();
+
+    final Map<String, Double> propertySelectivities = new HashMap<>();
+
+    @Override
+    public long getNumVertices() {
+      return 1_000_000;
+    }
+
+    @Override
+    public long getNumEdges() {
+      return 10_000_000;
+    }
+
+    @Override
+    public long getNumVerticesWithLabel(String label) {
+      return labelCounts.getOrDefault(label, 0L);
+    }
+
+    @Override
+    public long getNumEdgesWithLabel(String label) {
+      return labelCounts.getOrDefault(label, 0L);
+    }
+
+    @Override
+    public DegreeHistogram getOutDegreeHistogram() {
+      return new DegreeHistogram(new long[] { 0, 0, 0, 0, 1_000_000 }, new long[] { 0, 0, 0, 0, 10_000_000 });
+    }
+
+    @Override
+    public DegreeHistogram getInDegreeHistogram() {
+      return getOutDegreeHistogram();
+    }
+
+    @Override
+    public double getVertexPropertySelectivity(String propertyName) {
+      return propertySelectivities.getOrDefault(propertyName, 0.5);
+    }
+
+    @Override
+    public double getEdgePropertySelectivity(String propertyName) {
+      return propertySelectivities.getOrDefault(propertyName, 0.5);
+    }
+  }
+
+  private static GraphQuery createPath(int length) {
+    QueryBuilder q = new QueryBuilder();
+    for (int i = 0; i < length; i++) {
+      q.edge("v" + i, "e" + i, "v" + (i + 1));
+    }
+    return q.build();
+  }
+
+  @Test
+  public void testStartFromMostSelectiveVertex() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e", "b");
+    q.where(new HasLabel(q.ref("a"), new ConstString("Common")));
+    q.where(new HasLabel(q.ref("b"), new ConstString("Rare")));
+    GraphQuery query = q.build();
+
+    FixedStatistics statistics = new FixedStatistics();
+    statistics.labelCounts.put("Common", 500_000L);
+    statistics.labelCounts.put("Rare", 10L);
+    List<MatchStep> steps = QueryPlanner.plan(query, statistics).steps;
+    assertEquals(Kind.SCAN_VERTEX, steps.get(0).kind);
+    assertEquals("b", steps.get(0).toString().split(" ")[1]);
+    assertEquals(Kind.EXPAND_IN, steps.get(1).kind);
+
+    statistics.labelCounts.put("Common", 10L);
+    statistics.labelCounts.put("Rare", 500_000L);
+    steps = QueryPlanner.plan(query, statistics).steps;
+    assertEquals("a", steps.get(0).toString().split(" ")[1]);
+    assertEquals(Kind.EXPAND_OUT, steps.get(1).kind);
+  }
+
+  @Test
+  public void testStartFromSelectiveProperty() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e1", "b");
+    q.edge("b", "e2", "c");
+    q.where(new Equal(q.prop("c", "id"), new ConstInteger(42)));
+    FixedStatistics statistics = new FixedStatistics();
+    statistics.propertySelectivities.put("id", 1e-6);
+    List<MatchStep> steps = QueryPlanner.plan(q.build(), statistics).steps;
+    assertTrue(steps.get(0).toString().startsWith("SCAN_VERTEX c FILTER"));
+    assertEquals(1.0, steps.get(0).estimatedCardinality, 1e-6);
+  }
+
+  @Test
+  public void testEdgesBetweenBoundVerticesAreCheckedImmediately() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e1", "b");
+    q.edge("b", "e2", "c");
+    q.edge("c", "e3", "a");
+    q.edge("c", "e4", "d");
+    List<MatchStep> steps = QueryPlanner.plan(q.build(), new FixedStatistics()).steps;
+    assertEquals(6, steps.size());
+    // the edges that close the triangle are checked before the pattern is expanded to d
+    assertEquals(Kind.INTERSECT, steps.get(2).kind);
+    assertTrue(steps.get(3).toBound);
+    assertTrue(steps.get(4).toBound);
+    assertFalse(steps.get(5).toBound);
+  }
+
+  @Test
+  public void testCycleIsIntersected() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e1", "b");
+    q.edge("b", "e2", "c");
+    q.edge("c", "e3", "a");
+    q.where(new HasLabel(q.ref("a"), new ConstString("Rare")));
+    q.where(new HasLabel(q.ref("c"), new ConstString("Rare")));
+    q.where(new HasLabel(q.ref("e2"), new ConstString("Rare")));
+    q.where(new Greater(q.prop("e1", "since"), new ConstInteger(2000)));
+    q.where(new Greater(q.prop("e3", "since"), new ConstInteger(2000)));
+    FixedStatistics statistics = new FixedStatistics();
+    statistics.labelCounts.put("Rare", 10L);
+    List<MatchStep> steps = QueryPlanner.plan(q.build(), statistics).steps;
+
+    // the last vertex is found among the common neighbors of the two vertices that are bound before it
+    MatchStep intersect = steps.stream().filter(step -> step.kind == Kind.INTERSECT).findFirst().get();
+    assertEquals(2, intersect.intersectFromSlots.length);
+    assertEquals(5, steps.size());
+    // the intersection binds no edge, so the constraints on the closing edges are evaluated by their checks
+    assertEquals(1, intersect.filters.size());
+    for (MatchStep step : steps.subList(steps.indexOf(intersect) + 1, steps.size())) {
+      assertTrue(step.toBound);
+      assertEquals(Kind.EXPAND_OUT, step.kind);
+      assertEquals(1, step.filters.size());
+    }
+  }
+
+  @Test
+  public void testEveryConstraintAttachedOnce() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e1", "b");
+    q.edge("b", "e2", "c");
+    q.where(new Equal(q.prop("a", "name"), q.prop("c", "name")));
+    q.where(new HasLabel(q.ref("b"), new ConstString("Person")));
+    q.where(new Equal(q.prop("e1", "since"), q.prop("e2", "since")));
+    int numFilters = 0;
+    for (MatchStep step : QueryPlanner.plan(q.build(), new FixedStatistics()).steps) {
+      numFilters += step.filters.size();
+    }
+    assertEquals(3, numFilters);
+  }
+
+  @Test
+  public void testConjunctionIsSplitAcrossSteps() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e", "b");
+    q.where(new And(new Equal(q.prop("a", "name"), new ConstString("x")),
+        new Equal(q.prop("b", "name"), new ConstString("y"))));
+    List<MatchStep> steps = QueryPlanner.plan(q.build(), new FixedStatistics()).steps;
+    assertEquals(1, steps.get(0).filters.size());
+    assertEquals(1, steps.get(1).filters.size());
+  }
+
+  @Test
+  public void testConstantsAreFolded() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e", "b");
+    q.where(new And(new Equal(new ConstInteger(1), new ConstInteger(1)),
+        new Equal(q.prop("a", "age"), new Add(new ConstInteger(40), new ConstInteger(2)))));
+    QueryPlan plan = QueryPlanner.plan(q.build(), new FixedStatistics());
+    assertTrue(plan.preFilters.isEmpty());
+    assertEquals("[(a.age = 42)]", plan.steps.get(0).filters.toString());
+
+    q.where(new Not(new Equal(q.ref("b"), q.ref("b"))));
+    plan = QueryPlanner.plan(q.build(), new FixedStatistics());
+    assertEquals("[false]", plan.preFilters.toString());
+  }
+
+  @Test
+  public void testLongPathIsOrderedGreedily() throws Exception {
+    int length = JoinOrderOptimizer.MAX_VERTICES_FOR_DYNAMIC_PROGRAMMING + 5;
+    List<MatchStep> steps = QueryPlanner.plan(createPath(length), new FixedStatistics()).steps;
+    assertEquals(length + 1, steps.size());
+    assertEquals(Kind.SCAN_VERTEX, steps.get(0).kind);
+  }
+
+  @Test
+  public void testSameResultsForDifferentStatistics() throws Exception {
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    for (int i = 0; i < 20; i++) {
+      builder.addVertex(i % 3 == 0 ? "A" : "B");
+    }
+    for (int i = 0; i < 20; i++) {
+      builder.addEdge(i, (i * 7 + 3) % 20, null);
+      builder.addEdge(i, (i * 3 + 1) % 20, null);
+    }
+    PropertyGraph graph = builder.build();
+
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e1", "b");
+    q.edge("b", "e2", "c");
+    q.where(new HasLabel(q.ref("a"), new ConstString("A")));
+    q.select(q.ref("a"), "a");
+    q.select(q.ref("b"), "b");
+    q.select(q.ref("c"), "c");
+    GraphQuery query = q.build();
+
+    FixedStatistics startFromA = new FixedStatistics();
+    startFromA.labelCounts.put("A", 1L);
+    FixedStatistics startFromC = new FixedStatistics();
+    startFromC.labelCounts.put("A", 1_000_000L);
+    List<String> expected = getRows(graph.prepareStatement(query, startFromA));
+    assertEquals(expected, getRows(graph.prepareStatement(query, startFromC)));
+    assertEquals(expected, getRows(graph.prepareStatement(query)));
+    assertFalse(expected.isEmpty());
+  }
+
+  @Test
+  public void testPropertyGraphStatistics() {
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    for (int i = 0; i < 1000; i++) {
+      int vertex = builder.addVertex(i < 100 ? "Rare" : "Common");
+      builder.setVertexProperty(vertex, "id", i);
+      builder.setVertexProperty(vertex, "even", i % 2 == 0);
+      if (i > 0) {
+        builder.addEdge(0, i, "hub");
+      }
+    }
+    GraphStatistics statistics = builder.build().getStatistics();
+
+    assertEquals(100, statistics.getNumVerticesWithLabel("Rare"));
+    assertEquals(999, statistics.getNumEdgesWithLabel("hub"));
+    assertEquals(0.999, statistics.getOutDegreeHistogram().getMean(), 1e-9);
+    assertEquals(999, statistics.getOutDegreeHistogram().getNumVertices(0));
+    assertEquals(1, statistics.getOutDegreeHistogram().getNumVertices(10));
+    assertEquals(0.001, statistics.getVertexPropertySelectivity("id"), 1e-9);
+    assertEquals(0.5, statistics.getVertexPropertySelectivity("even"), 1e-9);
+    assertEquals(0, statistics.getVertexPropertySelectivity("nonExistingProperty"), 0);
+  }
+
+  private static List<String> getRows(PreparedStatement statement) throws Exception {
+    List<String> rows = new ArrayList<>();
+    ResultSet resultSet = statement.executeQuery();
+    while (resultSet.next()) {
+      rows.add(resultSet.getObject(1) + " " + resultSet.getObject(2) + " " + resultSet.getObject(3));
+    }
+    rows.sort(null);
+    return rows;
+  }
+}
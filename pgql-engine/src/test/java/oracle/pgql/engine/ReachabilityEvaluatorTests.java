@@ -0,0 +1,327 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import oracle.pgql.lang.ir.QueryEdge;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.Aggregation;
+import oracle.pgql.lang.ir.QueryExpression.BindVariable;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstInteger;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstString;
+import oracle.pgql.lang.ir.QueryExpression.Function.HasLabel;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Greater;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.NotEqual;
+import oracle.pgql.lang.ir.QueryPath;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.ir.QueryVertex;
+import oracle.pgql.lang.ir.VertexPairConnection;
+
+public class ReachabilityEvaluatorTests {
+
+  private static final int NUM_VERTICES = 40;
+
+  private static final long[][] HOPS = { { 0, -1 }, { 1, -1 }, { 1, 1 }, { 2, 3 }, { 0, 0 }, { 3, 3 }, { 2, 1 },
+      { 5, -1 }, { 0, 2 } };
+
+  private static PropertyGraph graph;
+
+  private static ForkJoinPool pool;
+
+  /**
+   * A random graph with two edge labels, self-loops and parallel edges, in which some vertices have no age
+   */
+  @BeforeClass
+  public static void setUp() {
+    Random random = new Random(42);
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    for (int i = 0; i < NUM_VERTICES; i++) {
+      int vertex = builder.addVertex("Person");
+      if (i % 6 != 0) {
+        builder.setVertexProperty(vertex, "age", (long) random.nextInt(40));
+      }
+    }
+    for (int i = 0; i < 70; i++) {
+      builder.addEdge(random.nextInt(NUM_VERTICES), random.nextInt(NUM_VERTICES), i % 3 == 0 ? "likes" : "knows");
+    }
+    graph = builder.build();
+    pool = new ForkJoinPool(4);
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test
+  public void testSingleEdge() throws Exception {
+    QueryBuilder pattern = new QueryBuilder();
+    pattern.edge("x", "e", "y");
+    pattern.where(new HasLabel(pattern.ref("e"), new ConstString("knows")));
+    checkAllHops(pattern);
+  }
+
+  @Test
+  public void testChain() throws Exception {
+    QueryBuilder pattern = new QueryBuilder();
+    pattern.vertex("x");
+    pattern.edge("x", "e", "y");
+    pattern.edge("z", "f", "y");
+    pattern.where(new Greater(pattern.prop("y", "age"), new ConstInteger(15)));
+    checkAllHops(pattern);
+  }
+
+  @Test
+  public void testUndirected() throws Exception {
+    QueryBuilder pattern = new QueryBuilder();
+    pattern.undirectedEdge("x", "e", "y");
+    pattern.where(new NotEqual(pattern.prop("x", "age"), pattern.prop("y", "age")));
+    checkAllHops(pattern);
+  }
+
+  private void checkAllHops(QueryBuilder pattern) throws Exception {
+    ExpressionInterpreter interpreter = new ExpressionInterpreter(graph, new Object[0]);
+    for (long[] hops : HOPS) {
+      QueryPath path = new QueryBuilder().path("a", "p", "b", pattern, hops[0], hops[1]);
+      PathAutomaton automaton = PathAutomaton.create(path);
+      ReachabilityEvaluator evaluator = new ReachabilityEvaluator(graph, automaton, interpreter);
+      // hands over every search to the parallel search
+      ReachabilityEvaluator parallelEvaluator = new ReachabilityEvaluator(graph, automaton, interpreter, pool, 0);
+      ReachabilityEvaluator indexedEvaluator = ReachabilityIndex.canIndex(automaton)
+          ? new ReachabilityEvaluator(graph, automaton, interpreter, pool, Long.MAX_VALUE,
+              ReachabilityIndex.build(graph, automaton))
+          : evaluator;
+      List<TreeSet<Integer>> expected = getReachable(automaton, interpreter);
+      for (int from = 0; from < NUM_VERTICES; from++) {
+        String message = path + " from " + from;
+        assertEquals(message, expected.get(from), getResult(evaluator, evaluator.reachable(from, true)));
+        assertEquals(message, expected.get(from),
+            getResult(parallelEvaluator, parallelEvaluator.reachable(from, true)));
+        assertEquals(message, expected.get(from), getResult(indexedEvaluator, indexedEvaluator.reachable(from, true)));
+        TreeSet<Integer> backward = new TreeSet<>();
+        for (int to = 0; to < NUM_VERTICES; to++) {
+          if (expected.get(to).contains(from)) {
+            backward.add(to);
+          }
+          assertEquals(message + " to " + to, expected.get(from).contains(to), evaluator.reaches(from, to));
+          assertEquals(message + " to " + to, expected.get(from).contains(to), indexedEvaluator.reaches(from, to));
+        }
+        assertEquals(message, backward, getResult(evaluator, evaluator.reachable(from, false)));
+        assertEquals(message, backward, getResult(parallelEvaluator, parallelEvaluator.reachable(from, false)));
+        assertEquals(message, backward, getResult(indexedEvaluator, indexedEvaluator.reachable(from, false)));
+      }
+    }
+  }
+
+  /**
+   * Compares the parallel search and the index with the sequential search on a graph that is split into many tasks,
+   * of which the frontiers are large enough to be expanded bottom-up, and of which the hops form many components
+   */
+  @Test
+  public void testLargeGraph() throws Exception {
+    Random random = new Random(7);
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    int numVertices = 20000;
+    for (int i = 0; i < numVertices; i++) {
+      builder.setVertexProperty(builder.addVertex("Person"), "age", (long) random.nextInt(100));
+    }
+    for (int i = 0; i < 2 * numVertices; i++) {
+      builder.addEdge(random.nextInt(numVertices), random.nextInt(numVertices), "knows");
+    }
+    PropertyGraph largeGraph = builder.build();
+    ExpressionInterpreter interpreter = new ExpressionInterpreter(largeGraph, new Object[0]);
+
+    QueryBuilder pattern = new QueryBuilder();
+    pattern.edge("x", "e", "y");
+    pattern.where(new Greater(pattern.prop("y", "age"), new ConstInteger(10)));
+    for (long[] hops : new long[][] { { 0, -1 }, { 2, -1 }, { 1, 4 } }) {
+      PathAutomaton automaton = PathAutomaton.create(new QueryBuilder().path("a", "p", "b", pattern, hops[0],
+          hops[1]));
+      ReachabilityEvaluator evaluator = new ReachabilityEvaluator(largeGraph, automaton, interpreter, pool,
+          Long.MAX_VALUE);
+      ReachabilityEvaluator parallelEvaluator = new ReachabilityEvaluator(largeGraph, automaton, interpreter, pool,
+          100);
+      ReachabilityEvaluator indexedEvaluator = ReachabilityIndex.canIndex(automaton)
+          ? new ReachabilityEvaluator(largeGraph, automaton, interpreter, pool, Long.MAX_VALUE,
+              ReachabilityIndex.build(largeGraph, automaton))
+          : evaluator;
+      for (int from = 0; from < numVertices; from += 997) {
+        for (boolean isForward : new boolean[] { true, false }) {
+          TreeSet<Integer> expected = getResult(evaluator, evaluator.reachable(from, isForward));
+          assertEquals(expected, getResult(parallelEvaluator, parallelEvaluator.reachable(from, isForward)));
+          assertEquals(expected, getResult(indexedEvaluator, indexedEvaluator.reachable(from, isForward)));
+        }
+        for (int to = 0; to < numVertices; to += 89) {
+          assertEquals(evaluator.reaches(from, to), indexedEvaluator.reaches(from, to));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testIndexCache() throws Exception {
+    ReachabilityIndexCache cache = new ReachabilityIndexCache(graph);
+    PathAutomaton first = PathAutomaton.create(new QueryBuilder().path("a", "p", "b", knowsPattern("x", "e", "y"), 0,
+        -1));
+    assertNull(cache.get(first));
+    // the same pattern with other variable names and a lower bound of one hop shares the index
+    PathAutomaton second = PathAutomaton.create(new QueryBuilder().path("c", "q", "d", knowsPattern("u", "f", "v"), 1,
+        -1));
+    ReachabilityIndex index = cache.get(second);
+    assertNotNull(index);
+    assertSame(index, cache.get(first));
+
+    // upper bounds cannot be evaluated with the index
+    assertNull(cache.get(first.withHops(0, 3)));
+    // the filters of other patterns differ
+    QueryBuilder likes = new QueryBuilder();
+    likes.edge("x", "e", "y");
+    likes.where(new HasLabel(likes.ref("e"), new ConstString("likes")));
+    PathAutomaton other = PathAutomaton.create(new QueryBuilder().path("a", "p", "b", likes, 0, -1));
+    assertNull(cache.get(other));
+    assertNotSame(index, cache.get(other));
+    // the filters of a pattern with bind variables differ between executions
+    QueryBuilder parameterized = new QueryBuilder();
+    parameterized.edge("x", "e", "y");
+    parameterized.where(new HasLabel(parameterized.ref("e"), new BindVariable(0)));
+    PathAutomaton withBindVariable = PathAutomaton.create(new QueryBuilder().path("a", "p", "b", parameterized, 0,
+        -1));
+    assertNull(cache.get(withBindVariable));
+    assertNull(cache.get(withBindVariable));
+  }
+
+  private static QueryBuilder knowsPattern(String src, String edge, String dst) {
+    QueryBuilder pattern = new QueryBuilder();
+    pattern.edge(src, edge, dst);
+    pattern.where(new HasLabel(pattern.ref(edge), new ConstString("knows")));
+    return pattern;
+  }
+
+  private static TreeSet<Integer> getResult(ReachabilityEvaluator evaluator, int numResults) {
+    TreeSet<Integer> result = new TreeSet<>();
+    for (int i = 0; i < numResults; i++) {
+      result.add(evaluator.getResult()[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Computes the vertices that are reachable from each vertex from the sets of vertices that are reachable with
+   * exactly L hops, where one hop is computed by enumerating all matches of the path pattern and evaluating all its
+   * constraints on each match
+   */
+  private static List<TreeSet<Integer>> getReachable(PathAutomaton automaton, ExpressionInterpreter interpreter) {
+    List<TreeSet<Integer>> oneHop = new ArrayList<>();
+    for (int from = 0; from < NUM_VERTICES; from++) {
+      oneHop.add(new TreeSet<>());
+      Map<QueryVariable, Integer> binding = new IdentityHashMap<>();
+      matchHop(automaton, interpreter, 0, from, binding, oneHop.get(from));
+    }
+
+    // a vertex that is reachable with at least min hops is reachable with at most min + NUM_VERTICES hops
+    long maxHops = automaton.maxHops == -1 ? automaton.minHops + NUM_VERTICES : automaton.maxHops;
+    List<TreeSet<Integer>> result = new ArrayList<>();
+    for (int from = 0; from < NUM_VERTICES; from++) {
+      TreeSet<Integer> reachable = new TreeSet<>();
+      TreeSet<Integer> level = new TreeSet<>();
+      level.add(from);
+      for (long hops = 0; hops <= maxHops; hops++) {
+        if (hops >= automaton.minHops) {
+          reachable.addAll(level);
+        }
+        TreeSet<Integer> nextLevel = new TreeSet<>();
+        for (int vertex : level) {
+          nextLevel.addAll(oneHop.get(vertex));
+        }
+        level = nextLevel;
+      }
+      result.add(reachable);
+    }
+    return result;
+  }
+
+  private static void matchHop(PathAutomaton automaton, ExpressionInterpreter interpreter, int index, int vertex,
+      Map<QueryVariable, Integer> binding, TreeSet<Integer> result) {
+    QueryVertex current = getChainVertex(automaton, index);
+    binding.put(current, vertex);
+    if (index == automaton.numTransitions) {
+      EvaluationContext ctx = new MapContext(binding);
+      for (QueryExpression constraint : automaton.path.getConstraints()) {
+        if (!Boolean.TRUE.equals(interpreter.evaluate(constraint, ctx))) {
+          return;
+        }
+      }
+      result.add(vertex);
+      return;
+    }
+
+    VertexPairConnection connection = automaton.path.getConnections().get(index);
+    boolean directed = ((QueryEdge) connection).isDirected();
+    for (int edge = 0; edge < graph.getNumEdges(); edge++) {
+      int src = graph.getEdgeSource(edge);
+      int dst = graph.getEdgeDestination(edge);
+      binding.put(connection, edge);
+      boolean forward = connection.getSrc() == current || !directed;
+      boolean backward = connection.getDst() == current || !directed;
+      if (forward && src == vertex) {
+        matchHop(automaton, interpreter, index + 1, dst, binding, result);
+      }
+      if (backward && dst == vertex && (!forward || src != dst)) {
+        matchHop(automaton, interpreter, index + 1, src, binding, result);
+      }
+    }
+  }
+
+  private static QueryVertex getChainVertex(PathAutomaton automaton, int index) {
+    for (Map.Entry<QueryVariable, Integer> entry : automaton.slots.entrySet()) {
+      if (entry.getValue() == index) {
+        return (QueryVertex) entry.getKey();
+      }
+    }
+    throw new IllegalArgumentException();
+  }
+
+  private static final class MapContext implements EvaluationContext {
+
+    private final Map<QueryVariable, Integer> binding;
+
+    MapContext(Map<QueryVariable, Integer> binding) {
+      this.binding = binding;
+    }
+
+    @Override
+    public int getElementId(QueryVariable variable) {
+      Integer id = binding.get(variable);
+      return id == null ? -1 : id;
+    }
+
+    @Override
+    public Object getValue(QueryVariable variable) {
+      int id = getElementId(variable);
+      return variable instanceof QueryVertex ? new Vertex(graph, id) : new Edge(graph, id);
+    }
+
+    @Override
+    public Object getAggregate(Aggregation aggregation) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Add;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Div;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Mod;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Mul;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.Sub;
+import oracle.pgql.lang.ir.QueryExpression.ArithmeticExpression.UMin;
+import oracle.pgql.lang.ir.QueryExpression.BindVariable;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstBoolean;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstDecimal;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstInteger;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstString;
+import oracle.pgql.lang.ir.QueryExpression.Function.HasLabel;
+import oracle.pgql.lang.ir.QueryExpression.Function.Regex;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.And;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.Not;
+import oracle.pgql.lang.ir.QueryExpression.LogicalExpression.Or;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Equal;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Greater;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.GreaterEqual;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.Less;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.LessEqual;
+import oracle.pgql.lang.ir.QueryExpression.RelationalExpression.NotEqual;
+import oracle.pgql.lang.ir.QueryVariable;
+
+public class VectorizedFilterTests {
+
+  private static final int NUM_VERTICES = 2500;
+
+  private static PropertyGraph graph;
+
+  /**
+   * More vertices than fit in a batch, with properties of each type that are missing for some vertices. Vertex 0 has
+   * an edge to every vertex, so that expanding from it fills several batches as well.
+   */
+  @BeforeClass
+  public static void setUp() {
+    PropertyGraphBuilder builder = new PropertyGraphBuilder();
+    for (int i = 0; i < NUM_VERTICES; i++) {
+      int vertex = builder.addVertex(i % 3 == 0 ? "Person" : "Company");
+      if (i % 5 != 0) {
+        builder.setVertexProperty(vertex, "age", (long) (i % 90));
+      }
+      if (i % 7 != 0) {
+        builder.setVertexProperty(vertex, "score", (i % 13) * 0.5);
+      }
+      if (i % 11 != 0) {
+        builder.setVertexProperty(vertex, "flag", i % 4 == 0);
+      }
+      builder.setVertexProperty(vertex, "name", "" + (char) ('A' + i % 26) + i);
+    }
+    for (int i = 0; i < NUM_VERTICES; i++) {
+      builder.setEdgeProperty(builder.addEdge(0, i, "knows"), "weight", (long) (i % 10));
+      builder.addEdge(i, (i * 7 + 3) % NUM_VERTICES, null);
+    }
+    graph = builder.build();
+  }
+
+  @Test
+  public void testSameResultsAsInterpreter() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.edge("a", "e", "b");
+    // the filters are not constant, since constant filters are evaluated before matching
+    List<QueryExpression> filters = Arrays.asList( //
+        new Greater(q.prop("a", "age"), new ConstInteger(40)), //
+        new LessEqual(new Add(q.prop("a", "age"), new ConstInteger(1)), q.prop("b", "age")), //
+        new Equal(new Mod(q.prop("b", "age"), new ConstInteger(3)), new ConstInteger(0)), //
+        new Greater(new Div(new ConstInteger(100), q.prop("b", "age")), new ConstInteger(5)), //
+        new Less(new Div(q.prop("b", "score"), q.prop("a", "score")), new ConstDecimal(1.5)), //
+        new GreaterEqual(new Sub(q.prop("b", "age"), q.prop("b", "score")), new ConstInteger(30)), //
+        new Greater(new Mul(q.prop("b", "age"), q.prop("e", "weight")), new ConstInteger(200)), //
+        new Less(new UMin(q.prop("b", "score")), new ConstDecimal(-3.0)), //
+        new Equal(new Mod(q.prop("b", "score"), new ConstDecimal(2.0)), new ConstDecimal(0.5)), //
+        new Equal(q.prop("b", "age"), new ConstDecimal(42.0)), //
+        new NotEqual(new Add(q.prop("b", "age"), new BindVariable(1)), new ConstInteger(1)), //
+        new Greater(new Add(q.prop("b", "age"), q.prop("b", "name")), new ConstInteger(1)), //
+        new Less(q.prop("b", "name"), new ConstString("M")), //
+        new Equal(q.prop("b", "flag"), new ConstBoolean(true)), //
+        q.prop("b", "flag"), //
+        q.prop("b", "age"), //
+        new And(q.prop("b", "flag"), new Greater(q.prop("b", "age"), new ConstInteger(20))), //
+        new Or(q.prop("b", "flag"), new Less(q.prop("b", "score"), new ConstDecimal(2.0))), //
+        new Not(new Or(q.prop("b", "flag"), new Less(q.prop("b", "age"), new ConstInteger(10)))), //
+        new And(q.prop("b", "name"), new ConstBoolean(true)), //
+        new Or(new ConstBoolean(false), q.prop("b", "flag")), //
+        new Greater(q.prop("b", "age"), new BindVariable(0)), //
+        new Equal(q.prop("b", "missing"), new ConstInteger(1)), //
+        new Regex(q.prop("b", "name"), new ConstString("[AEIOU].*")), //
+        new And(new HasLabel(q.ref("b"), new ConstString("Person")), new Less(q.prop("b", "age"), new ConstInteger(30))),
+        new NotEqual(q.ref("a"), q.ref("b")));
+
+    QueryVariable[] variables = { q.ref("a").getVariable(), q.ref("e").getVariable(), q.ref("b").getVariable() };
+    ExpressionInterpreter interpreter = new ExpressionInterpreter(graph, new Object[] { 50L, null });
+    Matcher unfiltered = new Matcher(graph, QueryPlanner.plan(q.build(), graph.getStatistics()), interpreter);
+    for (QueryExpression filter : filters) {
+      List<List<Integer>> expected = new ArrayList<>();
+      unfiltered.match(binding -> {
+        if (Boolean.TRUE.equals(interpreter.evaluate(filter, unfiltered.getContext()))) {
+          expected.add(getIds(unfiltered, variables));
+        }
+        return true;
+      });
+
+      GraphQuery query = q.build();
+      query.getGraphPattern().getConstraints().add(filter);
+      QueryPlan plan = QueryPlanner.plan(query, graph.getStatistics());
+      query.getGraphPattern().getConstraints().clear();
+      Matcher matcher = new Matcher(graph, plan, interpreter);
+      List<List<Integer>> actual = new ArrayList<>();
+      matcher.match(binding -> {
+        actual.add(getIds(matcher, variables));
+        return true;
+      });
+
+      expected.sort(VectorizedFilterTests::compare);
+      actual.sort(VectorizedFilterTests::compare);
+      assertEquals(filter.toString(), expected, actual);
+    }
+  }
+
+  @Test
+  public void testStopWithinBatch() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.vertex("n");
+    q.where(new Greater(q.prop("n", "age"), new ConstInteger(10)));
+    Matcher matcher = new Matcher(graph, QueryPlanner.plan(q.build(), graph.getStatistics()),
+        new ExpressionInterpreter(graph, new Object[0]));
+    QueryVariable n = q.ref("n").getVariable();
+    List<Integer> vertices = new ArrayList<>();
+    matcher.match(binding -> {
+      vertices.add(matcher.getContext().getElementId(n));
+      return vertices.size() < 3;
+    });
+    assertEquals(Arrays.asList(11, 12, 13), vertices);
+  }
+
+  @Test
+  public void testScanOrderIsPreserved() throws Exception {
+    QueryBuilder q = new QueryBuilder();
+    q.vertex("n");
+    q.where(new Equal(q.prop("n", "age"), new ConstInteger(7)));
+    Matcher matcher = new Matcher(graph, QueryPlanner.plan(q.build(), graph.getStatistics()),
+        new ExpressionInterpreter(graph, new Object[0]));
+    QueryVariable n = q.ref("n").getVariable();
+    List<Integer> vertices = new ArrayList<>();
+    matcher.match(binding -> {
+      vertices.add(matcher.getContext().getElementId(n));
+      return true;
+    });
+    assertTrue(vertices.size() > 1);
+    for (int i = 0; i < vertices.size(); i++) {
+      assertEquals(7 + 90 * i, (int) vertices.get(i));
+    }
+  }
+
+  private static List<Integer> getIds(Matcher matcher, QueryVariable[] variables) {
+    List<Integer> ids = new ArrayList<>();
+    for (QueryVariable variable : variables) {
+      ids.add(matcher.getContext().getElementId(variable));
+    }
+    return ids;
+  }
+
+  private static int compare(List<Integer> ids1, List<Integer> ids2) {
+    for (int i = 0; i < ids1.size(); i++) {
+      int comparison = Integer.compare(ids1.get(i), ids2.get(i));
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return 0;
+  }
+}
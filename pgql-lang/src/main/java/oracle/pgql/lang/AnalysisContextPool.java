@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.vfs2.FileObject;
+import org.metaborg.core.context.ContextException;
+import org.metaborg.core.context.ITemporaryContext;
+import org.metaborg.core.language.ILanguageImpl;
+import org.metaborg.core.project.IProject;
+import org.metaborg.spoofax.core.Spoofax;
+
+/**
+ * A pool of Spoofax analysis contexts such that multiple threads can analyze queries at the same time without
+ * contending for the same context, and without paying for the creation of a new context for every query.
+ *
+ * Contexts are created lazily, up to the capacity of the pool. All contexts analyze the same dummy file, so analyzing
+ * a new query replaces the previous one instead of accumulating state in the context.
+ */
+class AnalysisContextPool {
+
+  private final Spoofax spoofax;
+
+  private final FileObject dummyFile;
+
+  private final IProject dummyProject;
+
+  private final ILanguageImpl pgqlLang;
+
+  private final int capacity;
+
+  private final Semaphore permits;
+
+  private final Queue<ITemporaryContext> idleContexts = new ConcurrentLinkedQueue<>();
+
+  private volatile boolean closed;
+
+  AnalysisContextPool(Spoofax spoofax, FileObject dummyFile, IProject dummyProject, ILanguageImpl pgqlLang,
+      int capacity) {
+    this.spoofax = spoofax;
+    this.dummyFile = dummyFile;
+    this.dummyProject = dummyProject;
+    this.pgqlLang = pgqlLang;
+    this.capacity = capacity;
+    this.permits = new Semaphore(capacity);
+  }
+
+  /**
+   * @return the maximum number of contexts in the pool
+   */
+  int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Takes an idle context from the pool, or creates a new one if the pool is not yet at its capacity. Otherwise, blocks
+   * until another thread releases its context.
+   */
+  ITemporaryContext acquire() throws PgqlException {
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PgqlException("Interrupted while waiting for an analysis context", e);
+    }
+
+    ITemporaryContext context = idleContexts.poll();
+    if (context != null) {
+      return context;
+    }
+    try {
+      return spoofax.contextService.getTemporary(dummyFile, dummyProject, pgqlLang);
+    } catch (ContextException | RuntimeException e) {
+      permits.release();
+      throw new PgqlException("Failed to create analysis context", e);
+    }
+  }
+
+  /**
+   * Returns a context to the pool. Contexts that are returned after the pool was closed are closed.
+   *
+   * @param reusable
+   *          false if the context may be in an inconsistent state (e.g. because the analysis failed), in which case the
+   *          context is discarded
+   */
+  void release(ITemporaryContext context, boolean reusable) {
+    if (reusable && !closed) {
+      idleContexts.add(context);
+      if (closed) {
+        // the pool was closed concurrently and may have missed this context
+        closeIdleContexts();
+      }
+    } else {
+      context.close();
+    }
+    permits.release();
+  }
+
+  /**
+   * Closes all idle contexts, and any context that is in use once it is returned.
+   */
+  void close() {
+    closed = true;
+    closeIdleContexts();
+  }
+
+  private void closeIdleContexts() {
+    ITemporaryContext context;
+    while ((context = idleContexts.poll()) != null) {
+      context.close();
+    }
+  }
+}
@@ -3,145 +3,357 @@
  */
 package oracle.pgql.lang;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Random;
-import java.util.Set;
-import java.util.UUID;
-
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.vfs2.FileObject;
-import org.apache.commons.vfs2.VFS;
-import org.apache.commons.vfs2.impl.DefaultFileReplicator;
-import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
-import org.metaborg.core.MetaborgException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.metaborg.core.analysis.AnalysisException;
-import org.metaborg.core.config.IProjectConfig;
-import org.metaborg.core.context.ContextException;
-import org.metaborg.core.context.ITemporaryContext;
-import org.metaborg.core.language.ILanguageComponent;
-import org.metaborg.core.language.ILanguageDiscoveryRequest;
-import org.metaborg.core.language.ILanguageImpl;
-import org.metaborg.core.language.LanguageIdentifier;
-import org.metaborg.core.language.LanguageUtils;
 import org.metaborg.core.messages.IMessage;
-import org.metaborg.core.project.IProject;
-import org.metaborg.core.project.Project;
 import org.metaborg.core.source.AffectedSourceHelper;
 import org.metaborg.core.syntax.ParseException;
-import org.metaborg.spoofax.core.Spoofax;
 import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnit;
-import org.metaborg.spoofax.core.unit.ISpoofaxInputUnit;
 import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
-import org.metaborg.util.concurrent.IClosableLock;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import oracle.pgql.lang.PgqlPhaseMetrics.Phase;
 import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.parser.RecursiveDescentParser;
 
-public class Pgql {
+/**
+ * Parser for PGQL queries.
+ *
+ * Pgql instances are thread-safe: multiple threads can parse queries at the same time. Analysis happens in a pool of
+ * Spoofax contexts that has one context per available processor, such that throughput scales with the number of
+ * threads.
+ *
+ * Loading the PGQL language is expensive, both in time and in memory. Applications that need many Pgql instances (e.g.
+ * one per tenant) should use {@link #createShared()}, which returns lightweight handles on a single shared runtime.
+ *
+ * Queries on hot paths can be parsed with the {@link PgqlFrontEnd#RECURSIVE_DESCENT} front-end, which builds the
+ * GraphQuery without going through Spoofax (see {@link #setFrontEnd(PgqlFrontEnd)}).
+ */
+public class Pgql implements AutoCloseable {
 
-  private static final Logger LOG = LoggerFactory.getLogger(Pgql.class);
   private static final String NON_BREAKING_WHITE_SPACE_ERROR = "Illegal character '\u00a0' (non-breaking white space)"
       + "; use a normal space instead";
-  private static final String SPOOFAX_BINARIES = "pgql-1.0.spoofax-language";
 
-  private final Spoofax spoofax;
-  private final ILanguageImpl pgqlLang;
-  private final FileObject dummyProjectDir;
-  private final IProject dummyProject;
+  private final PgqlRuntime runtime;
+
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  private volatile PgqlParseCache parseCache;
+
+  private volatile PgqlFrontEnd frontEnd = PgqlFrontEnd.SPOOFAX;
+
+  private volatile boolean phaseMetricsEnabled;
+
+  private volatile PgqlMetricsListener metricsListener;
+
+  private volatile Executor asyncExecutor = ForkJoinPool.commonPool();
+
+  private volatile int maxInFlightParses = Integer.MAX_VALUE;
+
+  private final AtomicInteger inFlightParses = new AtomicInteger();
 
   /**
-   * Loads PGQL Spoofax binaries if not done already.
+   * Loads PGQL Spoofax binaries into a new runtime that is private to this instance.
    */
   public Pgql() throws PgqlException {
-    // create our own temp dir for storing Spoofax resources such that we can clean up without requiring a Pgql.close()
-    // a temp dir should always be random such that there are no conflicts when multiple users use PGQL on the same
-    // system
-    String baseTmpDir = System.getProperty("java.io.tmpdir");
-    File tempDir = new File(baseTmpDir, "vfs_cache" + new Random().nextLong()).getAbsoluteFile();
-    try {
-      DefaultFileReplicator replicator = new DefaultFileReplicator(tempDir);
-      ((DefaultFileSystemManager) VFS.getManager()).setReplicator(replicator);
-
-      // first copy the resource to the local file system.
-      // IMPORTANT: don't replace this with VFS.getManager().resolveFile("res:...") because VFS will fail to replicate
-      // the resource when it's nested inside multiple JAR or WAR files.
-      URL inputUrl = getClass().getResource("/" + SPOOFAX_BINARIES);
-      File dest = new File(tempDir, SPOOFAX_BINARIES);
-      FileUtils.copyURLToFile(inputUrl, dest);
-      FileObject fileObject = VFS.getManager().resolveFile("jar:" + dest.getAbsolutePath() + "!");
-
-      // set up Spoofax
-      spoofax = new Spoofax(new PgqlConfig());
-      Iterable<ILanguageDiscoveryRequest> requests = spoofax.languageDiscoveryService.request(fileObject);
-      Iterable<ILanguageComponent> components = spoofax.languageDiscoveryService.discover(requests);
-      Set<ILanguageImpl> implementations = LanguageUtils.toImpls(components);
-      pgqlLang = LanguageUtils.active(implementations);
-      assert (pgqlLang != null);
-      dummyProjectDir = VFS.getManager().resolveFile("ram://pgql/");
-
-      final LanguageIdentifier id = pgqlLang.id();
-      dummyProject = new Project(dummyProjectDir, new IProjectConfig() {
+    this(new PgqlRuntime());
+  }
 
-        @Override
-        public Collection<LanguageIdentifier> sourceDeps() {
-          Set<LanguageIdentifier> sourceDeps = new HashSet<>();
-          sourceDeps.add(id);
-          return sourceDeps;
-        }
+  private Pgql(PgqlRuntime runtime) {
+    this.runtime = runtime;
+  }
 
-        @Override
-        public Collection<LanguageIdentifier> javaDeps() {
-          return new HashSet<>();
-        }
+  /**
+   * Creates a lightweight handle on the process-wide shared PGQL runtime. The runtime (i.e. the loaded parse table,
+   * Stratego interpreter and NaBL definitions) is created by the first call and shared by all handles until the last
+   * handle is closed. Handles do not share their parse cache.
+   */
+  public static Pgql createShared() throws PgqlException {
+    return new Pgql(PgqlRuntime.acquireShared());
+  }
 
-        @Override
-        public Collection<LanguageIdentifier> compileDeps() {
-          return new HashSet<>();
-        }
+  /**
+   * Releases this instance's reference to the PGQL runtime. Closing an instance more than once has no effect.
+   */
+  @Override
+  public void close() {
+    if (closed.compareAndSet(false, true)) {
+      runtime.release();
+    }
+  }
 
-        @Override
-        public String metaborgVersion() {
-          return null;
-        }
+  PgqlRuntime getRuntime() {
+    return runtime;
+  }
+
+  /**
+   * Installs a cache for parse results, or removes the current cache if null is passed. A cache may be shared by
+   * multiple Pgql instances.
+   */
+  public void setParseCache(PgqlParseCache parseCache) {
+    this.parseCache = parseCache;
+  }
+
+  /**
+   * @return the installed parse cache, or null if parse results are not cached
+   */
+  public PgqlParseCache getParseCache() {
+    return parseCache;
+  }
+
+  /**
+   * Selects the front-end for subsequent calls to {@link #parse(String)}. The default is {@link PgqlFrontEnd#SPOOFAX}.
+   */
+  public void setFrontEnd(PgqlFrontEnd frontEnd) {
+    if (frontEnd == null) {
+      throw new IllegalArgumentException("frontEnd is null");
+    }
+    this.frontEnd = frontEnd;
+  }
+
+  public PgqlFrontEnd getFrontEnd() {
+    return frontEnd;
+  }
+
+  /**
+   * Enables or disables the collection of {@link PgqlPhaseMetrics}, which are then available through
+   * {@link PgqlResult#getPhaseMetrics()}. Metrics are also collected while a metrics listener is installed.
+   */
+  public void setPhaseMetricsEnabled(boolean phaseMetricsEnabled) {
+    this.phaseMetricsEnabled = phaseMetricsEnabled;
+  }
+
+  public boolean isPhaseMetricsEnabled() {
+    return phaseMetricsEnabled;
+  }
+
+  /**
+   * Installs a listener that is notified of the phase metrics of each parsed query, or removes the current listener if
+   * null is passed.
+   */
+  public void setMetricsListener(PgqlMetricsListener metricsListener) {
+    this.metricsListener = metricsListener;
+  }
+
+  public PgqlMetricsListener getMetricsListener() {
+    return metricsListener;
+  }
+
+  /**
+   * Sets the executor for {@link #parseAsync(String)}. The default is the common fork-join pool.
+   */
+  public void setAsyncExecutor(Executor asyncExecutor) {
+    if (asyncExecutor == null) {
+      throw new IllegalArgumentException("asyncExecutor is null");
+    }
+    this.asyncExecutor = asyncExecutor;
+  }
+
+  public Executor getAsyncExecutor() {
+    return asyncExecutor;
+  }
+
+  /**
+   * Limits the number of asynchronous parses that are queued or running at the same time. When the limit is reached,
+   * {@link #parseAsync(String)} returns a future that has failed with a RejectedExecutionException. Unbounded by
+   * default.
+   */
+  public void setMaxInFlightParses(int maxInFlightParses) {
+    if (maxInFlightParses < 1) {
+      throw new IllegalArgumentException("maxInFlightParses should be positive: " + maxInFlightParses);
+    }
+    this.maxInFlightParses = maxInFlightParses;
+  }
+
+  public int getMaxInFlightParses() {
+    return maxInFlightParses;
+  }
+
+  /**
+   * @return the number of asynchronous parses that are queued or running
+   */
+  public int getInFlightParses() {
+    return inFlightParses.get();
+  }
+
+  /**
+   * Parses a query on the executor that is set with {@link #setAsyncExecutor(Executor)}.
+   */
+  public CompletableFuture<PgqlResult> parseAsync(String queryString) {
+    return parseAsync(queryString, asyncExecutor);
+  }
+
+  /**
+   * Parses a query on the given executor. The returned future fails with a PgqlException if parsing fails and with a
+   * RejectedExecutionException if the limit on in-flight parses is reached or if the executor rejects the task.
+   *
+   * Cancelling the future before the parse started prevents it from starting. A parse that has already started is not
+   * interrupted, but its result is discarded.
+   */
+  public CompletableFuture<PgqlResult> parseAsync(final String queryString, Executor executor) {
+    final CompletableFuture<PgqlResult> future = new CompletableFuture<>();
+    int max = maxInFlightParses;
+    if (inFlightParses.incrementAndGet() > max) {
+      inFlightParses.decrementAndGet();
+      future.completeExceptionally(
+          new RejectedExecutionException("Too many PGQL queries are being parsed at the same time (maximum: " + max
+              + ")"));
+      return future;
+    }
+
+    try {
+      executor.execute(new Runnable() {
 
         @Override
-        public boolean typesmart() {
-          return false;
+        public void run() {
+          try {
+            if (!future.isDone()) { // not cancelled
+              future.complete(parse(queryString));
+            }
+          } catch (Throwable t) {
+            future.completeExceptionally(t);
+          } finally {
+            inFlightParses.decrementAndGet();
+          }
         }
       });
+    } catch (RejectedExecutionException e) {
+      inFlightParses.decrementAndGet();
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * Parses a batch of queries in parallel, using the calling thread and helper tasks on the executor that is set with
+   * {@link #setAsyncExecutor(Executor)}. Identical query strings are parsed only once.
+   *
+   * @return the results in the order of the input; identical query strings share the same result
+   */
+  public List<PgqlResult> parseAll(Collection<String> queryStrings) throws PgqlException {
+    final List<String> distinctQueryStrings = new ArrayList<>(new LinkedHashSet<>(queryStrings));
+    final PgqlResult[] distinctResults = new PgqlResult[distinctQueryStrings.size()];
+    final AtomicInteger nextIndex = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(distinctResults.length);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    Runnable worker = new Runnable() {
+
+      @Override
+      public void run() {
+        int i;
+        while ((i = nextIndex.getAndIncrement()) < distinctResults.length) {
+          try {
+            if (failure.get() == null) {
+              distinctResults[i] = parse(distinctQueryStrings.get(i));
+            }
+          } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+          } finally {
+            done.countDown();
+          }
+        }
+      }
+    };
 
-      parse("select * where (initQuery)"); // make Spoofax initialize the language
-    } catch (MetaborgException | IOException e) {
-      throw new PgqlException("Failed to initialize PGQL", e);
-    } finally {
+    // helpers that start late find no work left, so the calling thread never waits for the executor to be available
+    int numHelpers = Math.min(runtime.getAnalysisParallelism(), distinctResults.length) - 1;
+    for (int i = 0; i < numHelpers; i++) {
       try {
-        FileUtils.deleteDirectory(tempDir);
-      } catch (IOException e) {
-        LOG.warn("failed to delete temporary directory: " + tempDir.getAbsolutePath());
+        asyncExecutor.execute(worker);
+      } catch (RejectedExecutionException e) {
+        break;
       }
     }
+    worker.run();
+
+    try {
+      done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      nextIndex.set(distinctResults.length); // stop the helpers
+      throw new PgqlException("Interrupted while parsing queries", e);
+    }
+
+    Throwable t = failure.get();
+    if (t instanceof PgqlException) {
+      throw (PgqlException) t;
+    } else if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
+    }
+
+    Map<String, PgqlResult> resultsByQueryString = new HashMap<>();
+    for (int i = 0; i < distinctResults.length; i++) {
+      resultsByQueryString.put(distinctQueryStrings.get(i), distinctResults[i]);
+    }
+    List<PgqlResult> results = new ArrayList<>(queryStrings.size());
+    for (String queryString : queryStrings) {
+      results.add(resultsByQueryString.get(queryString));
+    }
+    return results;
   }
 
   public PgqlResult parse(String queryString) throws PgqlException {
-    ITemporaryContext context = null;
-    FileObject dummyFile = null;
-    try {
-      String randomFileName = UUID.randomUUID().toString() + ".pgql";
-      dummyFile = VFS.getManager().resolveFile(dummyProjectDir, randomFileName);
-      try (OutputStream out = dummyFile.getContent().getOutputStream()) {
-        IOUtils.write(queryString.getBytes("UTF-8"), out);
+    if (closed.get()) {
+      throw new PgqlException("Pgql instance has been closed");
+    }
+
+    PgqlParseCache cache = parseCache;
+    if (cache == null) {
+      return parseInternal(queryString);
+    }
+
+    PgqlResult result = cache.get(queryString);
+    if (result == null) {
+      result = parseInternal(queryString);
+      cache.put(queryString, result);
+    }
+    return result;
+  }
+
+  private PgqlResult parseInternal(String queryString) throws PgqlException {
+    PgqlMetricsListener listener = metricsListener;
+    PgqlPhaseMetrics.Recorder recorder = phaseMetricsEnabled || listener != null ? new PgqlPhaseMetrics.Recorder()
+        : null;
+    PgqlResult result = parseInternal(queryString, recorder);
+    if (listener != null) {
+      listener.queryParsed(result);
+    }
+    return result;
+  }
+
+  private PgqlResult parseInternal(String queryString, PgqlPhaseMetrics.Recorder recorder) throws PgqlException {
+    if (frontEnd == PgqlFrontEnd.RECURSIVE_DESCENT) {
+      begin(recorder);
+      GraphQuery queryGraph = RecursiveDescentParser.parse(queryString);
+      if (queryGraph != null) {
+        end(recorder, Phase.PARSE);
+        return createResult(queryString, true, null, queryGraph, recorder);
       }
+      end(recorder, Phase.REJECTED_PARSE);
+      // unsupported or invalid query; Spoofax produces the GraphQuery or the error messages
+    }
 
-      ISpoofaxInputUnit input = spoofax.unitService.inputUnit(dummyFile, queryString, pgqlLang, null);
-      ISpoofaxParseUnit parseResult = spoofax.syntaxService.parse(input);
+    try {
+      begin(recorder);
+      ISpoofaxParseUnit parseResult = runtime.parseSyntax(queryString);
+      end(recorder, Phase.PARSE);
 
       String prettyMessages = null;
       boolean queryValid = parseResult.success();
@@ -149,40 +361,50 @@ public class Pgql {
       if (!queryValid) {
         prettyMessages = getMessages(parseResult.messages(), queryString);
       } else {
-        context = spoofax.contextService.getTemporary(dummyFile, dummyProject, pgqlLang);
-        ISpoofaxAnalyzeUnit analysisResult = null;
-        try (IClosableLock lock = context.write()) {
-          analysisResult = spoofax.analysisService.analyze(parseResult, context).result();
+        if (recorder != null) {
+          recorder.setAst(parseResult.ast());
         }
 
+        begin(recorder);
+        ISpoofaxAnalyzeUnit analysisResult = runtime.analyze(parseResult);
+        end(recorder, Phase.ANALYSIS);
+
         queryValid = analysisResult.success();
         if (queryValid) {
+          begin(recorder);
           queryGraph = SpoofaxAstToGraphQuery.translate(analysisResult.ast());
+          end(recorder, Phase.TRANSLATION);
         } else {
           prettyMessages = getMessages(analysisResult.messages(), queryString);
         }
       }
 
-      return new PgqlResult(queryString, queryValid, prettyMessages, queryGraph);
-    } catch (IOException | ParseException | AnalysisException | ContextException e) {
+      return createResult(queryString, queryValid, prettyMessages, queryGraph, recorder);
+    } catch (ParseException | AnalysisException e) {
       throw new PgqlException("Failed to parse PGQL query", e);
-    } finally {
-      if (context != null) {
-        context.close();
-      }
-      quietlyDelete(dummyFile);
     }
   }
 
-  private static void quietlyDelete(FileObject fo) {
-    try {
-      if (fo != null && fo.exists()) {
-        if (fo.delete() == false) {
-          LOG.warn("failed to delete temporary query file: " + fo.getURL().toString());
-        }
-      }
-    } catch (IOException e) {
-      LOG.warn("got error while trying to delete temporary query file", e);
+  private static PgqlResult createResult(String queryString, boolean queryValid, String prettyMessages,
+      GraphQuery queryGraph, PgqlPhaseMetrics.Recorder recorder) {
+    if (recorder == null) {
+      return new PgqlResult(queryString, queryValid, prettyMessages, queryGraph);
+    }
+    if (queryGraph != null) {
+      recorder.setGraphQuery(queryGraph);
+    }
+    return new PgqlResult(queryString, queryValid, prettyMessages, queryGraph, recorder.build());
+  }
+
+  private static void begin(PgqlPhaseMetrics.Recorder recorder) {
+    if (recorder != null) {
+      recorder.begin();
+    }
+  }
+
+  private static void end(PgqlPhaseMetrics.Recorder recorder, Phase phase) {
+    if (recorder != null) {
+      recorder.end(phase);
     }
   }
 
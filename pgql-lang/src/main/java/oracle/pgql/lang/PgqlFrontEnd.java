@@ -0,0 +1,23 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import oracle.pgql.lang.parser.RecursiveDescentParser;
+
+/**
+ * The front-end that {@link Pgql} uses to turn query strings into GraphQuery objects.
+ */
+public enum PgqlFrontEnd {
+
+  /**
+   * Parses with SGLR and analyzes with Stratego and NaBL.
+   */
+  SPOOFAX,
+
+  /**
+   * Parses with the {@link RecursiveDescentParser} and falls back to {@link #SPOOFAX} for queries that it does not
+   * support and for invalid queries, such that error messages are the same for both front-ends.
+   */
+  RECURSIVE_DESCENT
+}
@@ -0,0 +1,19 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+/**
+ * Receives the phase metrics of every query that is parsed by a {@link Pgql} instance, e.g. to export them to a
+ * monitoring system. Results that are served from a parse cache are not reported.
+ *
+ * Listeners are invoked on the parsing thread, so they should be fast and thread-safe.
+ */
+public interface PgqlMetricsListener {
+
+  /**
+   * @param result
+   *          the parse result, of which {@link PgqlResult#getPhaseMetrics()} is not null
+   */
+  void queryParsed(PgqlResult result);
+}
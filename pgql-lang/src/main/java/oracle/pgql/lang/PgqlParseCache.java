@@ -0,0 +1,272 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, thread-safe LRU cache for parse results that can be installed on a {@link Pgql} instance (see
+ * {@link Pgql#setParseCache(PgqlParseCache)}).
+ *
+ * Entries are keyed by the normalized query text (i.e. the query without leading and trailing white space). Valid
+ * queries are shared by all query strings that normalize to the same key. Invalid queries are cached too (negative
+ * caching), but since their error messages refer to line numbers and source text, they are only returned for the exact
+ * same query string.
+ *
+ * Lookups do not block each other: a hit only updates the recency of its entry if no other thread is updating the
+ * cache at the same time, so the eviction order is approximately least recently used under contention. Expired entries
+ * are removed when they are looked up or when they become the least recently used entry.
+ *
+ * Note: cached results (and their GraphQuery objects) are shared and should not be modified.
+ */
+public class PgqlParseCache {
+
+  private final int maxEntries;
+
+  private final long maxWeight;
+
+  private final long expireAfterNanos;
+
+  private final ConcurrentHashMap<String, CacheEntry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * The same entries in access order, least recently used first; guarded by the lock
+   */
+  private final LinkedHashMap<String, CacheEntry> accessOrder = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * Guarded by the lock
+   */
+  private long weight;
+
+  private final LongAdder hitCount = new LongAdder();
+
+  private final LongAdder missCount = new LongAdder();
+
+  private final LongAdder evictionCount = new LongAdder();
+
+  /**
+   * @param maxEntries
+   *          the maximum number of cached parse results
+   */
+  public PgqlParseCache(int maxEntries) {
+    this(maxEntries, Long.MAX_VALUE, 0, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @param maxEntries
+   *          the maximum number of cached parse results
+   * @param maxWeight
+   *          the maximum total weight of the cache, where the weight of a parse result is the number of characters in
+   *          its query string and error messages
+   * @param expireAfter
+   *          the time after which an entry expires; 0 if entries should never expire
+   * @param unit
+   *          the unit of expireAfter
+   */
+  public PgqlParseCache(int maxEntries, long maxWeight, long expireAfter, TimeUnit unit) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("maxEntries should be greater than zero");
+    }
+    if (maxWeight <= 0) {
+      throw new IllegalArgumentException("maxWeight should be greater than zero");
+    }
+    if (expireAfter < 0) {
+      throw new IllegalArgumentException("expireAfter should not be negative");
+    }
+    this.maxEntries = maxEntries;
+    this.maxWeight = maxWeight;
+    this.expireAfterNanos = unit.toNanos(expireAfter);
+  }
+
+  /**
+   * @return the cached result for the query string, or null if there is none
+   */
+  PgqlResult get(String queryString) {
+    String key = normalize(queryString);
+    CacheEntry entry = entries.get(key);
+    if (entry == null) {
+      missCount.increment();
+      return null;
+    }
+    if (isExpired(entry, System.nanoTime())) {
+      lock.lock();
+      try {
+        if (remove(key, entry)) {
+          evictionCount.increment();
+        }
+      } finally {
+        lock.unlock();
+      }
+      missCount.increment();
+      return null;
+    }
+    recordAccess(key);
+
+    PgqlResult result = entry.result;
+    if (result.getQueryString().equals(queryString)) {
+      hitCount.increment();
+      return result;
+    } else if (result.isQueryValid()) {
+      hitCount.increment();
+      return new PgqlResult(queryString, true, null, result.getGraphQuery());
+    } else {
+      // error messages depend on the exact query string
+      missCount.increment();
+      return null;
+    }
+  }
+
+  /**
+   * Moves the entry to the most recently used end, unless another thread holds the lock
+   */
+  private void recordAccess(String key) {
+    if (lock.tryLock()) {
+      try {
+        accessOrder.get(key);
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  void put(String queryString, PgqlResult result) {
+    String key = normalize(queryString);
+    CacheEntry entry = new CacheEntry(result, System.nanoTime());
+    lock.lock();
+    try {
+      CacheEntry oldEntry = entries.put(key, entry);
+      accessOrder.put(key, entry);
+      if (oldEntry != null) {
+        weight -= oldEntry.weight;
+      }
+      weight += entry.weight;
+      evict(entry.creationTime);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes least recently used entries while the cache is full or while they have expired
+   */
+  private void evict(long now) {
+    Iterator<Map.Entry<String, CacheEntry>> it = accessOrder.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, CacheEntry> eldest = it.next();
+      CacheEntry entry = eldest.getValue();
+      if (accessOrder.size() <= maxEntries && weight <= maxWeight && !isExpired(entry, now)) {
+        break;
+      }
+      it.remove();
+      entries.remove(eldest.getKey(), entry);
+      weight -= entry.weight;
+      evictionCount.increment();
+    }
+  }
+
+  private boolean isExpired(CacheEntry entry, long now) {
+    return expireAfterNanos != 0 && now - entry.creationTime >= expireAfterNanos;
+  }
+
+  /**
+   * Must be called while holding the lock
+   *
+   * @return whether the entry was still cached
+   */
+  private boolean remove(String key, CacheEntry entry) {
+    if (!entries.remove(key, entry)) {
+      return false;
+    }
+    accessOrder.remove(key);
+    weight -= entry.weight;
+    return true;
+  }
+
+  /**
+   * Removes all entries from the cache. The statistics are not reset.
+   */
+  public void clear() {
+    lock.lock();
+    try {
+      entries.clear();
+      accessOrder.clear();
+      weight = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of cached parse results
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return the total weight of the cached parse results
+   */
+  public long getWeight() {
+    lock.lock();
+    try {
+      return weight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of times a cached parse result was returned
+   */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * @return the number of times no cached parse result was found
+   */
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * @return the number of parse results that were evicted because the cache was full or because they expired
+   */
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  /**
+   * Leading and trailing white space does not influence the GraphQuery, but any other white space may (e.g. the name
+   * of "SELECT n.age + 1" is "n.age + 1").
+   */
+  private static String normalize(String queryString) {
+    return queryString.trim();
+  }
+
+  private static class CacheEntry {
+
+    final PgqlResult result;
+
+    final long creationTime;
+
+    final long weight;
+
+    CacheEntry(PgqlResult result, long creationTime) {
+      this.result = result;
+      this.creationTime = creationTime;
+      String errorMessages = result.getErrorMessages();
+      this.weight = result.getQueryString().length() + (errorMessages == null ? 0 : errorMessages.length());
+    }
+  }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.spoofax.interpreter.terms.IStrategoTerm;
+
+import oracle.pgql.lang.ir.ExpAsVar;
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.OrderByElem;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.BinaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.CallStatement;
+import oracle.pgql.lang.ir.QueryExpression.Function.AllDifferent;
+import oracle.pgql.lang.ir.QueryExpression.Function.Cast;
+import oracle.pgql.lang.ir.QueryExpression.TernaryExpression;
+import oracle.pgql.lang.ir.QueryExpression.UnaryExpression;
+import oracle.pgql.lang.ir.QueryPath;
+import oracle.pgql.lang.ir.VertexPairConnection;
+
+/**
+ * Breakdown of the time and memory that was spent in each phase of parsing a query.
+ *
+ * Allocated bytes are measured for the parsing thread and are only available on JVMs that support thread allocation
+ * accounting (e.g. HotSpot); otherwise they are -1. Phases that did not run (e.g. analysis after a syntax error) have a
+ * time and allocation of zero.
+ */
+public final class PgqlPhaseMetrics {
+
+  public enum Phase {
+
+    /**
+     * A parse with the {@link PgqlFrontEnd#RECURSIVE_DESCENT} front-end that did not produce a GraphQuery, after which
+     * the query is parsed and analyzed with Spoofax in the other phases
+     */
+    REJECTED_PARSE,
+
+    /**
+     * Parsing of the query string into an AST, or into a GraphQuery by the {@link PgqlFrontEnd#RECURSIVE_DESCENT}
+     * front-end
+     */
+    PARSE,
+
+    /**
+     * Normalization, name resolution and type checking of the AST
+     */
+    ANALYSIS,
+
+    /**
+     * Translation of the analyzed AST into a GraphQuery
+     */
+    TRANSLATION
+  }
+
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+  private final long[] nanos;
+
+  private final long[] allocatedBytes;
+
+  private final int astNodeCount;
+
+  private final int irNodeCount;
+
+  private PgqlPhaseMetrics(long[] nanos, long[] allocatedBytes, int astNodeCount, int irNodeCount) {
+    this.nanos = nanos;
+    this.allocatedBytes = allocatedBytes;
+    this.astNodeCount = astNodeCount;
+    this.irNodeCount = irNodeCount;
+  }
+
+  public long getNanos(Phase phase) {
+    return nanos[phase.ordinal()];
+  }
+
+  public long getTotalNanos() {
+    long total = 0;
+    for (long n : nanos) {
+      total += n;
+    }
+    return total;
+  }
+
+  /**
+   * @return the number of bytes that were allocated during the phase, or -1 if allocations cannot be measured
+   */
+  public long getAllocatedBytes(Phase phase) {
+    return allocatedBytes[phase.ordinal()];
+  }
+
+  /**
+   * @return the number of terms in the Spoofax AST, or -1 if the query was not parsed into a Spoofax AST
+   */
+  public int getAstNodeCount() {
+    return astNodeCount;
+  }
+
+  /**
+   * @return the number of variables, connections and expressions in the GraphQuery, or -1 if there is no GraphQuery
+   */
+  public int getIrNodeCount() {
+    return irNodeCount;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Phase phase : Phase.values()) {
+      sb.append(phase + ": " + getNanos(phase) + " ns, " + getAllocatedBytes(phase) + " bytes; ");
+    }
+    sb.append("AST nodes: " + astNodeCount + "; IR nodes: " + irNodeCount);
+    return sb.toString();
+  }
+
+  /**
+   * Measures the phases of a single parse on the current thread. Not thread-safe.
+   */
+  static final class Recorder {
+
+    private final long[] nanos = new long[Phase.values().length];
+
+    private final long[] allocatedBytes = new long[Phase.values().length];
+
+    private final boolean measureAllocations;
+
+    private long startNanos;
+
+    private long startBytes;
+
+    private int astNodeCount = -1;
+
+    private int irNodeCount = -1;
+
+    Recorder() {
+      measureAllocations = getAllocatedBytes() != -1;
+      if (!measureAllocations) {
+        Arrays.fill(allocatedBytes, -1);
+      }
+    }
+
+    void begin() {
+      startBytes = measureAllocations ? getAllocatedBytes() : 0;
+      startNanos = System.nanoTime();
+    }
+
+    void end(Phase phase) {
+      nanos[phase.ordinal()] += System.nanoTime() - startNanos;
+      if (measureAllocations) {
+        allocatedBytes[phase.ordinal()] += getAllocatedBytes() - startBytes;
+      }
+    }
+
+    void setAst(IStrategoTerm ast) {
+      astNodeCount = countTerms(ast);
+    }
+
+    void setGraphQuery(GraphQuery graphQuery) {
+      irNodeCount = countNodes(graphQuery);
+    }
+
+    PgqlPhaseMetrics build() {
+      return new PgqlPhaseMetrics(nanos, allocatedBytes, astNodeCount, irNodeCount);
+    }
+
+    private static long getAllocatedBytes() {
+      if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+        if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+          return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+      }
+      return -1;
+    }
+  }
+
+  private static int countTerms(IStrategoTerm t) {
+    int count = 1;
+    for (int i = 0; i < t.getSubtermCount(); i++) {
+      count += countTerms(t.getSubterm(i));
+    }
+    return count;
+  }
+
+  private static int countNodes(GraphQuery graphQuery) {
+    int count = graphQuery.getGraphPattern().getVertices().size();
+    for (VertexPairConnection connection : graphQuery.getGraphPattern().getConnections()) {
+      count++;
+      if (connection instanceof QueryPath) {
+        QueryPath path = (QueryPath) connection;
+        count += path.getVertices().size() + path.getConnections().size() + countNodes(path.getConstraints());
+      }
+    }
+    count += countNodes(graphQuery.getGraphPattern().getConstraints());
+    for (ExpAsVar expAsVar : graphQuery.getProjection().getElements()) {
+      count += 1 + countNodes(expAsVar.getExp());
+    }
+    for (ExpAsVar expAsVar : graphQuery.getGroupBy().getElements()) {
+      count += 1 + countNodes(expAsVar.getExp());
+    }
+    for (OrderByElem orderByElem : graphQuery.getOrderBy().getElements()) {
+      count += 1 + countNodes(orderByElem.getExp());
+    }
+    count += countNodes(graphQuery.getLimit()) + countNodes(graphQuery.getOffset());
+    return count;
+  }
+
+  private static int countNodes(Collection<QueryExpression> exps) {
+    int count = 0;
+    for (QueryExpression exp : exps) {
+      count += countNodes(exp);
+    }
+    return count;
+  }
+
+  private static int countNodes(QueryExpression exp) {
+    if (exp == null) {
+      return 0;
+    } else if (exp instanceof UnaryExpression) {
+      return 1 + countNodes(((UnaryExpression) exp).getExp());
+    } else if (exp instanceof BinaryExpression) {
+      BinaryExpression binaryExp = (BinaryExpression) exp;
+      return 1 + countNodes(binaryExp.getExp1()) + countNodes(binaryExp.getExp2());
+    } else if (exp instanceof TernaryExpression) {
+      TernaryExpression ternaryExp = (TernaryExpression) exp;
+      return 1 + countNodes(ternaryExp.getExp1()) + countNodes(ternaryExp.getExp2())
+          + countNodes(ternaryExp.getExp3());
+    } else if (exp instanceof Cast) {
+      return 1 + countNodes(((Cast) exp).getExp());
+    } else if (exp instanceof AllDifferent) {
+      return 1 + countNodes(((AllDifferent) exp).getExps());
+    } else if (exp instanceof CallStatement) {
+      return 1 + countNodes(((CallStatement) exp).getExps());
+    }
+    return 1;
+  }
+}
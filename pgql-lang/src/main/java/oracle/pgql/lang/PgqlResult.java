@@ -11,12 +11,19 @@ public class PgqlResult {
   private final String errorMessages;
   private final boolean queryValid;
   private final GraphQuery graphQuery;
+  private final PgqlPhaseMetrics phaseMetrics;
 
   public PgqlResult(String queryString, boolean queryValid, String messages, GraphQuery graphQuery) {
+    this(queryString, queryValid, messages, graphQuery, null);
+  }
+
+  public PgqlResult(String queryString, boolean queryValid, String messages, GraphQuery graphQuery,
+      PgqlPhaseMetrics phaseMetrics) {
     this.queryString = queryString;
     this.errorMessages = messages;
     this.queryValid = queryValid;
     this.graphQuery = graphQuery;
+    this.phaseMetrics = phaseMetrics;
   }
 
   /**
@@ -46,4 +53,12 @@ public class PgqlResult {
   public GraphQuery getGraphQuery() {
     return graphQuery;
   }
+
+  /**
+   * @return the time and memory spent per phase if metrics were collected (see
+   *         {@link Pgql#setPhaseMetricsEnabled(boolean)}); null otherwise
+   */
+  public PgqlPhaseMetrics getPhaseMetrics() {
+    return phaseMetrics;
+  }
 }
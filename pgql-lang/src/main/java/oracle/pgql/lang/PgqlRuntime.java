@@ -0,0 +1,232 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.VFS;
+import org.apache.commons.vfs2.impl.DefaultFileReplicator;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.metaborg.core.MetaborgException;
+import org.metaborg.core.analysis.AnalysisException;
+import org.metaborg.core.config.IProjectConfig;
+import org.metaborg.core.context.ITemporaryContext;
+import org.metaborg.core.language.ILanguageComponent;
+import org.metaborg.core.language.ILanguageDiscoveryRequest;
+import org.metaborg.core.language.ILanguageImpl;
+import org.metaborg.core.language.LanguageIdentifier;
+import org.metaborg.core.language.LanguageUtils;
+import org.metaborg.core.project.IProject;
+import org.metaborg.core.project.Project;
+import org.metaborg.core.syntax.ParseException;
+import org.metaborg.spoofax.core.Spoofax;
+import org.metaborg.spoofax.core.unit.ISpoofaxAnalyzeUnit;
+import org.metaborg.spoofax.core.unit.ISpoofaxInputUnit;
+import org.metaborg.spoofax.core.unit.ISpoofaxParseUnit;
+import org.metaborg.util.concurrent.IClosableLock;
+
+/**
+ * The Spoofax runtime of the PGQL language: the Guice injector, the loaded language (parse table, Stratego interpreter
+ * and NaBL definitions) and a pool of analysis contexts. A runtime is immutable after construction and can be shared
+ * by any number of {@link Pgql} handles.
+ *
+ * Runtimes are reference counted: each handle retains the runtime once and releases it when it is closed. When the
+ * last reference is released, the analysis contexts are closed and the shared runtime is dropped such that it can be
+ * garbage collected; a subsequent {@link #acquireShared()} creates a new runtime.
+ */
+class PgqlRuntime {
+
+  private static final String SPOOFAX_BINARIES = "pgql-1.0.spoofax-language";
+  private static final String DUMMY_FILE_NAME = "query.pgql";
+  private static final String INIT_QUERY = "select * where (initQuery)";
+
+  private static PgqlRuntime sharedRuntime;
+
+  /**
+   * The directory into which VFS replicates files, created once per process
+   */
+  private static File replicatorDir;
+
+  private final Spoofax spoofax;
+  private final ILanguageImpl pgqlLang;
+  private final FileObject dummyProjectDir;
+  private final IProject dummyProject;
+  private final FileObject dummyFile;
+  private final AnalysisContextPool contextPool;
+
+  private int refCount = 1;
+
+  /**
+   * Loads PGQL Spoofax binaries. The new runtime has a reference count of one.
+   */
+  PgqlRuntime() throws PgqlException {
+    try {
+      File tempDir = installReplicator();
+
+      // first locate the resource on the local file system; it is only copied if it's nested inside a JAR or WAR file,
+      // and then only once into a cache directory that is shared by subsequent Pgql instances and JVMs.
+      // IMPORTANT: don't replace this with VFS.getManager().resolveFile("res:...") because VFS will fail to replicate
+      // the resource when it's nested inside multiple JAR or WAR files.
+      File archive = SpoofaxLanguageArchive.locate(SPOOFAX_BINARIES, tempDir);
+      FileObject fileObject = VFS.getManager().resolveFile("jar:" + archive.getAbsolutePath() + "!");
+
+      // set up Spoofax
+      spoofax = new Spoofax(new PgqlConfig());
+      Iterable<ILanguageDiscoveryRequest> requests = spoofax.languageDiscoveryService.request(fileObject);
+      Iterable<ILanguageComponent> components = spoofax.languageDiscoveryService.discover(requests);
+      Set<ILanguageImpl> implementations = LanguageUtils.toImpls(components);
+      pgqlLang = LanguageUtils.active(implementations);
+      assert (pgqlLang != null);
+      dummyProjectDir = VFS.getManager().resolveFile("ram://pgql/");
+
+      final LanguageIdentifier id = pgqlLang.id();
+      dummyProject = new Project(dummyProjectDir, new IProjectConfig() {
+
+        @Override
+        public Collection<LanguageIdentifier> sourceDeps() {
+          Set<LanguageIdentifier> sourceDeps = new HashSet<>();
+          sourceDeps.add(id);
+          return sourceDeps;
+        }
+
+        @Override
+        public Collection<LanguageIdentifier> javaDeps() {
+          return new HashSet<>();
+        }
+
+        @Override
+        public Collection<LanguageIdentifier> compileDeps() {
+          return new HashSet<>();
+        }
+
+        @Override
+        public String metaborgVersion() {
+          return null;
+        }
+
+        @Override
+        public boolean typesmart() {
+          return false;
+        }
+      });
+
+      dummyFile = VFS.getManager().resolveFile(dummyProjectDir, DUMMY_FILE_NAME);
+      contextPool = new AnalysisContextPool(spoofax, dummyFile, dummyProject, pgqlLang,
+          Runtime.getRuntime().availableProcessors());
+
+      // make Spoofax initialize the language
+      ISpoofaxParseUnit parseResult = parseSyntax(INIT_QUERY);
+      analyze(parseResult);
+    } catch (MetaborgException | IOException e) {
+      throw new PgqlException("Failed to initialize PGQL", e);
+    }
+  }
+
+  /**
+   * Makes VFS replicate files into our own temp dir, such that we can clean up without requiring a Pgql.close(). The
+   * replicator is global to VFS, so it is installed only once per process and its directory is deleted when the JVM
+   * exits. The directory is new and private to the current user, so it also serves as the directory into which the
+   * Spoofax binaries are extracted when the shared cache cannot be used.
+   *
+   * @return the directory of the replicator
+   */
+  private static synchronized File installReplicator() throws IOException {
+    if (replicatorDir == null) {
+      File tempDir = Files.createTempDirectory("vfs_cache").toFile().getAbsoluteFile();
+      ((DefaultFileSystemManager) VFS.getManager()).setReplicator(new DefaultFileReplicator(tempDir));
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> FileUtils.deleteQuietly(tempDir)));
+      replicatorDir = tempDir;
+    }
+    return replicatorDir;
+  }
+
+  /**
+   * Retains the process-wide shared runtime, creating it if there is none.
+   */
+  static synchronized PgqlRuntime acquireShared() throws PgqlException {
+    if (sharedRuntime == null) {
+      sharedRuntime = new PgqlRuntime();
+    } else {
+      sharedRuntime.retain();
+    }
+    return sharedRuntime;
+  }
+
+  synchronized void retain() {
+    if (refCount == 0) {
+      throw new IllegalStateException("PGQL runtime has already been released");
+    }
+    refCount++;
+  }
+
+  /**
+   * Releases one reference to the runtime. The analysis contexts are closed when the last reference is released.
+   */
+  void release() {
+    synchronized (PgqlRuntime.class) {
+      synchronized (this) {
+        if (refCount == 0) {
+          throw new IllegalStateException("PGQL runtime has already been released");
+        }
+        refCount--;
+        if (refCount != 0) {
+          return;
+        }
+        if (sharedRuntime == this) {
+          sharedRuntime = null;
+        }
+      }
+    }
+    contextPool.close();
+  }
+
+  /**
+   * @return the number of handles that retain this runtime
+   */
+  synchronized int getRefCount() {
+    return refCount;
+  }
+
+  /**
+   * @return the number of queries that can be analyzed at the same time
+   */
+  int getAnalysisParallelism() {
+    return contextPool.getCapacity();
+  }
+
+  /**
+   * Parses a query string into a Spoofax AST, without analyzing it.
+   */
+  ISpoofaxParseUnit parseSyntax(String queryString) throws ParseException {
+    // the query string is passed directly; the dummy file only identifies the source and is never materialized
+    ISpoofaxInputUnit input = spoofax.unitService.inputUnit(dummyFile, queryString, pgqlLang, null);
+    return spoofax.syntaxService.parse(input);
+  }
+
+  /**
+   * Analyzes (i.e. normalizes, name-resolves and type-checks) a successfully parsed query in one of the pooled
+   * contexts.
+   */
+  ISpoofaxAnalyzeUnit analyze(ISpoofaxParseUnit parseResult) throws PgqlException, AnalysisException {
+    ITemporaryContext context = contextPool.acquire();
+    boolean reusable = false;
+    try {
+      ISpoofaxAnalyzeUnit analysisResult;
+      try (IClosableLock lock = context.write()) {
+        analysisResult = spoofax.analysisService.analyze(parseResult, context).result();
+      }
+      reusable = true;
+      return analysisResult;
+    } finally {
+      contextPool.release(context, reusable);
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.attribute.UserPrincipalNotFoundException;
+import java.util.Set;
+import java.util.jar.JarEntry;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Locates the PGQL Spoofax binaries on the local file system.
+ *
+ * If the binaries are a plain file on the class path (e.g. when running from an IDE), that file is used directly.
+ * Otherwise (e.g. when the binaries are nested inside a JAR or WAR file), they are extracted once into a cache
+ * directory that is named after metadata that identifies their content, such that subsequent JVMs can reuse the
+ * extracted binaries without reading them: the CRC and size of the JAR entry, or the URL, size and modification time
+ * of other resources. The cache directory defaults to a per-user directory in java.io.tmpdir but can be set through the
+ * {@value #CACHE_DIR_PROPERTY} system property, for example to point to a directory that was populated when building a
+ * container image.
+ *
+ * Since the binaries contain code that is executed and cached binaries are not read again, the cache directory is only
+ * used if no other user can have written to it: it should be owned by the current user or by root and it should not be
+ * writable by group or others. A default cache directory is created with owner-only permissions. Otherwise, the
+ * binaries are extracted into the fallback directory of the caller.
+ */
+class SpoofaxLanguageArchive {
+
+  static final String CACHE_DIR_PROPERTY = "oracle.pgql.lang.cacheDir";
+
+  private static final String DEFAULT_CACHE_DIR = "pgql_spoofax_cache";
+
+  private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+  /**
+   * @param resourceName
+   *          the name of the binaries on the class path
+   * @param fallbackDir
+   *          private directory to extract the binaries into if the cache directory is not writable or not trusted
+   * @return the binaries on the local file system
+   */
+  static File locate(String resourceName, File fallbackDir) throws IOException {
+    URL url = SpoofaxLanguageArchive.class.getResource("/" + resourceName);
+    if (url == null) {
+      throw new IOException(resourceName + " not found on the class path");
+    }
+    return locate(url, resourceName, fallbackDir);
+  }
+
+  static File locate(URL url, String resourceName, File fallbackDir) throws IOException {
+    if (url.getProtocol().equals("file")) {
+      try {
+        return new File(url.toURI());
+      } catch (URISyntaxException | IllegalArgumentException e) {
+        // not a hierarchical file URL; extract the binaries instead
+      }
+    }
+
+    String cacheRootProperty = System.getProperty(CACHE_DIR_PROPERTY);
+    File cacheRoot = cacheRootProperty == null ? getDefaultCacheRoot() : new File(cacheRootProperty);
+    if (cacheRootProperty == null) {
+      createPrivateDirectory(cacheRoot.toPath());
+    }
+    if (isTrusted(cacheRoot.toPath())) {
+      File cacheDir = new File(cacheRoot, "pgql-" + getCacheKey(url));
+      File archive = new File(cacheDir, resourceName);
+      if (archive.isFile()) {
+        return archive;
+      }
+
+      try {
+        extract(url, archive);
+        return archive;
+      } catch (IOException e) {
+        // e.g. the cache directory is read-only
+      }
+    }
+
+    File dest = new File(fallbackDir, resourceName);
+    FileUtils.copyURLToFile(url, dest);
+    return dest;
+  }
+
+  private static File getDefaultCacheRoot() {
+    String userName = System.getProperty("user.name").replaceAll("[^A-Za-z0-9._-]", "_");
+    return new File(System.getProperty("java.io.tmpdir"), DEFAULT_CACHE_DIR + "_" + userName);
+  }
+
+  private static void createPrivateDirectory(Path dir) {
+    try {
+      if (Files.getFileStore(dir.getParent()).supportsFileAttributeView(PosixFileAttributeView.class)) {
+        Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+      } else {
+        Files.createDirectories(dir);
+      }
+    } catch (IOException e) {
+      // e.g. another user created a file with the same name; isTrusted(dir) fails
+    }
+  }
+
+  /**
+   * @return whether the directory is not a symbolic link, is owned by the current user or by root, and is not writable
+   *         by group or others, such that no other user can have put files in it
+   */
+  private static boolean isTrusted(Path dir) {
+    try {
+      if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+        return false;
+      }
+      UserPrincipal owner = Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS);
+      if (!owner.equals(lookupUser(System.getProperty("user.name"))) && !owner.equals(lookupUser("root"))) {
+        return false;
+      }
+      PosixFileAttributeView view = Files.getFileAttributeView(dir, PosixFileAttributeView.class,
+          LinkOption.NOFOLLOW_LINKS);
+      if (view != null) {
+        Set<PosixFilePermission> permissions = view.readAttributes().permissions();
+        return !permissions.contains(PosixFilePermission.GROUP_WRITE)
+            && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+      }
+      return true;
+    } catch (IOException | UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @return the user with the given name, or null if there is no such user
+   */
+  private static UserPrincipal lookupUser(String name) throws IOException {
+    UserPrincipalLookupService lookupService = FileSystems.getDefault().getUserPrincipalLookupService();
+    try {
+      return lookupService.lookupPrincipalByName(name);
+    } catch (UserPrincipalNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Extracts the binaries into a temporary file first and then moves it into place, such that concurrent JVMs never
+   * observe a partially written archive.
+   */
+  private static void extract(URL url, File archive) throws IOException {
+    File dir = archive.getParentFile();
+    FileUtils.forceMkdir(dir);
+    File tempFile = File.createTempFile(archive.getName(), ".tmp", dir);
+    try {
+      FileUtils.copyURLToFile(url, tempFile);
+      try {
+        Files.move(tempFile.toPath(), archive.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      } catch (FileAlreadyExistsException e) {
+        // another JVM extracted the same binaries in the meantime
+      }
+    } finally {
+      Files.deleteIfExists(tempFile.toPath());
+    }
+  }
+
+  /**
+   * @return a key that changes when the content of the binaries changes, computed without reading the binaries
+   */
+  private static String getCacheKey(URL url) throws IOException {
+    URLConnection connection = url.openConnection();
+    if (connection instanceof JarURLConnection) {
+      // the CRC and size are read from the central directory of the JAR file
+      JarEntry entry = ((JarURLConnection) connection).getJarEntry();
+      if (entry != null && entry.getCrc() != -1 && entry.getSize() != -1) {
+        return Long.toHexString(entry.getCrc()) + "-" + entry.getSize();
+      }
+    }
+    return Integer.toHexString(url.toExternalForm().hashCode()) + "-" + connection.getContentLengthLong() + "-"
+        + connection.getLastModified();
+  }
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Syntax tree produced by the {@link RecursiveDescentParser}. The tree is already in the normal form that the Spoofax
+ * front-end produces in normalize.str, except for the normalization of the solution modifiers (SELECT, GROUP BY and
+ * ORDER BY), which happens in {@link AstToGraphQuery}.
+ */
+final class Ast {
+
+  private Ast() {
+  }
+
+  enum ExpKind {
+    VAR_REF,
+    PROP_REF,
+    INTEGER,
+    DECIMAL,
+    STRING,
+    TRUE,
+    FALSE,
+    NULL,
+    BIND_VARIABLE,
+    NOT,
+    UMIN,
+    AND,
+    OR,
+    MUL,
+    ADD,
+    DIV,
+    MOD,
+    SUB,
+    EQ,
+    NEQ,
+    GT,
+    LT,
+    GTE,
+    LTE,
+    REGEX,
+    LABEL,
+    LABELS,
+    HAS_LABEL,
+    ID,
+    HAS,
+    IN_DEGREE,
+    OUT_DEGREE,
+    ALL_DIFFERENT,
+    ST_X,
+    ST_Y,
+    ST_POINT_FROM_TEXT,
+    COUNT,
+    MIN,
+    MAX,
+    SUM,
+    AVG,
+    STAR;
+
+    boolean isAggregate() {
+      return this == COUNT || this == MIN || this == MAX || this == SUM || this == AVG;
+    }
+  }
+
+  private static final Exp[] NO_ARGS = new Exp[0];
+
+  /**
+   * An expression. Two expressions are equal if they are structurally equal, regardless of their position in the query
+   * string, which corresponds to term equality in Stratego.
+   */
+  static final class Exp {
+
+    final ExpKind kind;
+
+    /**
+     * The variable name (VAR_REF, PROP_REF), the unescaped literal text (INTEGER, DECIMAL, STRING) or the parameter
+     * index (BIND_VARIABLE)
+     */
+    final String value;
+
+    /**
+     * The property name (PROP_REF)
+     */
+    final String propName;
+
+    final Exp[] args;
+
+    /**
+     * Start and end offset in the query string, or -1 for generated expressions
+     */
+    final int start;
+
+    final int end;
+
+    /**
+     * True if the expression is the result of a normalization that loses origin information in Spoofax
+     */
+    final boolean rewritten;
+
+    Exp(ExpKind kind, String value, String propName, Exp[] args, int start, int end, boolean rewritten) {
+      this.kind = kind;
+      this.value = value;
+      this.propName = propName;
+      this.args = args;
+      this.start = start;
+      this.end = end;
+      this.rewritten = rewritten;
+    }
+
+    static Exp leaf(ExpKind kind, String value, int start, int end) {
+      return new Exp(kind, value, null, NO_ARGS, start, end, false);
+    }
+
+    static Exp node(ExpKind kind, int start, int end, Exp... args) {
+      return new Exp(kind, null, null, args, start, end, false);
+    }
+
+    static Exp varRef(String name) {
+      return new Exp(ExpKind.VAR_REF, name, null, NO_ARGS, -1, -1, true);
+    }
+
+    boolean containsAggregate() {
+      if (kind.isAggregate()) {
+        return true;
+      }
+      for (Exp arg : args) {
+        if (arg.containsAggregate()) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    boolean contains(ExpKind kind) {
+      if (this.kind == kind) {
+        return true;
+      }
+      for (Exp arg : args) {
+        if (arg.contains(kind)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      Exp other = (Exp) obj;
+      return kind == other.kind && equal(value, other.value) && equal(propName, other.propName)
+          && Arrays.equals(args, other.args);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = kind.hashCode();
+      result = 31 * result + (value == null ? 0 : value.hashCode());
+      result = 31 * result + (propName == null ? 0 : propName.hashCode());
+      result = 31 * result + Arrays.hashCode(args);
+      return result;
+    }
+
+    private static boolean equal(String s1, String s2) {
+      return s1 == null ? s2 == null : s1.equals(s2);
+    }
+  }
+
+  /**
+   * A vertex or edge variable. Anonymous variables have a generated name.
+   */
+  static final class Variable {
+
+    final String name;
+
+    final boolean anonymous;
+
+    Variable(String name, boolean anonymous) {
+      this.name = name;
+      this.anonymous = anonymous;
+    }
+  }
+
+  /**
+   * An edge, or a path that is a repetition of edges with a particular label
+   */
+  static final class Connection {
+
+    final Variable src;
+
+    final Variable dst;
+
+    final Variable var;
+
+    final boolean directed;
+
+    /**
+     * Null for edges
+     */
+    final String pathLabel;
+
+    final long minHops;
+
+    final long maxHops;
+
+    Connection(Variable src, Variable dst, Variable var, boolean directed, String pathLabel, long minHops,
+        long maxHops) {
+      this.src = src;
+      this.dst = dst;
+      this.var = var;
+      this.directed = directed;
+      this.pathLabel = pathLabel;
+      this.minHops = minHops;
+      this.maxHops = maxHops;
+    }
+
+    boolean isPath() {
+      return pathLabel != null;
+    }
+  }
+
+  static final class ExpAsVar {
+
+    final Exp exp;
+
+    /**
+     * Null if there is no AS
+     */
+    final String name;
+
+    /**
+     * The name that Spoofax generates if there is no AS, or null if the name cannot be determined reliably (i.e. when
+     * the expression is rewritten during normalization, which loses its origin text)
+     */
+    final String generatedName;
+
+    ExpAsVar(Exp exp, String name, String generatedName) {
+      this.exp = exp;
+      this.name = name;
+      this.generatedName = generatedName;
+    }
+  }
+
+  static final class OrderByElem {
+
+    final Exp exp;
+
+    final boolean ascending;
+
+    OrderByElem(Exp exp, boolean ascending) {
+      this.exp = exp;
+      this.ascending = ascending;
+    }
+  }
+
+  static final class Query {
+
+    final String queryString;
+
+    /**
+     * Null for SELECT *
+     */
+    List<ExpAsVar> selectElems;
+
+    String inputGraphName;
+
+    /**
+     * All vertices in order of appearance, including duplicates
+     */
+    final List<Variable> vertices = new ArrayList<>();
+
+    final List<Connection> connections = new ArrayList<>();
+
+    final List<Exp> constraints = new ArrayList<>();
+
+    /**
+     * Null if there is no GROUP BY
+     */
+    List<ExpAsVar> groupByElems;
+
+    final List<OrderByElem> orderByElems = new ArrayList<>();
+
+    Exp limit;
+
+    Exp offset;
+
+    Query(String queryString) {
+      this.queryString = queryString;
+    }
+  }
+}
@@ -0,0 +1,416 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang.parser;
+
+import static oracle.pgql.lang.parser.RecursiveDescentParser.GENERATED_VAR_SUBSTR;
+import static oracle.pgql.lang.parser.RecursiveDescentParser.unsupported;
+import static org.apache.commons.lang3.StringEscapeUtils.unescapeJava;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import oracle.pgql.lang.ir.ExpAsVar;
+import oracle.pgql.lang.ir.GraphPattern;
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.GroupBy;
+import oracle.pgql.lang.ir.OrderBy;
+import oracle.pgql.lang.ir.OrderByElem;
+import oracle.pgql.lang.ir.Projection;
+import oracle.pgql.lang.ir.QueryEdge;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstString;
+import oracle.pgql.lang.ir.QueryExpression.Function.HasLabel;
+import oracle.pgql.lang.ir.QueryExpression.VarRef;
+import oracle.pgql.lang.ir.QueryPath;
+import oracle.pgql.lang.ir.QueryVariable;
+import oracle.pgql.lang.ir.QueryVertex;
+import oracle.pgql.lang.ir.SpatialFunction;
+import oracle.pgql.lang.ir.VertexPairConnection;
+import oracle.pgql.lang.parser.Ast.Connection;
+import oracle.pgql.lang.parser.Ast.Exp;
+import oracle.pgql.lang.parser.Ast.ExpKind;
+import oracle.pgql.lang.parser.Ast.Query;
+import oracle.pgql.lang.parser.Ast.Variable;
+
+/**
+ * Translates the syntax tree of the {@link RecursiveDescentParser} into a GraphQuery. This does the normalization of
+ * the solution modifiers that is done by norm-query in normalize.str, the scoping that is done by trans-for-nabl.str
+ * and names.nab, and then follows SpoofaxAstToGraphQuery.
+ *
+ * Any query for which the Spoofax front-end would report an error is rejected with an UnsupportedQueryException.
+ */
+final class AstToGraphQuery {
+
+  private AstToGraphQuery() {
+  }
+
+  static GraphQuery translate(Query query) throws UnsupportedQueryException {
+
+    // vertices
+    Map<String, QueryVariable> vars = new HashMap<>(); // map from variable name to variable
+    Set<QueryVertex> vertices = new HashSet<>();
+    for (Variable v : query.vertices) {
+      if (vars.containsKey(v.name)) {
+        continue; // vertex that occurs multiple times in the pattern; connections need to share the same instance
+      }
+      QueryVertex vertex = v.anonymous ? new QueryVertex(toUniqueName(v.name), true) : new QueryVertex(v.name, false);
+      vertices.add(vertex);
+      vars.put(v.name, vertex);
+    }
+
+    // edges and paths
+    Set<VertexPairConnection> connections = new HashSet<>();
+    for (Connection c : query.connections) {
+      QueryVertex src = (QueryVertex) vars.get(c.src.name);
+      QueryVertex dst = (QueryVertex) vars.get(c.dst.name);
+      String name = c.var.anonymous ? toUniqueName(c.var.name) : c.var.name;
+      if (c.isPath()) {
+        connections.add(getPath(src, dst, name, c));
+      } else {
+        if (vars.containsKey(c.var.name)) {
+          throw unsupported(); // duplicate edge variable, or edge variable with the same name as a vertex
+        }
+        QueryEdge edge = new QueryEdge(src, dst, name, c.var.anonymous, c.directed);
+        connections.add(edge);
+        vars.put(c.var.name, edge);
+      }
+    }
+
+    // constraints
+    Set<QueryExpression> constraints = new HashSet<>();
+    for (Exp constraint : query.constraints) {
+      if (constraint.containsAggregate()) {
+        throw unsupported();
+      }
+      constraints.add(translateExp(constraint, vars, Collections.<String, QueryVariable> emptyMap()));
+    }
+
+    GraphPattern graphPattern = new GraphPattern(vertices, connections, constraints);
+
+    // GROUP BY
+    boolean hasGroupBy = query.groupByElems != null;
+    boolean selectHasAggregate = false;
+    if (query.selectElems != null) {
+      for (Ast.ExpAsVar selectElem : query.selectElems) {
+        selectHasAggregate |= selectElem.exp.containsAggregate();
+      }
+    }
+    boolean changeScope = hasGroupBy || selectHasAggregate;
+
+    Map<String, QueryVariable> groupKeys = new HashMap<>(); // map from variable name to variable
+    List<ExpAsVar> groupByElems = new ArrayList<>();
+    List<Ast.ExpAsVar> normalizedGroupByElems = new ArrayList<>();
+    if (hasGroupBy) {
+      for (Ast.ExpAsVar groupByElem : query.groupByElems) {
+        if (groupByElem.exp.containsAggregate()) {
+          throw unsupported();
+        }
+        String name = getName(groupByElem);
+        if (groupKeys.containsKey(name) || (groupByElem.name != null && vars.containsKey(name))) {
+          throw unsupported(); // duplicate group key, or group key that redefines a variable from the WHERE clause
+        }
+        QueryExpression exp = translateExp(groupByElem.exp, vars, Collections.<String, QueryVariable> emptyMap());
+        ExpAsVar expAsVar = new ExpAsVar(exp, name, groupByElem.name == null);
+        groupByElems.add(expAsVar);
+        groupKeys.put(name, expAsVar);
+        normalizedGroupByElems.add(groupByElem);
+      }
+    }
+
+    Map<String, QueryVariable> inScopeVars = changeScope ? groupKeys : vars;
+    Map<String, QueryVariable> inScopeInAggregationVars = changeScope ? vars
+        : Collections.<String, QueryVariable> emptyMap();
+
+    // SELECT
+    List<Ast.ExpAsVar> normalizedSelectElems = new ArrayList<>();
+    if (query.selectElems == null) {
+      normalizedSelectElems = getSelectStarElems(query, changeScope);
+    } else {
+      for (Ast.ExpAsVar selectElem : query.selectElems) {
+        Exp exp = selectElem.exp;
+        for (Ast.ExpAsVar groupByElem : normalizedGroupByElems) {
+          exp = replaceTermsWithVarRef(exp, groupByElem.exp, getName(groupByElem));
+        }
+        String generatedName = selectElem.generatedName;
+        normalizedSelectElems.add(new Ast.ExpAsVar(exp, selectElem.name, generatedName));
+      }
+    }
+
+    Map<String, QueryVariable> inScopeVarsForOrderBy = new HashMap<>(inScopeVars);
+    Set<String> selectKeys = new HashSet<>();
+    List<ExpAsVar> selectElems = new ArrayList<>();
+    for (Ast.ExpAsVar selectElem : normalizedSelectElems) {
+      checkAggregations(selectElem.exp);
+      String name = getName(selectElem);
+      if (!selectKeys.add(name) || (changeScope && selectElem.name != null && groupKeys.containsKey(name))) {
+        throw unsupported(); // duplicate select key, or select key that redefines a group key
+      }
+      QueryExpression exp = translateExp(selectElem.exp, inScopeVars, inScopeInAggregationVars);
+      ExpAsVar expAsVar = new ExpAsVar(exp, name, selectElem.name == null);
+      selectElems.add(expAsVar);
+      inScopeVarsForOrderBy.put(name, expAsVar);
+    }
+
+    // ORDER BY
+    List<Ast.ExpAsVar> allExpAsVars = new ArrayList<>(normalizedGroupByElems);
+    allExpAsVars.addAll(normalizedSelectElems);
+    List<OrderByElem> orderByElems = new ArrayList<>();
+    for (Ast.OrderByElem orderByElem : query.orderByElems) {
+      Exp exp = orderByElem.exp;
+      if (!changeScope && exp.containsAggregate()) {
+        throw unsupported();
+      }
+      for (Ast.ExpAsVar expAsVar : allExpAsVars) {
+        exp = replaceTermsWithVarRef(exp, expAsVar.exp, getName(expAsVar));
+      }
+      checkAggregations(exp);
+      orderByElems.add(
+          new OrderByElem(translateExp(exp, inScopeVarsForOrderBy, inScopeInAggregationVars), orderByElem.ascending));
+    }
+
+    // LIMIT OFFSET
+    QueryExpression limit = getLimitOrOffset(query.limit);
+    QueryExpression offset = getLimitOrOffset(query.offset);
+
+    return new GraphQuery(new Projection(selectElems), query.inputGraphName, graphPattern, new GroupBy(groupByElems),
+        new OrderBy(orderByElems), limit, offset);
+  }
+
+  /**
+   * See norm-select-star in normalize.str
+   */
+  private static List<Ast.ExpAsVar> getSelectStarElems(Query query, boolean changeScope)
+      throws UnsupportedQueryException {
+    if (changeScope) {
+      throw unsupported();
+    }
+    List<Ast.ExpAsVar> result = new ArrayList<>();
+    Set<String> vertexNames = new HashSet<>();
+    for (Variable v : query.vertices) {
+      if (!v.anonymous) {
+        if (!vertexNames.add(v.name)) {
+          throw unsupported(); // the order in which Spoofax collects repeated vertices is not guaranteed
+        }
+        result.add(new Ast.ExpAsVar(Exp.varRef(v.name), null, v.name));
+      }
+    }
+    for (Connection c : query.connections) {
+      if (!c.isPath() && !c.var.anonymous) {
+        result.add(new Ast.ExpAsVar(Exp.varRef(c.var.name), null, c.var.name));
+      }
+    }
+    return result;
+  }
+
+  private static String getName(Ast.ExpAsVar expAsVar) throws UnsupportedQueryException {
+    String name = expAsVar.name == null ? expAsVar.generatedName : expAsVar.name;
+    if (name == null) {
+      throw unsupported();
+    }
+    return name;
+  }
+
+  /**
+   * Nested aggregations are not allowed
+   */
+  private static void checkAggregations(Exp exp) throws UnsupportedQueryException {
+    if (exp.kind.isAggregate()) {
+      for (Exp arg : exp.args) {
+        if (arg.containsAggregate()) {
+          throw unsupported();
+        }
+      }
+      return;
+    }
+    for (Exp arg : exp.args) {
+      checkAggregations(arg);
+    }
+  }
+
+  /**
+   * See replace-terms-with-varRef in normalize.str: replaces occurrences of the term by a reference to the variable,
+   * but never looks inside aggregations.
+   */
+  private static Exp replaceTermsWithVarRef(Exp exp, Exp term, String varName) {
+    if (exp.equals(term)) {
+      return Exp.varRef(varName);
+    }
+    if (exp.kind.isAggregate() || exp.args.length == 0) {
+      return exp;
+    }
+    Exp[] args = new Exp[exp.args.length];
+    boolean changed = false;
+    for (int i = 0; i < args.length; i++) {
+      args[i] = replaceTermsWithVarRef(exp.args[i], term, varName);
+      changed |= args[i] != exp.args[i];
+    }
+    return changed ? new Exp(exp.kind, exp.value, exp.propName, args, exp.start, exp.end, true) : exp;
+  }
+
+  /**
+   * The generated path pattern that is also produced by SpoofaxAstToGraphQuery for a path label without PATH
+   * declaration
+   */
+  private static QueryPath getPath(QueryVertex src, QueryVertex dst, String name, Connection c) {
+    QueryVertex n = new QueryVertex("n", true);
+    QueryVertex m = new QueryVertex("m", true);
+    VertexPairConnection edge = new QueryEdge(n, m, "e", true, true);
+    QueryExpression labelExp = new HasLabel(new VarRef(edge), new ConstString(c.pathLabel));
+
+    List<QueryVertex> vertices = new ArrayList<>();
+    vertices.add(n);
+    vertices.add(m);
+    List<VertexPairConnection> connections = new ArrayList<>();
+    connections.add(edge);
+    Set<QueryExpression> constraints = new HashSet<>();
+    constraints.add(labelExp);
+
+    return new QueryPath(src, dst, vertices, connections, constraints, name, c.pathLabel, c.var.anonymous, c.minHops,
+        c.maxHops);
+  }
+
+  private static QueryExpression getLimitOrOffset(Exp exp) throws UnsupportedQueryException {
+    if (exp == null) {
+      return null;
+    }
+    return translateExp(exp, Collections.<String, QueryVariable> emptyMap(),
+        Collections.<String, QueryVariable> emptyMap());
+  }
+
+  private static String toUniqueName(String generatedAnonymousName) {
+    return generatedAnonymousName.replace(GENERATED_VAR_SUBSTR, "anonymous");
+  }
+
+  private static QueryExpression translateExp(Exp exp, Map<String, QueryVariable> inScopeVars,
+      Map<String, QueryVariable> inScopeInAggregationVars) throws UnsupportedQueryException {
+    switch (exp.kind) {
+      case SUB:
+        return new QueryExpression.ArithmeticExpression.Sub(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case ADD:
+        return new QueryExpression.ArithmeticExpression.Add(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case MUL:
+        return new QueryExpression.ArithmeticExpression.Mul(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case DIV:
+        return new QueryExpression.ArithmeticExpression.Div(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case MOD:
+        return new QueryExpression.ArithmeticExpression.Mod(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case UMIN:
+        return new QueryExpression.ArithmeticExpression.UMin(arg(exp, 0, inScopeVars, inScopeInAggregationVars));
+      case AND:
+        return new QueryExpression.LogicalExpression.And(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case OR:
+        return new QueryExpression.LogicalExpression.Or(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case NOT:
+        return new QueryExpression.LogicalExpression.Not(arg(exp, 0, inScopeVars, inScopeInAggregationVars));
+      case EQ:
+        return new QueryExpression.RelationalExpression.Equal(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case NEQ:
+        return new QueryExpression.RelationalExpression.NotEqual(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case GT:
+        return new QueryExpression.RelationalExpression.Greater(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case GTE:
+        return new QueryExpression.RelationalExpression.GreaterEqual(
+            arg(exp, 0, inScopeVars, inScopeInAggregationVars), arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case LT:
+        return new QueryExpression.RelationalExpression.Less(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case LTE:
+        return new QueryExpression.RelationalExpression.LessEqual(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case INTEGER:
+        return new QueryExpression.Constant.ConstInteger(Long.parseLong(exp.value));
+      case DECIMAL:
+        return new QueryExpression.Constant.ConstDecimal(Double.parseDouble(exp.value));
+      case STRING:
+        return new QueryExpression.Constant.ConstString(unescapeJava(exp.value));
+      case TRUE:
+        return new QueryExpression.Constant.ConstBoolean(true);
+      case FALSE:
+        return new QueryExpression.Constant.ConstBoolean(false);
+      case NULL:
+        return new QueryExpression.ConstNull();
+      case VAR_REF:
+        return new QueryExpression.VarRef(lookup(exp.value, inScopeVars));
+      case BIND_VARIABLE:
+        return new QueryExpression.BindVariable(Integer.parseInt(exp.value));
+      case PROP_REF:
+        return new QueryExpression.PropertyAccess(lookup(exp.value, inScopeVars), exp.propName);
+      case REGEX:
+        return new QueryExpression.Function.Regex(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case LABEL:
+        return new QueryExpression.Function.EdgeLabel(arg(exp, 0, inScopeVars, inScopeInAggregationVars));
+      case LABELS:
+        return new QueryExpression.Function.VertexLabels(arg(exp, 0, inScopeVars, inScopeInAggregationVars));
+      case ID:
+        return new QueryExpression.Function.Id(arg(exp, 0, inScopeVars, inScopeInAggregationVars));
+      case HAS:
+        return new QueryExpression.Function.HasProp(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case HAS_LABEL:
+        return new QueryExpression.Function.HasLabel(arg(exp, 0, inScopeVars, inScopeInAggregationVars),
+            arg(exp, 1, inScopeVars, inScopeInAggregationVars));
+      case IN_DEGREE:
+        return new QueryExpression.Function.InDegree(arg(exp, 0, inScopeVars, inScopeInAggregationVars));
+      case OUT_DEGREE:
+        return new QueryExpression.Function.OutDegree(arg(exp, 0, inScopeVars, inScopeInAggregationVars));
+      case ALL_DIFFERENT:
+        List<QueryExpression> exps = new ArrayList<>();
+        for (int i = 0; i < exp.args.length; i++) {
+          exps.add(arg(exp, i, inScopeVars, inScopeInAggregationVars));
+        }
+        return new QueryExpression.Function.AllDifferent(exps);
+      case ST_X:
+        return new SpatialFunction.StX(arg(exp, 0, inScopeVars, inScopeInAggregationVars));
+      case ST_Y:
+        return new SpatialFunction.StY(arg(exp, 0, inScopeVars, inScopeInAggregationVars));
+      case ST_POINT_FROM_TEXT:
+        return new SpatialFunction.StPointFromText(arg(exp, 0, inScopeVars, inScopeInAggregationVars));
+      case COUNT:
+        return new QueryExpression.Aggregation.AggrCount(arg(exp, 0, inScopeInAggregationVars,
+            inScopeInAggregationVars));
+      case MIN:
+        return new QueryExpression.Aggregation.AggrMin(arg(exp, 0, inScopeInAggregationVars, inScopeInAggregationVars));
+      case MAX:
+        return new QueryExpression.Aggregation.AggrMax(arg(exp, 0, inScopeInAggregationVars, inScopeInAggregationVars));
+      case SUM:
+        return new QueryExpression.Aggregation.AggrSum(arg(exp, 0, inScopeInAggregationVars, inScopeInAggregationVars));
+      case AVG:
+        return new QueryExpression.Aggregation.AggrAvg(arg(exp, 0, inScopeInAggregationVars, inScopeInAggregationVars));
+      case STAR:
+        return new QueryExpression.Star();
+      default:
+        throw new IllegalArgumentException("Unexpected expression: " + exp.kind);
+    }
+  }
+
+  private static QueryExpression arg(Exp exp, int i, Map<String, QueryVariable> inScopeVars,
+      Map<String, QueryVariable> inScopeInAggregationVars) throws UnsupportedQueryException {
+    return translateExp(exp.args[i], inScopeVars, inScopeInAggregationVars);
+  }
+
+  private static QueryVariable lookup(String varName, Map<String, QueryVariable> inScopeVars)
+      throws UnsupportedQueryException {
+    QueryVariable var = inScopeVars.get(varName);
+    if (var == null) {
+      throw unsupported(); // unresolved variable
+    }
+    return var;
+  }
+}
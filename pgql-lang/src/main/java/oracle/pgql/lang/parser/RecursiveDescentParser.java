@@ -0,0 +1,1057 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.parser.Ast.Connection;
+import oracle.pgql.lang.parser.Ast.Exp;
+import oracle.pgql.lang.parser.Ast.ExpAsVar;
+import oracle.pgql.lang.parser.Ast.ExpKind;
+import oracle.pgql.lang.parser.Ast.OrderByElem;
+import oracle.pgql.lang.parser.Ast.Query;
+import oracle.pgql.lang.parser.Ast.Variable;
+
+/**
+ * Hand-written parser for PGQL that follows the grammar in pgql-spoofax/syntax and builds a GraphQuery directly,
+ * without going through SGLR, Stratego and NaBL.
+ *
+ * The parser only accepts queries for which it can guarantee to produce the same GraphQuery as the Spoofax front-end.
+ * For invalid queries and for queries with constructs that it does not support (PATH declarations, inlined WITH
+ * constraints, named or alternative paths, DISTINCT, temporal literals, CAST, CALL and vertices without brackets),
+ * {@link #parse(String)} returns null, after which the query should be parsed with the Spoofax front-end, which also
+ * takes care of generating error messages.
+ */
+public final class RecursiveDescentParser {
+
+  static final String GENERATED_VAR_SUBSTR = "<<anonymous>>";
+
+  private static final Set<String> RESERVED_KEYWORDS = new HashSet<>(Arrays.asList("path", "select", "where", "as",
+      "with", "order", "group", "by", "asc", "desc", "limit", "offset", "and", "or", "true", "false", "null", "not"));
+
+  private static final Set<String> POSTFIX_FUNCTIONS = new HashSet<>(Arrays.asList("label", "labels", "haslabel", "id",
+      "has", "indegree", "outdegree"));
+
+  private final String queryString;
+
+  private final int length;
+
+  private int pos;
+
+  /**
+   * End offset of the last consumed token, i.e. excluding trailing layout
+   */
+  private int lastEnd;
+
+  private int bindVariableCount;
+
+  private int anonymousVariableCount;
+
+  private final Query query;
+
+  private RecursiveDescentParser(String queryString) {
+    this.queryString = queryString;
+    this.length = queryString.length();
+    this.query = new Query(queryString);
+  }
+
+  /**
+   * @return the GraphQuery, or null if the query is invalid or uses a construct that is not supported by this parser
+   */
+  public static GraphQuery parse(String queryString) {
+    try {
+      Query query = new RecursiveDescentParser(queryString).parseQuery();
+      return AstToGraphQuery.translate(query);
+    } catch (UnsupportedQueryException e) {
+      return null;
+    }
+  }
+
+  private Query parseQuery() throws UnsupportedQueryException {
+    expectKeyword("select"); // also rejects PATH declarations
+    if (accept('*')) {
+      query.selectElems = null;
+    } else {
+      query.selectElems = parseExpAsVars();
+    }
+
+    if (acceptKeyword("from")) {
+      query.inputGraphName = parseName();
+    }
+
+    expectKeyword("where");
+    do {
+      parsePatternElem();
+    } while (accept(','));
+
+    if (acceptKeyword("group")) {
+      expectKeyword("by");
+      query.groupByElems = parseExpAsVars();
+    }
+
+    if (acceptKeyword("order")) {
+      expectKeyword("by");
+      do {
+        query.orderByElems.add(parseOrderByElem());
+      } while (accept(','));
+    }
+
+    if (acceptKeyword("limit")) {
+      query.limit = parseIntOrBindVariable();
+      if (acceptKeyword("offset")) {
+        query.offset = parseIntOrBindVariable();
+      }
+    } else if (acceptKeyword("offset")) {
+      query.offset = parseIntOrBindVariable();
+      if (acceptKeyword("limit")) {
+        query.limit = parseIntOrBindVariable();
+      }
+    }
+
+    skipLayout();
+    if (pos != length) {
+      throw unsupported();
+    }
+    return query;
+  }
+
+  private List<ExpAsVar> parseExpAsVars() throws UnsupportedQueryException {
+    List<ExpAsVar> result = new ArrayList<>();
+    do {
+      skipLayout();
+      int start = pos;
+      Exp exp = parseExp();
+      int end = lastEnd;
+      String name = acceptKeyword("as") ? parseName() : null;
+      result.add(new ExpAsVar(exp, name, getGeneratedName(exp, start, end)));
+    } while (accept(','));
+    return result;
+  }
+
+  /**
+   * See norm-ExpAsVar in normalize.str
+   */
+  private String getGeneratedName(Exp exp, int start, int end) {
+    if (exp.kind == ExpKind.VAR_REF) {
+      return exp.value;
+    }
+    if (exp.rewritten || exp.start != start || exp.end != end) {
+      return null; // the origin text is lost or includes brackets
+    }
+    return queryString.substring(start, end);
+  }
+
+  private OrderByElem parseOrderByElem() throws UnsupportedQueryException {
+    skipLayout();
+    for (String ordering : new String[] { "asc", "desc" }) {
+      if (lookingAtKeyword(ordering) && pos + ordering.length() < length
+          && queryString.charAt(pos + ordering.length()) == '(') {
+        pos += ordering.length() + 1;
+        Exp exp = parseExp();
+        expect(')');
+        return new OrderByElem(exp, ordering.equals("asc"));
+      }
+    }
+
+    Exp exp = parseExp();
+    if (acceptKeyword("desc")) {
+      return new OrderByElem(exp, false);
+    }
+    acceptKeyword("asc");
+    return new OrderByElem(exp, true);
+  }
+
+  private Exp parseIntOrBindVariable() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    if (accept('?')) {
+      return bindVariable(start);
+    }
+    if (pos < length && isDigit(queryString.charAt(pos))) {
+      return parseNumber();
+    }
+    throw unsupported();
+  }
+
+  // GRAPH PATTERN
+
+  /**
+   * A pattern element is either a path or a constraint. A path that is also a valid expression (e.g. "(n) - (m)") is a
+   * path, since constraints are marked as 'avoid' in the grammar.
+   */
+  private void parsePatternElem() throws UnsupportedQueryException {
+    skipLayout();
+    if (peek() == '(') {
+      int startPos = pos;
+      int startLastEnd = lastEnd;
+      int startBindVariableCount = bindVariableCount;
+      int startAnonymousVariableCount = anonymousVariableCount;
+      int numVertices = query.vertices.size();
+      int numConnections = query.connections.size();
+      int numConstraints = query.constraints.size();
+      try {
+        parsePath();
+        if (atEndOfPatternElem()) {
+          return;
+        }
+      } catch (UnsupportedQueryException e) {
+        // try to parse it as a constraint instead
+      }
+      pos = startPos;
+      lastEnd = startLastEnd;
+      bindVariableCount = startBindVariableCount;
+      anonymousVariableCount = startAnonymousVariableCount;
+      truncate(query.vertices, numVertices);
+      truncate(query.connections, numConnections);
+      truncate(query.constraints, numConstraints);
+    }
+    query.constraints.add(parseExp());
+  }
+
+  private boolean atEndOfPatternElem() {
+    skipLayout();
+    return pos == length || peek() == ',' || lookingAtKeyword("group") || lookingAtKeyword("order")
+        || lookingAtKeyword("limit") || lookingAtKeyword("offset");
+  }
+
+  private void parsePath() throws UnsupportedQueryException {
+    Variable src = parseVertex();
+    while (true) {
+      skipLayout();
+      if (!lookingAt("<-") && peek() != '-') {
+        return;
+      }
+      src = parseConnection(src);
+    }
+  }
+
+  private Variable parseVertex() throws UnsupportedQueryException {
+    expect('(');
+    Variable vertex = parseElemContents(true);
+    expect(')');
+    query.vertices.add(vertex);
+    return vertex;
+  }
+
+  /**
+   * Parses a connection followed by a vertex, and returns the vertex.
+   */
+  private Variable parseConnection(Variable left) throws UnsupportedQueryException {
+    boolean incoming = false;
+    boolean directed = true;
+    Variable var = null;
+    String pathLabel = null;
+    long[] hops = null;
+
+    if (lookingAt("<-")) {
+      consume(2);
+      incoming = true;
+      skipLayout();
+      if (peek() == '[') {
+        var = parseEdgeContents();
+        expect('-');
+      } else if (peek() == '/') {
+        var = anonymousVariable();
+        pathLabel = parsePathContents();
+        hops = lastHops;
+        expect('-');
+      } else if (accept('-')) {
+        var = anonymousVariable(); // <--
+      } else {
+        var = anonymousVariable(); // <-
+      }
+    } else {
+      consume(1);
+      if (pos < length && queryString.charAt(pos) == '>') {
+        consume(1);
+        var = anonymousVariable(); // ->
+      } else {
+        skipLayout();
+        if (peek() == '[') {
+          var = parseEdgeContents();
+          if (accept("->")) {
+            // -[e]->
+          } else {
+            expect('-');
+            directed = false; // -[e]-
+          }
+        } else if (peek() == '/') {
+          var = anonymousVariable();
+          pathLabel = parsePathContents();
+          hops = lastHops;
+          expect("->");
+        } else if (accept("->")) {
+          var = anonymousVariable(); // -->
+        } else if (accept('-')) {
+          var = anonymousVariable(); // --
+          directed = false;
+        } else {
+          var = anonymousVariable(); // -
+          directed = false;
+        }
+      }
+    }
+
+    Variable right = parseVertex();
+    Variable src = incoming ? right : left;
+    Variable dst = incoming ? left : right;
+    Connection connection = pathLabel == null ? new Connection(src, dst, var, directed, null, 1, 1)
+        : new Connection(src, dst, var, true, pathLabel, hops[0], hops[1]);
+    query.connections.add(connection);
+    return right;
+  }
+
+  private Variable parseEdgeContents() throws UnsupportedQueryException {
+    expect('[');
+    Variable edge = parseElemContents(false);
+    expect(']');
+    return edge;
+  }
+
+  private long[] lastHops;
+
+  /**
+   * Parses "/:label quantifier/". Named paths and alternatives are not supported.
+   */
+  private String parsePathContents() throws UnsupportedQueryException {
+    expect('/');
+    expect(':');
+    String label = parseName();
+    skipLayout();
+    long minHops = 1;
+    long maxHops = 1;
+    if (accept('*')) {
+      minHops = 0;
+      maxHops = -1;
+    } else if (accept('+')) {
+      minHops = 1;
+      maxHops = -1;
+    } else if (accept('?')) {
+      minHops = 0;
+      maxHops = 1;
+    } else if (accept('{')) {
+      if (accept(',')) {
+        minHops = 0;
+        maxHops = parseUnsignedLong();
+      } else {
+        minHops = parseUnsignedLong();
+        if (accept('}')) {
+          maxHops = minHops;
+          lastHops = new long[] { minHops, maxHops };
+          expect('/');
+          return label;
+        }
+        expect(',');
+        maxHops = peek() == '}' ? -1 : parseUnsignedLong();
+      }
+      expect('}');
+    }
+    lastHops = new long[] { minHops, maxHops };
+    expect('/');
+    return label;
+  }
+
+  private long parseUnsignedLong() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    while (pos < length && isDigit(queryString.charAt(pos))) {
+      pos++;
+    }
+    if (start == pos) {
+      throw unsupported();
+    }
+    lastEnd = pos;
+    return parseLong(queryString.substring(start, pos));
+  }
+
+  /**
+   * Parses "name:labels@ids" and adds the label and id constraints to the query.
+   */
+  private Variable parseElemContents(boolean isVertex) throws UnsupportedQueryException {
+    skipLayout();
+    String name = null;
+    if (pos < length && isLetter(queryString.charAt(pos))) {
+      name = parseName();
+    }
+    Variable var = name == null ? anonymousVariable() : new Variable(name, false);
+
+    if (accept(':')) {
+      Exp labels = parseAltLit();
+      query.constraints.add(isVertex ? toHasLabelExpressions(var, labels) : toLabelEqualsExpressions(var, labels));
+    }
+    if (accept('@')) {
+      Exp ids = parseAltLit();
+      query.constraints.add(toIdExpressions(var, ids));
+    }
+    return var;
+  }
+
+  private Variable anonymousVariable() {
+    return new Variable(GENERATED_VAR_SUBSTR + "_" + (++anonymousVariableCount), true);
+  }
+
+  private Exp parseAltLit() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    Exp exp = parseLabelLiteral();
+    while (accept('|')) {
+      Exp right = parseLabelLiteral();
+      exp = Exp.node(ExpKind.OR, start, lastEnd, exp, right);
+    }
+    return exp;
+  }
+
+  private Exp parseLabelLiteral() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    char c = peek();
+    if (c == '\'' || c == '"') {
+      return parseString();
+    } else if (c == '?') {
+      consume(1);
+      return bindVariable(start);
+    } else if (isDigit(c) || c == '.') {
+      return parseNumber();
+    } else if (isLetter(c)) {
+      String s = scanName();
+      switch (s.toLowerCase()) {
+        case "true":
+          return Exp.leaf(ExpKind.TRUE, null, start, lastEnd);
+        case "false":
+          return Exp.leaf(ExpKind.FALSE, null, start, lastEnd);
+        case "null":
+          return Exp.leaf(ExpKind.NULL, null, start, lastEnd);
+        case "date":
+        case "time":
+        case "timestamp":
+          throw unsupported();
+        default:
+          return Exp.leaf(ExpKind.STRING, s, start, lastEnd);
+      }
+    }
+    throw unsupported();
+  }
+
+  /**
+   * See to-hasLabel-expressions in normalize.str
+   */
+  private static Exp toHasLabelExpressions(Variable var, Exp labels) {
+    if (labels.kind == ExpKind.OR) {
+      return rewrite(ExpKind.OR, toHasLabelExpressions(var, labels.args[0]),
+          toHasLabelExpressions(var, labels.args[1]));
+    }
+    return rewrite(ExpKind.HAS_LABEL, Exp.varRef(var.name), labels);
+  }
+
+  /**
+   * See to-label-equals-expressions in normalize.str
+   */
+  private static Exp toLabelEqualsExpressions(Variable var, Exp labels) {
+    if (labels.kind == ExpKind.OR) {
+      return rewrite(ExpKind.OR, toLabelEqualsExpressions(var, labels.args[0]),
+          toLabelEqualsExpressions(var, labels.args[1]));
+    }
+    return rewrite(ExpKind.EQ, rewrite(ExpKind.LABEL, Exp.varRef(var.name)), labels);
+  }
+
+  /**
+   * See to-id-constraints in normalize.str
+   */
+  private static Exp toIdExpressions(Variable var, Exp ids) {
+    if (ids.kind == ExpKind.OR) {
+      return rewrite(ExpKind.OR, toIdExpressions(var, ids.args[0]), toIdExpressions(var, ids.args[1]));
+    }
+    return rewrite(ExpKind.EQ, rewrite(ExpKind.ID, Exp.varRef(var.name)), ids);
+  }
+
+  private static Exp rewrite(ExpKind kind, Exp... args) {
+    return new Exp(kind, null, null, args, -1, -1, true);
+  }
+
+  // EXPRESSIONS (in order of increasing priority)
+
+  private Exp parseExp() throws UnsupportedQueryException {
+    return parseOr();
+  }
+
+  private Exp parseOr() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    Exp exp = parseAnd();
+    while (acceptKeyword("or")) {
+      Exp right = parseAnd();
+      exp = Exp.node(ExpKind.OR, start, lastEnd, exp, right);
+    }
+    return exp;
+  }
+
+  private Exp parseAnd() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    Exp exp = parseNot();
+    while (acceptKeyword("and")) {
+      Exp right = parseNot();
+      exp = Exp.node(ExpKind.AND, start, lastEnd, exp, right);
+    }
+    return exp;
+  }
+
+  private Exp parseNot() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    if (acceptKeyword("not")) {
+      Exp exp = parseNot();
+      return new Exp(ExpKind.NOT, null, null, new Exp[] { exp }, start, lastEnd, true);
+    }
+    return parseRelational();
+  }
+
+  private Exp parseRelational() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    Exp exp = parseAdditive();
+    while (true) {
+      skipLayout();
+      ExpKind kind;
+      boolean rewritten = false;
+      if (accept("=~")) {
+        kind = ExpKind.REGEX;
+      } else if (accept("=")) {
+        kind = ExpKind.EQ;
+      } else if (accept("!=") || accept("<>")) {
+        kind = ExpKind.NEQ;
+        rewritten = true;
+      } else if (accept("<=")) {
+        kind = ExpKind.LTE;
+      } else if (accept(">=")) {
+        kind = ExpKind.GTE;
+      } else if (accept("<")) {
+        kind = ExpKind.LT;
+      } else if (accept(">")) {
+        kind = ExpKind.GT;
+      } else {
+        return exp;
+      }
+      Exp right = parseAdditive();
+      exp = new Exp(kind, null, null, new Exp[] { exp, right }, start, lastEnd, rewritten);
+    }
+  }
+
+  private Exp parseAdditive() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    Exp exp = parseMultiplicative();
+    while (true) {
+      ExpKind kind;
+      if (accept('+')) {
+        kind = ExpKind.ADD;
+      } else if (accept('-')) {
+        kind = ExpKind.SUB;
+      } else {
+        return exp;
+      }
+      Exp right = parseMultiplicative();
+      exp = Exp.node(kind, start, lastEnd, exp, right);
+    }
+  }
+
+  private Exp parseMultiplicative() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    Exp exp = parseUnary();
+    while (true) {
+      ExpKind kind;
+      if (accept('*')) {
+        kind = ExpKind.MUL;
+      } else if (accept('/')) {
+        kind = ExpKind.DIV;
+      } else if (accept('%')) {
+        kind = ExpKind.MOD;
+      } else {
+        return exp;
+      }
+      Exp right = parseUnary();
+      exp = Exp.node(kind, start, lastEnd, exp, right);
+    }
+  }
+
+  private Exp parseUnary() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    if (accept('-')) {
+      Exp exp = parseUnary();
+      if (exp.kind == ExpKind.DECIMAL && !exp.value.startsWith("-")) {
+        // see norm-UMin in normalize.str
+        return new Exp(ExpKind.DECIMAL, "-" + exp.value, null, exp.args, start, lastEnd, true);
+      }
+      return Exp.node(ExpKind.UMIN, start, lastEnd, exp);
+    }
+    if (!lookingAt("!=") && accept('!')) {
+      Exp exp = parseUnary();
+      return new Exp(ExpKind.NOT, null, null, new Exp[] { exp }, start, lastEnd, true);
+    }
+    return parsePostfix();
+  }
+
+  /**
+   * Parses function calls like "n.inDegree()", which bind stronger than any other operator.
+   */
+  private Exp parsePostfix() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    Exp exp = parsePrimary();
+    while (true) {
+      int functionPos = lookingAtPostfixFunction();
+      if (functionPos == -1) {
+        return exp;
+      }
+      pos = functionPos;
+      String function = scanName().toLowerCase();
+      consume(1); // '('
+      switch (function) {
+        case "label":
+          expect(')');
+          exp = Exp.node(ExpKind.LABEL, start, lastEnd, exp);
+          break;
+        case "labels":
+          expect(')');
+          exp = Exp.node(ExpKind.LABELS, start, lastEnd, exp);
+          break;
+        case "id":
+          expect(')');
+          exp = Exp.node(ExpKind.ID, start, lastEnd, exp);
+          break;
+        case "indegree":
+          expect(')');
+          exp = Exp.node(ExpKind.IN_DEGREE, start, lastEnd, exp);
+          break;
+        case "outdegree":
+          expect(')');
+          exp = Exp.node(ExpKind.OUT_DEGREE, start, lastEnd, exp);
+          break;
+        case "haslabel":
+          Exp label = parseExp();
+          expect(')');
+          exp = Exp.node(ExpKind.HAS_LABEL, start, lastEnd, exp, label);
+          break;
+        case "has":
+          List<Exp> props = parseExps();
+          exp = toHasExpressions(exp, props, start, lastEnd);
+          break;
+        default:
+          throw new IllegalStateException(function);
+      }
+    }
+  }
+
+  /**
+   * @return the position of the function name if the input continues with ".function(", or -1 otherwise
+   */
+  private int lookingAtPostfixFunction() {
+    int savedPos = pos;
+    try {
+      skipLayout();
+      if (peek() != '.') {
+        return -1;
+      }
+      pos++;
+      skipLayout();
+      int namePos = pos;
+      if (pos >= length || !isLetter(queryString.charAt(pos))) {
+        return -1;
+      }
+      String name = scanName();
+      boolean isFunction = POSTFIX_FUNCTIONS.contains(name.toLowerCase()) && pos < length
+          && queryString.charAt(pos) == '(';
+      return isFunction ? namePos : -1;
+    } finally {
+      pos = savedPos;
+    }
+  }
+
+  /**
+   * See norm-has-prop in normalize.str
+   */
+  private Exp toHasExpressions(Exp exp, List<Exp> props, int start, int end) throws UnsupportedQueryException {
+    if (exp.contains(ExpKind.HAS)) {
+      throw unsupported(); // nested has() is not normalized by Spoofax
+    }
+    for (Exp prop : props) {
+      if (prop.contains(ExpKind.HAS)) {
+        throw unsupported();
+      }
+    }
+
+    int n = props.size();
+    Exp result = new Exp(ExpKind.HAS, null, null, new Exp[] { exp, props.get(n - 1) }, start, end, true);
+    for (int i = n - 2; i >= 0; i--) {
+      Exp has = new Exp(ExpKind.HAS, null, null, new Exp[] { exp, props.get(i) }, start, end, true);
+      result = new Exp(ExpKind.AND, null, null, new Exp[] { has, result }, start, end, true);
+    }
+    return result;
+  }
+
+  private Exp parsePrimary() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    char c = peek();
+
+    if (c == '(') {
+      consume(1);
+      Exp exp = parseExp();
+      expect(')');
+      return exp;
+    } else if (c == '\'' || c == '"') {
+      return parseString();
+    } else if (c == '?') {
+      consume(1);
+      return bindVariable(start);
+    } else if (isDigit(c) || (c == '.' && pos + 1 < length && isDigit(queryString.charAt(pos + 1)))) {
+      return parseNumber();
+    } else if (!isLetter(c)) {
+      throw unsupported();
+    }
+
+    String name = scanName();
+    String lowerCaseName = name.toLowerCase();
+    boolean isCall = pos < length && queryString.charAt(pos) == '(';
+    if (isCall) {
+      consume(1);
+      switch (lowerCaseName) {
+        case "count":
+        case "min":
+        case "max":
+        case "sum":
+        case "avg":
+          return parseAggregate(lowerCaseName, start);
+        case "all_different":
+          List<Exp> exps = parseExps();
+          return Exp.node(ExpKind.ALL_DIFFERENT, start, lastEnd, exps.toArray(new Exp[exps.size()]));
+        case "st_x":
+          Exp exp = parseExp();
+          expect(')');
+          return Exp.node(ExpKind.ST_X, start, lastEnd, exp);
+        case "st_y":
+          exp = parseExp();
+          expect(')');
+          return Exp.node(ExpKind.ST_Y, start, lastEnd, exp);
+        default:
+          if (name.equals("ST_PointFromText")) { // case-sensitive
+            exp = parseExp();
+            expect(')');
+            return Exp.node(ExpKind.ST_POINT_FROM_TEXT, start, lastEnd, exp);
+          }
+          throw unsupported(); // CAST, TO_DATE, etc.
+      }
+    }
+
+    switch (lowerCaseName) {
+      case "true":
+        return Exp.leaf(ExpKind.TRUE, null, start, lastEnd);
+      case "false":
+        return Exp.leaf(ExpKind.FALSE, null, start, lastEnd);
+      case "null":
+        return Exp.leaf(ExpKind.NULL, null, start, lastEnd);
+      case "date":
+      case "time":
+      case "timestamp":
+      case "call":
+        throw unsupported(); // temporal literals and CALL statements
+      default:
+        if (RESERVED_KEYWORDS.contains(lowerCaseName)) {
+          throw unsupported();
+        }
+    }
+
+    // variable reference or property reference
+    int varEnd = lastEnd;
+    if (lookingAtPostfixFunction() != -1) {
+      return Exp.leaf(ExpKind.VAR_REF, name, start, varEnd);
+    }
+    int savedPos = pos;
+    skipLayout();
+    if (peek() == '.') {
+      consume(1);
+      skipLayout();
+      char p = peek();
+      if (p == '\'' || p == '"') {
+        Exp propName = parseString();
+        return new Exp(ExpKind.PROP_REF, name, propName.value, propName.args, start, lastEnd, true);
+      } else if (isLetter(p)) {
+        String propName = parseName();
+        return new Exp(ExpKind.PROP_REF, name, propName, new Exp[0], start, lastEnd, false);
+      }
+    }
+    pos = savedPos;
+    lastEnd = varEnd;
+    return Exp.leaf(ExpKind.VAR_REF, name, start, varEnd);
+  }
+
+  private Exp parseAggregate(String function, int start) throws UnsupportedQueryException {
+    if (lookingAtKeyword("distinct")) {
+      throw unsupported(); // not supported in PGQL 1.0
+    }
+    Exp exp;
+    skipLayout();
+    if (function.equals("count") && peek() == '*') {
+      int starPos = pos;
+      consume(1);
+      exp = Exp.leaf(ExpKind.STAR, null, starPos, lastEnd);
+    } else {
+      exp = parseExp();
+    }
+    expect(')');
+
+    ExpKind kind;
+    switch (function) {
+      case "count":
+        kind = ExpKind.COUNT;
+        break;
+      case "min":
+        kind = ExpKind.MIN;
+        break;
+      case "max":
+        kind = ExpKind.MAX;
+        break;
+      case "sum":
+        kind = ExpKind.SUM;
+        break;
+      case "avg":
+        kind = ExpKind.AVG;
+        break;
+      default:
+        throw new IllegalArgumentException(function);
+    }
+    return Exp.node(kind, start, lastEnd, exp);
+  }
+
+  /**
+   * Parses one or more comma-separated expressions followed by a closing bracket.
+   */
+  private List<Exp> parseExps() throws UnsupportedQueryException {
+    List<Exp> exps = new ArrayList<>();
+    do {
+      exps.add(parseExp());
+    } while (accept(','));
+    expect(')');
+    return exps;
+  }
+
+  // LITERALS
+
+  private Exp bindVariable(int start) {
+    // see norm-BindVariable in normalize.str: bind variables are numbered in order of appearance, starting from 1
+    return new Exp(ExpKind.BIND_VARIABLE, Integer.toString(++bindVariableCount), null, new Exp[0], start, lastEnd, true);
+  }
+
+  private Exp parseNumber() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    while (pos < length && isDigit(queryString.charAt(pos))) {
+      pos++;
+    }
+    if (pos + 1 < length && queryString.charAt(pos) == '.' && isDigit(queryString.charAt(pos + 1))) {
+      pos++;
+      while (pos < length && isDigit(queryString.charAt(pos))) {
+        pos++;
+      }
+      lastEnd = pos;
+      return Exp.leaf(ExpKind.DECIMAL, queryString.substring(start, pos), start, pos);
+    }
+    if (start == pos) {
+      throw unsupported();
+    }
+    lastEnd = pos;
+    String value = queryString.substring(start, pos);
+    parseLong(value); // Spoofax front-end fails on integers that are too large
+    return Exp.leaf(ExpKind.INTEGER, value, start, pos);
+  }
+
+  /**
+   * Parses a single or double quoted string. The value of the resulting expression is the string without the quotes,
+   * but with the escape sequences still in place (see norm-string in normalize.str).
+   */
+  private Exp parseString() throws UnsupportedQueryException {
+    skipLayout();
+    int start = pos;
+    char quote = queryString.charAt(pos++);
+    while (true) {
+      if (pos >= length) {
+        throw unsupported();
+      }
+      char c = queryString.charAt(pos++);
+      if (c == quote) {
+        break;
+      } else if (c == '\n') {
+        throw unsupported();
+      } else if (c == '\\') {
+        if (pos >= length || "tbnrf\\\"'".indexOf(queryString.charAt(pos)) == -1) {
+          throw unsupported();
+        }
+        pos++;
+      }
+    }
+    lastEnd = pos;
+    return new Exp(ExpKind.STRING, queryString.substring(start + 1, pos - 1), null, new Exp[0], start, pos, true);
+  }
+
+  // LEXICAL HELPERS
+
+  /**
+   * Skips white space and comments
+   */
+  private void skipLayout() {
+    while (pos < length) {
+      char c = queryString.charAt(pos);
+      if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+        pos++;
+      } else if (c == '/' && pos + 1 < length && queryString.charAt(pos + 1) == '/') {
+        int newLine = queryString.indexOf('\n', pos);
+        pos = newLine == -1 ? length : newLine + 1;
+      } else if (c == '/' && pos + 1 < length && queryString.charAt(pos + 1) == '*') {
+        int endOfComment = queryString.indexOf("*/", pos + 2);
+        if (endOfComment == -1) {
+          return; // unterminated comment; results in a parse error
+        }
+        pos = endOfComment + 2;
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the next character after layout, or 0 at the end of the input
+   */
+  private char peek() {
+    skipLayout();
+    return pos < length ? queryString.charAt(pos) : 0;
+  }
+
+  private void consume(int numChars) {
+    pos += numChars;
+    lastEnd = pos;
+  }
+
+  private boolean lookingAt(String s) {
+    skipLayout();
+    return queryString.startsWith(s, pos);
+  }
+
+  private boolean accept(char c) {
+    if (peek() == c) {
+      consume(1);
+      return true;
+    }
+    return false;
+  }
+
+  private boolean accept(String s) {
+    if (lookingAt(s)) {
+      consume(s.length());
+      return true;
+    }
+    return false;
+  }
+
+  private void expect(char c) throws UnsupportedQueryException {
+    if (!accept(c)) {
+      throw unsupported();
+    }
+  }
+
+  private void expect(String s) throws UnsupportedQueryException {
+    if (!accept(s)) {
+      throw unsupported();
+    }
+  }
+
+  /**
+   * Keywords are case-insensitive. Unlike the Spoofax grammar, we require keywords to be followed by a character that
+   * cannot be part of a name, which may only cause valid queries to be rejected (e.g. "SELECT*").
+   */
+  private boolean lookingAtKeyword(String keyword) {
+    skipLayout();
+    int end = pos + keyword.length();
+    return queryString.regionMatches(true, pos, keyword, 0, keyword.length())
+        && (end == length || !isNameChar(queryString.charAt(end)));
+  }
+
+  private boolean acceptKeyword(String keyword) {
+    if (lookingAtKeyword(keyword)) {
+      consume(keyword.length());
+      return true;
+    }
+    return false;
+  }
+
+  private void expectKeyword(String keyword) throws UnsupportedQueryException {
+    if (!acceptKeyword(keyword)) {
+      throw unsupported();
+    }
+  }
+
+  /**
+   * Parses a name that is not a reserved keyword
+   */
+  private String parseName() throws UnsupportedQueryException {
+    skipLayout();
+    if (pos >= length || !isLetter(queryString.charAt(pos))) {
+      throw unsupported();
+    }
+    String name = scanName();
+    if (RESERVED_KEYWORDS.contains(name.toLowerCase())) {
+      throw unsupported();
+    }
+    return name;
+  }
+
+  /**
+   * Scans [a-zA-Z][a-zA-Z0-9_]* starting at the current position
+   */
+  private String scanName() {
+    int start = pos;
+    pos++;
+    while (pos < length && isNameChar(queryString.charAt(pos))) {
+      pos++;
+    }
+    lastEnd = pos;
+    return queryString.substring(start, pos);
+  }
+
+  private static long parseLong(String s) throws UnsupportedQueryException {
+    try {
+      return Long.parseLong(s);
+    } catch (NumberFormatException e) {
+      throw unsupported();
+    }
+  }
+
+  private static boolean isLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isNameChar(char c) {
+    return isLetter(c) || isDigit(c) || c == '_';
+  }
+
+  private static <T> void truncate(List<T> list, int size) {
+    while (list.size() > size) {
+      list.remove(list.size() - 1);
+    }
+  }
+
+  static UnsupportedQueryException unsupported() {
+    return UnsupportedQueryException.INSTANCE;
+  }
+}
@@ -0,0 +1,19 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang.parser;
+
+/**
+ * Thrown when a query is either invalid or uses a construct that the {@link RecursiveDescentParser} does not support.
+ * In both cases, the query needs to be parsed by the Spoofax front-end instead, which produces proper error messages.
+ *
+ * Since this is part of the normal control flow, a single instance without stack trace is reused.
+ */
+final class UnsupportedQueryException extends Exception {
+
+  static final UnsupportedQueryException INSTANCE = new UnsupportedQueryException();
+
+  private UnsupportedQueryException() {
+    super(null, null, false, false);
+  }
+}
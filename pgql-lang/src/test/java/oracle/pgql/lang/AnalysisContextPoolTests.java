@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.metaborg.core.context.ITemporaryContext;
+
+public class AnalysisContextPoolTests {
+
+  @Test
+  public void testContextsAreClosedWithThePool() {
+    AnalysisContextPool pool = new AnalysisContextPool(null, null, null, null, 2);
+    AtomicInteger numClosed = new AtomicInteger();
+
+    pool.release(createContext(numClosed), true); // idle when the pool is closed
+    pool.close();
+    assertEquals(1, numClosed.get());
+
+    pool.release(createContext(numClosed), true); // in use when the pool was closed
+    assertEquals(2, numClosed.get());
+  }
+
+  private static ITemporaryContext createContext(AtomicInteger numClosed) {
+    return (ITemporaryContext) Proxy.newProxyInstance(ITemporaryContext.class.getClassLoader(),
+        new Class<?>[] { ITemporaryContext.class }, (proxy, method, args) -> {
+          if (method.getName().equals("close")) {
+            numClosed.incrementAndGet();
+          }
+          return null;
+        });
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncParsingTests {
+
+  private Pgql pgql;
+
+  @Before
+  public void setUp() throws Exception {
+    pgql = Pgql.createShared();
+  }
+
+  @After
+  public void tearDown() {
+    pgql.close();
+  }
+
+  @Test
+  public void testParseAsync() throws Exception {
+    PgqlResult result = pgql.parseAsync("SELECT n WHERE (n)").get(1, TimeUnit.MINUTES);
+    assertTrue(result.isQueryValid());
+    assertEquals(0, pgql.getInFlightParses());
+  }
+
+  @Test
+  public void testMaxInFlightParses() throws Exception {
+    QueueingExecutor executor = new QueueingExecutor();
+    pgql.setMaxInFlightParses(1);
+
+    CompletableFuture<PgqlResult> future1 = pgql.parseAsync("SELECT n WHERE (n)", executor);
+    CompletableFuture<PgqlResult> future2 = pgql.parseAsync("SELECT m WHERE (m)", executor);
+    assertEquals(1, pgql.getInFlightParses());
+    try {
+      future2.get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+
+    executor.runAll();
+    assertTrue(future1.get().isQueryValid());
+    assertEquals(0, pgql.getInFlightParses());
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    QueueingExecutor executor = new QueueingExecutor();
+    final List<PgqlResult> parsed = new ArrayList<>();
+    pgql.setMetricsListener(new PgqlMetricsListener() {
+
+      @Override
+      public void queryParsed(PgqlResult result) {
+        parsed.add(result);
+      }
+    });
+
+    CompletableFuture<PgqlResult> future = pgql.parseAsync("SELECT n WHERE (n)", executor);
+    future.cancel(false);
+    executor.runAll();
+
+    assertTrue(future.isCancelled());
+    assertTrue(parsed.isEmpty());
+    assertEquals(0, pgql.getInFlightParses());
+  }
+
+  private static class QueueingExecutor implements Executor {
+
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    @Override
+    public void execute(Runnable command) {
+      tasks.add(command);
+    }
+
+    void runAll() {
+      for (Runnable task : tasks) {
+        task.run();
+      }
+      tasks.clear();
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.util.CanonicalQuery;
+
+public class CanonicalizationTests {
+
+  private static Pgql pgql;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    pgql = new Pgql();
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    pgql.close();
+  }
+
+  private CanonicalQuery canonicalize(String query) throws Exception {
+    return CanonicalQuery.create(pgql.parse(query).getGraphQuery());
+  }
+
+  private void assertEquivalent(String query1, String query2) throws Exception {
+    CanonicalQuery canonicalQuery1 = canonicalize(query1);
+    CanonicalQuery canonicalQuery2 = canonicalize(query2);
+    assertEquals(canonicalQuery1.getStructuralHash(), canonicalQuery2.getStructuralHash());
+    assertEquals(canonicalQuery1, canonicalQuery2);
+  }
+
+  @Test
+  public void testGraphQueryEquality() throws Exception {
+    GraphQuery query1 = pgql.parse("SELECT n WHERE (n) LIMIT 10 OFFSET 5").getGraphQuery();
+    GraphQuery query2 = pgql.parse("SELECT n WHERE (n) LIMIT 10 OFFSET 5").getGraphQuery();
+    assertEquals(query1, query2);
+    assertEquals(query1.hashCode(), query2.hashCode());
+
+    // no NullPointerException without LIMIT or OFFSET
+    GraphQuery query3 = pgql.parse("SELECT n WHERE (n)").getGraphQuery();
+    assertEquals(query3.hashCode(), pgql.parse("SELECT n WHERE (n)").getGraphQuery().hashCode());
+  }
+
+  @Test
+  public void testAnonymousVariables() throws Exception {
+    assertEquivalent("SELECT n WHERE (n) -> (m), (m) -> ()", "SELECT n WHERE (m) -> (), (n) -> (m)");
+    assertEquivalent("SELECT n WHERE (n) -> () -> (m)", "SELECT n WHERE (m) <- () <- (n)");
+  }
+
+  @Test
+  public void testCommutativeOperands() throws Exception {
+    assertEquivalent("SELECT n WHERE (n), n.a = 1 AND n.b = 2", "SELECT n WHERE (n), n.b = 2 AND n.a = 1");
+    assertEquivalent("SELECT n WHERE (n), n.a = 1 OR n.b = 2 OR n.c = 3",
+        "SELECT n WHERE (n), n.c = 3 OR (n.b = 2 OR 1 = n.a)");
+    assertEquivalent("SELECT n WHERE (n), n.a <> n.b", "SELECT n WHERE (n), n.b <> n.a");
+  }
+
+  @Test
+  public void testNonEquivalent() throws Exception {
+    assertNotEquals(canonicalize("SELECT n WHERE (n) -> (m)"), canonicalize("SELECT n WHERE (n) <- (m)"));
+    assertNotEquals(canonicalize("SELECT n WHERE (n), n.a > 1"), canonicalize("SELECT n WHERE (n), 1 > n.a"));
+    assertNotEquals(canonicalize("SELECT n WHERE (n) LIMIT 5"), canonicalize("SELECT n WHERE (n) LIMIT 6"));
+  }
+
+  @Test
+  public void testBindVariables() throws Exception {
+    assertEquivalent("SELECT n WHERE (n), n.a = ? AND n.b = ?", "SELECT n WHERE (n), ? = n.a AND n.b = ?");
+
+    // the first bind variable is compared with n.a in the first query but with n.b in the second
+    CanonicalQuery canonicalQuery1 = canonicalize("SELECT n WHERE (n), n.a = ? AND n.b = ?");
+    CanonicalQuery canonicalQuery2 = canonicalize("SELECT n WHERE (n), n.b = ? AND n.a = ?");
+    assertNotEquals(canonicalQuery1, canonicalQuery2);
+    assertNotEquals(canonicalQuery1.getStructuralHash(), canonicalQuery2.getStructuralHash());
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ConcurrentParsingTests {
+
+  private static final String[] QUERIES = { //
+      "SELECT n.name WHERE (n) -> (m), m.prop1 = 'abc' AND n.prop2 = m.prop2", //
+      "SELECT n.name WHERE (n) -[e]-> (), e.weight = 10 OR e.weight < n.weight", //
+      "SELECT n.name, m.name WHERE (n) -/:likes*/-> (m)", //
+      "SELECT n.age, COUNT(*) WHERE (n) GROUP BY n.age ORDER BY n.age", //
+      "SELECT x WHERE (n) -> (m)" // invalid
+  };
+
+  private static Pgql pgql;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    pgql = new Pgql();
+  }
+
+  @Test
+  public void testConcurrentParsing() throws Exception {
+    List<PgqlResult> expectedResults = new ArrayList<>();
+    for (String query : QUERIES) {
+      expectedResults.add(pgql.parse(query));
+    }
+
+    int numThreads = 2 * Runtime.getRuntime().availableProcessors();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<PgqlResult>> futures = new ArrayList<>();
+      for (int i = 0; i < 50 * numThreads; i++) {
+        String query = QUERIES[i % QUERIES.length];
+        futures.add(executor.submit(() -> pgql.parse(query)));
+      }
+
+      for (int i = 0; i < futures.size(); i++) {
+        PgqlResult expected = expectedResults.get(i % QUERIES.length);
+        PgqlResult actual = futures.get(i).get();
+        assertEquals(expected.isQueryValid(), actual.isQueryValid());
+        assertEquals(expected.getErrorMessages(), actual.getErrorMessages());
+        assertEquals(expected.getGraphQuery(), actual.getGraphQuery());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testParseAll() throws Exception {
+    List<String> queries = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      queries.add(QUERIES[i % QUERIES.length]);
+    }
+    Collections.shuffle(queries);
+
+    List<PgqlResult> results = pgql.parseAll(queries);
+    assertEquals(queries.size(), results.size());
+    for (int i = 0; i < queries.size(); i++) {
+      PgqlResult expected = pgql.parse(queries.get(i));
+      PgqlResult actual = results.get(i);
+      assertEquals(queries.get(i), actual.getQueryString());
+      assertEquals(expected.isQueryValid(), actual.isQueryValid());
+      assertEquals(expected.getErrorMessages(), actual.getErrorMessages());
+      assertEquals(expected.getGraphQuery(), actual.getGraphQuery());
+      assertSame(results.get(queries.indexOf(queries.get(i))), actual); // duplicates are parsed once
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.Constant.ConstDate;
+import oracle.pgql.lang.util.ConstantFolding;
+
+public class ConstantFoldingTests {
+
+  private static Pgql pgql;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    pgql = new Pgql();
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    pgql.close();
+  }
+
+  private GraphQuery fold(String query) throws Exception {
+    return ConstantFolding.fold(pgql.parse(query).getGraphQuery());
+  }
+
+  private QueryExpression foldSelect(String exp) throws Exception {
+    return fold("SELECT " + exp + " AS x WHERE (n)").getProjection().getElements().get(0).getExp();
+  }
+
+  @Test
+  public void testArithmetic() throws Exception {
+    assertEquals("7", foldSelect("1 + 2 * 3").toString());
+    assertEquals("2.5", foldSelect("5 / 2.0").toString());
+    assertEquals("-3", foldSelect("-(1 + 2)").toString());
+    assertEquals("NULL", foldSelect("1 + NULL").toString());
+    // left for the engine
+    assertEquals("(1 / 0)", foldSelect("1 / 0").toString());
+    assertEquals("(n.age + 1)", foldSelect("n.age + (2 - 1)").toString());
+  }
+
+  @Test
+  public void testThreeValuedLogic() throws Exception {
+    assertEquals("false", foldSelect("NULL AND false").toString());
+    assertEquals("true", foldSelect("NULL OR true").toString());
+    assertEquals("NULL", foldSelect("NOT (NULL = 1)").toString());
+    assertEquals("(NULL AND (n.age > 3))", foldSelect("NULL AND n.age > 3").toString());
+    assertEquals("(n.age > 3)", foldSelect("true AND n.age > 3").toString());
+    assertEquals("(n.age > 3)", foldSelect("NOT NOT n.age > 3").toString());
+    assertEquals("(n.age <= 3)", foldSelect("NOT n.age > 3").toString());
+  }
+
+  @Test
+  public void testCast() throws Exception {
+    assertEquals(new ConstDate(LocalDate.of(2017, 1, 2)), foldSelect("CAST('2017-01-02' AS DATE)"));
+    assertEquals("42", foldSelect("CAST(' 42 ' AS INTEGER)").toString());
+    assertEquals("true", foldSelect("CAST('2017-01-02' AS DATE) < DATE '2018-01-01'").toString());
+    // cannot be cast, so left for the engine
+    assertEquals("CAST('abc' AS INTEGER)", foldSelect("CAST('abc' AS INTEGER)").toString());
+  }
+
+  @Test
+  public void testTautologiesAreRemoved() throws Exception {
+    GraphQuery query = fold("SELECT n WHERE (n) -[e]-> (m), 1 = 1 AND n.age > 20, e = e, n.name = 'Alice' OR true");
+    assertEquals(1, query.getGraphPattern().getConstraints().size());
+    assertFalse(ConstantFolding.isAlwaysFalse(query.getGraphPattern()));
+  }
+
+  @Test
+  public void testAlwaysFalse() throws Exception {
+    GraphQuery query = fold("SELECT n WHERE (n) -> (m), n.age > 20, 1 > 2 OR n <> n");
+    assertEquals(1, query.getGraphPattern().getConstraints().size());
+    assertTrue(ConstantFolding.isAlwaysFalse(query.getGraphPattern()));
+
+    assertTrue(ConstantFolding.isAlwaysFalse(fold("SELECT n WHERE (n), n.age > NULL").getGraphPattern()));
+  }
+
+  @Test
+  public void testIncomparableTypesAreNotFolded() throws Exception {
+    assertEquals("('abc' = 1)", foldSelect("'abc' = 1").toString());
+  }
+}
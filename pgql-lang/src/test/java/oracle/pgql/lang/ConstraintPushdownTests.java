@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import oracle.pgql.lang.ir.GraphPattern;
+import oracle.pgql.lang.ir.QueryEdge;
+import oracle.pgql.lang.ir.QueryVertex;
+import oracle.pgql.lang.ir.VertexPairConnection;
+import oracle.pgql.lang.util.ConstraintPushdown;
+import oracle.pgql.lang.util.ConstraintPushdown.ConstraintKind;
+
+public class ConstraintPushdownTests {
+
+  private static Pgql pgql;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    pgql = new Pgql();
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    pgql.close();
+  }
+
+  private GraphPattern parse(String query) throws Exception {
+    return pgql.parse(query).getGraphQuery().getGraphPattern();
+  }
+
+  private static QueryVertex getVertex(GraphPattern graphPattern, String name) {
+    return graphPattern.getVertices().stream().filter(v -> v.getName().equals(name)).findFirst().get();
+  }
+
+  private static QueryEdge getEdge(GraphPattern graphPattern, String name) {
+    for (VertexPairConnection connection : graphPattern.getConnections()) {
+      if (connection.getName().equals(name)) {
+        return (QueryEdge) connection;
+      }
+    }
+    throw new IllegalArgumentException(name);
+  }
+
+  @Test
+  public void testSplitConjunction() throws Exception {
+    GraphPattern graphPattern = parse("SELECT n WHERE (n) -[e]-> (m), n.age > 30 AND m.age < 20 AND e.weight = 1");
+    ConstraintPushdown pushdown = ConstraintPushdown.create(graphPattern);
+
+    assertEquals(3, pushdown.getConjuncts().size());
+    assertEquals(1, pushdown.getVertexConstraints(getVertex(graphPattern, "n")).size());
+    assertEquals(1, pushdown.getVertexConstraints(getVertex(graphPattern, "m")).size());
+    assertEquals(1, pushdown.getEdgeConstraints(getEdge(graphPattern, "e")).size());
+    assertTrue(pushdown.getMultiVariableConstraints().isEmpty());
+    assertEquals(3, pushdown.getGraphPattern().getConstraints().size());
+  }
+
+  @Test
+  public void testInlineConstraints() throws Exception {
+    GraphPattern graphPattern = parse("SELECT n WHERE (n WITH age > 30 AND name = 'Alice') -> (m), n.id = m.id");
+    ConstraintPushdown pushdown = ConstraintPushdown.create(graphPattern);
+
+    assertEquals(2, pushdown.getVertexConstraints(getVertex(graphPattern, "n")).size());
+    assertTrue(pushdown.getVertexConstraints(getVertex(graphPattern, "m")).isEmpty());
+    assertEquals(1, pushdown.getMultiVariableConstraints().size());
+  }
+
+  @Test
+  public void testKinds() throws Exception {
+    GraphPattern graphPattern = parse("SELECT n WHERE (n) -[e]-> (m), n.age > 30 OR m.age > 30, e.weight > 1, 1 = 1");
+    ConstraintPushdown pushdown = ConstraintPushdown.create(graphPattern);
+
+    // a disjunction is not split
+    assertEquals(ConstraintKind.MULTI_VARIABLE, ConstraintPushdown.getKind(pushdown.getMultiVariableConstraints()
+        .get(0)));
+    assertEquals(1, pushdown.getConstantConstraints().size());
+    assertEquals(ConstraintKind.SINGLE_EDGE,
+        ConstraintPushdown.getKind(pushdown.getEdgeConstraints(getEdge(graphPattern, "e")).get(0)));
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import oracle.pgql.lang.ir.QueryExpression;
+import oracle.pgql.lang.ir.QueryExpression.BindVariable;
+import oracle.pgql.lang.ir.QueryExpression.Constant;
+import oracle.pgql.lang.util.QueryFingerprint;
+
+public class FingerprintTests {
+
+  private static Pgql pgql;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    pgql = new Pgql();
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    pgql.close();
+  }
+
+  private QueryFingerprint fingerprint(String query) throws Exception {
+    return QueryFingerprint.create(pgql.parse(query).getGraphQuery());
+  }
+
+  @Test
+  public void testLiteralsOnlyDifference() throws Exception {
+    QueryFingerprint fingerprint1 = fingerprint("SELECT n.name WHERE (n), n.id = 17 LIMIT 5");
+    QueryFingerprint fingerprint2 = fingerprint("SELECT n.name WHERE (n), n.id = 18 LIMIT 10");
+
+    assertEquals(fingerprint1.getFingerprint(), fingerprint2.getFingerprint());
+    assertEquals(17L, ((Constant<?>) fingerprint1.getParameterValues().get(0)).getValue());
+    assertEquals(5L, ((Constant<?>) fingerprint1.getParameterValues().get(1)).getValue());
+    assertEquals(18L, ((Constant<?>) fingerprint2.getParameterValues().get(0)).getValue());
+    assertEquals(10L, ((Constant<?>) fingerprint2.getParameterValues().get(1)).getValue());
+  }
+
+  @Test
+  public void testConstraintOrder() throws Exception {
+    QueryFingerprint fingerprint1 = fingerprint("SELECT n WHERE (n), n.name = 'x', n.age > 3");
+    QueryFingerprint fingerprint2 = fingerprint("SELECT n WHERE (n), n.age > 4, n.name = 'y'");
+
+    assertEquals(fingerprint1.getFingerprint(), fingerprint2.getFingerprint());
+    assertEquals(fingerprint1.getParameterValues().get(0).getExpType(),
+        fingerprint2.getParameterValues().get(0).getExpType());
+  }
+
+  @Test
+  public void testDifferentShape() throws Exception {
+    assertNotEquals(fingerprint("SELECT n WHERE (n), n.id = 17").getFingerprint(),
+        fingerprint("SELECT n WHERE (n), n.id > 17").getFingerprint());
+    assertNotEquals(fingerprint("SELECT n WHERE (n), n.id = 17").getFingerprint(),
+        fingerprint("SELECT n WHERE (n), n.id = NULL").getFingerprint());
+  }
+
+  @Test
+  public void testBindVariables() throws Exception {
+    QueryFingerprint fingerprint1 = fingerprint("SELECT n WHERE (n), n.name = ?, n.age > 3");
+    QueryFingerprint fingerprint2 = fingerprint("SELECT n WHERE (n), n.name = 'x', n.age > ?");
+
+    assertEquals(fingerprint1.getFingerprint(), fingerprint2.getFingerprint());
+    List<QueryExpression> values = fingerprint1.getParameterValues();
+    assertEquals(2, values.size());
+    assertTrue(values.get(0) instanceof BindVariable || values.get(1) instanceof BindVariable);
+  }
+
+  @Test
+  public void testGroupByReferences() throws Exception {
+    QueryFingerprint fingerprint = fingerprint("SELECT n.age + 1 AS a WHERE (n) GROUP BY n.age + 1 ORDER BY a + 2");
+
+    assertEquals(2, fingerprint.getParameterValues().size());
+    assertEquals(fingerprint.getFingerprint(),
+        fingerprint("SELECT n.age + 3 AS a WHERE (n) GROUP BY n.age + 3 ORDER BY a + 4").getFingerprint());
+  }
+}
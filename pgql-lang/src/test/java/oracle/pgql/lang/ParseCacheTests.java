@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ParseCacheTests {
+
+  @Test
+  public void testLeastRecentlyUsedEviction() {
+    PgqlParseCache cache = new PgqlParseCache(2);
+    PgqlResult result1 = validResult("SELECT * WHERE (n1)");
+    PgqlResult result2 = validResult("SELECT * WHERE (n2)");
+    PgqlResult result3 = validResult("SELECT * WHERE (n3)");
+
+    cache.put(result1.getQueryString(), result1);
+    cache.put(result2.getQueryString(), result2);
+    assertSame(result1, cache.get(result1.getQueryString())); // result2 is now least recently used
+    cache.put(result3.getQueryString(), result3);
+
+    assertNull(cache.get(result2.getQueryString()));
+    assertSame(result1, cache.get(result1.getQueryString()));
+    assertSame(result3, cache.get(result3.getQueryString()));
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals(3, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void testWeightBound() {
+    PgqlResult result1 = validResult("SELECT * WHERE (n1)");
+    PgqlResult result2 = validResult("SELECT * WHERE (n2)");
+    PgqlParseCache cache = new PgqlParseCache(10, result1.getQueryString().length() + 1, 0, TimeUnit.SECONDS);
+
+    cache.put(result1.getQueryString(), result1);
+    cache.put(result2.getQueryString(), result2);
+
+    assertEquals(1, cache.size());
+    assertEquals(result2.getQueryString().length(), cache.getWeight());
+  }
+
+  @Test
+  public void testExpiration() throws Exception {
+    PgqlParseCache cache = new PgqlParseCache(10, Long.MAX_VALUE, 1, TimeUnit.MILLISECONDS);
+    PgqlResult result = validResult("SELECT * WHERE (n)");
+    cache.put(result.getQueryString(), result);
+    Thread.sleep(5);
+    assertNull(cache.get(result.getQueryString()));
+    assertEquals(1, cache.getEvictionCount());
+  }
+
+  @Test
+  public void testExpiredEntriesAreEvictedFromTheLeastRecentlyUsedEnd() throws Exception {
+    PgqlParseCache cache = new PgqlParseCache(10, Long.MAX_VALUE, 1, TimeUnit.MILLISECONDS);
+    PgqlResult result1 = validResult("SELECT * WHERE (n1)");
+    PgqlResult result2 = validResult("SELECT * WHERE (n2)");
+    cache.put(result1.getQueryString(), result1);
+    Thread.sleep(5);
+    cache.put(result2.getQueryString(), result2);
+
+    assertEquals(1, cache.size());
+    assertEquals(result2.getQueryString().length(), cache.getWeight());
+    assertEquals(1, cache.getEvictionCount());
+  }
+
+  @Test
+  public void testConcurrentHits() throws Exception {
+    int numThreads = 8;
+    int numHitsPerThread = 10_000;
+    final PgqlParseCache cache = new PgqlParseCache(10);
+    final PgqlResult[] results = new PgqlResult[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      results[i] = validResult("SELECT * WHERE (n" + i + ")");
+      cache.put(results[i].getQueryString(), results[i]);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < numThreads; i++) {
+        final PgqlResult result = results[i];
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < numHitsPerThread; j++) {
+            assertSame(result, cache.get(result.getQueryString()));
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(numThreads, cache.size());
+    assertEquals(numThreads * numHitsPerThread, cache.getHitCount());
+    assertEquals(0, cache.getMissCount());
+  }
+
+  @Test
+  public void testNormalization() {
+    PgqlParseCache cache = new PgqlParseCache(10);
+    PgqlResult valid = validResult("SELECT * WHERE (n)");
+    PgqlResult invalid = new PgqlResult("SELECT * WHERE (n", false, "1 ERROR", null);
+    cache.put(valid.getQueryString(), valid);
+    cache.put(invalid.getQueryString(), invalid);
+
+    PgqlResult result = cache.get("  SELECT * WHERE (n)\n");
+    assertEquals("  SELECT * WHERE (n)\n", result.getQueryString());
+    assertSame(valid.getGraphQuery(), result.getGraphQuery());
+
+    // error messages have line numbers, so invalid queries need to match exactly
+    assertSame(invalid, cache.get("SELECT * WHERE (n"));
+    assertNull(cache.get("\nSELECT * WHERE (n"));
+  }
+
+  @Test
+  public void testCachedParse() throws Exception {
+    Pgql pgql = new Pgql();
+    pgql.setParseCache(new PgqlParseCache(10));
+
+    PgqlResult result1 = pgql.parse("SELECT n WHERE (n) -> (m)");
+    PgqlResult result2 = pgql.parse("SELECT n WHERE (n) -> (m)");
+    assertSame(result1, result2);
+
+    PgqlResult invalid1 = pgql.parse("SELECT x WHERE (n) -> (m)");
+    PgqlResult invalid2 = pgql.parse("SELECT x WHERE (n) -> (m)");
+    assertFalse(invalid1.isQueryValid());
+    assertSame(invalid1, invalid2);
+  }
+
+  @Test(expected = PgqlException.class)
+  public void testCachedParseAfterClose() throws Exception {
+    Pgql pgql = new Pgql();
+    pgql.setParseCache(new PgqlParseCache(10));
+    pgql.parse("SELECT n WHERE (n)");
+    pgql.close();
+    pgql.parse("SELECT n WHERE (n)");
+  }
+
+  private static PgqlResult validResult(String queryString) {
+    return new PgqlResult(queryString, true, null, null);
+  }
+}
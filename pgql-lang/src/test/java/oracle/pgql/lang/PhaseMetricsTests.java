@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import oracle.pgql.lang.PgqlPhaseMetrics.Phase;
+
+public class PhaseMetricsTests {
+
+  private static Pgql pgql;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    pgql = new Pgql();
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    pgql.close();
+  }
+
+  @Test
+  public void testNoMetricsByDefault() throws Exception {
+    assertNull(pgql.parse("SELECT n WHERE (n)").getPhaseMetrics());
+  }
+
+  @Test
+  public void testMetricsOfValidQuery() throws Exception {
+    pgql.setPhaseMetricsEnabled(true);
+    try {
+      PgqlPhaseMetrics metrics = pgql.parse("SELECT n.name WHERE (n) -> (m), n.age > 3").getPhaseMetrics();
+      assertNotNull(metrics);
+      assertTrue(metrics.getNanos(Phase.PARSE) > 0);
+      assertTrue(metrics.getNanos(Phase.ANALYSIS) > 0);
+      assertTrue(metrics.getNanos(Phase.TRANSLATION) > 0);
+      assertTrue(metrics.getAstNodeCount() > 0);
+      assertEquals(8, metrics.getIrNodeCount()); // 2 vertices, 1 edge, 3 for the constraint and 2 for the SELECT
+    } finally {
+      pgql.setPhaseMetricsEnabled(false);
+    }
+  }
+
+  @Test
+  public void testMetricsOfInvalidQuery() throws Exception {
+    pgql.setPhaseMetricsEnabled(true);
+    try {
+      PgqlPhaseMetrics metrics = pgql.parse("SELECT x WHERE (n)").getPhaseMetrics();
+      assertTrue(metrics.getNanos(Phase.ANALYSIS) > 0);
+      assertEquals(0, metrics.getNanos(Phase.TRANSLATION));
+      assertEquals(-1, metrics.getIrNodeCount());
+    } finally {
+      pgql.setPhaseMetricsEnabled(false);
+    }
+  }
+
+  @Test
+  public void testMetricsOfRecursiveDescentFrontEnd() throws Exception {
+    pgql.setPhaseMetricsEnabled(true);
+    pgql.setFrontEnd(PgqlFrontEnd.RECURSIVE_DESCENT);
+    try {
+      PgqlPhaseMetrics metrics = pgql.parse("SELECT n.name WHERE (n) -> (m)").getPhaseMetrics();
+      assertTrue(metrics.getNanos(Phase.PARSE) > 0);
+      assertEquals(0, metrics.getNanos(Phase.REJECTED_PARSE));
+      assertEquals(0, metrics.getNanos(Phase.ANALYSIS));
+
+      // the recursive-descent parser rejects invalid queries, which are then parsed by Spoofax
+      metrics = pgql.parse("SELECT x WHERE (n)").getPhaseMetrics();
+      assertTrue(metrics.getNanos(Phase.REJECTED_PARSE) > 0);
+      assertTrue(metrics.getNanos(Phase.PARSE) > 0);
+      assertTrue(metrics.getNanos(Phase.ANALYSIS) > 0);
+    } finally {
+      pgql.setFrontEnd(PgqlFrontEnd.SPOOFAX);
+      pgql.setPhaseMetricsEnabled(false);
+    }
+  }
+
+  @Test
+  public void testListener() throws Exception {
+    final List<PgqlResult> results = new ArrayList<>();
+    pgql.setMetricsListener(new PgqlMetricsListener() {
+
+      @Override
+      public void queryParsed(PgqlResult result) {
+        results.add(result);
+      }
+    });
+    try {
+      PgqlResult result = pgql.parse("SELECT n WHERE (n)");
+      assertEquals(1, results.size());
+      assertSame(result, results.get(0));
+      assertNotNull(result.getPhaseMetrics());
+    } finally {
+      pgql.setMetricsListener(null);
+    }
+  }
+}
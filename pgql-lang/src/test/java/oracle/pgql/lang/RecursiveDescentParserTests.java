@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import oracle.pgql.lang.ir.GraphQuery;
+import oracle.pgql.lang.ir.VertexPairConnection;
+import oracle.pgql.lang.parser.RecursiveDescentParser;
+
+public class RecursiveDescentParserTests {
+
+  private static final File SPT_DIR = new File("../pgql-tests");
+
+  /**
+   * The number of queries of the syntax and the reference resolution SPT suites that the recursive-descent parser
+   * accepts; the other queries are left to Spoofax
+   */
+  private static final int MIN_ACCEPTED_SYNTAX_QUERIES = 26;
+
+  private static final int MIN_ACCEPTED_REFERENCE_RESOLUTION_QUERIES = 13;
+
+  private static final String[] QUERIES = { //
+      "SELECT n.name WHERE (n) -> (m), m.prop1 = 'abc' AND n.prop2 = m.prop2", //
+      "SELECT n.name WHERE (n) -[e]-> (), e.weight = 10 OR e.weight < n.weight", //
+      "SELECT n.name, m.name WHERE (n) -/:likes*/-> (m)", //
+      "SELECT n.name, m.name WHERE (n) <-/:likes{2,5}/- (m)", //
+      "SELECT * WHERE (n:Person|Student@123) <-[e:knows]- (m), n.age >= -1.5 + ?", //
+      "select n.age, count(*) as c where (n) group by n.age order by c desc limit 10 offset ?", //
+      "SELECT AVG(n.age) AS avgAge WHERE (n) ORDER BY avgAge", //
+      "SELECT n WHERE (n) - (m), n.has('a', 'b'), n.inDegree() > 2 // comment", //
+      "SELECT n WHERE (n) --> (m) <-- (o) -- (p) /* comment */", //
+      "SELECT n WHERE (n), not n.a = 1 and !(n.b <> 2) OR n.c =~ 'a.*'", //
+      "SELECT n.a + 1, n.b * 2 AS b2 WHERE (n) ORDER BY n.a + 1, DESC(b2) OFFSET 1 LIMIT 2", //
+      "SELECT ST_X(ST_PointFromText(n.geo)) WHERE (n), all_different(n, m), (n) -> (m)" };
+
+  private static Pgql pgql;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    pgql = new Pgql();
+  }
+
+  @Test
+  public void testSameGraphQueryAsSpoofax() throws Exception {
+    for (String query : QUERIES) {
+      GraphQuery graphQuery = RecursiveDescentParser.parse(query);
+      assertNotNull(query, graphQuery);
+      checkSameGraphQueryAsSpoofax(query, graphQuery);
+    }
+  }
+
+  /**
+   * A vertex that occurs in multiple connections is a single QueryVertex, so that the connections are joined on it
+   */
+  @Test
+  public void testRepeatedVertexIsShared() throws Exception {
+    String query = "SELECT n WHERE (n) -> (m), (m) -> (o), (o) -> (n)";
+    GraphQuery graphQuery = RecursiveDescentParser.parse(query);
+    assertEquals(3, graphQuery.getGraphPattern().getVertices().size());
+    for (VertexPairConnection connection : graphQuery.getGraphPattern().getConnections()) {
+      assertTrue(graphQuery.getGraphPattern().getVertices().stream().anyMatch(v -> v == connection.getSrc()));
+      assertTrue(graphQuery.getGraphPattern().getVertices().stream().anyMatch(v -> v == connection.getDst()));
+    }
+    checkSameGraphQueryAsSpoofax(query, graphQuery);
+  }
+
+  @Test
+  public void testSptSuites() throws Exception {
+    assertTrue(checkSptQueries(new File(SPT_DIR, "syntax")) >= MIN_ACCEPTED_SYNTAX_QUERIES);
+    assertTrue(checkSptQueries(SPT_DIR) >= MIN_ACCEPTED_REFERENCE_RESOLUTION_QUERIES);
+  }
+
+  /**
+   * @return the number of queries that the recursive-descent parser accepted
+   */
+  private int checkSptQueries(File dir) throws Exception {
+    int numAccepted = 0;
+    for (String query : getSptQueries(dir)) {
+      GraphQuery graphQuery = RecursiveDescentParser.parse(query);
+      if (graphQuery != null) {
+        checkSameGraphQueryAsSpoofax(query, graphQuery);
+        numAccepted++;
+      }
+    }
+    return numAccepted;
+  }
+
+  @Test
+  public void testErrorsAreLeftToSpoofax() throws Exception {
+    for (String query : getSptQueries(new File(SPT_DIR, "error-messages"))) {
+      assertNull(query, RecursiveDescentParser.parse(query));
+    }
+  }
+
+  @Test
+  public void testFrontEndIsSelectable() throws Exception {
+    try (Pgql pgql = new Pgql()) {
+      assertEquals(PgqlFrontEnd.SPOOFAX, pgql.getFrontEnd());
+      pgql.setFrontEnd(PgqlFrontEnd.RECURSIVE_DESCENT);
+      assertEquals(PgqlFrontEnd.RECURSIVE_DESCENT, pgql.getFrontEnd());
+
+      String query = "SELECT n.name WHERE (n), n.age > 10";
+      assertEquals(RecursiveDescentParser.parse(query), pgql.parse(query).getGraphQuery());
+
+      PgqlResult result = pgql.parse("SELECT x WHERE (n)"); // falls back to Spoofax for the error message
+      assertFalse(result.isQueryValid());
+      assertTrue(result.getErrorMessages(), result.getErrorMessages().contains("Unresolved variable"));
+    }
+  }
+
+  /**
+   * Fails if Spoofax rejects a query that the recursive-descent parser accepted, or if it produces another GraphQuery
+   */
+  private void checkSameGraphQueryAsSpoofax(String query, GraphQuery graphQuery) throws PgqlException {
+    PgqlResult result = pgql.parse(query);
+    assertTrue("Accepted by the recursive-descent parser but rejected by Spoofax: " + query + "\n"
+        + result.getErrorMessages(), result.isQueryValid());
+    assertEquals(query, result.getGraphQuery(), graphQuery);
+  }
+
+  /**
+   * Extracts the query fragments of all tests in the SPT files in a directory, without the selection markers
+   */
+  private static List<String> getSptQueries(File dir) throws IOException {
+    File[] files = dir.listFiles();
+    assertNotNull(dir.getAbsolutePath(), files);
+    Arrays.sort(files);
+
+    List<String> queries = new ArrayList<>();
+    for (File file : files) {
+      if (!file.getName().endsWith(".spt")) {
+        continue;
+      }
+      String spt = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+      int pos = 0;
+      while ((pos = spt.indexOf("\ntest ", pos)) != -1) {
+        int start = spt.indexOf("[[", pos) + 2;
+        int depth = 1;
+        int i = start;
+        while (depth > 0) {
+          if (spt.startsWith("[[", i)) {
+            depth++;
+            i += 2;
+          } else if (spt.startsWith("]]", i)) {
+            depth--;
+            i += 2;
+          } else {
+            i++;
+          }
+        }
+        queries.add(spt.substring(start, i - 2).replace("[[", "").replace("]]", ""));
+        pos = i;
+      }
+    }
+    return queries;
+  }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SharedRuntimeTests {
+
+  @Test
+  public void testSharedRuntime() throws Exception {
+    PgqlRuntime runtime;
+    try (Pgql pgql1 = Pgql.createShared(); Pgql pgql2 = Pgql.createShared()) {
+      runtime = pgql1.getRuntime();
+      assertSame(runtime, pgql2.getRuntime());
+      assertEquals(2, runtime.getRefCount());
+
+      assertEquals(pgql1.parse("SELECT n WHERE (n) -> (m)").getGraphQuery(),
+          pgql2.parse("SELECT n WHERE (n) -> (m)").getGraphQuery());
+
+      pgql2.close();
+      pgql2.close(); // no effect
+      assertEquals(1, runtime.getRefCount());
+    }
+    assertEquals(0, runtime.getRefCount());
+
+    // the last handle released the runtime, so a new one is created
+    try (Pgql pgql = Pgql.createShared()) {
+      assertNotSame(runtime, pgql.getRuntime());
+    }
+  }
+
+  @Test(expected = PgqlException.class)
+  public void testParseAfterClose() throws Exception {
+    Pgql pgql = Pgql.createShared();
+    pgql.close();
+    pgql.parse("SELECT n WHERE (n)");
+  }
+
+  @Test
+  public void testPrivateRuntime() throws Exception {
+    try (Pgql shared = Pgql.createShared(); Pgql pgql = new Pgql()) {
+      assertNotSame(shared.getRuntime(), pgql.getRuntime());
+      assertTrue(pgql.parse("SELECT n WHERE (n)").isQueryValid());
+    }
+  }
+}
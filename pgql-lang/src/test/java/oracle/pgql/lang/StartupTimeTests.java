@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2013 - 2017 Oracle and/or its affiliates. All rights reserved.
+ */
+package oracle.pgql.lang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StartupTimeTests {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  /**
+   * Budget for constructing a Pgql instance, which can be overridden for slow build machines.
+   */
+  private static final long STARTUP_BUDGET_MILLIS = Long.getLong("oracle.pgql.lang.startupBudgetMillis", 10000);
+
+  @Test
+  public void testStartupTime() throws Exception {
+    new Pgql(); // the first instance pays for class loading and extracting the Spoofax binaries
+
+    long start = System.nanoTime();
+    Pgql pgql = new Pgql();
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    assertTrue("startup took " + elapsedMillis + " ms, the budget is " + STARTUP_BUDGET_MILLIS + " ms",
+        elapsedMillis <= STARTUP_BUDGET_MILLIS);
+    assertTrue(pgql.parse("SELECT n WHERE (n)").isQueryValid());
+  }
+
+  @Test
+  public void testArchiveIsReused() throws Exception {
+    File tempDir = new File(System.getProperty("java.io.tmpdir"), "pgql_startup_test");
+    File archive1 = SpoofaxLanguageArchive.locate("pgql-1.0.spoofax-language", tempDir);
+    File archive2 = SpoofaxLanguageArchive.locate("pgql-1.0.spoofax-language", tempDir);
+
+    assertTrue(archive1.isFile());
+    assertEquals(archive1, archive2);
+  }
+
+  /**
+   * Binaries that are nested inside a JAR file are extracted into the cache directory once, and a second lookup reuses
+   * them without extracting them again. Binaries with other content are extracted into another directory.
+   */
+  @Test
+  public void testNestedArchiveIsExtractedOnce() throws Exception {
+    String resourceName = "test.spoofax-language";
+    File cacheRoot = temporaryFolder.newFolder("cache");
+    Files.setPosixFilePermissions(cacheRoot.toPath(), PosixFilePermissions.fromString("rwxr-xr-x"));
+    URL url1 = createJar(temporaryFolder.newFile("binaries1.jar"), resourceName, "binaries 1");
+    URL url2 = createJar(temporaryFolder.newFile("binaries2.jar"), resourceName, "binaries 2");
+    File fallbackDir = temporaryFolder.newFolder("fallback");
+
+    String oldCacheDir = System.setProperty(SpoofaxLanguageArchive.CACHE_DIR_PROPERTY, cacheRoot.getPath());
+    try {
+      File archive = SpoofaxLanguageArchive.locate(url1, resourceName, fallbackDir);
+      assertEquals(cacheRoot, archive.getParentFile().getParentFile());
+      assertEquals("binaries 1", new String(Files.readAllBytes(archive.toPath()), StandardCharsets.UTF_8));
+
+      // a second extraction would overwrite the modification time
+      assertTrue(archive.setLastModified(0));
+      assertEquals(archive, SpoofaxLanguageArchive.locate(url1, resourceName, fallbackDir));
+      assertEquals(0, archive.lastModified());
+
+      File otherArchive = SpoofaxLanguageArchive.locate(url2, resourceName, fallbackDir);
+      assertNotEquals(archive, otherArchive);
+      assertEquals("binaries 2", new String(Files.readAllBytes(otherArchive.toPath()), StandardCharsets.UTF_8));
+      assertEquals(0, fallbackDir.list().length);
+    } finally {
+      if (oldCacheDir == null) {
+        System.clearProperty(SpoofaxLanguageArchive.CACHE_DIR_PROPERTY);
+      } else {
+        System.setProperty(SpoofaxLanguageArchive.CACHE_DIR_PROPERTY, oldCacheDir);
+      }
+    }
+  }
+
+  /**
+   * A cache directory that other users can write to may contain binaries that were planted by them, so the binaries are
+   * extracted into the fallback directory instead.
+   */
+  @Test
+  public void testUntrustedCacheDirectoryIsNotUsed() throws Exception {
+    String resourceName = "test.spoofax-language";
+    File cacheRoot = temporaryFolder.newFolder("cache");
+    Files.setPosixFilePermissions(cacheRoot.toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+    URL url = createJar(temporaryFolder.newFile("binaries.jar"), resourceName, "binaries");
+    File fallbackDir = temporaryFolder.newFolder("fallback");
+
+    String oldCacheDir = System.setProperty(SpoofaxLanguageArchive.CACHE_DIR_PROPERTY, cacheRoot.getPath());
+    try {
+      File archive = SpoofaxLanguageArchive.locate(url, resourceName, fallbackDir);
+      assertEquals(fallbackDir, archive.getParentFile());
+      assertEquals("binaries", new String(Files.readAllBytes(archive.toPath()), StandardCharsets.UTF_8));
+      assertEquals(0, cacheRoot.list().length);
+    } finally {
+      if (oldCacheDir == null) {
+        System.clearProperty(SpoofaxLanguageArchive.CACHE_DIR_PROPERTY);
+      } else {
+        System.setProperty(SpoofaxLanguageArchive.CACHE_DIR_PROPERTY, oldCacheDir);
+      }
+    }
+  }
+
+  private static URL createJar(File jarFile, String entryName, String content) throws IOException {
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jarFile))) {
+      out.putNextEntry(new JarEntry(entryName));
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+    return new URL("jar:" + jarFile.toURI() + "!/" + entryName);
+  }
+}